@@ -0,0 +1,84 @@
+/*
+ * Copyright 2013 pushbit <pushbit@gmail.com>
+ *
+ * This file is part of Sprockets.
+ *
+ * Sprockets is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Sprockets is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Sprockets.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.sf.sprockets.google;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+import net.sf.sprockets.google.Places.Field;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Splitter;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Closeables;
+import com.google.gson.stream.JsonReader;
+
+/**
+ * Recorded service responses that the benchmarks parse.
+ */
+class Fixtures {
+	private Fixtures() {
+	}
+
+	/**
+	 * Read the JSON fixture with the name (without extension).
+	 */
+	static byte[] load(String name) throws IOException {
+		InputStream in = Fixtures.class.getResourceAsStream(name + ".json");
+		if (in == null) {
+			throw new IOException("Fixture not found: " + name);
+		}
+		try {
+			return ByteStreams.toByteArray(in);
+		} finally {
+			Closeables.close(in, true);
+		}
+	}
+
+	/**
+	 * Get a new reader for the fixture bytes, as the API methods would for a response.
+	 */
+	static JsonReader reader(byte[] json) {
+		return new JsonReader(new InputStreamReader(new ByteArrayInputStream(json), Charsets.UTF_8));
+	}
+
+	/**
+	 * Get a new reader for the fixture bytes that decodes chars ("char") or reads the bytes
+	 * directly ("byte").
+	 */
+	static JsonReader reader(byte[] json, String parser) {
+		return "byte".equals(parser) ? new ByteJsonReader(new ByteArrayInputStream(json))
+				: reader(json);
+	}
+
+	/**
+	 * Get the bits of the comma-separated Field names, or 0 for "ALL".
+	 */
+	static int fields(String names) {
+		if ("ALL".equals(names)) {
+			return 0;
+		}
+		int bits = 0;
+		for (String name : Splitter.on(',').trimResults().split(names)) {
+			bits |= Field.bits(new Field[] { Field.valueOf(name) });
+		}
+		return bits;
+	}
+}
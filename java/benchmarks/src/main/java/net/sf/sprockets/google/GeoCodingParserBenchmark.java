@@ -0,0 +1,66 @@
+/*
+ * Copyright 2013 pushbit <pushbit@gmail.com>
+ *
+ * This file is part of Sprockets.
+ *
+ * Sprockets is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Sprockets is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Sprockets.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.sf.sprockets.google;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.gson.stream.JsonReader;
+
+/**
+ * Parsing of GeoCoding responses. Run with {@code -prof gc} to also measure the allocation rate.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GeoCodingParserBenchmark {
+	@Param({ "geocode-1", "geocode-10" })
+	public String fixture;
+	private byte[] mJson;
+
+	@Setup
+	public void setUp() throws IOException {
+		mJson = Fixtures.load(fixture);
+	}
+
+	@Benchmark
+	public GeoCoding.Response geocoding() throws IOException {
+		JsonReader in = Fixtures.reader(mJson);
+		try {
+			return GeoCoding.geocoding(in);
+		} finally {
+			in.close();
+		}
+	}
+}
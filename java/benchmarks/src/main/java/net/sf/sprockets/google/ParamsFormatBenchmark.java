@@ -0,0 +1,94 @@
+/*
+ * Copyright 2013 pushbit <pushbit@gmail.com>
+ *
+ * This file is part of Sprockets.
+ *
+ * Sprockets is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Sprockets is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Sprockets.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.sf.sprockets.google;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static net.sf.sprockets.google.Places.Request.AUTOCOMPLETE;
+import static net.sf.sprockets.google.Places.Request.NEARBY_SEARCH;
+
+import net.sf.sprockets.Sprockets;
+
+import org.apache.commons.configuration.Configuration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Building request URLs from params. Run with {@code -prof gc} to also measure the allocation rate.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParamsFormatBenchmark {
+	private Places.Params mNearby;
+	private Places.Params mAutocomplete;
+	private GeoCoding.Params mReverse;
+	private DistanceMatrix.Params mDistances;
+	private StreetView.Params mStreetView;
+
+	@Setup
+	public void setUp() {
+		Configuration config = Sprockets.getConfig();
+		if (config.getString("google.api-key", "").isEmpty()) {
+			config.setProperty("google.api-key", "benchmark");
+		}
+		mNearby = new Places.Params().location(40.758897, -73.985126).radius(1000)
+				.keyword("fish & chips").types("food", "restaurant").openNow();
+		mAutocomplete = new Places.Params().location(51.500702, -0.124576)
+				.query("Café Müller, Straße").language("de");
+		mReverse = new GeoCoding.Params().latlng(48.20274, 16.368843);
+		mDistances = new DistanceMatrix.Params().origins("Albertina in Vienna, Austria")
+				.destinations("48.20274,16.368843", "Stephansplatz 1, Wien");
+		mStreetView = new StreetView.Params().location(40.758897, -73.985126).heading(90);
+	}
+
+	@Benchmark
+	public String nearbySearch() {
+		return mNearby.format(NEARBY_SEARCH);
+	}
+
+	@Benchmark
+	public String autocomplete() {
+		return mAutocomplete.format(AUTOCOMPLETE);
+	}
+
+	@Benchmark
+	public String reverseGeocoding() {
+		return mReverse.format();
+	}
+
+	@Benchmark
+	public String distances() {
+		return mDistances.format();
+	}
+
+	@Benchmark
+	public String streetView() {
+		return mStreetView.format();
+	}
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2013 pushbit <pushbit@gmail.com>
+ *
+ * This file is part of Sprockets.
+ *
+ * Sprockets is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Sprockets is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Sprockets.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.sf.sprockets.google;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.io.IOException;
+
+import net.sf.sprockets.Sprockets;
+import net.sf.sprockets.google.Places.Response;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.gson.stream.JsonReader;
+
+/**
+ * Parsing of Places search, details, and autocomplete responses. Run with {@code -prof gc} to
+ * also measure the allocation rate.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlacesParserBenchmark {
+	/**
+	 * Search responses of varied sizes.
+	 */
+	@State(Scope.Benchmark)
+	public static class Search {
+		@Param({ "nearbysearch-1", "nearbysearch-20", "radarsearch-200" })
+		public String fixture;
+		@Param({ "ALL", "NAME", "NAME,VICINITY,RATING,PHOTOS" })
+		public String fields;
+		@Param({ "char", "byte" })
+		public String parser;
+		byte[] mJson;
+		int mFields;
+
+		@Setup
+		public void setUp() throws IOException {
+			mJson = Fixtures.load(fixture);
+			mFields = Fixtures.fields(fields);
+		}
+	}
+
+	/**
+	 * Details responses without and with reviews, events, photos, and opening hours. Lazy parsing
+	 * only skips them with the byte parser.
+	 */
+	@State(Scope.Benchmark)
+	public static class Details {
+		@Param({ "details-basic", "details-full" })
+		public String fixture;
+		@Param({ "ALL", "NAME", "NAME,VICINITY,RATING,PHOTOS" })
+		public String fields;
+		@Param({ "0", "1" })
+		public int maxResults;
+		@Param({ "char", "byte" })
+		public String parser;
+		@Param({ "false", "true" })
+		public boolean lazy;
+		byte[] mJson;
+		int mFields;
+
+		@Setup
+		public void setUp() throws IOException {
+			mJson = Fixtures.load(fixture);
+			mFields = Fixtures.fields(fields);
+			Sprockets.getConfig().setProperty("google.places.lazy-parsing", lazy);
+		}
+	}
+
+	/**
+	 * Autocomplete response.
+	 */
+	@State(Scope.Benchmark)
+	public static class Predictions {
+		@Param({ "ALL", "NAME", "NAME,TERMS,MATCHED_SUBSTRINGS" })
+		public String fields;
+		@Param({ "char", "byte" })
+		public String parser;
+		byte[] mJson;
+		int mFields;
+
+		@Setup
+		public void setUp() throws IOException {
+			mJson = Fixtures.load("autocomplete-5");
+			mFields = Fixtures.fields(fields);
+		}
+	}
+
+	@Benchmark
+	public Response<?> search(Search state) throws IOException {
+		JsonReader in = Fixtures.reader(state.mJson, state.parser);
+		try {
+			return Places.places(in, state.mFields, 0);
+		} finally {
+			in.close();
+		}
+	}
+
+	@Benchmark
+	public Response<?> details(Details state) throws IOException {
+		JsonReader in = Fixtures.reader(state.mJson, state.parser);
+		try {
+			return Places.details(in, state.mFields, state.maxResults);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Details that are parsed and then have all of their sections read, which is the worst case
+	 * for lazy parsing.
+	 */
+	@Benchmark
+	public Place detailsRead(Details state) throws IOException {
+		JsonReader in = Fixtures.reader(state.mJson, state.parser);
+		try {
+			Place place = Places.details(in, state.mFields, state.maxResults).getResult();
+			if (place != null) {
+				place.getReviews();
+				place.getOpeningHours();
+				place.getEvents();
+				place.getPhotos();
+			}
+			return place;
+		} finally {
+			in.close();
+		}
+	}
+
+	@Benchmark
+	public Response<?> predictions(Predictions state) throws IOException {
+		JsonReader in = Fixtures.reader(state.mJson, state.parser);
+		try {
+			return Places.predictions(in, state.mFields, 0);
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,632 @@
+/*
+ * Copyright 2013 pushbit <pushbit@gmail.com>
+ *
+ * This file is part of Sprockets.
+ *
+ * Sprockets is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Sprockets is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Sprockets.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.sf.sprockets;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.configuration.Configuration;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Immutable snapshot of the library settings that are used while sending requests. The current
+ * snapshot is available from {@link Sprockets#getSettings()} and is replaced, instead of changed,
+ * when the {@link Sprockets#getConfig() configuration} is updated or reloaded, so the values of one
+ * snapshot are always consistent with each other.
+ * <p>
+ * Settings that aren't in the snapshot are read once, when the class that uses them is loaded. See
+ * {@link Sprockets} for the list.
+ * </p>
+ *
+ * @since 2.0.0
+ */
+public class Settings {
+	/** APIs that have {@code google.[api].rate-limit} settings. */
+	private static final String[] RATE_LIMITED = { "places", "street-view", "geocoding",
+			"distance-matrix" };
+
+	private final String mApiKey;
+	private final String mBaseUrl;
+	private final boolean mStreetViewKey;
+	private final boolean mLazyParsing;
+	private final boolean mByteParser;
+	private final int mDetailsCacheMaxEntries;
+	private final long mDetailsCacheMaxBytes;
+	private final long mDetailsCacheTtl;
+	private final String mPhotoCacheDir;
+	private final long mPhotoCacheMaxBytes;
+	private final long mPhotoCacheMaxAge;
+	private final int mGeoCodingCacheMaxEntries;
+	private final long mGeoCodingCacheTtl;
+	private final int mGeoCodingCachePrecision;
+	private final int mAutocompleteCacheMaxEntries;
+	private final long mAutocompleteCacheTtl;
+	private final int mAutocompleteCachePrecision;
+	private final boolean mAutocompleteCachePrefixFilter;
+	private final boolean mSingleFlight;
+	private final long mPageTokenDelay;
+	private final int mPageTokenRetries;
+	private final int mAreaSearchParallelism;
+	private final int mAreaSearchMinRadius;
+	private final int mBatchMaxOrigins;
+	private final int mBatchMaxDestinations;
+	private final int mBatchMaxElements;
+	private final int mBatchMaxUrlLength;
+	private final int mBatchParallelism;
+	private final int mRetryMaxAttempts;
+	private final long mRetryBaseDelay;
+	private final long mRetryMaxDelay;
+	private final double mRetryJitter;
+	private final long mRetryDeadline;
+	private final List<String> mRetryStatuses;
+	private final Map<String, RateLimit> mRateLimits;
+	private final String mHttpClient;
+	private final boolean mGzip;
+	private final int mConnectTimeout;
+	private final int mReadTimeout;
+	private final int mMaxIdleConnections;
+	private final long mKeepAlive;
+	private final int mMaxRequestsPerHost;
+	private final boolean mLocation;
+
+	/**
+	 * Read the current values from the configuration.
+	 */
+	Settings(Configuration config) {
+		mApiKey = Strings.nullToEmpty(config.getString("google.api-key"));
+		mBaseUrl = config.getString("google.base-url", "https://maps.googleapis.com/maps/api/");
+		mStreetViewKey = config.getBoolean("google.street-view.use-api-key", false);
+		mLazyParsing = config.getBoolean("google.places.lazy-parsing", false);
+		mByteParser = config.getBoolean("google.byte-parser", false);
+		String details = "google.places.details-cache.";
+		mDetailsCacheMaxEntries = config.getInt(details + "max-entries", 0);
+		mDetailsCacheMaxBytes = config.getLong(details + "max-bytes", 0L);
+		mDetailsCacheTtl = config.getLong(details + "ttl", 3600L);
+		String photo = "google.places.photo-cache.";
+		mPhotoCacheDir = Strings.nullToEmpty(config.getString(photo + "dir"));
+		mPhotoCacheMaxBytes = config.getLong(photo + "max-bytes", 52428800L);
+		mPhotoCacheMaxAge = config.getLong(photo + "max-age", 86400L);
+		String geocoding = "google.geocoding.cache.";
+		mGeoCodingCacheMaxEntries = config.getInt(geocoding + "max-entries", 0);
+		mGeoCodingCacheTtl = config.getLong(geocoding + "ttl", 86400L);
+		mGeoCodingCachePrecision = config.getInt(geocoding + "reverse-precision", 8);
+		String autocomplete = "google.places.autocomplete-cache.";
+		mAutocompleteCacheMaxEntries = config.getInt(autocomplete + "max-entries", 0);
+		mAutocompleteCacheTtl = config.getLong(autocomplete + "ttl", 3600L);
+		mAutocompleteCachePrecision = config.getInt(autocomplete + "location-precision", 5);
+		mAutocompleteCachePrefixFilter = config.getBoolean(autocomplete + "prefix-filter", true);
+		mSingleFlight = config.getBoolean("google.single-flight", true);
+		mPageTokenDelay = config.getLong("google.places.page-token.delay", 2000L);
+		mPageTokenRetries = config.getInt("google.places.page-token.retries", 3);
+		mAreaSearchParallelism = config.getInt("google.places.area-search.parallelism", 4);
+		mAreaSearchMinRadius = config.getInt("google.places.area-search.min-radius", 100);
+		String batch = "google.distance-matrix.batch.";
+		mBatchMaxOrigins = config.getInt(batch + "max-origins", 25);
+		mBatchMaxDestinations = config.getInt(batch + "max-destinations", 25);
+		mBatchMaxElements = config.getInt(batch + "max-elements", 100);
+		mBatchMaxUrlLength = config.getInt(batch + "max-url-length", 2048);
+		mBatchParallelism = config.getInt(batch + "parallelism", 4);
+		mRetryMaxAttempts = config.getInt("google.retry.max-attempts", 1);
+		mRetryBaseDelay = config.getLong("google.retry.base-delay", 100L);
+		mRetryMaxDelay = config.getLong("google.retry.max-delay", 10000L);
+		mRetryJitter = config.getDouble("google.retry.jitter", 1.0);
+		mRetryDeadline = config.getLong("google.retry.deadline", 0L);
+		mRetryStatuses = ImmutableList.copyOf(config.getStringArray("google.retry.statuses"));
+		ImmutableMap.Builder<String, RateLimit> limits = ImmutableMap.builder();
+		for (String api : RATE_LIMITED) {
+			String prefix = "google." + api + ".rate-limit.";
+			limits.put(api, new RateLimit(config.getDouble(prefix + "per-second", 0.0), config
+					.getInt(prefix + "burst", 0), config.getLong(prefix + "daily-quota", 0L)));
+		}
+		mRateLimits = limits.build();
+		mHttpClient = config.getString("network.http-client", "okhttp");
+		mGzip = config.getBoolean("network.gzip", true);
+		mConnectTimeout = config.getInt("network.connect-timeout", 0);
+		mReadTimeout = config.getInt("network.read-timeout", 0);
+		mMaxIdleConnections = config.getInt("network.pool.max-idle-connections", 5);
+		mKeepAlive = config.getLong("network.pool.keep-alive", 300000L);
+		mMaxRequestsPerHost = config.getInt("network.pool.max-requests-per-host", 0);
+		mLocation = config.getBoolean("hardware.location", false);
+	}
+
+	/**
+	 * {@code google.api-key}, empty if it hasn't been set.
+	 */
+	public String getApiKey() {
+		return mApiKey;
+	}
+
+	/**
+	 * {@code google.base-url}
+	 */
+	public String getBaseUrl() {
+		return mBaseUrl;
+	}
+
+	/**
+	 * {@code google.street-view.use-api-key}
+	 */
+	public boolean isStreetViewKeyUsed() {
+		return mStreetViewKey;
+	}
+
+	/**
+	 * {@code google.places.lazy-parsing}
+	 */
+	public boolean isLazyParsing() {
+		return mLazyParsing;
+	}
+
+	/**
+	 * {@code google.byte-parser}
+	 */
+	public boolean isByteParser() {
+		return mByteParser;
+	}
+
+	/**
+	 * {@code google.places.details-cache.max-entries}
+	 */
+	public int getDetailsCacheMaxEntries() {
+		return mDetailsCacheMaxEntries;
+	}
+
+	/**
+	 * {@code google.places.details-cache.max-bytes}
+	 */
+	public long getDetailsCacheMaxBytes() {
+		return mDetailsCacheMaxBytes;
+	}
+
+	/**
+	 * {@code google.places.details-cache.ttl} in seconds, 0 or less for no expiry.
+	 */
+	public long getDetailsCacheTtl() {
+		return mDetailsCacheTtl;
+	}
+
+	/**
+	 * {@code google.places.photo-cache.dir}, empty if the cache is disabled.
+	 */
+	public String getPhotoCacheDir() {
+		return mPhotoCacheDir;
+	}
+
+	/**
+	 * {@code google.places.photo-cache.max-bytes}
+	 */
+	public long getPhotoCacheMaxBytes() {
+		return mPhotoCacheMaxBytes;
+	}
+
+	/**
+	 * {@code google.places.photo-cache.max-age} in seconds.
+	 */
+	public long getPhotoCacheMaxAge() {
+		return mPhotoCacheMaxAge;
+	}
+
+	/**
+	 * {@code google.places.autocomplete-cache.max-entries}
+	 */
+	public int getAutocompleteCacheMaxEntries() {
+		return mAutocompleteCacheMaxEntries;
+	}
+
+	/**
+	 * {@code google.places.autocomplete-cache.ttl} in seconds, 0 or less for no expiry.
+	 */
+	public long getAutocompleteCacheTtl() {
+		return mAutocompleteCacheTtl;
+	}
+
+	/**
+	 * {@code google.places.autocomplete-cache.location-precision}
+	 */
+	public int getAutocompleteCachePrecision() {
+		return mAutocompleteCachePrecision;
+	}
+
+	/**
+	 * {@code google.places.autocomplete-cache.prefix-filter}
+	 */
+	public boolean isAutocompleteCachePrefixFilter() {
+		return mAutocompleteCachePrefixFilter;
+	}
+
+	/**
+	 * {@code google.geocoding.cache.max-entries}
+	 */
+	public int getGeoCodingCacheMaxEntries() {
+		return mGeoCodingCacheMaxEntries;
+	}
+
+	/**
+	 * {@code google.geocoding.cache.ttl} in seconds, 0 or less for no expiry.
+	 */
+	public long getGeoCodingCacheTtl() {
+		return mGeoCodingCacheTtl;
+	}
+
+	/**
+	 * {@code google.geocoding.cache.reverse-precision}
+	 */
+	public int getGeoCodingCachePrecision() {
+		return mGeoCodingCachePrecision;
+	}
+
+	/**
+	 * {@code google.single-flight}
+	 */
+	public boolean isSingleFlight() {
+		return mSingleFlight;
+	}
+
+	/**
+	 * {@code google.places.page-token.delay} in milliseconds.
+	 */
+	public long getPageTokenDelay() {
+		return mPageTokenDelay;
+	}
+
+	/**
+	 * {@code google.places.page-token.retries}
+	 */
+	public int getPageTokenRetries() {
+		return mPageTokenRetries;
+	}
+
+	/**
+	 * {@code google.places.area-search.parallelism}
+	 */
+	public int getAreaSearchParallelism() {
+		return mAreaSearchParallelism;
+	}
+
+	/**
+	 * {@code google.places.area-search.min-radius} in metres.
+	 */
+	public int getAreaSearchMinRadius() {
+		return mAreaSearchMinRadius;
+	}
+
+	/**
+	 * {@code google.distance-matrix.batch.max-origins}
+	 */
+	public int getBatchMaxOrigins() {
+		return mBatchMaxOrigins;
+	}
+
+	/**
+	 * {@code google.distance-matrix.batch.max-destinations}
+	 */
+	public int getBatchMaxDestinations() {
+		return mBatchMaxDestinations;
+	}
+
+	/**
+	 * {@code google.distance-matrix.batch.max-elements}
+	 */
+	public int getBatchMaxElements() {
+		return mBatchMaxElements;
+	}
+
+	/**
+	 * {@code google.distance-matrix.batch.max-url-length}, 0 or less for no limit.
+	 */
+	public int getBatchMaxUrlLength() {
+		return mBatchMaxUrlLength;
+	}
+
+	/**
+	 * {@code google.distance-matrix.batch.parallelism}
+	 */
+	public int getBatchParallelism() {
+		return mBatchParallelism;
+	}
+
+	/**
+	 * {@code google.retry.max-attempts}
+	 */
+	public int getRetryMaxAttempts() {
+		return mRetryMaxAttempts;
+	}
+
+	/**
+	 * {@code google.retry.base-delay} in milliseconds.
+	 */
+	public long getRetryBaseDelay() {
+		return mRetryBaseDelay;
+	}
+
+	/**
+	 * {@code google.retry.max-delay} in milliseconds.
+	 */
+	public long getRetryMaxDelay() {
+		return mRetryMaxDelay;
+	}
+
+	/**
+	 * {@code google.retry.jitter}
+	 */
+	public double getRetryJitter() {
+		return mRetryJitter;
+	}
+
+	/**
+	 * {@code google.retry.deadline} in milliseconds, 0 for no deadline.
+	 */
+	public long getRetryDeadline() {
+		return mRetryDeadline;
+	}
+
+	/**
+	 * {@code google.retry.statuses}, empty for the default statuses.
+	 */
+	public List<String> getRetryStatuses() {
+		return mRetryStatuses;
+	}
+
+	/**
+	 * {@code google.[api].rate-limit} settings.
+	 *
+	 * @param api
+	 *            places, street-view, geocoding, or distance-matrix
+	 * @return null if the API doesn't have rate limit settings
+	 */
+	public RateLimit getRateLimit(String api) {
+		return mRateLimits.get(api);
+	}
+
+	/**
+	 * {@code network.http-client}
+	 */
+	public String getHttpClient() {
+		return mHttpClient;
+	}
+
+	/**
+	 * {@code network.gzip}
+	 */
+	public boolean isGzip() {
+		return mGzip;
+	}
+
+	/**
+	 * {@code network.connect-timeout} in milliseconds.
+	 */
+	public int getConnectTimeout() {
+		return mConnectTimeout;
+	}
+
+	/**
+	 * {@code network.read-timeout} in milliseconds.
+	 */
+	public int getReadTimeout() {
+		return mReadTimeout;
+	}
+
+	/**
+	 * {@code network.pool.max-idle-connections}
+	 */
+	public int getMaxIdleConnections() {
+		return mMaxIdleConnections;
+	}
+
+	/**
+	 * {@code network.pool.keep-alive} in milliseconds.
+	 */
+	public long getKeepAlive() {
+		return mKeepAlive;
+	}
+
+	/**
+	 * {@code network.pool.max-requests-per-host}, 0 if there is no limit.
+	 */
+	public int getMaxRequestsPerHost() {
+		return mMaxRequestsPerHost;
+	}
+
+	/**
+	 * {@code hardware.location}
+	 */
+	public boolean hasLocationSensor() {
+		return mLocation;
+	}
+
+	/**
+	 * True if the settings that are used to create HTTP connections are different.
+	 */
+	public boolean isNetworkChanged(Settings other) {
+		return !mHttpClient.equals(other.mHttpClient) || mGzip != other.mGzip
+				|| mConnectTimeout != other.mConnectTimeout || mReadTimeout != other.mReadTimeout
+				|| mMaxIdleConnections != other.mMaxIdleConnections
+				|| mKeepAlive != other.mKeepAlive
+				|| mMaxRequestsPerHost != other.mMaxRequestsPerHost;
+	}
+
+	/**
+	 * True if the settings that are used to create the {@code Places.details} cache are different.
+	 */
+	public boolean isDetailsCacheChanged(Settings other) {
+		return mDetailsCacheMaxEntries != other.mDetailsCacheMaxEntries
+				|| mDetailsCacheMaxBytes != other.mDetailsCacheMaxBytes
+				|| mDetailsCacheTtl != other.mDetailsCacheTtl;
+	}
+
+	/**
+	 * True if the settings that are used by the {@code Places.photo} cache are different.
+	 */
+	public boolean isPhotoCacheChanged(Settings other) {
+		return !mPhotoCacheDir.equals(other.mPhotoCacheDir)
+				|| mPhotoCacheMaxBytes != other.mPhotoCacheMaxBytes
+				|| mPhotoCacheMaxAge != other.mPhotoCacheMaxAge;
+	}
+
+	/**
+	 * True if the settings that are used to create the {@code Places.autocomplete} cache are
+	 * different.
+	 */
+	public boolean isAutocompleteCacheChanged(Settings other) {
+		return mAutocompleteCacheMaxEntries != other.mAutocompleteCacheMaxEntries
+				|| mAutocompleteCacheTtl != other.mAutocompleteCacheTtl
+				|| mAutocompleteCachePrecision != other.mAutocompleteCachePrecision
+				|| mAutocompleteCachePrefixFilter != other.mAutocompleteCachePrefixFilter;
+	}
+
+	/**
+	 * True if the settings that are used to create the {@code GeoCoding.geocoding} cache are
+	 * different.
+	 */
+	public boolean isGeoCodingCacheChanged(Settings other) {
+		return mGeoCodingCacheMaxEntries != other.mGeoCodingCacheMaxEntries
+				|| mGeoCodingCacheTtl != other.mGeoCodingCacheTtl
+				|| mGeoCodingCachePrecision != other.mGeoCodingCachePrecision;
+	}
+
+	/**
+	 * All of the values, in the order of the fields.
+	 */
+	private Object[] values() {
+		return new Object[] { mApiKey, mBaseUrl, mStreetViewKey, mLazyParsing, mByteParser,
+				mDetailsCacheMaxEntries, mDetailsCacheMaxBytes, mDetailsCacheTtl, mPhotoCacheDir,
+				mPhotoCacheMaxBytes, mPhotoCacheMaxAge, mGeoCodingCacheMaxEntries,
+				mGeoCodingCacheTtl, mGeoCodingCachePrecision, mAutocompleteCacheMaxEntries,
+				mAutocompleteCacheTtl, mAutocompleteCachePrecision, mAutocompleteCachePrefixFilter,
+				mSingleFlight, mPageTokenDelay, mPageTokenRetries, mAreaSearchParallelism,
+				mAreaSearchMinRadius, mBatchMaxOrigins, mBatchMaxDestinations, mBatchMaxElements,
+				mBatchMaxUrlLength, mBatchParallelism, mRetryMaxAttempts, mRetryBaseDelay,
+				mRetryMaxDelay, mRetryJitter, mRetryDeadline, mRetryStatuses, mRateLimits,
+				mHttpClient, mGzip, mConnectTimeout, mReadTimeout, mMaxIdleConnections, mKeepAlive,
+				mMaxRequestsPerHost, mLocation };
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(values());
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		return obj instanceof Settings && Arrays.equals(values(), ((Settings) obj).values());
+	}
+
+	@Override
+	public String toString() {
+		return Objects.toStringHelper(this).add("apiKey", mApiKey.isEmpty() ? "" : "...")
+				.add("baseUrl", mBaseUrl).add("streetViewKey", mStreetViewKey)
+				.add("lazyParsing", mLazyParsing).add("byteParser", mByteParser)
+				.add("detailsCacheMaxEntries", mDetailsCacheMaxEntries)
+				.add("detailsCacheMaxBytes", mDetailsCacheMaxBytes)
+				.add("detailsCacheTtl", mDetailsCacheTtl).add("photoCacheDir", mPhotoCacheDir)
+				.add("photoCacheMaxBytes", mPhotoCacheMaxBytes)
+				.add("photoCacheMaxAge", mPhotoCacheMaxAge)
+				.add("geoCodingCacheMaxEntries", mGeoCodingCacheMaxEntries)
+				.add("geoCodingCacheTtl", mGeoCodingCacheTtl)
+				.add("geoCodingCachePrecision", mGeoCodingCachePrecision)
+				.add("autocompleteCacheMaxEntries", mAutocompleteCacheMaxEntries)
+				.add("autocompleteCacheTtl", mAutocompleteCacheTtl)
+				.add("autocompleteCachePrecision", mAutocompleteCachePrecision)
+				.add("autocompleteCachePrefixFilter", mAutocompleteCachePrefixFilter)
+				.add("singleFlight", mSingleFlight).add("pageTokenDelay", mPageTokenDelay)
+				.add("pageTokenRetries", mPageTokenRetries)
+				.add("areaSearchParallelism", mAreaSearchParallelism)
+				.add("areaSearchMinRadius", mAreaSearchMinRadius)
+				.add("batchMaxOrigins", mBatchMaxOrigins)
+				.add("batchMaxDestinations", mBatchMaxDestinations)
+				.add("batchMaxElements", mBatchMaxElements)
+				.add("batchMaxUrlLength", mBatchMaxUrlLength)
+				.add("batchParallelism", mBatchParallelism)
+				.add("retryMaxAttempts", mRetryMaxAttempts).add("retryBaseDelay", mRetryBaseDelay)
+				.add("retryMaxDelay", mRetryMaxDelay).add("retryJitter", mRetryJitter)
+				.add("retryDeadline", mRetryDeadline).add("retryStatuses", mRetryStatuses)
+				.add("rateLimits", mRateLimits).add("httpClient", mHttpClient).add("gzip", mGzip)
+				.add("connectTimeout", mConnectTimeout).add("readTimeout", mReadTimeout)
+				.add("maxIdleConnections", mMaxIdleConnections).add("keepAlive", mKeepAlive)
+				.add("maxRequestsPerHost", mMaxRequestsPerHost).add("location", mLocation)
+				.toString();
+	}
+
+	/**
+	 * {@code google.[api].rate-limit} settings.
+	 */
+	public static class RateLimit {
+		private final double mPerSecond;
+		private final int mBurst;
+		private final long mDailyQuota;
+
+		private RateLimit(double perSecond, int burst, long dailyQuota) {
+			mPerSecond = perSecond;
+			mBurst = burst;
+			mDailyQuota = dailyQuota;
+		}
+
+		/**
+		 * 0 for no limit.
+		 */
+		public double getPerSecond() {
+			return mPerSecond;
+		}
+
+		/**
+		 * 0 for the per-second limit.
+		 */
+		public int getBurst() {
+			return mBurst;
+		}
+
+		/**
+		 * 0 for no limit.
+		 */
+		public long getDailyQuota() {
+			return mDailyQuota;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hashCode(mPerSecond, mBurst, mDailyQuota);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (obj instanceof RateLimit) {
+				RateLimit o = (RateLimit) obj;
+				return Double.compare(mPerSecond, o.mPerSecond) == 0 && mBurst == o.mBurst
+						&& mDailyQuota == o.mDailyQuota;
+			}
+			return false;
+		}
+
+		@Override
+		public String toString() {
+			return Objects.toStringHelper(this).add("perSecond", mPerSecond).add("burst", mBurst)
+					.add("dailyQuota", mDailyQuota).toString();
+		}
+	}
+}
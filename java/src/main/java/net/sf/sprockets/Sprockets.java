@@ -17,19 +17,27 @@
 
 package net.sf.sprockets;
 
+import static com.google.common.base.Preconditions.checkNotNull;
 import static java.util.logging.Level.WARNING;
 
 import java.io.File;
 import java.net.URL;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 import net.sf.sprockets.util.logging.Loggers;
 
+import org.apache.commons.configuration.AbstractFileConfiguration;
 import org.apache.commons.configuration.CompositeConfiguration;
 import org.apache.commons.configuration.Configuration;
 import org.apache.commons.configuration.ConfigurationException;
 import org.apache.commons.configuration.SystemConfiguration;
 import org.apache.commons.configuration.XMLConfiguration;
+import org.apache.commons.configuration.event.ConfigurationEvent;
+import org.apache.commons.configuration.event.ConfigurationListener;
+import org.apache.commons.configuration.reloading.FileChangedReloadingStrategy;
 
 /**
  * Allows the configuration of library settings. If you need to override the default settings, for
@@ -65,10 +73,63 @@ import org.apache.commons.configuration.XMLConfiguration;
  * </ul>
  * </li>
  * </ol>
+ * <p>
+ * The settings that are used while sending requests are also available as an immutable
+ * {@link #getSettings() snapshot}, which is replaced when the configuration changes. Changes to a
+ * {@code sprockets.xml} file on the file system are picked up when {@link #reload()} is called, or
+ * within a few seconds when the configuration is next read. {@link #addListener(Listener)
+ * Listeners} are notified each time the snapshot is replaced.
+ * </p>
+ * <p>
+ * These settings are only read once, when the class that uses them is loaded or, for
+ * {@code autocomplete-session.delay}, when the session is created. Changing them later has no
+ * effect.
+ * </p>
+ * <ul>
+ * <li>{@code google.async}</li>
+ * <li>{@code google.string-pool.size}</li>
+ * <li>{@code google.metrics.jmx}</li>
+ * <li>{@code google.places.autocomplete-session.delay}</li>
+ * </ul>
  */
 public class Sprockets {
 	private static final Logger sLog = Loggers.get(Sprockets.class);
+	/** Milliseconds between checks for a modified configuration file when it is read. */
+	private static final long RELOAD_DELAY = 5000L;
 	private static final CompositeConfiguration sConfig = new CompositeConfiguration();
+	/** Configuration files that can change while running. */
+	private static final List<XMLConfiguration> sFiles =
+			new CopyOnWriteArrayList<XMLConfiguration>();
+	private static final List<Listener> sListeners = new CopyOnWriteArrayList<Listener>();
+	/** Incremented when the configuration changes. */
+	private static final AtomicInteger sChanges = new AtomicInteger();
+	private static volatile Settings sSettings;
+	/** Thread that is reading the snapshot, guarded by the class lock. */
+	private static Thread sUpdating;
+	/** Replaces the settings snapshot after the configuration changes. */
+	private static final ConfigurationListener sUpdater = new ConfigurationListener() {
+		@Override
+		public void configurationChanged(ConfigurationEvent event) {
+			if (!event.isBeforeUpdate()) {
+				sChanges.incrementAndGet();
+				update();
+			}
+		}
+	};
+	/**
+	 * Replaces the settings snapshot after a configuration file has been reloaded. The file is
+	 * cleared before it is read again, so the snapshot isn't replaced until it has been read.
+	 */
+	private static final ConfigurationListener sReloader = new ConfigurationListener() {
+		@Override
+		public void configurationChanged(ConfigurationEvent event) {
+			sChanges.incrementAndGet();
+			if (event.getType() == AbstractFileConfiguration.EVENT_RELOAD
+					&& !event.isBeforeUpdate()) {
+				update();
+			}
+		}
+	};
 	static {
 		sConfig.addConfiguration(new SystemConfiguration());
 		/* on the file system, if user specified */
@@ -78,7 +139,7 @@ public class Sprockets {
 			File file = new File(config);
 			if (file.isFile() && file.canRead()) {
 				try {
-					sConfig.addConfiguration(new XMLConfiguration(config));
+					sConfig.addConfiguration(file(new XMLConfiguration(config)));
 				} catch (ConfigurationException e) {
 					throw new RuntimeException("loading " + key + ": " + config, e);
 				}
@@ -93,7 +154,8 @@ public class Sprockets {
 		URL url = Sprockets.class.getClassLoader().getResource(config != null ? config : defConfig);
 		if (url != null) {
 			try {
-				sConfig.addConfiguration(new XMLConfiguration(url));
+				XMLConfiguration xml = new XMLConfiguration(url);
+				sConfig.addConfiguration("file".equals(url.getProtocol()) ? file(xml) : xml);
 			} catch (ConfigurationException e) {
 				throw new RuntimeException("loading " + key + ": " + url, e);
 			}
@@ -109,11 +171,26 @@ public class Sprockets {
 				throw new RuntimeException("loading sprockets default config: " + defConfig, e);
 			}
 		}
+		sConfig.addConfigurationListener(sUpdater);
+		update();
 	}
 
 	private Sprockets() {
 	}
 
+	/**
+	 * Reload the configuration file when it has been modified and it is read or
+	 * {@link #reload() reloaded}.
+	 */
+	private static XMLConfiguration file(XMLConfiguration config) {
+		FileChangedReloadingStrategy strategy = new FileChangedReloadingStrategy();
+		strategy.setRefreshDelay(RELOAD_DELAY);
+		config.setReloadingStrategy(strategy);
+		config.addConfigurationListener(sReloader);
+		sFiles.add(config);
+		return config;
+	}
+
 	/**
 	 * Library settings that can be updated programmatically. See the class description for how
 	 * these values are loaded and how you can override them.
@@ -121,4 +198,105 @@ public class Sprockets {
 	public static Configuration getConfig() {
 		return sConfig;
 	}
+
+	/**
+	 * Get the current snapshot of the settings that are used while sending requests. Values that
+	 * are updated in the {@link #getConfig() configuration} are available from the next snapshot.
+	 *
+	 * @since 2.0.0
+	 */
+	public static Settings getSettings() {
+		return sSettings;
+	}
+
+	/**
+	 * Read any {@code sprockets.xml} files on the file system again. The settings snapshot is
+	 * replaced and listeners are notified if any values have changed.
+	 *
+	 * @throws ConfigurationException
+	 *             if a file can't be read, in which case the settings from it aren't changed
+	 * @since 2.0.0
+	 */
+	public static void reload() throws ConfigurationException {
+		for (XMLConfiguration file : sFiles) {
+			new XMLConfiguration(file.getURL()); // check that it can be read before clearing
+			synchronized (file.getReloadLock()) {
+				file.refresh();
+				((FileChangedReloadingStrategy) file.getReloadingStrategy()).reloadingPerformed();
+			}
+		}
+	}
+
+	/**
+	 * Notify the listener each time the settings snapshot is replaced. Listeners are called on
+	 * the thread that changed the configuration and should return quickly. When the configuration
+	 * is changed on more than one thread at the same time, the notifications may arrive
+	 * concurrently and out of order, so listeners that apply the settings should read the latest
+	 * {@link #getSettings() snapshot} instead of relying on the one that they receive.
+	 *
+	 * @since 2.0.0
+	 */
+	public static void addListener(Listener listener) {
+		sListeners.add(checkNotNull(listener));
+	}
+
+	/**
+	 * Stop notifying the listener.
+	 *
+	 * @since 2.0.0
+	 */
+	public static void removeListener(Listener listener) {
+		sListeners.remove(listener);
+	}
+
+	/**
+	 * Replace the settings snapshot if any of its values have changed and notify the listeners.
+	 * The snapshot is read again if the configuration changes while it is being read, so that it
+	 * doesn't mix old and new values. Listeners are notified after the lock is released.
+	 */
+	private static void update() {
+		Settings old;
+		Settings settings;
+		synchronized (Sprockets.class) {
+			if (sUpdating == Thread.currentThread()) {
+				return; // a file was reloaded while being read, the loop below will read it again
+			}
+			sUpdating = Thread.currentThread();
+			try {
+				int changes;
+				do {
+					changes = sChanges.get();
+					settings = new Settings(sConfig);
+				} while (changes != sChanges.get());
+			} finally {
+				sUpdating = null;
+			}
+			old = sSettings;
+			if (settings.equals(old)) {
+				return;
+			}
+			sSettings = settings;
+		}
+		if (old != null) {
+			for (Listener listener : sListeners) {
+				try {
+					listener.onSettingsChanged(old, settings);
+				} catch (RuntimeException e) {
+					sLog.log(WARNING, "Settings listener failed", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Receives the new settings snapshot when it replaces the old one.
+	 *
+	 * @since 2.0.0
+	 */
+	public interface Listener {
+		/**
+		 * At least one of the values in the snapshot has changed.
+		 */
+		void onSettingsChanged(Settings old, Settings settings);
+	}
 }
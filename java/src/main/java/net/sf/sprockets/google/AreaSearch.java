@@ -0,0 +1,574 @@
+/*
+ * Copyright 2013 pushbit <pushbit@gmail.com>
+ *
+ * This file is part of Sprockets.
+ *
+ * Sprockets is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Sprockets is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Sprockets.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.sf.sprockets.google;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static net.sf.sprockets.google.Places.Request.NEARBY_SEARCH;
+import static net.sf.sprockets.google.Places.Response.Status.OK;
+import static net.sf.sprockets.google.Places.Response.Status.ZERO_RESULTS;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sf.sprockets.Settings;
+import net.sf.sprockets.Sprockets;
+import net.sf.sprockets.google.Places.Params;
+import net.sf.sprockets.google.Places.Response.Status;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterators;
+
+/**
+ * All of the places in an {@link Places#areaSearch(Params, Places.Field...) area}. The area is
+ * covered with tiles that are each searched with all pages of a nearby search. When a tile has the
+ * maximum number of results that the service will return for one search, it is split into four
+ * smaller tiles which are searched too, until the tiles reach the
+ * {@code google.places.area-search.min-radius} in metres. Only places that are in the area and
+ * haven't already been returned are included.
+ * <p>
+ * The tiles are searched when the iterator is first used, with up to
+ * {@code google.places.area-search.parallelism} searches in progress at the same time. One of
+ * them runs on the iterating thread, so the search completes even when no background threads are
+ * free. Places are returned as soon as their page has been received, so their order is not
+ * defined. When {@link Params#maxResults(int) maxResults} places have been returned, the
+ * iteration ends and no more tiles are searched.
+ * </p>
+ * <p>
+ * The iterator can't throw an IOException. If there is a problem communicating with the Google
+ * Places API service, no more tiles are searched, the iteration ends when the tiles in progress
+ * have finished, and the exception is available from {@link #getException()}. Check
+ * {@link #getStatus()} after the iteration to see if all tiles were successfully searched.
+ * </p>
+ * <p>
+ * Instances can only be iterated once and the iterator is not thread-safe.
+ * </p>
+ *
+ * @since 2.0.0
+ */
+public class AreaSearch implements Iterable<Place> {
+	/** Largest radius that the service accepts. */
+	private static final int MAX_RADIUS = 50000;
+	/** Most places that the service returns for one search, in all pages. */
+	private static final int MAX_PLACES = 60;
+	/** Added to the results when all tiles have been searched. */
+	private static final List<Place> END = new ArrayList<Place>(0);
+
+	/** Search URL without a location. */
+	private final String mUrl;
+	private final int mParallelism;
+	private final int mMinRadius;
+	private final int mFields;
+	private final int mMaxResults;
+	private final double mSouth;
+	private final double mWest;
+	private final double mNorth;
+	/** Greater than 180 if the area crosses the antimeridian. */
+	private final double mEast;
+	/**
+	 * Null if the area is only the bounds. Longitudes are increased by 360 when they are east of
+	 * the antimeridian in an area that crosses it, like {@link #mEast}.
+	 */
+	private final double[] mPolygon;
+	private final Queue<Tile> mTiles = new ConcurrentLinkedQueue<Tile>();
+	/** Number of tiles that have been added and haven't finished. */
+	private final AtomicInteger mPending = new AtomicInteger();
+	/** Number of background threads searching tiles. */
+	private final AtomicInteger mWorkers = new AtomicInteger();
+	private final AtomicInteger mSearches = new AtomicInteger();
+	private final BlockingQueue<List<Place>> mResults = new LinkedBlockingQueue<List<Place>>();
+	/** IDs of places that have been added to the results. */
+	private final ConcurrentMap<String, Boolean> mSeen = new ConcurrentHashMap<String, Boolean>();
+	private final Set<String> mAttribs = new LinkedHashSet<String>();
+	private boolean mIterated;
+	private volatile boolean mStopped;
+	private Status mStatus;
+	private volatile IOException mException;
+
+	/**
+	 * @param url
+	 *            nearby search without a location
+	 * @param bounds
+	 *            south, west, north, and east or null if the polygon is set
+	 * @param polygon
+	 *            latitude and longitude pairs or null if the bounds are set
+	 */
+	AreaSearch(String url, double[] bounds, double[] polygon, int fields, int maxResults) {
+		mUrl = url;
+		mFields = fields;
+		mMaxResults = Math.max(0, maxResults);
+		Settings settings = Sprockets.getSettings();
+		mParallelism = Math.max(1, settings.getAreaSearchParallelism());
+		mMinRadius = Math.max(1, settings.getAreaSearchMinRadius());
+		mPolygon = polygon != null ? shift(polygon.clone(), bounds) : null;
+		double south = Double.POSITIVE_INFINITY;
+		double west = Double.POSITIVE_INFINITY;
+		double north = Double.NEGATIVE_INFINITY;
+		double east = Double.NEGATIVE_INFINITY;
+		if (mPolygon != null) {
+			for (int i = 0; i < mPolygon.length; i += 2) {
+				south = Math.min(south, mPolygon[i]);
+				north = Math.max(north, mPolygon[i]);
+				west = Math.min(west, mPolygon[i + 1]);
+				east = Math.max(east, mPolygon[i + 1]);
+			}
+		}
+		if (bounds != null) {
+			double boundsWest = bounds[1];
+			double boundsEast = bounds[3] < bounds[1] ? bounds[3] + 360.0 : bounds[3];
+			if (mPolygon != null) {
+				if (boundsEast < west) { // east of the antimeridian and the polygon crosses it
+					boundsWest += 360.0;
+					boundsEast += 360.0;
+				}
+				south = Math.max(south, bounds[0]);
+				west = Math.max(west, boundsWest);
+				north = Math.min(north, bounds[2]);
+				east = Math.min(east, boundsEast);
+			} else {
+				south = bounds[0];
+				west = bounds[1];
+				north = bounds[2];
+				east = boundsEast;
+			}
+		}
+		mSouth = Math.max(-90.0, south);
+		mWest = west;
+		mNorth = Math.min(90.0, north);
+		mEast = east;
+	}
+
+	/**
+	 * Increase the longitudes of the vertices that are east of the antimeridian by 360 if the
+	 * polygon crosses it or is east of it in bounds that cross it.
+	 *
+	 * @return the polygon
+	 */
+	private static double[] shift(double[] polygon, double[] bounds) {
+		boolean crosses = false;
+		double east = Double.NEGATIVE_INFINITY;
+		for (int i = 1, j = polygon.length - 1; i < polygon.length; j = i, i += 2) {
+			crosses |= Math.abs(polygon[i] - polygon[j]) > 180.0; // shorter the other way
+			east = Math.max(east, polygon[i]);
+		}
+		boolean inBounds = bounds != null && bounds[3] < bounds[1] && east <= bounds[3];
+		if (crosses || inBounds) {
+			for (int i = 1; i < polygon.length; i += 2) {
+				if (polygon[i] < 0.0 || inBounds) {
+					polygon[i] += 360.0;
+				}
+			}
+		}
+		return polygon;
+	}
+
+	/**
+	 * Iterate over the places, searching the tiles as they are needed.
+	 *
+	 * @throws IllegalStateException
+	 *             if an iterator has already been returned
+	 */
+	@Override
+	public Iterator<Place> iterator() {
+		if (mIterated) {
+			throw new IllegalStateException("search can only be iterated once");
+		}
+		mIterated = true;
+		if (mSouth <= mNorth && mWest <= mEast) {
+			cover(mSouth, mWest, mNorth, mEast);
+		}
+		if (mPending.get() == 0) {
+			mResults.add(END);
+		}
+		startWorkers();
+		return new Results();
+	}
+
+	/**
+	 * Add tiles within the maximum radius that cover the area.
+	 */
+	private void cover(double south, double west, double north, double east) {
+		Tile tile = new Tile(south, west, north, east);
+		if (tile.mRadius <= MAX_RADIUS) {
+			add(tile);
+		} else {
+			split(tile, false);
+		}
+	}
+
+	/**
+	 * Add the four quarters of the tile.
+	 *
+	 * @param search
+	 *            true to add the quarters for searching, false to add tiles that cover them
+	 */
+	private void split(Tile tile, boolean search) {
+		double lat = (tile.mSouth + tile.mNorth) / 2;
+		double lng = (tile.mWest + tile.mEast) / 2;
+		double[][] quarters = { { tile.mSouth, tile.mWest, lat, lng },
+				{ tile.mSouth, lng, lat, tile.mEast }, { lat, tile.mWest, tile.mNorth, lng },
+				{ lat, lng, tile.mNorth, tile.mEast } };
+		for (double[] q : quarters) {
+			if (search) {
+				add(new Tile(q[0], q[1], q[2], q[3]));
+			} else {
+				cover(q[0], q[1], q[2], q[3]);
+			}
+		}
+	}
+
+	/**
+	 * Queue the tile if it overlaps the area.
+	 */
+	private void add(Tile tile) {
+		if (mPolygon == null || tile.overlaps(mPolygon)) {
+			mPending.incrementAndGet();
+			mTiles.add(tile);
+		}
+	}
+
+	/**
+	 * Start background threads to search the queued tiles, up to one less than the parallelism.
+	 */
+	private void startWorkers() {
+		int workers;
+		while (!mStopped && !mTiles.isEmpty() && (workers = mWorkers.get()) < mParallelism - 1) {
+			if (mWorkers.compareAndSet(workers, workers + 1)) {
+				try {
+					Calls.submit(new Callable<Void>() {
+						@Override
+						public Void call() {
+							work();
+							return null;
+						}
+					});
+				} catch (RejectedExecutionException e) {
+					mWorkers.decrementAndGet();
+					return; // the iterating thread will search the tiles
+				}
+			}
+		}
+	}
+
+	/**
+	 * Search tiles until none are left.
+	 */
+	private void work() {
+		try {
+			Tile tile;
+			while ((tile = mTiles.poll()) != null) {
+				search(tile);
+			}
+		} finally {
+			mWorkers.decrementAndGet();
+		}
+		startWorkers(); // in case a tile was added after the queue was found to be empty
+	}
+
+	/**
+	 * Get all pages of places for the tile, add the new places in the area to the results, and
+	 * split the tile if it has the maximum number of places.
+	 */
+	private void search(Tile tile) {
+		try {
+			if (mStopped) {
+				return;
+			}
+			PlaceSearch search = new PlaceSearch(NEARBY_SEARCH, tile.url(mUrl), mFields, 0,
+					false);
+			List<Place> places = new ArrayList<Place>();
+			int count = 0;
+			for (Place place : search) {
+				count++;
+				String id = place.getId() != null ? place.getId() : place.getReference();
+				if (contains(place)
+						&& (id == null || mSeen.putIfAbsent(id, Boolean.TRUE) == null)) {
+					places.add(place);
+				}
+			}
+			mSearches.incrementAndGet();
+			status(search.getStatus(), search.getHtmlAttributions());
+			if (search.getException() != null) {
+				if (mException == null) {
+					mException = search.getException();
+				}
+				mStopped = true;
+			} else if (search.getStatus() != OK && search.getStatus() != ZERO_RESULTS) {
+				mStopped = true;
+			} else if (count >= MAX_PLACES && tile.mRadius > mMinRadius) {
+				split(tile, true);
+				startWorkers();
+			}
+			if (!places.isEmpty()) {
+				mResults.add(places);
+			}
+		} catch (RuntimeException e) {
+			if (mException == null) {
+				mException = new IOException("Area search tile failed", e);
+			}
+			mStopped = true;
+		} finally {
+			if (mPending.decrementAndGet() == 0) {
+				mResults.add(END);
+			}
+		}
+	}
+
+	/**
+	 * Update the overall status with the status of a tile. The first unsuccessful status is kept.
+	 * Otherwise the status is OK if any tile had results.
+	 *
+	 * @param status
+	 *            null if the tile failed with an exception
+	 */
+	private synchronized void status(Status status, List<String> attribs) {
+		if (status != null && (mStatus == null || mStatus == ZERO_RESULTS
+				|| mStatus == OK && status != ZERO_RESULTS)) {
+			mStatus = status;
+		}
+		mAttribs.addAll(attribs);
+	}
+
+	/**
+	 * True if the place's location is in the area or the place doesn't have a location.
+	 */
+	private boolean contains(Place place) {
+		double lat = place.getLatitude();
+		double lng = place.getLongitude();
+		if (lat == Double.NEGATIVE_INFINITY || lng == Double.NEGATIVE_INFINITY) {
+			return true;
+		}
+		if (lng < mWest) {
+			lng += 360.0;
+		}
+		return lat >= mSouth && lat <= mNorth && lng >= mWest && lng <= mEast
+				&& (mPolygon == null || inPolygon(mPolygon, lat, lng));
+	}
+
+	/**
+	 * True if the point is inside the polygon.
+	 */
+	private static boolean inPolygon(double[] polygon, double lat, double lng) {
+		boolean in = false;
+		for (int i = 0, j = polygon.length - 2; i < polygon.length; j = i, i += 2) {
+			double lat1 = polygon[i];
+			double lng1 = polygon[i + 1];
+			double lat2 = polygon[j];
+			double lng2 = polygon[j + 1];
+			if (lng1 > lng != lng2 > lng
+					&& lat < (lat2 - lat1) * (lng - lng1) / (lng2 - lng1) + lat1) {
+				in = !in;
+			}
+		}
+		return in;
+	}
+
+	/**
+	 * Indication of the success or failure of the tile searches. The first unsuccessful status if
+	 * there was one, otherwise OK if any places were found. Null if no tiles have been searched.
+	 */
+	public synchronized Status getStatus() {
+		return mStatus;
+	}
+
+	/**
+	 * Problem that ended the iteration early or null if there wasn't one.
+	 */
+	public IOException getException() {
+		return mException;
+	}
+
+	/**
+	 * Number of tiles that have been searched.
+	 */
+	public int getSearchCount() {
+		return mSearches.get();
+	}
+
+	/**
+	 * Attributions for the places found so far that must be displayed to the user. Empty if
+	 * there aren't any.
+	 */
+	public synchronized List<String> getHtmlAttributions() {
+		return ImmutableList.copyOf(mAttribs);
+	}
+
+	/**
+	 * Places from the tiles as they are received.
+	 */
+	private class Results extends AbstractIterator<Place> {
+		private Iterator<Place> mPlaces = Iterators.emptyIterator();
+		private int mReturned;
+
+		@Override
+		protected Place computeNext() {
+			if (mMaxResults > 0 && mReturned >= mMaxResults) {
+				mStopped = true;
+				return endOfData();
+			}
+			while (!mPlaces.hasNext()) {
+				List<Place> places = receive();
+				if (places == END) {
+					return endOfData();
+				}
+				mPlaces = places.iterator();
+			}
+			mReturned++;
+			return mPlaces.next();
+		}
+
+		/**
+		 * Get the next places that were found, searching a tile on this thread if one is waiting.
+		 */
+		private List<Place> receive() {
+			while (true) {
+				List<Place> places = mResults.poll();
+				if (places != null) {
+					return places;
+				}
+				Tile tile = mTiles.poll();
+				if (tile != null) {
+					search(tile);
+					continue;
+				}
+				try {
+					places = mResults.poll(50L, MILLISECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					mException = new InterruptedIOException("interrupted while searching area");
+					mStopped = true;
+					return END;
+				}
+				if (places != null) {
+					return places;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Rectangle that is searched with a circle around it.
+	 */
+	private static class Tile {
+		private final double mSouth;
+		private final double mWest;
+		private final double mNorth;
+		private final double mEast;
+		/** Metres from the centre to the furthest corner. */
+		private final int mRadius;
+
+		private Tile(double south, double west, double north, double east) {
+			mSouth = south;
+			mWest = west;
+			mNorth = north;
+			mEast = east;
+			double lat = (south + north) / 2;
+			double lng = (west + east) / 2;
+			mRadius = (int) Math.ceil(Math.max(GreatCircle.distance(lat, lng, south, west),
+					GreatCircle.distance(lat, lng, north, west)));
+		}
+
+		/**
+		 * Get the nearby search URL with the location and radius params that cover the tile.
+		 *
+		 * @param search
+		 *            nearby search without a location
+		 */
+		private String url(String search) {
+			double lng = (mWest + mEast) / 2;
+			if (lng > 180.0) {
+				lng -= 360.0;
+			}
+			return UrlBuilder.from(search).param("location").latLng((mSouth + mNorth) / 2, lng)
+					.param("radius").append(Math.max(1, mRadius)).toString();
+		}
+
+		/**
+		 * True if the tile and polygon overlap.
+		 */
+		private boolean overlaps(double[] polygon) {
+			if (inPolygon(polygon, mSouth, mWest) || inPolygon(polygon, mNorth, mEast)
+					|| inPolygon(polygon, mSouth, mEast) || inPolygon(polygon, mNorth, mWest)) {
+				return true;
+			}
+			for (int i = 0, j = polygon.length - 2; i < polygon.length; j = i, i += 2) {
+				double lat = polygon[i];
+				double lng = polygon[i + 1];
+				if (lat >= mSouth && lat <= mNorth && lng >= mWest && lng <= mEast) {
+					return true; // vertex in tile
+				}
+				if (crosses(lat, lng, polygon[j], polygon[j + 1])) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * True if the line segment crosses one of the tile's edges.
+		 */
+		private boolean crosses(double lat1, double lng1, double lat2, double lng2) {
+			return intersect(lat1, lng1, lat2, lng2, mSouth, mWest, mSouth, mEast)
+					|| intersect(lat1, lng1, lat2, lng2, mNorth, mWest, mNorth, mEast)
+					|| intersect(lat1, lng1, lat2, lng2, mSouth, mWest, mNorth, mWest)
+					|| intersect(lat1, lng1, lat2, lng2, mSouth, mEast, mNorth, mEast);
+		}
+
+		/**
+		 * True if the line segments ab and cd intersect.
+		 */
+		private static boolean intersect(double ay, double ax, double by, double bx, double cy,
+				double cx, double dy, double dx) {
+			double d1 = cross(cx, cy, dx, dy, ax, ay);
+			double d2 = cross(cx, cy, dx, dy, bx, by);
+			double d3 = cross(ax, ay, bx, by, cx, cy);
+			double d4 = cross(ax, ay, bx, by, dx, dy);
+			return (d1 > 0 != d2 > 0) && (d3 > 0 != d4 > 0);
+		}
+
+		private static double cross(double ox, double oy, double ax, double ay, double bx,
+				double by) {
+			return (ax - ox) * (by - oy) - (ay - oy) * (bx - ox);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return Objects.toStringHelper(this).add("south", mSouth).add("west", mWest)
+				.add("north", mNorth).add("east", mEast > 180.0 ? mEast - 360.0 : mEast)
+				.add("polygon", mPolygon != null ? mPolygon.length / 2 + " vertices" : null)
+				.add("maxResults", mMaxResults != 0 ? mMaxResults : null)
+				.add("searches", mSearches.get()).add("exception", mException)
+				.omitNullValues().toString();
+	}
+}
@@ -0,0 +1,554 @@
+/*
+ * Copyright 2013 pushbit <pushbit@gmail.com>
+ *
+ * This file is part of Sprockets.
+ *
+ * Sprockets is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Sprockets is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Sprockets.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.sf.sprockets.google;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static net.sf.sprockets.google.Places.Field.MATCHED_SUBSTRINGS;
+import static net.sf.sprockets.google.Places.Field.NAME;
+import static net.sf.sprockets.google.Places.Response.Status.OK;
+import static net.sf.sprockets.google.Places.Response.Status.ZERO_RESULTS;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.sf.sprockets.Settings;
+import net.sf.sprockets.Sprockets;
+import net.sf.sprockets.google.Place.Prediction;
+import net.sf.sprockets.google.Places.Field;
+import net.sf.sprockets.google.Places.Params;
+import net.sf.sprockets.google.Places.Request;
+import net.sf.sprockets.google.Places.Response;
+import net.sf.sprockets.lang.Substring;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+
+/**
+ * Keeps the responses from {@link Places#autocomplete(Params, Field...) Places.autocomplete} and
+ * {@link Places#queryAutocomplete(Params, Field...) queryAutocomplete} so that inputs that are
+ * typed again, often by different users, don't need to be sent to the Google Places API service.
+ * The cache is disabled by default and can be enabled with the
+ * {@code google.places.autocomplete-cache} {@link Sprockets library settings}. The cache is
+ * replaced with an empty one when those settings are changed and it is cleared when the
+ * {@code google.base-url} or {@code google.api-key} setting is changed.
+ * <p>
+ * Inputs are compared without differences in case and whitespace. Locations are compared by the
+ * {@link GeoHash geohash} grid cell that they are in, with {@code location-precision}
+ * characters. The default precision of 5 has cells of about 4.9 x 4.9 km at the equator. The
+ * radius, types, countries, and language must be the same. Requests with an
+ * {@link Params#offset(int) offset} are not cached.
+ * </p>
+ * <p>
+ * The inputs are stored in a prefix tree. When an input isn't cached, but a shorter input that it
+ * starts with is, and the service returned fewer than the maximum 5 predictions for the shorter
+ * input, those predictions are assumed to be all of the ones that the service knows of for it.
+ * Then the predictions for the longer input are found by keeping those where each word of the
+ * input starts a word in the description. The matched substrings are updated for the longer
+ * input.
+ * </p>
+ * <p>
+ * This is a heuristic and a prediction found this way can differ from the service's answer for
+ * the longer input. The service also matches misspellings, abbreviations, and parts of an address
+ * that aren't in the description, so it can return predictions for the longer input that weren't
+ * returned for the shorter one, or drop some that were. Its order may also change as the input
+ * gets longer, while the filtered predictions keep the order of the shorter input. The
+ * {@code prefix-filter} setting can be disabled if the service's predictions must always be used.
+ * </p>
+ *
+ * @since 2.0.0
+ */
+public class AutocompleteCache {
+	/** Most predictions that the service returns. */
+	private static final int MAX_RESULTS = 5;
+	/** Between the scope and input of a key. */
+	private static final char SEPARATOR = '\u0000';
+	/** Null if the cache is disabled. */
+	private static volatile Cache<String, Entry> sCache;
+	/** Keys of the cached entries. Guarded by itself. */
+	private static final Node sRoot = new Node();
+	private static volatile int sPrecision;
+	private static volatile boolean sPrefixFilter;
+	/** Nanoseconds, 0 for no expiry. */
+	private static volatile long sTtl;
+	private static final AtomicLong sHits = new AtomicLong();
+	private static final AtomicLong sPrefixHits = new AtomicLong();
+	private static final AtomicLong sMisses = new AtomicLong();
+	/** Evictions from caches that have been replaced. */
+	private static final AtomicLong sEvictions = new AtomicLong();
+	static {
+		replace(Sprockets.getSettings());
+		Sprockets.addListener(new Sprockets.Listener() {
+			@Override
+			public void onSettingsChanged(Settings old, Settings settings) {
+				if (settings.isAutocompleteCacheChanged(old)) {
+					replace(settings);
+				} else if (!settings.getBaseUrl().equals(old.getBaseUrl())
+						|| !settings.getApiKey().equals(old.getApiKey())) {
+					clear(); // responses may be different from another server or account
+				}
+			}
+		});
+	}
+
+	private AutocompleteCache() {
+	}
+
+	/**
+	 * Replace the cache with an empty one that is created according to the settings. The entries
+	 * of the old cache are removed from the prefix tree.
+	 */
+	private static synchronized void replace(Settings settings) {
+		Cache<String, Entry> old = sCache;
+		int entries = settings.getAutocompleteCacheMaxEntries();
+		long ttl = settings.getAutocompleteCacheTtl();
+		sPrecision = settings.getAutocompleteCachePrecision(); // geohash length keeps keys apart
+		sPrefixFilter = settings.isAutocompleteCachePrefixFilter();
+		sTtl = ttl > 0 ? SECONDS.toNanos(ttl) : 0L;
+		if (entries > 0) {
+			CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().recordStats()
+					.maximumSize(entries);
+			if (ttl > 0) {
+				builder.expireAfterWrite(ttl, SECONDS);
+			}
+			sCache = builder.removalListener(new RemovalListener<String, Entry>() {
+				@Override
+				public void onRemoval(RemovalNotification<String, Entry> notification) {
+					remove(notification.getKey(), notification.getValue());
+				}
+			}).build();
+		} else {
+			sCache = null;
+		}
+		if (old != null) {
+			sEvictions.addAndGet(old.stats().evictionCount());
+			old.invalidateAll();
+		}
+	}
+
+	/**
+	 * Get the cache key for the request.
+	 *
+	 * @return null if the cache is disabled or the request can't be cached
+	 */
+	static String key(Request type, Params params) {
+		if (sCache == null || params.mOffset > 0) {
+			return null;
+		}
+		String input = normalize(params.mQuery);
+		if (input.isEmpty()) {
+			return null;
+		}
+		StringBuilder s = new StringBuilder(64 + input.length());
+		s.append(type.ordinal());
+		if (params.mLat > Double.NEGATIVE_INFINITY && params.mLong > Double.NEGATIVE_INFINITY) {
+			s.append('|').append(GeoHash.encode(params.mLat, params.mLong, sPrecision));
+			s.append('|').append(params.mRadius > 0 ? params.mRadius : 50000);
+		} else {
+			s.append("||");
+		}
+		s.append('|');
+		if (params.mTypes != null) {
+			String[] types = params.mTypes.clone();
+			Arrays.sort(types);
+			for (String t : types) {
+				s.append(t).append(',');
+			}
+		}
+		s.append('|');
+		if (params.mCountries != null && params.mCountries.length > 0) {
+			s.append(Strings.nullToEmpty(params.mCountries[0]).toLowerCase(Locale.ENGLISH));
+		}
+		s.append('|').append(!Strings.isNullOrEmpty(params.mLanguage) ? params.mLanguage
+				: Locale.getDefault());
+		return s.append(SEPARATOR).append(input).toString();
+	}
+
+	/**
+	 * Get the input without differences in case and whitespace.
+	 */
+	private static String normalize(String input) {
+		return input != null ? CharMatcher.WHITESPACE.trimAndCollapseFrom(input, ' ').toLowerCase(
+				Locale.ENGLISH) : "";
+	}
+
+	/**
+	 * Get the cached response for the request, or derive it from the response for a shorter input.
+	 *
+	 * @param key
+	 *            null if the cache is disabled
+	 * @param fields
+	 *            requested or 0 for all fields
+	 * @return null if the response isn't cached
+	 */
+	static Response<List<Prediction>> get(String key, int fields, int maxResults) {
+		Cache<String, Entry> cache = sCache;
+		if (key == null || cache == null) {
+			return null;
+		}
+		boolean prefixFilter = sPrefixFilter;
+		Entry exact = null;
+		Entry prefix = null;
+		long now = System.nanoTime();
+		synchronized (sRoot) {
+			Node node = sRoot;
+			int input = key.indexOf(SEPARATOR) + 1;
+			for (int i = 0, length = key.length(); i < length && node != null; i++) {
+				node = node.child(key.charAt(i));
+				if (node != null && node.mEntry != null && i >= input
+						&& !node.mEntry.isExpired(now)) {
+					if (i == length - 1) {
+						exact = node.mEntry;
+					} else if (prefixFilter && node.mEntry.isComplete()) {
+						prefix = node.mEntry;
+					}
+				}
+			}
+		}
+		if (exact != null && exact.has(fields, maxResults)) {
+			cache.getIfPresent(key); // recently used
+			sHits.incrementAndGet();
+			return exact.mResponse.mResult == null || maxResults <= 0
+					|| exact.mResponse.mResult.size() <= maxResults ? exact.mResponse
+					: response(exact.mResponse.mResult.subList(0, maxResults));
+		}
+		if (prefix != null && prefix.has(fields == 0 ? 0 : fields | NAME.mMask, 0)) {
+			cache.getIfPresent(prefix.mKey);
+			sPrefixHits.incrementAndGet();
+			return filter(prefix, key.substring(key.indexOf(SEPARATOR) + 1), fields, maxResults);
+		}
+		sMisses.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * Get the predictions from the entry of a shorter input that match the longer input.
+	 */
+	private static Response<List<Prediction>> filter(Entry entry, String input, int fields,
+			int maxResults) {
+		List<Prediction> predictions = new ArrayList<Prediction>(MAX_RESULTS);
+		List<String> words = words(input);
+		if (entry.mResponse.mResult != null) {
+			for (Prediction prediction : entry.mResponse.mResult) {
+				List<Substring> matches = matches(prediction.mName, words);
+				if (matches != null) {
+					predictions.add(new Prediction(prediction, fields == 0
+							|| MATCHED_SUBSTRINGS.in(fields) ? matches : null));
+					if (predictions.size() == maxResults) {
+						break;
+					}
+				}
+			}
+		}
+		return response(predictions);
+	}
+
+	/**
+	 * Get the words in the text, converted to lower case.
+	 */
+	private static List<String> words(String text) {
+		List<String> words = new ArrayList<String>();
+		for (int i = 0, length = text.length(); i < length;) {
+			while (i < length && !Character.isLetterOrDigit(text.charAt(i))) {
+				i++;
+			}
+			int start = i;
+			while (i < length && Character.isLetterOrDigit(text.charAt(i))) {
+				i++;
+			}
+			if (i > start) {
+				words.add(text.substring(start, i).toLowerCase(Locale.ENGLISH));
+			}
+		}
+		return words;
+	}
+
+	/**
+	 * Find the start of a different description word for each input word.
+	 *
+	 * @return null if an input word doesn't start any of the remaining description words
+	 */
+	private static List<Substring> matches(String description, List<String> words) {
+		if (description == null) {
+			return null;
+		}
+		String lower = description.toLowerCase(Locale.ENGLISH);
+		List<Substring> matches = new ArrayList<Substring>(words.size());
+		boolean[] used = new boolean[lower.length()];
+		for (String word : words) {
+			int found = -1;
+			for (int i = lower.indexOf(word); i >= 0; i = lower.indexOf(word, i + 1)) {
+				if (!used[i] && (i == 0 || !Character.isLetterOrDigit(lower.charAt(i - 1)))) {
+					found = i;
+					break;
+				}
+			}
+			if (found < 0) {
+				return null;
+			}
+			used[found] = true;
+			matches.add(new Substring(found, word.length(), description.substring(found, found
+					+ word.length()), description));
+		}
+		return matches;
+	}
+
+	/**
+	 * Get a successful response with the predictions.
+	 */
+	private static Response<List<Prediction>> response(List<Prediction> predictions) {
+		Response<List<Prediction>> resp = new Response<List<Prediction>>();
+		resp.mStatus = predictions.isEmpty() ? ZERO_RESULTS : OK;
+		resp.mResult = predictions;
+		return resp;
+	}
+
+	/**
+	 * Cache the response if it was successful.
+	 *
+	 * @param key
+	 *            null if the cache is disabled
+	 * @param fields
+	 *            that were requested or 0 for all fields
+	 */
+	static void put(String key, int fields, int maxResults, Response<List<Prediction>> response) {
+		Cache<String, Entry> cache = sCache;
+		if (key != null && cache != null
+				&& (response.getStatus() == OK || response.getStatus() == ZERO_RESULTS)) {
+			Entry entry = new Entry(key, fields, maxResults, response);
+			synchronized (sRoot) {
+				Node node = sRoot;
+				for (int i = 0, length = key.length(); i < length; i++) {
+					node = node.add(key.charAt(i));
+				}
+				node.mEntry = entry;
+				cache.put(key, entry); // replaced and evicted entries are removed from the tree
+			}
+		}
+	}
+
+	/**
+	 * Remove the entry from the prefix tree if it is still there, along with any nodes that no
+	 * longer lead to an entry.
+	 */
+	private static void remove(String key, Entry entry) {
+		synchronized (sRoot) {
+			Node[] path = new Node[key.length() + 1];
+			path[0] = sRoot;
+			for (int i = 0, length = key.length(); i < length; i++) {
+				path[i + 1] = path[i].child(key.charAt(i));
+				if (path[i + 1] == null) {
+					return;
+				}
+			}
+			Node node = path[key.length()];
+			if (node.mEntry != entry) {
+				return; // replaced
+			}
+			node.mEntry = null;
+			for (int i = key.length(); i > 0 && path[i].isEmpty(); i--) {
+				path[i - 1].remove(key.charAt(i - 1));
+			}
+		}
+	}
+
+	/**
+	 * Remove all responses from the cache.
+	 */
+	public static void clear() {
+		Cache<String, Entry> cache = sCache;
+		if (cache != null) {
+			cache.invalidateAll();
+		}
+	}
+
+	/**
+	 * Number of responses in the cache.
+	 */
+	public static long size() {
+		Cache<String, Entry> cache = sCache;
+		return cache != null ? cache.size() : 0L;
+	}
+
+	/**
+	 * Get the number of cache hits, misses, and evictions. Responses that were found from a shorter
+	 * input are counted as hits. A response that is cached without some of the requested fields or
+	 * with fewer than the requested number of results is counted as a miss.
+	 */
+	public static CacheStats getStats() {
+		Cache<String, Entry> cache = sCache;
+		long evictions = sEvictions.get() + (cache != null ? cache.stats().evictionCount() : 0L);
+		return new CacheStats(sHits.get() + sPrefixHits.get(), sMisses.get(), 0L, 0L, 0L,
+				evictions);
+	}
+
+	/**
+	 * Number of nodes in the prefix tree, not including the root.
+	 */
+	static int getNodeCount() {
+		synchronized (sRoot) {
+			return sRoot.count() - 1;
+		}
+	}
+
+	/**
+	 * Number of cache hits that were found from the response for a shorter input.
+	 */
+	public static long getPrefixHits() {
+		return sPrefixHits.get();
+	}
+
+	/**
+	 * Cached response and the request that it was received for.
+	 */
+	private static class Entry {
+		private final String mKey;
+		private final int mFields;
+		private final int mMaxResults;
+		private final Response<List<Prediction>> mResponse;
+		/** {@link System#nanoTime()} when the entry expires. Unused if there is no TTL. */
+		private final long mExpires;
+		private final boolean mExpiring;
+
+		private Entry(String key, int fields, int maxResults, Response<List<Prediction>> response) {
+			mKey = key;
+			mFields = fields;
+			mMaxResults = Math.max(0, maxResults);
+			mResponse = response;
+			long ttl = sTtl;
+			mExpires = System.nanoTime() + ttl;
+			mExpiring = ttl > 0;
+		}
+
+		private boolean isExpired(long now) {
+			return mExpiring && now - mExpires >= 0;
+		}
+
+		/**
+		 * True if the service returned all of the predictions that it has for the input.
+		 */
+		private boolean isComplete() {
+			int size = mResponse.mResult != null ? mResponse.mResult.size() : 0;
+			return size < MAX_RESULTS && (mMaxResults == 0 || size < mMaxResults);
+		}
+
+		/**
+		 * True if the response has the fields and enough results for the request.
+		 *
+		 * @param fields
+		 *            requested or 0 for all fields
+		 */
+		private boolean has(int fields, int maxResults) {
+			boolean hasFields = mFields == 0 || fields != 0 && (fields & ~mFields) == 0;
+			boolean hasResults = mMaxResults == 0 || maxResults > 0 && maxResults <= mMaxResults
+					|| isComplete();
+			return hasFields && hasResults;
+		}
+	}
+
+	/**
+	 * Character in a key, with the characters that follow it in other keys.
+	 */
+	private static class Node {
+		private static final char[] NO_CHARS = {};
+		private static final Node[] NO_NODES = {};
+
+		/** Sorted. */
+		private char[] mChars = NO_CHARS;
+		private Node[] mChildren = NO_NODES;
+		/** Null if a key doesn't end here. */
+		private Entry mEntry;
+
+		/**
+		 * Get the node that follows this one with the character.
+		 *
+		 * @return null if there isn't one
+		 */
+		private Node child(char c) {
+			int i = Arrays.binarySearch(mChars, c);
+			return i >= 0 ? mChildren[i] : null;
+		}
+
+		/**
+		 * Get the node that follows this one with the character, adding it if it doesn't exist.
+		 */
+		private Node add(char c) {
+			int i = Arrays.binarySearch(mChars, c);
+			if (i >= 0) {
+				return mChildren[i];
+			}
+			i = -(i + 1);
+			int length = mChars.length;
+			char[] chars = new char[length + 1];
+			Node[] children = new Node[length + 1];
+			System.arraycopy(mChars, 0, chars, 0, i);
+			System.arraycopy(mChildren, 0, children, 0, i);
+			System.arraycopy(mChars, i, chars, i + 1, length - i);
+			System.arraycopy(mChildren, i, children, i + 1, length - i);
+			Node child = new Node();
+			chars[i] = c;
+			children[i] = child;
+			mChars = chars;
+			mChildren = children;
+			return child;
+		}
+
+		/**
+		 * Remove the node that follows this one with the character.
+		 */
+		private void remove(char c) {
+			int i = Arrays.binarySearch(mChars, c);
+			if (i >= 0) {
+				int length = mChars.length - 1;
+				char[] chars = length > 0 ? new char[length] : NO_CHARS;
+				Node[] children = length > 0 ? new Node[length] : NO_NODES;
+				System.arraycopy(mChars, 0, chars, 0, i);
+				System.arraycopy(mChildren, 0, children, 0, i);
+				System.arraycopy(mChars, i + 1, chars, i, length - i);
+				System.arraycopy(mChildren, i + 1, children, i, length - i);
+				mChars = chars;
+				mChildren = children;
+			}
+		}
+
+		/**
+		 * Number of nodes from this one, including it.
+		 */
+		private int count() {
+			int count = 1;
+			for (Node child : mChildren) {
+				count += child.count();
+			}
+			return count;
+		}
+
+		/**
+		 * True if a key doesn't end here or continue from here.
+		 */
+		private boolean isEmpty() {
+			return mEntry == null && mChars.length == 0;
+		}
+	}
+}
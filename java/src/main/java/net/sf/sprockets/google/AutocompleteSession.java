@@ -0,0 +1,230 @@
+/*
+ * Copyright 2013 pushbit <pushbit@gmail.com>
+ *
+ * This file is part of Sprockets.
+ *
+ * Sprockets is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Sprockets is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Sprockets.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.sf.sprockets.google;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static net.sf.sprockets.google.Places.Request.AUTOCOMPLETE;
+import static net.sf.sprockets.google.Places.Request.QUERY_AUTOCOMPLETE;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.sf.sprockets.Sprockets;
+import net.sf.sprockets.google.Place.Prediction;
+import net.sf.sprockets.google.Places.Field;
+import net.sf.sprockets.google.Places.Params;
+import net.sf.sprockets.google.Places.Request;
+import net.sf.sprockets.google.Places.Response;
+
+import com.google.common.base.Objects;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Sends the autocomplete requests for one text field as the user types, where only the
+ * predictions for the latest input are wanted. Each request waits for a short delay before it is
+ * sent and is cancelled if another request is made in the meantime, so that a burst of keystrokes
+ * only sends the last input. A request that has already been sent when another request is made is
+ * also cancelled and its response is discarded, though it is still added to the
+ * {@link AutocompleteCache}. Cached responses are returned immediately without a delay.
+ * <p>
+ * The delay is {@code google.places.autocomplete-session.delay} milliseconds by default. For
+ * example:
+ * </p>
+ *
+ * <pre>{@code
+ * AutocompleteSession session = new AutocompleteSession();
+ * Params params = new Params().location(51.500702, -0.124576);
+ * ...
+ * // on each keystroke
+ * Futures.addCallback(session.autocomplete(params.query(text)), callback);
+ * }</pre>
+ * <p>
+ * Instances are thread-safe.
+ * </p>
+ *
+ * @since 2.0.0
+ */
+public class AutocompleteSession {
+	private static ScheduledExecutorService sScheduler;
+
+	private final long mDelay;
+	/** Null if there hasn't been a request yet. */
+	private SettableFuture<Response<List<Prediction>>> mCurrent;
+	private final AtomicLong mRequests = new AtomicLong();
+	private final AtomicLong mSent = new AtomicLong();
+
+	/**
+	 * Wait for the delay in the library settings before sending each request.
+	 */
+	public AutocompleteSession() {
+		this(Sprockets.getConfig().getLong("google.places.autocomplete-session.delay", 150L),
+				MILLISECONDS);
+	}
+
+	/**
+	 * Wait for the delay before sending each request. 0 sends requests immediately, while still
+	 * cancelling requests that are superseded.
+	 */
+	public AutocompleteSession(long delay, TimeUnit unit) {
+		mDelay = Math.max(0L, unit.toNanos(delay));
+	}
+
+	/**
+	 * Get predictions for the input, after the delay and unless another request is made first.
+	 * See {@link Places#autocomplete(Params, Field...) Places.autocomplete} for the available
+	 * params and fields. The params can be changed for the next request when this method returns.
+	 *
+	 * @return cancelled if another request is made before this one has finished
+	 */
+	public ListenableFuture<Response<List<Prediction>>> autocomplete(Params params,
+			Field... fields) {
+		return request(AUTOCOMPLETE, params, Field.bits(fields));
+	}
+
+	/**
+	 * Get suggested queries for the input, after the delay and unless another request is made
+	 * first. See {@link Places#queryAutocomplete(Params, Field...) Places.queryAutocomplete} for
+	 * the available params and fields. The params can be changed for the next request when this
+	 * method returns.
+	 *
+	 * @return cancelled if another request is made before this one has finished
+	 */
+	public ListenableFuture<Response<List<Prediction>>> queryAutocomplete(Params params,
+			Field... fields) {
+		return request(QUERY_AUTOCOMPLETE, params, Field.bits(fields));
+	}
+
+	/**
+	 * Cancel the current request, for example when the text field loses focus.
+	 */
+	public synchronized void cancel() {
+		if (mCurrent != null) {
+			mCurrent.cancel(false);
+			mCurrent = null;
+		}
+	}
+
+	/**
+	 * Replace the current request with a new one.
+	 */
+	private synchronized ListenableFuture<Response<List<Prediction>>> request(Request type,
+			Params params, final int fields) {
+		cancel();
+		mRequests.incrementAndGet();
+		final String key = AutocompleteCache.key(type, params);
+		final int maxResults = params.mMaxResults;
+		Response<List<Prediction>> cached = AutocompleteCache.get(key, fields, maxResults);
+		if (cached != null) {
+			return Futures.immediateFuture(cached);
+		}
+		final String url = params.format(type);
+		final SettableFuture<Response<List<Prediction>>> future = SettableFuture.create();
+		mCurrent = future;
+		Runnable send = new Runnable() {
+			@Override
+			public void run() {
+				send(future, url, key, fields, maxResults);
+			}
+		};
+		if (mDelay > 0) {
+			try {
+				scheduler().schedule(send, mDelay, TimeUnit.NANOSECONDS);
+			} catch (RejectedExecutionException e) {
+				future.setException(e);
+			}
+		} else {
+			send.run();
+		}
+		return future;
+	}
+
+	/**
+	 * Send the request in the background if it hasn't been cancelled.
+	 */
+	private void send(final SettableFuture<Response<List<Prediction>>> future, final String url,
+			final String key, final int fields, final int maxResults) {
+		if (future.isCancelled()) {
+			return;
+		}
+		mSent.incrementAndGet();
+		try {
+			Futures.addCallback(Calls.submit(new Callable<Response<List<Prediction>>>() {
+				@Override
+				public Response<List<Prediction>> call() throws IOException {
+					return Places.predictions(url, key, fields, maxResults);
+				}
+			}), new FutureCallback<Response<List<Prediction>>>() {
+				@Override
+				public void onSuccess(Response<List<Prediction>> result) {
+					future.set(result); // ignored if cancelled
+				}
+
+				@Override
+				public void onFailure(Throwable t) {
+					future.setException(t);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			future.setException(e);
+		}
+	}
+
+	/**
+	 * Get the thread that waits for the delays to pass.
+	 */
+	private static synchronized ScheduledExecutorService scheduler() {
+		if (sScheduler == null) {
+			sScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+					.setNameFormat("sprockets-autocomplete-%d").setDaemon(true).build());
+		}
+		return sScheduler;
+	}
+
+	/**
+	 * Number of requests that have been made in this session.
+	 */
+	public long getRequestCount() {
+		return mRequests.get();
+	}
+
+	/**
+	 * Number of requests that were sent to the {@link Places} service, which is fewer than the
+	 * {@link #getRequestCount() requests made} when they were cached or superseded during the
+	 * delay.
+	 */
+	public long getSentCount() {
+		return mSent.get();
+	}
+
+	@Override
+	public String toString() {
+		return Objects.toStringHelper(this).add("delay", MILLISECONDS.convert(mDelay,
+				TimeUnit.NANOSECONDS) + "ms").add("requests", mRequests.get())
+				.add("sent", mSent.get()).toString();
+	}
+}
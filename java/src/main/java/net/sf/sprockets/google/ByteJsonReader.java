@@ -0,0 +1,770 @@
+/*
+ * Copyright 2013 pushbit <pushbit@gmail.com>
+ *
+ * This file is part of Sprockets.
+ *
+ * Sprockets is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Sprockets is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Sprockets.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.sf.sprockets.google;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sf.sprockets.Sprockets;
+
+import com.google.common.base.Charsets;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+/**
+ * Reads JSON directly from UTF-8 bytes instead of decoding them to chars first. Names can be
+ * {@link #nextName(EnumLookup) matched} against enum constants without creating Strings, and
+ * numbers without exponents are parsed without creating Strings. Skipped values are not decoded.
+ * The byte buffers are pooled and returned to the pool when the reader is closed.
+ * <p>
+ * Only reads strict JSON, such as that returned by the Google APIs. The lenient setting is
+ * ignored.
+ * </p>
+ */
+final class ByteJsonReader extends JsonReader {
+	/** Passed to the superclass, which is never used to read. */
+	private static final Reader NO_READER = new StringReader("");
+	private static final int BUFFER_SIZE = 8192;
+	private static final byte[] NO_BYTES = new byte[0];
+	private static final int MAX_POOLED = 16;
+	private static final Queue<byte[]> sBuffers = new ConcurrentLinkedQueue<byte[]>();
+	private static final AtomicInteger sPooled = new AtomicInteger();
+	/** Powers of ten that can be represented exactly as doubles. */
+	private static final double[] POW10 = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9,
+			1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+	/** Largest integer up to which all integers can be represented exactly as doubles. */
+	private static final long MAX_EXACT = 1L << 53;
+
+	/* tokens that have been peeked */
+	private static final int PEEKED_NONE = 0;
+	private static final int PEEKED_BEGIN_OBJECT = 1;
+	private static final int PEEKED_END_OBJECT = 2;
+	private static final int PEEKED_BEGIN_ARRAY = 3;
+	private static final int PEEKED_END_ARRAY = 4;
+	private static final int PEEKED_NAME = 5;
+	private static final int PEEKED_STRING = 6;
+	private static final int PEEKED_NUMBER = 7;
+	private static final int PEEKED_TRUE = 8;
+	private static final int PEEKED_FALSE = 9;
+	private static final int PEEKED_NULL = 10;
+	private static final int PEEKED_END_DOCUMENT = 11;
+
+	/* nesting scopes */
+	private static final int EMPTY_ARRAY = 1;
+	private static final int NONEMPTY_ARRAY = 2;
+	private static final int EMPTY_OBJECT = 3;
+	private static final int DANGLING_NAME = 4;
+	private static final int NONEMPTY_OBJECT = 5;
+	private static final int EMPTY_DOCUMENT = 6;
+	private static final int NONEMPTY_DOCUMENT = 7;
+
+	/** Null if reading an array. */
+	private final InputStream mIn;
+	/** Null after the reader is closed. */
+	private byte[] mBuf;
+	private int mPos;
+	private int mLimit;
+	private int[] mStack = new int[32];
+	private int mDepth;
+	private int mPeeked;
+	/**
+	 * Bytes of the array that {@link #nextRawArray(int)} is skipping, which were moved out of the
+	 * buffer, or null if not skipping an array.
+	 */
+	private byte[] mRaw;
+	private int mRawCount;
+	/** Position in the buffer of the first byte of the array that isn't in {@link #mRaw}. */
+	private int mRawStart;
+
+	/**
+	 * Get a reader for the UTF-8 JSON. If the {@code google.byte-parser} library setting is true,
+	 * the reader is a ByteJsonReader. Otherwise it is a standard JsonReader.
+	 */
+	static JsonReader reader(InputStream in) {
+		return Sprockets.getSettings().isByteParser() ? new ByteJsonReader(in) : new JsonReader(
+				new InputStreamReader(in, Charsets.UTF_8));
+	}
+
+	ByteJsonReader(InputStream in) {
+		super(NO_READER);
+		mIn = in;
+		byte[] buf = sBuffers.poll();
+		if (buf != null) {
+			sPooled.decrementAndGet();
+		} else {
+			buf = new byte[BUFFER_SIZE];
+		}
+		mBuf = buf;
+		mStack[mDepth++] = EMPTY_DOCUMENT;
+	}
+
+	/**
+	 * Read the JSON in the array, such as one returned by {@link #nextRawArray(int)}. The array is
+	 * used as the buffer, so it must not be changed while it is being read.
+	 */
+	ByteJsonReader(byte[] json) {
+		super(NO_READER);
+		mIn = null;
+		mBuf = json;
+		mLimit = json.length;
+		mStack[mDepth++] = EMPTY_DOCUMENT;
+	}
+
+	@Override
+	public void beginArray() throws IOException {
+		expect(PEEKED_BEGIN_ARRAY, JsonToken.BEGIN_ARRAY);
+		push(EMPTY_ARRAY);
+	}
+
+	@Override
+	public void endArray() throws IOException {
+		expect(PEEKED_END_ARRAY, JsonToken.END_ARRAY);
+		mDepth--;
+	}
+
+	@Override
+	public void beginObject() throws IOException {
+		expect(PEEKED_BEGIN_OBJECT, JsonToken.BEGIN_OBJECT);
+		push(EMPTY_OBJECT);
+	}
+
+	@Override
+	public void endObject() throws IOException {
+		expect(PEEKED_END_OBJECT, JsonToken.END_OBJECT);
+		mDepth--;
+	}
+
+	@Override
+	public boolean hasNext() throws IOException {
+		int p = peeked();
+		return p != PEEKED_END_OBJECT && p != PEEKED_END_ARRAY && p != PEEKED_END_DOCUMENT;
+	}
+
+	@Override
+	public JsonToken peek() throws IOException {
+		switch (peeked()) {
+		case PEEKED_BEGIN_OBJECT:
+			return JsonToken.BEGIN_OBJECT;
+		case PEEKED_END_OBJECT:
+			return JsonToken.END_OBJECT;
+		case PEEKED_BEGIN_ARRAY:
+			return JsonToken.BEGIN_ARRAY;
+		case PEEKED_END_ARRAY:
+			return JsonToken.END_ARRAY;
+		case PEEKED_NAME:
+			return JsonToken.NAME;
+		case PEEKED_STRING:
+			return JsonToken.STRING;
+		case PEEKED_NUMBER:
+			return JsonToken.NUMBER;
+		case PEEKED_TRUE:
+		case PEEKED_FALSE:
+			return JsonToken.BOOLEAN;
+		case PEEKED_NULL:
+			return JsonToken.NULL;
+		default:
+			return JsonToken.END_DOCUMENT;
+		}
+	}
+
+	@Override
+	public String nextName() throws IOException {
+		expect(PEEKED_NAME, JsonToken.NAME);
+		return readString();
+	}
+
+	/**
+	 * Get the enum constant for the next name without creating a String, unless the name contains
+	 * escaped or non-ASCII characters or is unknown and logged.
+	 */
+	<E extends Enum<E>> E nextName(EnumLookup<E> lookup) throws IOException {
+		expect(PEEKED_NAME, JsonToken.NAME);
+		int end = findQuote();
+		if (end < 0) {
+			return lookup.get(readString());
+		}
+		E constant = lookup.get(mBuf, mPos, end - mPos);
+		mPos = end + 1;
+		return constant;
+	}
+
+	@Override
+	public String nextString() throws IOException {
+		int p = peeked();
+		if (p == PEEKED_STRING) {
+			mPeeked = PEEKED_NONE;
+			return readString();
+		} else if (p == PEEKED_NUMBER) {
+			mPeeked = PEEKED_NONE;
+			return readNumber();
+		}
+		throw new IllegalStateException("Expected a string but was " + peek());
+	}
+
+	@Override
+	public boolean nextBoolean() throws IOException {
+		int p = peeked();
+		if (p == PEEKED_TRUE || p == PEEKED_FALSE) {
+			mPeeked = PEEKED_NONE;
+			return p == PEEKED_TRUE;
+		}
+		throw new IllegalStateException("Expected a boolean but was " + peek());
+	}
+
+	@Override
+	public void nextNull() throws IOException {
+		expect(PEEKED_NULL, JsonToken.NULL);
+	}
+
+	@Override
+	public double nextDouble() throws IOException {
+		int p = peeked();
+		if (p == PEEKED_NUMBER) {
+			mPeeked = PEEKED_NONE;
+			double value = readSimpleDouble();
+			return !Double.isNaN(value) ? value : Double.parseDouble(readNumber());
+		} else if (p == PEEKED_STRING) {
+			mPeeked = PEEKED_NONE;
+			return Double.parseDouble(readString());
+		}
+		throw new IllegalStateException("Expected a double but was " + peek());
+	}
+
+	@Override
+	public long nextLong() throws IOException {
+		int p = peeked();
+		String number;
+		if (p == PEEKED_NUMBER) {
+			mPeeked = PEEKED_NONE;
+			long value = readSimpleLong();
+			if (value != Long.MIN_VALUE) {
+				return value;
+			}
+			number = readNumber();
+		} else if (p == PEEKED_STRING) {
+			mPeeked = PEEKED_NONE;
+			number = readString();
+		} else {
+			throw new IllegalStateException("Expected a long but was " + peek());
+		}
+		try {
+			return Long.parseLong(number);
+		} catch (NumberFormatException e) {
+			double value = Double.parseDouble(number);
+			long result = (long) value;
+			if (result != value) {
+				throw new NumberFormatException("Expected a long but was " + number);
+			}
+			return result;
+		}
+	}
+
+	@Override
+	public int nextInt() throws IOException {
+		long value = nextLong();
+		if ((int) value != value) {
+			throw new NumberFormatException("Expected an int but was " + value);
+		}
+		return (int) value;
+	}
+
+	@Override
+	public void skipValue() throws IOException {
+		int count = 0;
+		do {
+			int p = peeked();
+			mPeeked = PEEKED_NONE;
+			switch (p) {
+			case PEEKED_BEGIN_ARRAY:
+				push(EMPTY_ARRAY);
+				count++;
+				break;
+			case PEEKED_BEGIN_OBJECT:
+				push(EMPTY_OBJECT);
+				count++;
+				break;
+			case PEEKED_END_ARRAY:
+			case PEEKED_END_OBJECT:
+				mDepth--;
+				count--;
+				break;
+			case PEEKED_NAME:
+			case PEEKED_STRING:
+				skipString();
+				break;
+			case PEEKED_NUMBER:
+				skipNumber();
+				break;
+			case PEEKED_END_DOCUMENT:
+				throw new EOFException("End of input");
+			default:
+				break; // literals are consumed when peeked
+			}
+		} while (count != 0);
+	}
+
+	/**
+	 * Skip the next array and get its JSON without decoding it, so that it can be read later with
+	 * a new reader.
+	 *
+	 * @param maxElements
+	 *            maximum number of elements to keep or 0 to keep all of them
+	 */
+	byte[] nextRawArray(int maxElements) throws IOException {
+		beginArray();
+		mRaw = NO_BYTES;
+		mRawCount = 0;
+		mRawStart = mPos - 1; // opening bracket
+		int kept = 1; // bytes up to the end of the last element to keep
+		byte[] raw;
+		try {
+			for (int i = 0; hasNext() && (maxElements <= 0 || i < maxElements); i++) {
+				skipValue();
+				kept = mRawCount + mPos - mRawStart;
+			}
+			/* without any bytes that were peeked after the last element */
+			raw = new byte[kept + 1];
+			int moved = Math.min(mRawCount, kept);
+			System.arraycopy(mRaw, 0, raw, 0, moved);
+			System.arraycopy(mBuf, mRawStart, raw, moved, kept - moved);
+		} finally {
+			mRaw = null;
+		}
+		raw[kept] = ']';
+		while (hasNext()) {
+			skipValue();
+		}
+		endArray();
+		return raw;
+	}
+
+	@Override
+	public void close() throws IOException {
+		mPeeked = PEEKED_NONE;
+		byte[] buf = mBuf;
+		mBuf = null;
+		if (mIn == null) { // array isn't pooled
+			return;
+		}
+		if (buf != null && buf.length == BUFFER_SIZE && sPooled.incrementAndGet() <= MAX_POOLED) {
+			sBuffers.offer(buf);
+		} else if (buf != null && buf.length == BUFFER_SIZE) {
+			sPooled.decrementAndGet();
+		}
+		mIn.close();
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName();
+	}
+
+	private int peeked() throws IOException {
+		return mPeeked != PEEKED_NONE ? mPeeked : doPeek();
+	}
+
+	/**
+	 * Consume the next token, which must be the expected one.
+	 */
+	private void expect(int peeked, JsonToken token) throws IOException {
+		if (peeked() != peeked) {
+			throw new IllegalStateException("Expected " + token + " but was " + peek());
+		}
+		mPeeked = PEEKED_NONE;
+	}
+
+	private void push(int scope) {
+		if (mDepth == mStack.length) {
+			mStack = Arrays.copyOf(mStack, mDepth * 2);
+		}
+		mStack[mDepth++] = scope;
+	}
+
+	/**
+	 * Find the next token. Strings and names are positioned after their opening quote and numbers
+	 * at their first character. Literals are consumed.
+	 */
+	private int doPeek() throws IOException {
+		int scope = mStack[mDepth - 1];
+		int c;
+		switch (scope) {
+		case EMPTY_ARRAY:
+			mStack[mDepth - 1] = NONEMPTY_ARRAY;
+			break;
+		case NONEMPTY_ARRAY:
+			c = nextNonWhitespace();
+			if (c == ']') {
+				return mPeeked = PEEKED_END_ARRAY;
+			} else if (c != ',') {
+				throw syntax("Unterminated array");
+			}
+			break;
+		case EMPTY_OBJECT:
+		case NONEMPTY_OBJECT:
+			mStack[mDepth - 1] = DANGLING_NAME;
+			if (scope == NONEMPTY_OBJECT) {
+				c = nextNonWhitespace();
+				if (c == '}') {
+					return mPeeked = PEEKED_END_OBJECT;
+				} else if (c != ',') {
+					throw syntax("Unterminated object");
+				}
+			}
+			c = nextNonWhitespace();
+			if (c == '"') {
+				return mPeeked = PEEKED_NAME;
+			} else if (c == '}' && scope == EMPTY_OBJECT) {
+				return mPeeked = PEEKED_END_OBJECT;
+			}
+			throw syntax("Expected name");
+		case DANGLING_NAME:
+			mStack[mDepth - 1] = NONEMPTY_OBJECT;
+			if (nextNonWhitespace() != ':') {
+				throw syntax("Expected ':'");
+			}
+			break;
+		case EMPTY_DOCUMENT:
+			mStack[mDepth - 1] = NONEMPTY_DOCUMENT;
+			break;
+		case NONEMPTY_DOCUMENT:
+			if (nextNonWhitespace() == -1) {
+				return mPeeked = PEEKED_END_DOCUMENT;
+			}
+			throw syntax("Expected end of document");
+		default:
+			throw new IllegalStateException("JsonReader is closed");
+		}
+
+		c = nextNonWhitespace();
+		switch (c) {
+		case ']':
+			if (scope == EMPTY_ARRAY) {
+				return mPeeked = PEEKED_END_ARRAY;
+			}
+			throw syntax("Unexpected value");
+		case '"':
+			return mPeeked = PEEKED_STRING;
+		case '{':
+			return mPeeked = PEEKED_BEGIN_OBJECT;
+		case '[':
+			return mPeeked = PEEKED_BEGIN_ARRAY;
+		case 't':
+			literal("rue");
+			return mPeeked = PEEKED_TRUE;
+		case 'f':
+			literal("alse");
+			return mPeeked = PEEKED_FALSE;
+		case 'n':
+			literal("ull");
+			return mPeeked = PEEKED_NULL;
+		case -1:
+			throw new EOFException("End of input");
+		default:
+			if (c == '-' || c >= '0' && c <= '9') {
+				mPos--;
+				return mPeeked = PEEKED_NUMBER;
+			}
+			throw syntax("Unexpected character");
+		}
+	}
+
+	/**
+	 * Read more bytes into the buffer, keeping the bytes from the current position.
+	 *
+	 * @return false if the end of the stream has been reached
+	 */
+	private boolean fill() throws IOException {
+		if (mBuf == null) {
+			throw new IllegalStateException("JsonReader is closed");
+		}
+		if (mIn == null) { // all of the array is in the buffer
+			return false;
+		}
+		if (mRaw != null) { // keep the bytes of the array before they're moved
+			int length = mPos - mRawStart;
+			if (mRawCount + length > mRaw.length) {
+				mRaw = Arrays.copyOf(mRaw, Math.max(mRaw.length * 2, mRawCount + length));
+			}
+			System.arraycopy(mBuf, mRawStart, mRaw, mRawCount, length);
+			mRawCount += length;
+			mRawStart = 0;
+		}
+		if (mPos > 0) {
+			System.arraycopy(mBuf, mPos, mBuf, 0, mLimit - mPos);
+			mLimit -= mPos;
+			mPos = 0;
+		}
+		if (mLimit == mBuf.length) { // long string or number
+			mBuf = Arrays.copyOf(mBuf, mBuf.length * 2);
+		}
+		int n = mIn.read(mBuf, mLimit, mBuf.length - mLimit);
+		if (n <= 0) {
+			return false;
+		}
+		mLimit += n;
+		return true;
+	}
+
+	/**
+	 * Get the next byte that isn't whitespace.
+	 *
+	 * @return -1 at the end of the stream
+	 */
+	private int nextNonWhitespace() throws IOException {
+		while (mPos < mLimit || fill()) {
+			int c = mBuf[mPos++] & 0xff;
+			if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+				return c;
+			}
+		}
+		return -1;
+	}
+
+	private void literal(String rest) throws IOException {
+		for (int i = 0; i < rest.length(); i++) {
+			if (mPos == mLimit && !fill() || mBuf[mPos++] != rest.charAt(i)) {
+				throw syntax("Unexpected literal");
+			}
+		}
+	}
+
+	/**
+	 * Make sure that the string at the current position is in the buffer and find its closing
+	 * quote.
+	 *
+	 * @return -1 if the string has escaped characters
+	 */
+	private int findQuote() throws IOException {
+		for (int p = mPos;; p++) {
+			if (p == mLimit) {
+				int offset = p - mPos;
+				if (!fill()) {
+					throw syntax("Unterminated string");
+				}
+				p = mPos + offset;
+			}
+			byte b = mBuf[p];
+			if (b == '"') {
+				return p;
+			} else if (b == '\\') {
+				return -1;
+			}
+		}
+	}
+
+	/**
+	 * Read the string at the current position, up to and including its closing quote.
+	 */
+	private String readString() throws IOException {
+		StringBuilder s = null;
+		for (int p = mPos;; p++) {
+			if (p == mLimit) {
+				int offset = p - mPos;
+				if (!fill()) {
+					throw syntax("Unterminated string");
+				}
+				p = mPos + offset;
+			}
+			byte b = mBuf[p];
+			if (b == '"') {
+				String value = new String(mBuf, mPos, p - mPos, Charsets.UTF_8);
+				mPos = p + 1;
+				return s == null ? value : s.append(value).toString();
+			} else if (b == '\\') {
+				if (s == null) {
+					s = new StringBuilder(Math.max(16, (p - mPos) * 2));
+				}
+				s.append(new String(mBuf, mPos, p - mPos, Charsets.UTF_8));
+				mPos = p + 1;
+				s.append(readEscape());
+				p = mPos - 1;
+			}
+		}
+	}
+
+	/**
+	 * Read the character after a backslash.
+	 */
+	private char readEscape() throws IOException {
+		if (mPos == mLimit && !fill()) {
+			throw syntax("Unterminated escape sequence");
+		}
+		byte b = mBuf[mPos++];
+		switch (b) {
+		case 'u':
+			while (mLimit - mPos < 4) {
+				if (!fill()) {
+					throw syntax("Unterminated escape sequence");
+				}
+			}
+			char c = 0;
+			for (int i = 0; i < 4; i++) {
+				int digit = Character.digit(mBuf[mPos++], 16);
+				if (digit < 0) {
+					throw syntax("Malformed Unicode escape");
+				}
+				c = (char) (c << 4 | digit);
+			}
+			return c;
+		case 't':
+			return '\t';
+		case 'b':
+			return '\b';
+		case 'n':
+			return '\n';
+		case 'r':
+			return '\r';
+		case 'f':
+			return '\f';
+		default:
+			return (char) b;
+		}
+	}
+
+	private void skipString() throws IOException {
+		for (;;) {
+			if (mPos == mLimit && !fill()) {
+				throw syntax("Unterminated string");
+			}
+			byte b = mBuf[mPos++];
+			if (b == '"') {
+				return;
+			} else if (b == '\\') {
+				if (mPos == mLimit && !fill()) {
+					throw syntax("Unterminated escape sequence");
+				}
+				mPos++;
+			}
+		}
+	}
+
+	private static boolean isNumberPart(byte b) {
+		return b >= '0' && b <= '9' || b == '-' || b == '+' || b == '.' || b == 'e' || b == 'E';
+	}
+
+	/**
+	 * Make sure that the number at the current position is in the buffer and find its end.
+	 */
+	private int findNumberEnd() throws IOException {
+		for (int p = mPos;; p++) {
+			if (p == mLimit) {
+				int offset = p - mPos;
+				if (!fill()) {
+					return mPos + offset; // number at the end of the document
+				}
+				p = mPos + offset;
+			}
+			if (!isNumberPart(mBuf[p])) {
+				return p;
+			}
+		}
+	}
+
+	private String readNumber() throws IOException {
+		int end = findNumberEnd();
+		String number = new String(mBuf, mPos, end - mPos, Charsets.US_ASCII);
+		mPos = end;
+		return number;
+	}
+
+	private void skipNumber() throws IOException {
+		mPos = findNumberEnd();
+	}
+
+	/**
+	 * Read the number at the current position if it's an integer that fits in a long.
+	 *
+	 * @return Long.MIN_VALUE without consuming the number if it must be read as a String
+	 */
+	private long readSimpleLong() throws IOException {
+		int end = findNumberEnd();
+		int p = mPos;
+		boolean negative = p < end && mBuf[p] == '-';
+		if (negative) {
+			p++;
+		}
+		if (p == end || end - p > 18) {
+			return Long.MIN_VALUE;
+		}
+		long value = 0L;
+		for (; p < end; p++) {
+			byte b = mBuf[p];
+			if (b < '0' || b > '9') {
+				return Long.MIN_VALUE;
+			}
+			value = value * 10 + (b - '0');
+		}
+		mPos = end;
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Read the number at the current position if it doesn't have an exponent and its digits can
+	 * be represented exactly as a double. Dividing by an exact power of ten then gives the
+	 * correctly rounded value.
+	 *
+	 * @return NaN without consuming the number if it must be read as a String
+	 */
+	private double readSimpleDouble() throws IOException {
+		int end = findNumberEnd();
+		int p = mPos;
+		boolean negative = p < end && mBuf[p] == '-';
+		if (negative) {
+			p++;
+		}
+		long digits = 0L;
+		int count = 0;
+		int scale = -1;
+		for (; p < end; p++) {
+			byte b = mBuf[p];
+			if (b >= '0' && b <= '9') {
+				digits = digits * 10 + (b - '0');
+				if (++count > 17) {
+					return Double.NaN;
+				}
+			} else if (b == '.' && scale < 0) {
+				scale = 0;
+				continue;
+			} else {
+				return Double.NaN;
+			}
+			if (scale >= 0) {
+				scale++;
+			}
+		}
+		if (count == 0 || digits >= MAX_EXACT || scale >= POW10.length) {
+			return Double.NaN;
+		}
+		mPos = end;
+		double value = scale > 0 ? digits / POW10[scale] : digits;
+		return negative ? -value : value;
+	}
+
+	private MalformedJsonException syntax(String message) {
+		return new MalformedJsonException(message);
+	}
+}
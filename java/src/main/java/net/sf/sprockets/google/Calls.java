@@ -0,0 +1,65 @@
+/*
+ * Copyright 2013 pushbit <pushbit@gmail.com>
+ *
+ * This file is part of Sprockets.
+ *
+ * Sprockets is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Sprockets is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Sprockets.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.sf.sprockets.google;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import net.sf.sprockets.Sprockets;
+
+import org.apache.commons.configuration.Configuration;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Runs Google API calls in the background. At most {@code google.async.threads} calls are in
+ * progress at the same time and up to {@code google.async.queue-size} more wait for a free thread.
+ */
+class Calls {
+	private static final ListeningExecutorService sExecutor;
+	static {
+		Configuration config = Sprockets.getConfig();
+		int threads = Math.max(1, config.getInt("google.async.threads", 8));
+		int queue = Math.max(1, config.getInt("google.async.queue-size", 1024));
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L, SECONDS,
+				new LinkedBlockingQueue<Runnable>(queue), new ThreadFactoryBuilder()
+						.setNameFormat("sprockets-%d").setDaemon(true).build());
+		executor.allowCoreThreadTimeOut(true);
+		sExecutor = MoreExecutors.listeningDecorator(executor);
+	}
+
+	private Calls() {
+	}
+
+	/**
+	 * Run the call in the background.
+	 *
+	 * @throws RejectedExecutionException
+	 *             if the queue of waiting calls is full
+	 */
+	static <T> ListenableFuture<T> submit(Callable<T> call) {
+		return sExecutor.submit(call);
+	}
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2013 pushbit <pushbit@gmail.com>
+ * 
+ * This file is part of Sprockets.
+ * 
+ * Sprockets is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * Sprockets is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with Sprockets.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.sf.sprockets.google;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static net.sf.sprockets.google.Places.Response.Status.OK;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.sf.sprockets.Settings;
+import net.sf.sprockets.Sprockets;
+import net.sf.sprockets.google.Places.Field;
+import net.sf.sprockets.google.Places.Params;
+import net.sf.sprockets.google.Places.Response;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+
+/**
+ * Keeps the responses from {@link Places#details(Params, Field...) Places.details} so that
+ * repeated requests for the same place don't need to be sent to the Google Places API service.
+ * The cache is disabled by default and can be enabled with the {@code google.places.details-cache}
+ * {@link Sprockets library settings}. The cache is replaced with an empty one when those settings
+ * are changed and it is cleared when the {@code google.base-url} or {@code google.api-key} setting
+ * is changed.
+ * <p>
+ * Cached places remember the {@link Field Field}s that were requested, so a place that was
+ * retrieved with all fields can be returned for any later request, while a place retrieved with
+ * only {@code NAME} must be requested again when {@code RATING} is also needed. When a cached place
+ * has more fields than were requested, all of its fields are populated.
+ * </p>
+ * <p>
+ * Each request gets its own {@link Response} and the cached {@link Place} that it contains can't be
+ * changed, so it is shared by the requests.
+ * </p>
+ * 
+ * @since 2.0.0
+ */
+public class DetailsCache {
+	/** Null if the cache is disabled. */
+	private static volatile Cache<String, Entry> sCache;
+	private static final AtomicLong sHits = new AtomicLong();
+	private static final AtomicLong sMisses = new AtomicLong();
+	/** Evictions from caches that have been replaced. */
+	private static final AtomicLong sEvictions = new AtomicLong();
+	static {
+		sCache = build(Sprockets.getSettings());
+		Sprockets.addListener(new Sprockets.Listener() {
+			@Override
+			public void onSettingsChanged(Settings old, Settings settings) {
+				if (settings.isDetailsCacheChanged(old)) {
+					replace(settings);
+				} else if (!settings.getBaseUrl().equals(old.getBaseUrl())
+						|| !settings.getApiKey().equals(old.getApiKey())) {
+					clear(); // responses may be different from another server or account
+				}
+			}
+		});
+	}
+
+	private DetailsCache() {
+	}
+
+	/**
+	 * Create a cache according to the settings.
+	 * 
+	 * @return null if the cache is disabled
+	 */
+	private static Cache<String, Entry> build(Settings settings) {
+		int entries = settings.getDetailsCacheMaxEntries();
+		long bytes = settings.getDetailsCacheMaxBytes();
+		long ttl = settings.getDetailsCacheTtl();
+		if (entries <= 0 && bytes <= 0) {
+			return null;
+		}
+		CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().recordStats();
+		if (bytes > 0) {
+			builder.maximumWeight(bytes).weigher(new Weigher<String, Entry>() {
+				@Override
+				public int weigh(String key, Entry entry) {
+					return entry.mBytes;
+				}
+			});
+		} else {
+			builder.maximumSize(entries);
+		}
+		if (ttl > 0) {
+			builder.expireAfterWrite(ttl, SECONDS);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Replace the cache with an empty one that is created according to the new settings.
+	 */
+	private static synchronized void replace(Settings settings) {
+		Cache<String, Entry> old = sCache;
+		sCache = build(settings);
+		if (old != null) {
+			sEvictions.addAndGet(old.stats().evictionCount());
+			old.invalidateAll();
+		}
+	}
+
+	/**
+	 * Get the cached response for the request.
+	 * 
+	 * @param fields
+	 *            requested or 0 for all fields
+	 * @return null if the cache is disabled or doesn't have a response with the fields
+	 */
+	static Response<Place> get(String url, int fields, int maxResults) {
+		Cache<String, Entry> cache = sCache;
+		if (cache == null) {
+			return null;
+		}
+		Entry entry = cache.getIfPresent(key(url, maxResults));
+		if (entry != null && (entry.mFields == 0 || fields != 0 && (fields & ~entry.mFields) == 0)) {
+			sHits.incrementAndGet();
+			return entry.mResponse.copy();
+		}
+		sMisses.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * Cache the response if it was successful.
+	 * 
+	 * @param fields
+	 *            that were requested or 0 for all fields
+	 */
+	static void put(String url, int fields, int maxResults, Response<Place> response) {
+		Cache<String, Entry> cache = sCache;
+		if (cache != null && response.getStatus() == OK && response.mResult != null) {
+			response.mResult.freeze();
+			cache.put(key(url, maxResults), new Entry(fields, response.copy()));
+		}
+	}
+
+	/**
+	 * Get the key for the request. The URL includes the reference and language.
+	 */
+	private static String key(String url, int maxResults) {
+		return maxResults > 0 ? url + '#' + maxResults : url;
+	}
+
+	/**
+	 * Remove all places from the cache.
+	 */
+	public static void clear() {
+		Cache<String, Entry> cache = sCache;
+		if (cache != null) {
+			cache.invalidateAll();
+		}
+	}
+
+	/**
+	 * Number of places in the cache.
+	 */
+	public static long size() {
+		Cache<String, Entry> cache = sCache;
+		return cache != null ? cache.size() : 0L;
+	}
+
+	/**
+	 * Get the number of cache hits, misses, and evictions. A place that is cached without some of
+	 * the requested fields is counted as a miss.
+	 */
+	public static CacheStats getStats() {
+		Cache<String, Entry> cache = sCache;
+		long evictions = sEvictions.get() + (cache != null ? cache.stats().evictionCount() : 0L);
+		return new CacheStats(sHits.get(), sMisses.get(), 0L, 0L, 0L, evictions);
+	}
+
+	/**
+	 * Cached response and the fields that were requested for it.
+	 */
+	private static class Entry {
+		private final int mFields;
+		private final Response<Place> mResponse;
+		/** Approximate heap size. */
+		private final int mBytes;
+
+		private Entry(int fields, Response<Place> response) {
+			mFields = fields;
+			mResponse = response;
+			mBytes = bytes(response.mResult);
+		}
+
+		/**
+		 * Estimate the number of bytes used by the place.
+		 */
+		private static int bytes(Place place) {
+			int bytes = 256 + bytes(place.mId) + bytes(place.mReference) + bytes(place.mIcon)
+					+ bytes(place.mUrl) + bytes(place.mName) + bytes(place.mFmtAddress)
+					+ bytes(place.mVicinity) + bytes(place.mIntlPhone) + bytes(place.mFmtPhone)
+					+ bytes(place.mWebsite) + bytes(place.mRawReviews) + bytes(place.mRawHours)
+					+ bytes(place.mRawEvents) + bytes(place.mRawPhotos);
+			if (place.mAddress != null) {
+				bytes += 512;
+			}
+			if (place.mTypes != null) {
+				for (String type : place.mTypes) {
+					bytes += bytes(type);
+				}
+			}
+			bytes += count(place.mReviews) * 1024 + count(place.mOpenHours) * 48
+					+ count(place.mEvents) * 256 + count(place.mPhotos) * 512;
+			return bytes;
+		}
+
+		private static int bytes(String s) {
+			return s != null ? 40 + 2 * s.length() : 0;
+		}
+
+		private static int bytes(byte[] b) {
+			return b != null ? 16 + b.length : 0;
+		}
+
+		private static int count(List<?> list) {
+			return list != null ? list.size() : 0;
+		}
+	}
+}
@@ -17,29 +17,33 @@
 
 package net.sf.sprockets.google;
 
-import com.google.common.base.Joiner;
 import com.google.common.base.Objects;
 import com.google.common.base.Strings;
 import com.google.common.collect.ObjectArrays;
 import com.google.common.io.Closeables;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.gson.stream.JsonReader;
+import net.sf.sprockets.Settings;
 import net.sf.sprockets.Sprockets;
+import net.sf.sprockets.google.RetryPolicy.Attempts;
 import net.sf.sprockets.net.HttpClient;
 import net.sf.sprockets.util.logging.Loggers;
-import org.apache.commons.configuration.Configuration;
 
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.UnsupportedEncodingException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
 import java.net.URL;
-import java.net.URLConnection;
-import java.net.URLEncoder;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Logger;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
-import static java.util.logging.Level.INFO;
+import static net.sf.sprockets.google.Throttle.Api.DISTANCE_MATRIX;
 
 /**
  * Methods for calling <a href="https://developers.google.com/maps/documentation/distancematrix/" target="_blank">Google Distance Matrix API</a>
@@ -77,21 +81,129 @@ public class DistanceMatrix {
 	 */
 	public static Response distances(Params params)
 			throws IOException {
-
-        JsonReader in = reader(params.format());
-        try {
-            return new Response(params.getOriginCount(), params.getDestinationCount(), in);
-        } finally {
-            Closeables.close(in, true);
-        }
+        return distances(params.format(), params.getOriginCount(), params.getDestinationCount(),
+                params.mPacked);
 	}
 
+    /**
+     * Same as {@link #distances(Params)}, but runs in the background. The params are read before
+     * this method returns, so the instance can be re-used immediately.
+     *
+     * @since 2.0.0
+     */
+    public static ListenableFuture<Response> distancesAsync(Params params) {
+        final String url = params.format();
+        final int origins = params.getOriginCount();
+        final int destinations = params.getDestinationCount();
+        final boolean packed = params.mPacked;
+        return Calls.submit(new Callable<Response>() {
+            @Override
+            public Response call() throws IOException {
+                return distances(url, origins, destinations, packed);
+            }
+        });
+    }
+
+    /**
+     * Get the distances for the request, sharing the response with an identical request that is
+     * already in progress.
+     *
+     * @param packed
+     *            true to read the distances into a {@link TravelMatrix}
+     */
+    private static Response distances(final String url, final int originCount,
+            final int destinationCount, final boolean packed) throws IOException {
+        return SingleFlight.call(url + '#' + packed, new Callable<Response>() {
+            @Override
+            public Response call() throws IOException {
+                return request(url, originCount, destinationCount, packed);
+            }
+        });
+    }
+
+    /**
+     * Send the request for the distances, retrying it according to the {@link RetryPolicy}.
+     */
+    private static Response request(final String url, final int originCount,
+            final int destinationCount, final boolean packed) throws IOException {
+        return RetryPolicy.getDefault().call(new Attempts<Response>() {
+            @Override
+            Response attempt() throws IOException {
+                Throttle.get(DISTANCE_MATRIX).acquire(originCount * destinationCount);
+                JsonReader in = reader(url);
+                try {
+                    return distances(in, originCount, destinationCount, packed);
+                } finally {
+                    Closeables.close(in, true);
+                }
+            }
+
+            @Override
+            Enum<?> status(Response resp) {
+                return resp.mStatus;
+            }
+
+            @Override
+            void retries(Response resp, int retries) {
+                resp.mRetries = retries;
+            }
+        });
+    }
+
+    /**
+     * Read the distances from a response. Also used to benchmark the parser without a connection.
+     */
+    static Response distances(JsonReader in, int originCount, int destinationCount,
+            boolean packed) throws IOException {
+        return new Response(originCount, destinationCount, in, packed);
+    }
+
+    /**
+     * Same as {@link #distances(Params)}, but any number of origins and destinations can be
+     * provided. The matrix is split into tiles that are within the service limits for origins,
+     * destinations, elements, and URL length per request. The tiles are requested concurrently,
+     * with at most {@code google.distance-matrix.batch.parallelism} in progress at the same time,
+     * and assembled into one Response. The {@link TravelDistance#getOriginId() origin} and
+     * {@link TravelDistance#getDestinationId() destination} IDs are the positions in the Params.
+     * <p>
+     * If any tile is unsuccessful, the Response has that tile's status and only includes the
+     * distances from the successful tiles.
+     * </p>
+     *
+     * @throws IllegalArgumentException
+     *             if an origin and destination are too long to fit in a request URL
+     * @throws IOException
+     *             if there is a problem communicating with the Google Distance Matrix API service
+     * @since 2.0.0
+     */
+    public static Response batchDistances(Params params) throws IOException {
+        checkNotNull(params.mOrigins, "origins must be set");
+        checkNotNull(params.mDestinations, "destinations must be set");
+        return new Batch(params).call();
+    }
+
+    /**
+     * Same as {@link #batchDistances(Params)}, but runs in the background. The params are read
+     * before this method returns, so the instance can be re-used immediately.
+     *
+     * @since 2.0.0
+     */
+    public static ListenableFuture<Response> batchDistancesAsync(Params params) {
+        checkNotNull(params.mOrigins, "origins must be set");
+        checkNotNull(params.mDestinations, "destinations must be set");
+        return Calls.submit(new Batch(params));
+    }
+
 	/**
 	 * Get a reader for the URL.
 	 */
 	private static JsonReader reader(String url) throws IOException {
-		URLConnection con = HttpClient.openConnection(new URL(url));
-		return new JsonReader(new InputStreamReader(con.getInputStream(), "UTF-8"));
+		HttpURLConnection con = HttpClient.openConnection(new URL(url));
+		InputStream in = Metrics.getInputStream(DISTANCE_MATRIX, con);
+		if (in == null) {
+			throw new IOException("No response body, HTTP " + con.getResponseCode());
+		}
+		return ByteJsonReader.reader(in);
 	}
 
 	/**
@@ -113,7 +225,7 @@ public class DistanceMatrix {
         private String mAvoid;
         private String mUnits;
         private long mDepartureTime;
-
+        private boolean mPacked;
 
 		/**
 		 * Add Location (an address or latitude/longitude values) as an origin. Calling this method multiple
@@ -232,8 +344,17 @@ public class DistanceMatrix {
             return this;
         }
 
-        /** Append the types param with pipe symbols between the values. */
-        private static Joiner sPipes;
+        /**
+         * Store the results in a {@link TravelMatrix} instead of creating a {@link TravelDistance}
+         * for each origin and destination pair. This uses much less memory for large matrices.
+         * {@link Response#getResult()} can still be called, but will create the TravelDistances.
+         *
+         * @since 2.0.0
+         */
+        public Params packed() {
+            mPacked = true;
+            return this;
+        }
 
         /**
 		 * Get a URL formatted for the type of request.
@@ -241,52 +362,24 @@ public class DistanceMatrix {
 		 * @since 1.0.0
 		 */
 		public String format() {
-
-            final String baseURL = "https://maps.googleapis.com/maps/api/distancematrix/json?";
-            if (sPipes == null) {
-                sPipes = Joiner.on("%7C").skipNulls(); // URL encoded
-            }
-
-            StringBuilder s = new StringBuilder(baseURL.length() + 256);
-            s.append(baseURL);
-			Configuration config = Sprockets.getConfig();
-//			String key = config.getString("google.api-key");
-//			checkState(!Strings.isNullOrEmpty(key), "google.api-key not set");
-//			s.append("key=").append(key);
-            boolean sensor = config.getBoolean("hardware.location");
-            s.append("&sensor=").append(sensor);
-
-            try {
-                if (mOrigins==null) throw new NullPointerException("origins must be set");
-                s.append("&origins=");
-                if (mOrigins.length>0) s.append(URLEncoder.encode(mOrigins[0], "UTF-8"));
-                for (int i=1; i<mOrigins.length; i++) {
-                    s.append("%7C").append(URLEncoder.encode(mOrigins[i], "UTF-8"));
-                }
-
-                if (mDestinations==null) throw new NullPointerException("destinations must be set");
-                s.append("&destinations=");
-                if (mDestinations.length>0) s.append(URLEncoder.encode(mDestinations[0], "UTF-8"));
-                for (int i=1; i<mDestinations.length; i++) {
-                    s.append("%7C").append(URLEncoder.encode(mDestinations[i], "UTF-8"));
-                }
-
-            } catch (UnsupportedEncodingException e) {
-                throw new RuntimeException("UTF-8 encoding isn't supported?!", e);
-            }
+            if (mOrigins==null) throw new NullPointerException("origins must be set");
+            if (mDestinations==null) throw new NullPointerException("destinations must be set");
+            UrlBuilder s = UrlBuilder.get("distancematrix/json?").sensor();
+            s.param("origins").join(mOrigins, true);
+            s.param("destinations").join(mDestinations, true);
 
             if (!Strings.isNullOrEmpty(mMode)) {
-                s.append("&mode=").append(mMode);
+                s.param("mode").append(mMode);
             }
-            s.append("&language=").append(!Strings.isNullOrEmpty(mLanguage) ? mLanguage : Locale.getDefault());
+            s.param("language").language(mLanguage);
             if (!Strings.isNullOrEmpty(mAvoid)) {
-                s.append("&avoid=").append(mAvoid);
+                s.param("avoid").append(mAvoid);
             }
             if (!Strings.isNullOrEmpty(mUnits)) {
-                s.append("&units=").append(mUnits);
+                s.param("units").append(mUnits);
             }
             if (mDepartureTime>0) {
-                s.append("&departure_time=").append(mDepartureTime);
+                s.param("departure_time").append(mDepartureTime);
             }
 
 
@@ -306,6 +399,7 @@ public class DistanceMatrix {
             mAvoid = null;
             mUnits = null;
             mDepartureTime = 0;
+            mPacked = false;
 
 			return this;
 		}
@@ -313,7 +407,7 @@ public class DistanceMatrix {
 		@Override
 		public int hashCode() {
 			return Objects.hashCode(Arrays.hashCode(mOrigins), Arrays.hashCode(mDestinations),
-                    mMode, mLanguage, mAvoid, mUnits, mDepartureTime);
+                    mMode, mLanguage, mAvoid, mUnits, mDepartureTime, mPacked);
 		}
 
 		@Override
@@ -329,7 +423,8 @@ public class DistanceMatrix {
                             && Objects.equal(mLanguage, o.mLanguage)
                             && Objects.equal(mAvoid, o.mAvoid)
                             && Objects.equal(mUnits, o.mUnits)
-                            && mDepartureTime == o.mDepartureTime;
+                            && mDepartureTime == o.mDepartureTime
+                            && mPacked == o.mPacked;
 				}
 			}
 			return false;
@@ -342,9 +437,26 @@ public class DistanceMatrix {
                     .add("mode", mMode).add("language", mLanguage)
                     .add("avoid", mAvoid).add("units", mUnits)
                     .add("departureTime", mDepartureTime != 0 ? mDepartureTime : null)
+                    .add("packed", mPacked ? mPacked : null)
 					.omitNullValues().toString();
 		}
 
+        /**
+         * Get a copy of these params with only the origins and destinations in the ranges.
+         */
+        private Params slice(int originStart, int originEnd, int destStart, int destEnd) {
+            Params p = new Params();
+            p.mOrigins = Arrays.copyOfRange(mOrigins, originStart, originEnd);
+            p.mDestinations = Arrays.copyOfRange(mDestinations, destStart, destEnd);
+            p.mMode = mMode;
+            p.mLanguage = mLanguage;
+            p.mAvoid = mAvoid;
+            p.mUnits = mUnits;
+            p.mDepartureTime = mDepartureTime;
+            p.mPacked = mPacked;
+            return p;
+        }
+
         public int getOriginCount() {
             return mOrigins.length;
         }
@@ -374,19 +486,17 @@ public class DistanceMatrix {
             /** New status that hasn't been added here yet. */
             UNKNOWN;
 
+            private static final EnumLookup<Status> sLookup = new EnumLookup<Status>(Status.class,
+                    UNKNOWN, sLog, "Unknown status code: {0}.  "
+                            + "If this hasn''t already been reported, please create a new issue at "
+                            + "https://github.com/salento/sprockets/issues");
+
             /**
-             * Get the matching Status or {@link #UNKNOWN} if one can't be found.
+             * Get the matching Status or {@link #UNKNOWN} if one can't be found. Unknown values are only
+             * logged the first time that they are found.
              */
-            private static Status get(String status) {
-                try {
-                    return Status.valueOf(status);
-                } catch (IllegalArgumentException e) {
-                    String msg = "Unknown status code: {0}.  "
-                            + "If this hasn''t already been reported, please create a new issue at "
-                            + "https://github.com/salento/sprockets/issues";
-                    sLog.log(INFO, msg, status);
-                    return UNKNOWN;
-                }
+            static Status get(String status) {
+                return sLookup.get(status);
             }
         }
 
@@ -399,40 +509,68 @@ public class DistanceMatrix {
             /** New key that hasn't been added here yet. */
             UNKNOWN;
 
+            private static final EnumLookup<Key> sLookup = new EnumLookup<Key>(Key.class,
+                    UNKNOWN, sLog, "Unknown response key: {0}.  "
+                            + "If this hasn''t already been reported, please create a new issue at "
+                            + "https://github.com/salento/sprockets/issues");
+
             /**
-             * Get the matching Key or {@link #UNKNOWN} if one can't be found.
+             * Get the matching Key or {@link #UNKNOWN} if one can't be found. Unknown values are only
+             * logged the first time that they are found.
              */
             static Key get(String key) {
-                try {
-                    return Key.valueOf(key);
-                } catch (IllegalArgumentException e) {
-                    String msg = "Unknown response key: {0}.  "
-                            + "If this hasn''t already been reported, please create a new issue at "
-                            + "https://github.com/salento/sprockets/issues";
-                    sLog.log(INFO, msg, key);
-                    return UNKNOWN;
-                }
+                return sLookup.get(key);
+            }
+
+            /**
+             * Read the next name as a Key or {@link #UNKNOWN} if one can't be found.
+             */
+            static Key next(JsonReader in) throws IOException {
+                return sLookup.next(in);
             }
         }
 
         Status mStatus;
         String mErrorMessage;
         List<TravelDistance> mResult;
+        /** Null until requested, unless the results are packed. */
+        TravelMatrix mMatrix;
         String[] mOriginAddresses;
         String[] mDestinationAddresses;
+        int mRetries;
+
+        /**
+         * Empty response to be filled by a {@link Batch}.
+         */
+        private Response(int originCount, int destinationCount, boolean packed) {
+            mStatus = Status.OK;
+            mOriginAddresses = new String[originCount];
+            mDestinationAddresses = new String[destinationCount];
+            if (packed) {
+                mMatrix = new TravelMatrix(originCount, destinationCount);
+                mMatrix.mOriginAddresses = mOriginAddresses;
+                mMatrix.mDestinationAddresses = mDestinationAddresses;
+            }
+        }
 
         /**
 		 * Read fields from a search response.
+		 *
+		 * @param packed
+		 *            true to read the elements into a {@link TravelMatrix}
 		 */
-		private Response(int originCount, int destinationCount, JsonReader in) throws IOException {
+		private Response(int originCount, int destinationCount, JsonReader in, boolean packed)
+				throws IOException {
+            this(originCount, destinationCount, packed);
+            mStatus = null;
             int row = 0, element = 0;
-            mResult = new ArrayList<TravelDistance>(originCount * destinationCount);
-            mOriginAddresses = new String[originCount];
-            mDestinationAddresses = new String[destinationCount];
+            if (!packed) {
+                mResult = new ArrayList<TravelDistance>(originCount * destinationCount);
+            }
 
 			in.beginObject();
 			while (in.hasNext()) {
-				switch (Key.get(in.nextName())) {
+				switch (Key.next(in)) {
 				    case status:
 					    mStatus = Status.get(in.nextString());
 					    break;
@@ -442,14 +580,14 @@ public class DistanceMatrix {
                     case origin_addresses:
                         in.beginArray();
                         for (int i=0; in.hasNext(); i++) {
-                            mOriginAddresses[i] = in.nextString();
+                            mOriginAddresses[i] = StringPool.intern(in.nextString());
                         }
                         in.endArray();
                         break;
                     case destination_addresses:
                         in.beginArray();
                         for (int i=0; in.hasNext(); i++) {
-                            mDestinationAddresses[i] = in.nextString();
+                            mDestinationAddresses[i] = StringPool.intern(in.nextString());
                         }
                         in.endArray();
                         break;
@@ -458,10 +596,14 @@ public class DistanceMatrix {
                         in.beginArray();
                         while (in.hasNext()) {
                             in.beginObject();
-                            if (Key.get(in.nextName())==Key.elements) {
+                            if (Key.next(in)==Key.elements) {
                                 in.beginArray();
                                 while (in.hasNext()) {
-                                    mResult.add(new TravelDistance(row, element, in));
+                                    if (packed) {
+                                        mMatrix.read(row, element, in);
+                                    } else {
+                                        mResult.add(new TravelDistance(row, element, in));
+                                    }
                                     element ++;
                                 }
                                 in.endArray();
@@ -482,11 +624,20 @@ public class DistanceMatrix {
 			in.endObject();
 
             // copy address zu traveldistance objects
-            for (TravelDistance td : mResult) {
+            if (mResult != null) {
+                addresses(mResult);
+            }
+		}
+
+        /**
+         * Copy the origin and destination addresses to the distances.
+         */
+        private void addresses(List<TravelDistance> distances) {
+            for (TravelDistance td : distances) {
                 td.mOriginAddress = mOriginAddresses[td.mOriginId];
                 td.mDestinationAddress = mDestinationAddresses[td.mDestinationId];
             }
-		}
+        }
 
         /**
          * Indication of the success or failure of the request.
@@ -496,13 +647,235 @@ public class DistanceMatrix {
         }
 
         /**
-         * List of Travel Distances
+         * Number of times that the request was sent again, according to the
+         * {@link RetryPolicy#getDefault() RetryPolicy}, before this response was received. For
+         * {@link DistanceMatrix#batchDistances(Params) batchDistances}, the total for all requests.
+         *
+         * @since 2.0.0
          */
-        public List<TravelDistance> getResult() {
-            return Collections.unmodifiableList(mResult);
+        public int getRetries() {
+            return mRetries;
+        }
+
+        /**
+         * List of Travel Distances. If the results are {@link Params#packed() packed}, the first
+         * call creates them from the {@link #getMatrix() matrix}.
+         */
+        public synchronized List<TravelDistance> getResult() {
+            if (mResult == null && mMatrix != null) {
+                List<TravelDistance> result = new ArrayList<TravelDistance>(
+                        mMatrix.getOriginCount() * mMatrix.getDestinationCount());
+                for (int o = 0; o < mMatrix.getOriginCount(); o++) {
+                    for (int d = 0; d < mMatrix.getDestinationCount(); d++) {
+                        if (mMatrix.isIncluded(o, d)) {
+                            result.add(new TravelDistance(mMatrix, o, d));
+                        }
+                    }
+                }
+                addresses(result);
+                mResult = result;
+            }
+            return mResult != null ? Collections.unmodifiableList(mResult) : null;
+        }
+
+        /**
+         * Travel durations and distances in primitive arrays. If the results aren't
+         * {@link Params#packed() packed}, the first call creates the matrix from the
+         * {@link #getResult() result}.
+         *
+         * @return null if the results aren't packed and the request was unsuccessful
+         * @since 2.0.0
+         */
+        public synchronized TravelMatrix getMatrix() {
+            if (mMatrix == null && mResult != null) {
+                TravelMatrix matrix = new TravelMatrix(mOriginAddresses.length,
+                        mDestinationAddresses.length);
+                matrix.mOriginAddresses = mOriginAddresses;
+                matrix.mDestinationAddresses = mDestinationAddresses;
+                matrix.put(mResult);
+                mMatrix = matrix;
+            }
+            return mMatrix;
         }
 
     }
 
 
+    /**
+     * Splits a large matrix into tiles that can each be requested from the service and combines
+     * their responses. The calling thread requests tiles along with up to parallelism - 1
+     * background workers, so the batch always completes even when no background threads are free.
+     */
+    private static class Batch implements Callable<Response> {
+        private final int mMaxUrlLength;
+        private final int mParallelism;
+        private final int mOriginCount;
+        private final int mDestinationCount;
+        private final Queue<Tile> mTiles = new ConcurrentLinkedQueue<Tile>();
+        private final CountDownLatch mRemaining;
+        private final Response mResponse;
+        /** Merged distances in row-major order, null if packed. */
+        private final TravelDistance[] mDistances;
+        private volatile IOException mError;
+
+        private Batch(Params params) {
+            mOriginCount = params.getOriginCount();
+            mDestinationCount = params.getDestinationCount();
+            Settings settings = Sprockets.getSettings();
+            mMaxUrlLength = settings.getBatchMaxUrlLength();
+            mParallelism = Math.max(1, settings.getBatchParallelism());
+            int maxElements = Math.max(1, settings.getBatchMaxElements());
+            int destsPer = Math.min(Math.min(mDestinationCount,
+                    Math.max(1, settings.getBatchMaxDestinations())), maxElements);
+            int originsPer = Math.min(Math.max(1, settings.getBatchMaxOrigins()),
+                    maxElements / Math.max(1, destsPer));
+            for (int o = 0; o < mOriginCount; o += originsPer) {
+                for (int d = 0; d < mDestinationCount; d += destsPer) {
+                    tile(params, o, Math.min(originsPer, mOriginCount - o), d,
+                            Math.min(destsPer, mDestinationCount - d));
+                }
+            }
+            mRemaining = new CountDownLatch(mTiles.size());
+            mResponse = new Response(mOriginCount, mDestinationCount, params.mPacked);
+            mDistances = params.mPacked ? null : new TravelDistance[mOriginCount
+                    * mDestinationCount];
+        }
+
+        /**
+         * Add the tile if its URL isn't too long, otherwise split it in half and try again.
+         */
+        private void tile(Params params, int origin, int origins, int dest, int dests) {
+            String url = params.slice(origin, origin + origins, dest, dest + dests).format();
+            if (mMaxUrlLength <= 0 || url.length() <= mMaxUrlLength) {
+                mTiles.add(new Tile(origin, origins, dest, dests, url));
+            } else if (origins > 1 && origins >= dests) {
+                int half = origins / 2;
+                tile(params, origin, half, dest, dests);
+                tile(params, origin + half, origins - half, dest, dests);
+            } else if (dests > 1) {
+                int half = dests / 2;
+                tile(params, origin, origins, dest, half);
+                tile(params, origin, origins, dest + half, dests - half);
+            } else {
+                throw new IllegalArgumentException("origin " + origin + " and destination " + dest
+                        + " are too long for a request URL: " + url.length() + " characters");
+            }
+        }
+
+        @Override
+        public Response call() throws IOException {
+            int workers = Math.min(mParallelism, mTiles.size()) - 1;
+            for (int i = 0; i < workers; i++) {
+                try {
+                    Calls.submit(new Callable<Void>() {
+                        @Override
+                        public Void call() {
+                            work();
+                            return null;
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    break; // continue with fewer workers
+                }
+            }
+            work();
+            try {
+                mRemaining.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("waiting for distance matrix tiles");
+            }
+            if (mError != null) {
+                throw mError;
+            }
+            if (mDistances != null) {
+                List<TravelDistance> result = new ArrayList<TravelDistance>(mDistances.length);
+                for (TravelDistance distance : mDistances) {
+                    if (distance != null) {
+                        result.add(distance);
+                    }
+                }
+                mResponse.mResult = result;
+            }
+            return mResponse;
+        }
+
+        /**
+         * Request tiles until none are left.
+         */
+        private void work() {
+            Tile tile;
+            while ((tile = mTiles.poll()) != null) {
+                try {
+                    if (mError == null) {
+                        /* not shared, merge changes the distance ids */
+                        merge(tile, request(tile.mUrl, tile.mOrigins, tile.mDestinations,
+                                mDistances == null));
+                    }
+                } catch (IOException e) {
+                    mError = e;
+                } catch (RuntimeException e) {
+                    mError = new IOException("Distance matrix tile failed", e);
+                } finally {
+                    mRemaining.countDown();
+                }
+            }
+        }
+
+        /**
+         * Add the tile's distances and addresses to the combined response.
+         */
+        private void merge(Tile tile, Response resp) {
+            synchronized (mResponse) {
+                mResponse.mRetries += resp.mRetries;
+                if (resp.mStatus != Response.Status.OK) {
+                    if (mResponse.mStatus == Response.Status.OK) {
+                        mResponse.mStatus = resp.mStatus;
+                        mResponse.mErrorMessage = resp.mErrorMessage;
+                    }
+                    return;
+                }
+                for (int i = 0; i < tile.mOrigins; i++) {
+                    if (resp.mOriginAddresses[i] != null) {
+                        mResponse.mOriginAddresses[tile.mOrigin + i] = resp.mOriginAddresses[i];
+                    }
+                }
+                for (int i = 0; i < tile.mDestinations; i++) {
+                    if (resp.mDestinationAddresses[i] != null) {
+                        mResponse.mDestinationAddresses[tile.mDestination + i] =
+                                resp.mDestinationAddresses[i];
+                    }
+                }
+                if (resp.mMatrix != null) {
+                    mResponse.mMatrix.put(tile.mOrigin, tile.mDestination, resp.mMatrix);
+                    return;
+                }
+                for (TravelDistance distance : resp.mResult) {
+                    distance.mOriginId += tile.mOrigin;
+                    distance.mDestinationId += tile.mDestination;
+                    mDistances[distance.mOriginId * mDestinationCount + distance.mDestinationId] =
+                            distance;
+                }
+            }
+        }
+    }
+
+    /**
+     * Range of origins and destinations that can be requested together.
+     */
+    private static class Tile {
+        private final int mOrigin;
+        private final int mOrigins;
+        private final int mDestination;
+        private final int mDestinations;
+        private final String mUrl;
+
+        private Tile(int origin, int origins, int destination, int destinations, String url) {
+            mOrigin = origin;
+            mOrigins = origins;
+            mDestination = destination;
+            mDestinations = destinations;
+            mUrl = url;
+        }
+    }
 }
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2013 pushbit <pushbit@gmail.com>
+ *
+ * This file is part of Sprockets.
+ *
+ * Sprockets is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Sprockets is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Sprockets.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.sf.sprockets.google;
+
+import static java.util.logging.Level.INFO;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import com.google.common.base.Charsets;
+import com.google.gson.stream.JsonReader;
+
+/**
+ * Finds enum constants by name without throwing an exception when the name is unknown. The names
+ * are placed in a hash table without collisions when the lookup is created, so getting a constant
+ * only needs the name's hash code and one equals comparison. If such a table can't be found, for
+ * example when two names have the same hash code, the names are kept in a HashMap instead.
+ */
+class EnumLookup<E extends Enum<E>> {
+	/** Maximum number of unknown names that are logged. */
+	private static final int MAX_LOGGED = 256;
+	/** Number of times that the table size is doubled while looking for a table. */
+	private static final int MAX_GROWTH = 3;
+	/** Number of multipliers that are tried for each table size. */
+	private static final int MAX_ATTEMPTS = 1000;
+
+	/** Null if the names are in {@link #mMap}. */
+	private final String[] mNames;
+	/** ASCII bytes of the names, for matching names in JSON without decoding them. */
+	private final byte[][] mBytes;
+	private final Object[] mConstants;
+	private final int mMultiplier;
+	private final int mShift;
+	/** Null if the names are in the table. */
+	private final Map<String, E> mMap;
+	private final E mUnknown;
+	/** Null if unknown names aren't logged. */
+	private final Logger mLog;
+	private final String mMsg;
+	/**
+	 * Hash codes of the unknown names that have been logged, in an open addressing table where 0
+	 * is an empty slot. Guarded by itself.
+	 */
+	private final int[] mLogged;
+	private int mLoggedCount;
+
+	/**
+	 * Lookup for the constants of the enum.
+	 *
+	 * @param unknown
+	 *            returned for unknown names, may be null
+	 * @param log
+	 *            null to not log unknown names
+	 * @param msg
+	 *            logged at INFO level the first time an unknown name is found, with the name as
+	 *            parameter 0
+	 */
+	EnumLookup(Class<E> type, E unknown, Logger log, String msg) {
+		E[] constants = type.getEnumConstants();
+		mUnknown = unknown;
+		mLog = log;
+		mMsg = msg;
+		mLogged = log != null ? new int[MAX_LOGGED * 2] : null;
+		Random random = new Random(type.getName().hashCode());
+		int minBits = 32 - Integer.numberOfLeadingZeros(Math.max(1, constants.length - 1)) + 1;
+		for (int bits = minBits; bits <= minBits + MAX_GROWTH; bits++) {
+			int size = 1 << bits;
+			for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+				int multiplier = random.nextInt() | 1;
+				int shift = 32 - bits;
+				String[] names = new String[size];
+				Object[] table = new Object[size];
+				boolean collision = false;
+				for (E constant : constants) {
+					int i = index(constant.name().hashCode(), multiplier, shift);
+					if (names[i] != null) {
+						collision = true;
+						break;
+					}
+					names[i] = constant.name();
+					table[i] = constant;
+				}
+				if (!collision) {
+					mNames = names;
+					mBytes = new byte[size][];
+					for (int j = 0; j < size; j++) {
+						if (names[j] != null) {
+							mBytes[j] = names[j].getBytes(Charsets.US_ASCII);
+						}
+					}
+					mConstants = table;
+					mMultiplier = multiplier;
+					mShift = shift;
+					mMap = null;
+					return;
+				}
+			}
+		}
+		mNames = null;
+		mBytes = null;
+		mConstants = null;
+		mMultiplier = 0;
+		mShift = 0;
+		mMap = new HashMap<String, E>(constants.length * 2);
+		for (E constant : constants) {
+			mMap.put(constant.name(), constant);
+		}
+	}
+
+	private static int index(int hash, int multiplier, int shift) {
+		return (hash * multiplier) >>> shift;
+	}
+
+	/**
+	 * Get the constant with the name or the unknown constant if there isn't one.
+	 */
+	@SuppressWarnings("unchecked")
+	E get(String name) {
+		if (name != null) {
+			int hash = name.hashCode();
+			if (mMap != null) {
+				E constant = mMap.get(name);
+				if (constant != null) {
+					return constant;
+				}
+			} else {
+				int i = index(hash, mMultiplier, mShift);
+				if (name.equals(mNames[i])) {
+					return (E) mConstants[i];
+				}
+			}
+			if (mLog != null && isFirst(hash)) {
+				mLog.log(INFO, mMsg, name);
+			}
+		}
+		return mUnknown;
+	}
+
+	/**
+	 * Get the constant with the name in the UTF-8 bytes or the unknown constant if there isn't
+	 * one. A String is only created if the name has non-ASCII characters, is unknown and logged for
+	 * the first time, or the names are in a HashMap.
+	 */
+	@SuppressWarnings("unchecked")
+	E get(byte[] bytes, int off, int len) {
+		if (mMap != null) {
+			return get(new String(bytes, off, len, Charsets.UTF_8));
+		}
+		int hash = 0;
+		for (int j = off, end = off + len; j < end; j++) {
+			byte b = bytes[j];
+			if (b < 0) { // not ASCII, hash code of the String would differ
+				return get(new String(bytes, off, len, Charsets.UTF_8));
+			}
+			hash = 31 * hash + b;
+		}
+		int i = index(hash, mMultiplier, mShift);
+		byte[] name = mBytes[i];
+		if (name != null && name.length == len) {
+			int j = 0;
+			while (j < len && name[j] == bytes[off + j]) {
+				j++;
+			}
+			if (j == len) {
+				return (E) mConstants[i];
+			}
+		}
+		if (mLog != null && isFirst(hash)) {
+			mLog.log(INFO, mMsg, new String(bytes, off, len, Charsets.UTF_8));
+		}
+		return mUnknown;
+	}
+
+	/**
+	 * True if an unknown name with the hash code hasn't been logged yet and the maximum number of
+	 * logged names hasn't been reached. Names that have the same hash code as a logged name aren't
+	 * logged.
+	 */
+	private boolean isFirst(int hash) {
+		if (hash == 0) {
+			hash = 1; // 0 is an empty slot
+		}
+		synchronized (mLogged) {
+			int mask = mLogged.length - 1;
+			for (int i = hash & mask;; i = i + 1 & mask) {
+				if (mLogged[i] == hash) {
+					return false;
+				} else if (mLogged[i] == 0) {
+					if (mLoggedCount == MAX_LOGGED) {
+						return false;
+					}
+					mLogged[i] = hash;
+					mLoggedCount++;
+					return true;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get the constant with the next name in the JSON or the unknown constant if there isn't one.
+	 */
+	E next(JsonReader in) throws IOException {
+		return in instanceof ByteJsonReader ? ((ByteJsonReader) in).nextName(this)
+				: get(in.nextName());
+	}
+}
@@ -45,7 +45,7 @@ public class GeoCodedLocation {
     GeoCodedLocation(JsonReader in) throws IOException {
         in.beginObject();
         while (in.hasNext()) {
-            GeoCoding.Response.Key key = GeoCoding.Response.Key.get(in.nextName());
+            GeoCoding.Response.Key key = GeoCoding.Response.Key.next(in);
 
             switch (key) {
                 case UNKNOWN:
@@ -63,7 +63,7 @@ public class GeoCodedLocation {
                         if (in.nextName().equals("location")) {
                             in.beginObject();
                             while (in.hasNext()) {
-                                switch (Places.Response.Key.get(in.nextName())) {
+                                switch (Places.Response.Key.next(in)) {
                                     case lat:
                                         mLatitude = in.nextDouble();
                                         break;
@@ -87,7 +87,7 @@ public class GeoCodedLocation {
                         if (mTypes == null) {
                             mTypes = new ArrayList<String>();
                         }
-                        mTypes.add(in.nextString());
+                        mTypes.add(StringPool.intern(in.nextString()));
                     }
                     in.endArray();
                     break;
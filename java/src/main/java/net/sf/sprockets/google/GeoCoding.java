@@ -17,27 +17,25 @@
 
 package net.sf.sprockets.google;
 
-import com.google.common.base.Joiner;
 import com.google.common.base.Objects;
 import com.google.common.base.Strings;
 import com.google.common.collect.ObjectArrays;
 import com.google.common.io.Closeables;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.gson.stream.JsonReader;
-import net.sf.sprockets.Sprockets;
+import net.sf.sprockets.google.RetryPolicy.Attempts;
 import net.sf.sprockets.net.HttpClient;
 import net.sf.sprockets.util.logging.Loggers;
-import org.apache.commons.configuration.Configuration;
 
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.UnsupportedEncodingException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
 import java.net.URL;
-import java.net.URLConnection;
-import java.net.URLEncoder;
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.logging.Logger;
 
-import static java.util.logging.Level.INFO;
+import static net.sf.sprockets.google.Throttle.Api.GEOCODING;
 
 /**
  * Methods for calling <a href="https://developers.google.com/maps/documentation/geocoding/" target="_blank">Google GeoCoding API</a>
@@ -64,21 +62,86 @@ public class GeoCoding {
      */
     public static Response geocoding(Params params)
             throws IOException {
+        return geocoding(params.format(), GeoCodingCache.key(params));
+    }
+
+    /**
+     * Same as {@link #geocoding(Params)}, but runs in the background. The params are read before
+     * this method returns, so the instance can be re-used immediately.
+     *
+     * @since 2.0.0
+     */
+    public static ListenableFuture<Response> geocodingAsync(Params params) {
+        final String url = params.format();
+        final String key = GeoCodingCache.key(params);
+        return Calls.submit(new Callable<Response>() {
+            @Override
+            public Response call() throws IOException {
+                return geocoding(url, key);
+            }
+        });
+    }
 
-        JsonReader in = reader(params.format());
-        try {
-            return new Response(in);
-        } finally {
-            Closeables.close(in, true);
+    /**
+     * Get the locations for the request from the {@link GeoCodingCache} or the service.
+     *
+     * @param key
+     *            null if the cache is disabled
+     */
+    private static Response geocoding(String url, String key) throws IOException {
+        Response resp = GeoCodingCache.get(key);
+        if (resp == null) {
+            resp = geocoding(url);
+            GeoCodingCache.put(key, resp);
         }
+        return resp;
+    }
+
+    /**
+     * Get the locations for the request.
+     */
+    private static Response geocoding(final String url) throws IOException {
+        return SingleFlight.call(url, new Attempts<Response>() {
+            @Override
+            Response attempt() throws IOException {
+                JsonReader in = reader(url);
+                try {
+                    return geocoding(in);
+                } finally {
+                    Closeables.close(in, true);
+                }
+            }
+
+            @Override
+            Enum<?> status(Response resp) {
+                return resp.mStatus;
+            }
+
+            @Override
+            void retries(Response resp, int retries) {
+                resp.mRetries = retries;
+            }
+        });
+    }
+
+    /**
+     * Read the locations from a response. Also used to benchmark the parser without a connection.
+     */
+    static Response geocoding(JsonReader in) throws IOException {
+        return new Response(in);
     }
 
     /**
      * Get a reader for the URL.
      */
     private static JsonReader reader(String url) throws IOException {
-        URLConnection con = HttpClient.openConnection(new URL(url));
-        return new JsonReader(new InputStreamReader(con.getInputStream(), "UTF-8"));
+        Throttle.get(GEOCODING).acquire();
+        HttpURLConnection con = HttpClient.openConnection(new URL(url));
+        InputStream in = Metrics.getInputStream(GEOCODING, con);
+        if (in == null) {
+            throw new IOException("No response body, HTTP " + con.getResponseCode());
+        }
+        return ByteJsonReader.reader(in);
     }
 
     /**
@@ -92,12 +155,16 @@ public class GeoCoding {
      * </pre>
      */
     public static class Params {
-        private String mAddress;
-        private String mLatLng;
-        private String mBounds;
-        private String mLanguage;
-        private String mRegion;
-        private String[] mComponents;
+        String mAddress;
+        /** True if the location should be reverse geocoded. */
+        boolean mLatLng;
+        double mLat;
+        double mLng;
+        /** South, west, north, and east. */
+        double[] mBounds;
+        String mLanguage;
+        String mRegion;
+        String[] mComponents;
 
 
         /**
@@ -105,7 +172,7 @@ public class GeoCoding {
          */
         public Params address(String address) {
             mAddress = address;
-            mLatLng = null;
+            mLatLng = false;
             return this;
         }
 
@@ -113,7 +180,9 @@ public class GeoCoding {
          * sets the location which should be reverse geocoded. (removed any previously set address or latlng)
          */
         public Params latlng(double latitude, double longitude) {
-            mLatLng = String.format(Locale.US, "%f,%f", latitude, longitude);
+            mLatLng = true;
+            mLat = latitude;
+            mLng = longitude;
             mAddress = null;
             return this;
         }
@@ -122,7 +191,7 @@ public class GeoCoding {
          * Add Location (latitude/longitude values) as an origin.
          */
         public Params bounds(double south, double west, double north, double east) {
-            mBounds = String.format("%f|%f|%f|%f", south, west, north, east);
+            mBounds = new double[] { south, west, north, east };
             return this;
         }
 
@@ -169,62 +238,35 @@ public class GeoCoding {
             return this;
         }
 
-        /**
-         * Append the types param with pipe symbols between the values.
-         */
-        private static Joiner sPipes;
-
         /**
          * Get a URL formatted for the type of request.
          *
          * @since 1.0.0
          */
         public String format() {
-
-            final String baseURL = "http://maps.googleapis.com/maps/api/geocode/json?";
-            if (sPipes == null) {
-                sPipes = Joiner.on("%7C").skipNulls(); // URL encoded
+            if (mAddress == null && !mLatLng) {
+                throw new IllegalStateException("either address or latlng must be set");
+            }
+            UrlBuilder s = UrlBuilder.get("geocode/json?").sensor();
+            if (mAddress != null) {
+                s.param("address").encode(mAddress);
+            } else {
+                s.param("latlng").latLng(mLat, mLng);
             }
 
-            StringBuilder s = new StringBuilder(baseURL.length() + 256);
-            s.append(baseURL);
-            Configuration config = Sprockets.getConfig();
-//			String key = config.getString("google.api-key");
-//			checkState(!Strings.isNullOrEmpty(key), "google.api-key not set");
-//			s.append("key=").append(key);
-            boolean sensor = config.getBoolean("hardware.location");
-            s.append("&sensor=").append(sensor);
-
-            try {
-                if (mAddress != null) {
-                    s.append("&address=").append(URLEncoder.encode(mAddress, "UTF-8"));
-                } else if (mLatLng != null) {
-                    s.append("&latlng=").append(mLatLng);
-                } else {
-                    throw new IllegalStateException("either address or latlng must be set");
-                }
-
-                if (!Strings.isNullOrEmpty(mBounds)) {
-                    s.append("&bounds=").append(mBounds);
-                }
-
-                s.append("&language=").append(!Strings.isNullOrEmpty(mLanguage) ? mLanguage : Locale.getDefault());
-
-                if (!Strings.isNullOrEmpty(mRegion)) {
-                    s.append("&region=").append(mRegion);
-                }
+            if (mBounds != null) {
+                s.param("bounds").latLng(mBounds[0], mBounds[1]).append("%7C")
+                        .latLng(mBounds[2], mBounds[3]);
+            }
 
-                if (mComponents != null && mComponents.length > 0) {
-                    s.append("&components=");
-                    s.append(mComponents[0]);
-                    for (int i = 1; i < mComponents.length; i++) {
-                        s.append("%7C").append(mComponents[i]);
-                    }
-                }
+            s.param("language").language(mLanguage);
 
+            if (!Strings.isNullOrEmpty(mRegion)) {
+                s.param("region").append(mRegion);
+            }
 
-            } catch (UnsupportedEncodingException e) {
-                throw new RuntimeException("UTF-8 encoding isn't supported?!", e);
+            if (mComponents != null && mComponents.length > 0) {
+                s.param("components").join(mComponents, false);
             }
 
             return s.toString();
@@ -235,7 +277,9 @@ public class GeoCoding {
          */
         public Params clear() {
             mAddress = null;
-            mLatLng = null;
+            mLatLng = false;
+            mLat = 0.0;
+            mLng = 0.0;
             mBounds = null;
             mLanguage = null;
             mRegion = null;
@@ -246,7 +290,8 @@ public class GeoCoding {
 
         @Override
         public int hashCode() {
-            return Objects.hashCode(mAddress, mLatLng, mBounds, mLanguage, mRegion, Arrays.hashCode(mComponents));
+            return Objects.hashCode(mAddress, mLatLng, mLat, mLng, Arrays.hashCode(mBounds),
+                    mLanguage, mRegion, Arrays.hashCode(mComponents));
         }
 
         @Override
@@ -257,8 +302,8 @@ public class GeoCoding {
                 } else if (obj instanceof Params) {
                     Params o = (Params) obj;
                     return Objects.equal(mAddress, o.mAddress)
-                            && Objects.equal(mLatLng, o.mLatLng)
-                            && Objects.equal(mBounds, o.mBounds)
+                            && mLatLng == o.mLatLng && mLat == o.mLat && mLng == o.mLng
+                            && Arrays.equals(mBounds, o.mBounds)
                             && Objects.equal(mLanguage, o.mLanguage)
                             && Objects.equal(mRegion, o.mRegion)
                             && Objects.equal(mComponents, o.mComponents);
@@ -269,8 +314,10 @@ public class GeoCoding {
 
         @Override
         public String toString() {
-            return Objects.toStringHelper(this).add("address", mAddress).add("latlng", mLatLng)
-                    .add("bound", mBounds).add("language", mLanguage).add("region", mRegion)
+            return Objects.toStringHelper(this).add("address", mAddress)
+                    .add("latlng", mLatLng ? mLat + "," + mLng : null)
+                    .add("bound", mBounds != null ? Arrays.toString(mBounds) : null)
+                    .add("language", mLanguage).add("region", mRegion)
                     .add("components", mComponents != null ? Arrays.toString(mComponents) : null)
                     .omitNullValues().toString();
         }
@@ -298,19 +345,17 @@ public class GeoCoding {
              */
             UNKNOWN;
 
+            private static final EnumLookup<Status> sLookup = new EnumLookup<Status>(Status.class,
+                    UNKNOWN, sLog, "Unknown status code: {0}.  "
+                            + "If this hasn''t already been reported, please create a new issue at "
+                            + "https://github.com/salento/sprockets/issues");
+
             /**
-             * Get the matching Status or {@link #UNKNOWN} if one can't be found.
+             * Get the matching Status or {@link #UNKNOWN} if one can't be found. Unknown values are only
+             * logged the first time that they are found.
              */
             private static Status get(String status) {
-                try {
-                    return Status.valueOf(status);
-                } catch (IllegalArgumentException e) {
-                    String msg = "Unknown status code: {0}.  "
-                            + "If this hasn''t already been reported, please create a new issue at "
-                            + "https://github.com/salento/sprockets/issues";
-                    sLog.log(INFO, msg, status);
-                    return UNKNOWN;
-                }
+                return sLookup.get(status);
             }
         }
 
@@ -327,25 +372,31 @@ public class GeoCoding {
              */
             UNKNOWN;
 
+            private static final EnumLookup<Key> sLookup = new EnumLookup<Key>(Key.class,
+                    UNKNOWN, sLog, "Unknown response key: {0}.  "
+                            + "If this hasn''t already been reported, please create a new issue at "
+                            + "https://github.com/salento/sprockets/issues");
+
             /**
-             * Get the matching Key or {@link #UNKNOWN} if one can't be found.
+             * Get the matching Key or {@link #UNKNOWN} if one can't be found. Unknown values are only
+             * logged the first time that they are found.
              */
             static Key get(String key) {
-                try {
-                    return Key.valueOf(key);
-                } catch (IllegalArgumentException e) {
-                    String msg = "Unknown response key: {0}.  "
-                            + "If this hasn''t already been reported, please create a new issue at "
-                            + "https://github.com/salento/sprockets/issues";
-                    sLog.log(INFO, msg, key);
-                    return UNKNOWN;
-                }
+                return sLookup.get(key);
+            }
+
+            /**
+             * Read the next name as a Key or {@link #UNKNOWN} if one can't be found.
+             */
+            static Key next(JsonReader in) throws IOException {
+                return sLookup.next(in);
             }
         }
 
         Status mStatus;
         String mErrorMessage;
         List<GeoCodedLocation> mResult;
+        int mRetries;
 
         /**
          * Set the {@link Status} from the string value.
@@ -363,7 +414,7 @@ public class GeoCoding {
 
             in.beginObject();
             while (in.hasNext()) {
-                switch (Key.get(in.nextName())) {
+                switch (Key.next(in)) {
                     case status:
                         status(in.nextString());
                         break;
@@ -399,6 +450,16 @@ public class GeoCoding {
             return Collections.unmodifiableList(mResult);
         }
 
+        /**
+         * Number of times that the request was sent again, according to the
+         * {@link RetryPolicy#getDefault() RetryPolicy}, before this response was received.
+         *
+         * @since 2.0.0
+         */
+        public int getRetries() {
+            return mRetries;
+        }
+
     }
 
 
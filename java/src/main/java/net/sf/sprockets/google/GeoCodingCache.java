@@ -0,0 +1,199 @@
+/*
+ * Copyright 2013 pushbit <pushbit@gmail.com>
+ *
+ * This file is part of Sprockets.
+ *
+ * Sprockets is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Sprockets is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Sprockets.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.sf.sprockets.google;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+import net.sf.sprockets.Settings;
+import net.sf.sprockets.Sprockets;
+import net.sf.sprockets.google.GeoCoding.Params;
+import net.sf.sprockets.google.GeoCoding.Response;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+/**
+ * Keeps the responses from {@link GeoCoding#geocoding(Params) GeoCoding.geocoding} so that
+ * repeated requests for the same address or area don't need to be sent to the Google GeoCoding
+ * API service. The cache is disabled by default and can be enabled with the
+ * {@code google.geocoding.cache} {@link Sprockets library settings}. The cache is replaced with
+ * an empty one when those settings are changed and it is cleared when the {@code google.base-url}
+ * or {@code google.api-key} setting is changed.
+ * <p>
+ * Addresses are compared without differences in case and whitespace. Locations are compared by
+ * the {@link GeoHash geohash} grid cell that they are in, with {@code reverse-precision}
+ * characters, so that all locations in a cell share the response of the first location that was
+ * requested. The default precision of 8 has cells of about 38 x 19 metres at the equator, which
+ * are smaller further from the equator.
+ * </p>
+ *
+ * @since 2.0.0
+ */
+public class GeoCodingCache {
+	/** Null if the cache is disabled. */
+	private static volatile Cache<String, Response> sCache;
+	private static volatile int sPrecision;
+	/** Hits, misses, and evictions of caches that have been replaced. */
+	private static CacheStats sStats = new CacheStats(0L, 0L, 0L, 0L, 0L, 0L);
+	static {
+		Settings settings = Sprockets.getSettings();
+		sPrecision = settings.getGeoCodingCachePrecision();
+		sCache = build(settings);
+		Sprockets.addListener(new Sprockets.Listener() {
+			@Override
+			public void onSettingsChanged(Settings old, Settings settings) {
+				if (settings.isGeoCodingCacheChanged(old)) {
+					replace(settings);
+				} else if (!settings.getBaseUrl().equals(old.getBaseUrl())
+						|| !settings.getApiKey().equals(old.getApiKey())) {
+					clear(); // responses may be different from another server or account
+				}
+			}
+		});
+	}
+
+	private GeoCodingCache() {
+	}
+
+	/**
+	 * Create a cache according to the settings.
+	 *
+	 * @return null if the cache is disabled
+	 */
+	private static Cache<String, Response> build(Settings settings) {
+		int entries = settings.getGeoCodingCacheMaxEntries();
+		long ttl = settings.getGeoCodingCacheTtl();
+		if (entries <= 0) {
+			return null;
+		}
+		CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().recordStats()
+				.maximumSize(entries);
+		if (ttl > 0) {
+			builder.expireAfterWrite(ttl, SECONDS);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Replace the cache with an empty one that is created according to the new settings.
+	 */
+	private static synchronized void replace(Settings settings) {
+		Cache<String, Response> old = sCache;
+		sPrecision = settings.getGeoCodingCachePrecision(); // geohash length keeps keys apart
+		sCache = build(settings);
+		if (old != null) {
+			sStats = sStats.plus(old.stats());
+			old.invalidateAll();
+		}
+	}
+
+	/**
+	 * Get the cache key for the request.
+	 *
+	 * @return null if the cache is disabled
+	 */
+	static String key(Params params) {
+		if (sCache == null) {
+			return null;
+		}
+		StringBuilder s = new StringBuilder(64);
+		if (params.mAddress != null) {
+			s.append("a|").append(CharMatcher.WHITESPACE.trimAndCollapseFrom(params.mAddress, ' ')
+					.toLowerCase(Locale.ENGLISH));
+		} else if (params.mLatLng) {
+			s.append("r|").append(GeoHash.encode(params.mLat, params.mLng, sPrecision));
+		} else {
+			return null;
+		}
+		s.append('|').append(!Strings.isNullOrEmpty(params.mLanguage) ? params.mLanguage
+				: Locale.getDefault());
+		s.append('|').append(Strings.nullToEmpty(params.mRegion).toLowerCase(Locale.ENGLISH));
+		s.append('|');
+		if (params.mBounds != null) {
+			for (double bound : params.mBounds) {
+				s.append(bound).append(',');
+			}
+		}
+		if (params.mComponents != null) {
+			String[] components = params.mComponents.clone();
+			Arrays.sort(components);
+			for (String component : components) {
+				s.append('|').append(component);
+			}
+		}
+		return s.toString();
+	}
+
+	/**
+	 * Get the cached response for the key.
+	 *
+	 * @param key
+	 *            null if the cache is disabled
+	 * @return null if the response isn't cached
+	 */
+	static Response get(String key) {
+		Cache<String, Response> cache = sCache;
+		return key != null && cache != null ? cache.getIfPresent(key) : null;
+	}
+
+	/**
+	 * Cache the response if it was successful.
+	 *
+	 * @param key
+	 *            null if the cache is disabled
+	 */
+	static void put(String key, Response response) {
+		Cache<String, Response> cache = sCache;
+		if (key != null && cache != null && response.getStatus() == Response.Status.OK) {
+			cache.put(key, response);
+		}
+	}
+
+	/**
+	 * Remove all responses from the cache.
+	 */
+	public static void clear() {
+		Cache<String, Response> cache = sCache;
+		if (cache != null) {
+			cache.invalidateAll();
+		}
+	}
+
+	/**
+	 * Number of responses in the cache.
+	 */
+	public static long size() {
+		Cache<String, Response> cache = sCache;
+		return cache != null ? cache.size() : 0L;
+	}
+
+	/**
+	 * Get the number of cache hits, misses, and evictions, including those of caches that were
+	 * replaced after the settings changed.
+	 */
+	public static synchronized CacheStats getStats() {
+		Cache<String, Response> cache = sCache;
+		return cache != null ? sStats.plus(cache.stats()) : sStats;
+	}
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2013 pushbit <pushbit@gmail.com>
+ *
+ * This file is part of Sprockets.
+ *
+ * Sprockets is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Sprockets is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Sprockets.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.sf.sprockets.google;
+
+/**
+ * Encodes latitude and longitude as <a href="http://en.wikipedia.org/wiki/Geohash"
+ * target="_blank">geohashes</a>, which are the same for all locations within a grid cell. Each
+ * character of a geohash divides the cell of the previous characters into 32 smaller cells.
+ */
+class GeoHash {
+	private static final char[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+	/** Maximum number of characters, 60 bits. */
+	static final int MAX_PRECISION = 12;
+
+	private GeoHash() {
+	}
+
+	/**
+	 * Get the geohash of the location with the number of characters.
+	 */
+	static String encode(double latitude, double longitude, int precision) {
+		precision = Math.max(1, Math.min(precision, MAX_PRECISION));
+		long bits = bits(latitude, longitude, precision * 5);
+		char[] hash = new char[precision];
+		for (int i = precision - 1; i >= 0; i--) {
+			hash[i] = BASE32[(int) (bits & 31)];
+			bits >>>= 5;
+		}
+		return new String(hash);
+	}
+
+	/**
+	 * Get the geohash of the location as a number with the number of bits (at most 62), where the
+	 * even bits (from the left) divide the longitude and the odd bits divide the latitude.
+	 */
+	static long bits(double latitude, double longitude, int count) {
+		double minLat = -90.0, maxLat = 90.0;
+		double minLng = -180.0, maxLng = 180.0;
+		long bits = 0L;
+		for (int i = 0; i < count; i++) {
+			bits <<= 1;
+			if ((i & 1) == 0) {
+				double mid = (minLng + maxLng) / 2;
+				if (longitude >= mid) {
+					bits |= 1;
+					minLng = mid;
+				} else {
+					maxLng = mid;
+				}
+			} else {
+				double mid = (minLat + maxLat) / 2;
+				if (latitude >= mid) {
+					bits |= 1;
+					minLat = mid;
+				} else {
+					maxLat = mid;
+				}
+			}
+		}
+		return bits;
+	}
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2013 pushbit <pushbit@gmail.com>
+ *
+ * This file is part of Sprockets.
+ *
+ * Sprockets is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Sprockets is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Sprockets.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.sf.sprockets.google;
+
+/**
+ * Measures distances on a sphere with the Earth's mean radius.
+ */
+class GreatCircle {
+	/** Mean radius of the Earth in metres. */
+	static final double EARTH_RADIUS = 6371009.0;
+
+	private GreatCircle() {
+	}
+
+	/**
+	 * Get the great-circle distance in metres between the locations, using the haversine formula.
+	 */
+	static double distance(double lat1, double lng1, double lat2, double lng2) {
+		double sinLat = Math.sin(Math.toRadians(lat2 - lat1) / 2);
+		double sinLng = Math.sin(Math.toRadians(lng2 - lng1) / 2);
+		double a = sinLat * sinLat + Math.cos(Math.toRadians(lat1))
+				* Math.cos(Math.toRadians(lat2)) * sinLng * sinLng;
+		return 2 * EARTH_RADIUS * Math.asin(Math.min(1.0, Math.sqrt(a)));
+	}
+}
@@ -0,0 +1,557 @@
+/*
+ * Copyright 2013 pushbit <pushbit@gmail.com>
+ *
+ * This file is part of Sprockets.
+ *
+ * Sprockets is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Sprockets is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Sprockets.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.sf.sprockets.google;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.logging.Level.WARNING;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import net.sf.sprockets.Sprockets;
+import net.sf.sprockets.google.Throttle.Api;
+import net.sf.sprockets.net.HttpClient;
+import net.sf.sprockets.net.HttpClient.Timing;
+import net.sf.sprockets.util.Histogram;
+import net.sf.sprockets.util.logging.Loggers;
+
+import com.google.common.base.Objects;
+
+/**
+ * Reports the timings, statuses, and sizes of the requests that are sent to the Google APIs.
+ * {@link #addListener(Listener) Listeners} are notified after each attempt of a request that was
+ * sent to a service, including attempts that failed with an exception. Responses that are returned
+ * from a cache are not reported.
+ * <p>
+ * Built-in statistics for each API, with latency histograms, can be turned on with
+ * {@link #registerMBeans()} or the {@code google.metrics.jmx} library setting. They are available
+ * from {@link #getStats(Api)} and as JMX MXBeans named
+ * {@code net.sf.sprockets:type=Metrics,api=[API]}.
+ * </p>
+ *
+ * @since 2.0.0
+ */
+public class Metrics {
+	private static final Logger sLog = Loggers.get(Metrics.class);
+	private static final List<Listener> sListeners = new CopyOnWriteArrayList<Listener>();
+	/** Attempt that is in progress on the thread. */
+	private static final ThreadLocal<Request> sCurrent = new ThreadLocal<Request>();
+	/** Null until the MBeans are registered. */
+	private static volatile Map<Api, Stats> sStats;
+	static {
+		if (Sprockets.getConfig().getBoolean("google.metrics.jmx", false)) {
+			registerMBeans();
+		}
+	}
+
+	private Metrics() {
+	}
+
+	/**
+	 * Notify the listener after each request attempt. Listeners are called on the thread that
+	 * sent the request and should return quickly.
+	 */
+	public static void addListener(Listener listener) {
+		sListeners.add(checkNotNull(listener));
+	}
+
+	/**
+	 * Stop notifying the listener.
+	 */
+	public static void removeListener(Listener listener) {
+		sListeners.remove(listener);
+	}
+
+	/**
+	 * Start recording statistics for each API and make them available as JMX MXBeans. Does
+	 * nothing if they have already been registered.
+	 */
+	public static synchronized void registerMBeans() {
+		if (sStats != null) {
+			return;
+		}
+		Map<Api, Stats> stats = new EnumMap<Api, Stats>(Api.class);
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		for (Api api : Api.values()) {
+			Stats apiStats = new Stats();
+			stats.put(api, apiStats);
+			try {
+				ObjectName name = new ObjectName("net.sf.sprockets:type=Metrics,api=" + api);
+				if (!server.isRegistered(name)) {
+					server.registerMBean(apiStats, name);
+				}
+			} catch (JMException e) {
+				sLog.log(WARNING, "Couldn't register metrics MBean for " + api, e);
+			}
+		}
+		sStats = stats;
+		addListener(new Listener() {
+			@Override
+			public void onRequest(Request request) {
+				sStats.get(request.mApi).add(request);
+			}
+		});
+	}
+
+	/**
+	 * Get the statistics that have been recorded for the API.
+	 *
+	 * @return null if {@link #registerMBeans()} hasn't been called
+	 */
+	public static StatsMXBean getStats(Api api) {
+		Map<Api, Stats> stats = sStats;
+		return stats != null ? stats.get(api) : null;
+	}
+
+	/**
+	 * Start recording an attempt on the current thread.
+	 *
+	 * @param attempt
+	 *            1 for the first attempt
+	 * @return null if there aren't any listeners
+	 */
+	static Request begin(int attempt) {
+		if (sListeners.isEmpty()) {
+			return null;
+		}
+		Request request = new Request(attempt, sCurrent.get());
+		sCurrent.set(request);
+		return request;
+	}
+
+	/**
+	 * Send the request and get the response body, recording the connection and timings for the
+	 * attempt in progress on the current thread.
+	 *
+	 * @see HttpClient#getInputStream(HttpURLConnection)
+	 */
+	static InputStream getInputStream(Api api, HttpURLConnection con) throws IOException {
+		Request request = sListeners.isEmpty() ? null : sCurrent.get();
+		if (request == null) {
+			return HttpClient.getInputStream(con);
+		}
+		request.mApi = api;
+		request.mPath = con.getURL().getPath();
+		InputStream in = HttpClient.getInputStream(con);
+		request.mIn = in;
+		request.mHttpStatus = con.getResponseCode();
+		return in;
+	}
+
+	/**
+	 * Finish recording the attempt and notify the listeners if a request was sent.
+	 *
+	 * @param request
+	 *            may be null
+	 * @param status
+	 *            null if the attempt didn't return a response
+	 * @param e
+	 *            null if the attempt didn't fail with an exception
+	 */
+	static void end(Request request, Enum<?> status, IOException e) {
+		if (request == null) {
+			return;
+		}
+		if (request.mOuter != null) {
+			sCurrent.set(request.mOuter);
+		} else {
+			sCurrent.remove();
+		}
+		if (request.mApi != null) {
+			request.end(status, e);
+			for (Listener listener : sListeners) {
+				try {
+					listener.onRequest(request);
+				} catch (RuntimeException ex) {
+					sLog.log(WARNING, "Metrics listener failed", ex);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Receives the details of each request attempt.
+	 */
+	public interface Listener {
+		/**
+		 * The request attempt has finished. For photos and Street View images, the response body
+		 * may still be open and only the time taken until the response headers were received is
+		 * known.
+		 */
+		void onRequest(Request request);
+	}
+
+	/**
+	 * Timings, statuses, and sizes of a request attempt. Times are in nanoseconds.
+	 */
+	public static class Request {
+		private final long mStart = System.nanoTime();
+		private final int mAttempt;
+		/** Attempt that was in progress on the thread when this one started. */
+		private final Request mOuter;
+		/** Null until the request is sent. */
+		private Api mApi;
+		private String mPath;
+		private InputStream mIn;
+		private int mHttpStatus = -1;
+		private String mStatus;
+		private IOException mException;
+		private long mTotal;
+		private long mConnect;
+		private long mFirstByte;
+		private long mDownload;
+		private long mParse;
+		private long mReceived;
+		private long mDecoded;
+		/** True if the response body was closed before the attempt ended. */
+		private boolean mRead;
+
+		private Request(int attempt, Request outer) {
+			mAttempt = attempt;
+			mOuter = outer;
+		}
+
+		private void end(Enum<?> status, IOException e) {
+			mTotal = System.nanoTime() - mStart;
+			mStatus = status != null ? status.name() : null;
+			mException = e;
+			Timing timing = mIn != null ? HttpClient.getTiming(mIn) : null;
+			if (timing != null) {
+				mConnect = timing.getConnectNanos();
+				mFirstByte = timing.getFirstByteNanos();
+				mDownload = timing.getReadNanos();
+				mRead = timing.isClosed();
+				if (mRead) {
+					mParse = Math.max(0L, timing.getOpenNanos() - timing.getReadNanos());
+				}
+				mReceived = timing.getBytesReceived();
+				mDecoded = timing.getBytesDecoded();
+			}
+			mIn = null;
+		}
+
+		/**
+		 * API that the request was sent to.
+		 */
+		public Api getApi() {
+			return mApi;
+		}
+
+		/**
+		 * Path of the request URL, without the query parameters.
+		 */
+		public String getPath() {
+			return mPath;
+		}
+
+		/**
+		 * 1 for the first attempt of the request, 2 for the first retry, and so on.
+		 */
+		public int getAttempt() {
+			return mAttempt;
+		}
+
+		/**
+		 * HTTP response code or -1 if a response wasn't received.
+		 */
+		public int getHttpStatus() {
+			return mHttpStatus;
+		}
+
+		/**
+		 * Name of the response status or null if a response wasn't read.
+		 */
+		public String getStatus() {
+			return mStatus;
+		}
+
+		/**
+		 * Exception that the attempt failed with or null if it didn't fail with an exception.
+		 */
+		public IOException getException() {
+			return mException;
+		}
+
+		/**
+		 * Time from the start to the end of the attempt, including any time waiting for the
+		 * {@link Throttle}.
+		 */
+		public long getTotalNanos() {
+			return mTotal;
+		}
+
+		/**
+		 * Time taken to connect, including looking up the host address and the TLS handshake.
+		 * Close to 0 when a pooled connection is re-used.
+		 */
+		public long getConnectNanos() {
+			return mConnect;
+		}
+
+		/**
+		 * Time from when the connection was made until the response headers were received.
+		 */
+		public long getFirstByteNanos() {
+			return mFirstByte;
+		}
+
+		/**
+		 * Time spent reading the response body from the network and decompressing it.
+		 */
+		public long getDownloadNanos() {
+			return mDownload;
+		}
+
+		/**
+		 * Time spent parsing the response body between reads. 0 if the body wasn't parsed before
+		 * the attempt ended.
+		 */
+		public long getParseNanos() {
+			return mParse;
+		}
+
+		/**
+		 * Number of response body bytes that were read from the network, before they were
+		 * decompressed.
+		 */
+		public long getBytesReceived() {
+			return mReceived;
+		}
+
+		/**
+		 * Number of response body bytes after they were decompressed.
+		 */
+		public long getBytesDecoded() {
+			return mDecoded;
+		}
+
+		@Override
+		public String toString() {
+			return Objects.toStringHelper(this).add("api", mApi).add("path", mPath)
+					.add("attempt", mAttempt).add("httpStatus", mHttpStatus)
+					.add("status", mStatus).add("exception", mException)
+					.add("totalNanos", mTotal).add("connectNanos", mConnect)
+					.add("firstByteNanos", mFirstByte).add("downloadNanos", mDownload)
+					.add("parseNanos", mParse).add("bytesReceived", mReceived)
+					.add("bytesDecoded", mDecoded).omitNullValues().toString();
+		}
+	}
+
+	/**
+	 * Statistics of the requests that have been sent to an API since it was registered or
+	 * {@link #reset() reset}. Times are in microseconds.
+	 */
+	public interface StatsMXBean {
+		/**
+		 * Number of request attempts.
+		 */
+		long getRequests();
+
+		/**
+		 * Number of attempts that failed with an exception.
+		 */
+		long getExceptions();
+
+		long getBytesReceived();
+
+		long getBytesDecoded();
+
+		/**
+		 * Number of responses for each response status.
+		 */
+		Map<String, Long> getStatuses();
+
+		/**
+		 * Number of responses for each HTTP response code.
+		 */
+		Map<String, Long> getHttpStatuses();
+
+		Histogram.Snapshot getTotalMicros();
+
+		Histogram.Snapshot getConnectMicros();
+
+		Histogram.Snapshot getFirstByteMicros();
+
+		Histogram.Snapshot getDownloadMicros();
+
+		Histogram.Snapshot getParseMicros();
+
+		/**
+		 * Start counting again from 0.
+		 */
+		void reset();
+	}
+
+	/**
+	 * Statistics for one API. Histograms are replaced when reset so that recording never waits.
+	 */
+	private static class Stats implements StatsMXBean {
+		private final AtomicLong mRequests = new AtomicLong();
+		private final AtomicLong mExceptions = new AtomicLong();
+		private final AtomicLong mReceived = new AtomicLong();
+		private final AtomicLong mDecoded = new AtomicLong();
+		private volatile ConcurrentMap<String, AtomicLong> mStatuses;
+		private volatile ConcurrentMap<String, AtomicLong> mHttpStatuses;
+		private volatile Histogram mTotal;
+		private volatile Histogram mConnect;
+		private volatile Histogram mFirstByte;
+		private volatile Histogram mDownload;
+		private volatile Histogram mParse;
+
+		private Stats() {
+			reset();
+		}
+
+		private void add(Request request) {
+			mRequests.incrementAndGet();
+			if (request.mException != null) {
+				mExceptions.incrementAndGet();
+			}
+			mReceived.addAndGet(request.mReceived);
+			mDecoded.addAndGet(request.mDecoded);
+			if (request.mStatus != null) {
+				increment(mStatuses, request.mStatus);
+			}
+			if (request.mHttpStatus >= 0) {
+				increment(mHttpStatuses, String.valueOf(request.mHttpStatus));
+			}
+			mTotal.record(NANOSECONDS.toMicros(request.mTotal));
+			if (request.mHttpStatus >= 0) {
+				mConnect.record(NANOSECONDS.toMicros(request.mConnect));
+				mFirstByte.record(NANOSECONDS.toMicros(request.mFirstByte));
+			}
+			if (request.mRead) {
+				mDownload.record(NANOSECONDS.toMicros(request.mDownload));
+				mParse.record(NANOSECONDS.toMicros(request.mParse));
+			}
+		}
+
+		private static void increment(ConcurrentMap<String, AtomicLong> counts, String key) {
+			AtomicLong count = counts.get(key);
+			if (count == null) {
+				AtomicLong existing = counts.putIfAbsent(key, count = new AtomicLong());
+				if (existing != null) {
+					count = existing;
+				}
+			}
+			count.incrementAndGet();
+		}
+
+		private static Map<String, Long> copy(Map<String, AtomicLong> counts) {
+			Map<String, Long> copy = new TreeMap<String, Long>();
+			for (Entry<String, AtomicLong> entry : counts.entrySet()) {
+				copy.put(entry.getKey(), entry.getValue().get());
+			}
+			return copy;
+		}
+
+		@Override
+		public long getRequests() {
+			return mRequests.get();
+		}
+
+		@Override
+		public long getExceptions() {
+			return mExceptions.get();
+		}
+
+		@Override
+		public long getBytesReceived() {
+			return mReceived.get();
+		}
+
+		@Override
+		public long getBytesDecoded() {
+			return mDecoded.get();
+		}
+
+		@Override
+		public Map<String, Long> getStatuses() {
+			return copy(mStatuses);
+		}
+
+		@Override
+		public Map<String, Long> getHttpStatuses() {
+			return copy(mHttpStatuses);
+		}
+
+		@Override
+		public Histogram.Snapshot getTotalMicros() {
+			return mTotal.getSnapshot();
+		}
+
+		@Override
+		public Histogram.Snapshot getConnectMicros() {
+			return mConnect.getSnapshot();
+		}
+
+		@Override
+		public Histogram.Snapshot getFirstByteMicros() {
+			return mFirstByte.getSnapshot();
+		}
+
+		@Override
+		public Histogram.Snapshot getDownloadMicros() {
+			return mDownload.getSnapshot();
+		}
+
+		@Override
+		public Histogram.Snapshot getParseMicros() {
+			return mParse.getSnapshot();
+		}
+
+		@Override
+		public void reset() {
+			mStatuses = new ConcurrentHashMap<String, AtomicLong>();
+			mHttpStatuses = new ConcurrentHashMap<String, AtomicLong>();
+			mTotal = new Histogram();
+			mConnect = new Histogram();
+			mFirstByte = new Histogram();
+			mDownload = new Histogram();
+			mParse = new Histogram();
+			mRequests.set(0L);
+			mExceptions.set(0L);
+			mReceived.set(0L);
+			mDecoded.set(0L);
+		}
+
+		@Override
+		public String toString() {
+			return Objects.toStringHelper(this).add("requests", mRequests)
+					.add("exceptions", mExceptions).add("statuses", getStatuses())
+					.add("totalMicros", mTotal).toString();
+		}
+	}
+}
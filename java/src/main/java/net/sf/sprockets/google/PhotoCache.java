@@ -0,0 +1,395 @@
+/*
+ * Copyright 2013 pushbit <pushbit@gmail.com>
+ *
+ * This file is part of Sprockets.
+ *
+ * Sprockets is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Sprockets is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Sprockets.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.sf.sprockets.google;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.logging.Level.WARNING;
+import static net.sf.sprockets.google.Places.Response.Status.NOT_MODIFIED;
+import static net.sf.sprockets.google.Places.Response.Status.OK;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import net.sf.sprockets.Settings;
+import net.sf.sprockets.Sprockets;
+import net.sf.sprockets.google.Places.Params;
+import net.sf.sprockets.google.Places.PhotoResponse;
+import net.sf.sprockets.google.Places.Response;
+import net.sf.sprockets.util.logging.Loggers;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.cache.CacheStats;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Closeables;
+
+/**
+ * Stores the photos from {@link Places#photo(Params) Places.photo} on disk so that repeated
+ * requests for the same photo don't need to download it again. The cache is disabled by default
+ * and can be enabled by setting a {@code google.places.photo-cache.dir} in the
+ * {@link Sprockets library settings}. Changes to the settings are used for later requests.
+ * <p>
+ * Photos are identified by their reference and maximum width and height. After
+ * {@code max-age} seconds, a cached photo is revalidated with its ETag and only downloaded
+ * again if it has changed. When the cache is larger than {@code max-bytes}, the least recently
+ * used photos are deleted. Cached photos are streamed directly from their file.
+ * </p>
+ * <p>
+ * Requests that set their own {@link Params#etag(String) ETag} are not cached.
+ * </p>
+ * 
+ * @since 2.0.0
+ */
+public class PhotoCache {
+	private static final Logger sLog = Loggers.get(PhotoCache.class);
+	/** Start of each cache file. */
+	private static final int MAGIC = 0x53504331; // SPC1
+	/** Position of the last validation time in a cache file. */
+	private static final int VALIDATED_POS = 4;
+	private static final String SUFFIX = ".photo";
+	/** Null if the cache is disabled. */
+	private static volatile File sDir;
+	private static volatile long sMaxBytes;
+	private static volatile long sMaxAge;
+	/** Approximate total size of the cache files. */
+	private static final AtomicLong sBytes = new AtomicLong();
+	private static final AtomicLong sHits = new AtomicLong();
+	private static final AtomicLong sMisses = new AtomicLong();
+	private static final AtomicLong sRevalidations = new AtomicLong();
+	private static final AtomicLong sEvictions = new AtomicLong();
+	static {
+		configure(Sprockets.getSettings());
+		Sprockets.addListener(new Sprockets.Listener() {
+			@Override
+			public void onSettingsChanged(Settings old, Settings settings) {
+				if (settings.isPhotoCacheChanged(old)) {
+					configure(settings);
+				}
+			}
+		});
+	}
+
+	private PhotoCache() {
+	}
+
+	/**
+	 * Use the directory and limits in the settings. Photos in a previous directory are kept.
+	 */
+	private static synchronized void configure(Settings settings) {
+		String dir = settings.getPhotoCacheDir();
+		File file = null;
+		if (!dir.isEmpty()) {
+			file = new File(dir);
+			if (!file.isDirectory() && !file.mkdirs()) {
+				sLog.log(WARNING, "Can''t create photo-cache.dir {0}, photos won''t be cached", dir);
+				file = null;
+			}
+		}
+		sMaxBytes = settings.getPhotoCacheMaxBytes();
+		sMaxAge = SECONDS.toMillis(settings.getPhotoCacheMaxAge());
+		sDir = file;
+		long bytes = 0L;
+		if (file != null) {
+			for (File photo : files(file)) {
+				bytes += photo.length();
+			}
+		}
+		sBytes.set(bytes);
+		if (bytes > sMaxBytes) {
+			evict();
+		}
+	}
+
+	/**
+	 * True if photos are being cached.
+	 */
+	static boolean isEnabled() {
+		return sDir != null;
+	}
+
+	/**
+	 * Get the cache key for the photo request. Only the reference and size identify the photo, so
+	 * the key doesn't change with the API key or service URL.
+	 */
+	static String key(Params params) {
+		return params.mReference + '|' + params.mMaxWidth + '|' + params.mMaxHeight;
+	}
+
+	/**
+	 * Get the photo from the cache, revalidating or downloading it if necessary.
+	 * 
+	 * @param key
+	 *            from {@link #key(Params)}
+	 */
+	static Response<InputStream> photo(String url, String key) throws IOException {
+		File dir = sDir;
+		if (dir == null) { // disabled since isEnabled()
+			return Places.download(url, null);
+		}
+		File file = new File(dir, Hashing.sha1().hashString(key, Charsets.UTF_8) + SUFFIX);
+		Cached cached = open(file);
+		if (cached != null && System.currentTimeMillis() - cached.mValidated < sMaxAge) {
+			sHits.incrementAndGet();
+			return cached.mResponse;
+		}
+		/* keep a stale photo open while it's revalidated, so it can be read if it's evicted */
+		boolean returned = false;
+		try {
+			PhotoResponse resp = Places.download(url, cached != null ? cached.mResponse.mEtag
+					: null);
+			if (resp.mStatus == NOT_MODIFIED && cached != null) {
+				validated(file, System.currentTimeMillis());
+				sHits.incrementAndGet();
+				sRevalidations.incrementAndGet();
+				returned = true;
+				return cached.mResponse;
+			} else if (resp.mStatus == OK) {
+				sMisses.incrementAndGet();
+				return write(dir, file, resp);
+			}
+			return resp;
+		} finally {
+			if (cached != null && !returned) {
+				Closeables.close(cached.mResponse.mResult, true);
+			}
+		}
+	}
+
+	/**
+	 * Open the cached photo.
+	 * 
+	 * @return null if the photo isn't cached
+	 */
+	private static Cached open(File file) throws IOException {
+		RandomAccessFile in;
+		try {
+			in = new RandomAccessFile(file, "r");
+		} catch (IOException e) {
+			return null; // not cached or evicted
+		}
+		boolean opened = false;
+		try {
+			Cached cached = read(in);
+			if (cached != null) {
+				file.setLastModified(System.currentTimeMillis()); // recently used
+				opened = true;
+			}
+			return cached;
+		} catch (IOException e) {
+			sLog.log(WARNING, "Invalid cached photo, it will be downloaded again: " + file, e);
+			return null;
+		} finally {
+			if (!opened) {
+				Closeables.close(in, true);
+			}
+		}
+	}
+
+	/**
+	 * Read the header of a cache file and leave the file at the start of the photo, which is
+	 * streamed from the response.
+	 * 
+	 * @return null if it isn't a cache file
+	 */
+	private static Cached read(RandomAccessFile in) throws IOException {
+		if (in.readInt() != MAGIC) {
+			return null;
+		}
+		long validated = in.readLong();
+		Response<InputStream> resp = new Response<InputStream>();
+		resp.mStatus = OK;
+		resp.mEtag = Strings.emptyToNull(in.readUTF());
+		FileChannel channel = in.getChannel();
+		channel.position(in.getFilePointer());
+		resp.mResult = Channels.newInputStream(channel); // closes the file when closed
+		return new Cached(resp, validated);
+	}
+
+	/**
+	 * Set the time that the photo was last validated. Nothing is changed if the photo was evicted.
+	 */
+	private static void validated(File file, long time) throws IOException {
+		if (!file.isFile()) {
+			return;
+		}
+		RandomAccessFile out = null;
+		boolean created = false;
+		try {
+			out = new RandomAccessFile(file, "rw");
+			if (out.length() > VALIDATED_POS + 8) {
+				out.seek(VALIDATED_POS);
+				out.writeLong(time);
+			} else {
+				created = out.length() == 0; // evicted after it was checked
+			}
+		} catch (IOException e) {
+			sLog.log(WARNING, "Can't update cached photo: " + file, e);
+		} finally {
+			Closeables.close(out, true);
+		}
+		if (created) {
+			file.delete();
+		}
+	}
+
+	/**
+	 * Write the downloaded photo to the cache file and evict the least recently used photos if the
+	 * cache is too large. Closes the response stream.
+	 * 
+	 * @return photo that is streamed from the written file, even if it has already been evicted
+	 */
+	private static Response<InputStream> write(File dir, File file, Response<InputStream> resp)
+			throws IOException {
+		File tmp = File.createTempFile("download", ".tmp", dir);
+		RandomAccessFile in = null;
+		boolean written = false;
+		try {
+			DataOutputStream out = new DataOutputStream(new FileOutputStream(tmp));
+			try {
+				out.writeInt(MAGIC);
+				out.writeLong(System.currentTimeMillis());
+				out.writeUTF(Strings.nullToEmpty(resp.mEtag));
+				ByteStreams.copy(resp.mResult, out);
+			} finally {
+				Closeables.close(out, true);
+			}
+			in = new RandomAccessFile(tmp, "r");
+			long replaced = file.length(); // 0 if it doesn't exist
+			written = tmp.renameTo(file) || file.delete() && tmp.renameTo(file);
+			if (!written) {
+				throw new IOException("Can't rename " + tmp + " to " + file);
+			}
+			if (sBytes.addAndGet(file.length() - replaced) > sMaxBytes) {
+				evict();
+			}
+			return read(in).mResponse;
+		} finally {
+			Closeables.close(resp.mResult, true);
+			if (!written) {
+				Closeables.close(in, true);
+				tmp.delete();
+			}
+		}
+	}
+
+	/**
+	 * Delete the least recently used photos until the cache is no larger than the maximum size.
+	 */
+	private static synchronized void evict() {
+		File dir = sDir;
+		if (dir == null) {
+			return;
+		}
+		File[] files = files(dir);
+		long bytes = 0L;
+		for (File file : files) {
+			bytes += file.length();
+		}
+		if (bytes > sMaxBytes) {
+			Arrays.sort(files, new Comparator<File>() {
+				@Override
+				public int compare(File lhs, File rhs) {
+					long l = lhs.lastModified();
+					long r = rhs.lastModified();
+					return l < r ? -1 : l == r ? 0 : 1;
+				}
+			});
+			for (int i = 0; i < files.length && bytes > sMaxBytes; i++) {
+				long length = files[i].length();
+				if (files[i].delete()) {
+					bytes -= length;
+					sEvictions.incrementAndGet();
+				}
+			}
+		}
+		sBytes.set(bytes);
+	}
+
+	/**
+	 * Get the cache files in the directory.
+	 */
+	private static File[] files(File dir) {
+		File[] files = dir.listFiles(new FileFilter() {
+			@Override
+			public boolean accept(File file) {
+				return file.getName().endsWith(SUFFIX);
+			}
+		});
+		return files != null ? files : new File[0];
+	}
+
+	/**
+	 * Delete all photos from the cache.
+	 */
+	public static synchronized void clear() {
+		File dir = sDir;
+		if (dir != null) {
+			for (File file : files(dir)) {
+				file.delete();
+			}
+			sBytes.set(0L);
+		}
+	}
+
+	/**
+	 * Approximate number of bytes used by the cached photos.
+	 */
+	public static long size() {
+		return sBytes.get();
+	}
+
+	/**
+	 * Get the number of cache hits, misses, and evictions. Photos that were revalidated with the
+	 * service and had not changed are counted as hits.
+	 */
+	public static CacheStats getStats() {
+		return new CacheStats(sHits.get(), sMisses.get(), 0L, 0L, 0L, sEvictions.get());
+	}
+
+	/**
+	 * Number of cache hits that were revalidated with the service.
+	 */
+	public static long getRevalidations() {
+		return sRevalidations.get();
+	}
+
+	/**
+	 * Opened cache file and the time that it was last validated.
+	 */
+	private static class Cached {
+		private final Response<InputStream> mResponse;
+		private final long mValidated;
+
+		private Cached(Response<InputStream> response, long validated) {
+			mResponse = response;
+			mValidated = validated;
+		}
+	}
+}
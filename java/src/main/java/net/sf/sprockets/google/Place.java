@@ -17,12 +17,36 @@
 
 package net.sf.sprockets.google;
 
+import static net.sf.sprockets.google.Places.Field.ADDRESS;
+import static net.sf.sprockets.google.Places.Field.EVENTS;
+import static net.sf.sprockets.google.Places.Field.FORMATTED_ADDRESS;
+import static net.sf.sprockets.google.Places.Field.FORMATTED_PHONE_NUMBER;
+import static net.sf.sprockets.google.Places.Field.GEOMETRY;
+import static net.sf.sprockets.google.Places.Field.ICON;
+import static net.sf.sprockets.google.Places.Field.INTL_PHONE_NUMBER;
+import static net.sf.sprockets.google.Places.Field.MATCHED_SUBSTRINGS;
+import static net.sf.sprockets.google.Places.Field.NAME;
+import static net.sf.sprockets.google.Places.Field.OPENING_HOURS;
+import static net.sf.sprockets.google.Places.Field.OPEN_NOW;
+import static net.sf.sprockets.google.Places.Field.PHOTOS;
+import static net.sf.sprockets.google.Places.Field.PRICE_LEVEL;
+import static net.sf.sprockets.google.Places.Field.RATING;
+import static net.sf.sprockets.google.Places.Field.REVIEWS;
+import static net.sf.sprockets.google.Places.Field.TERMS;
+import static net.sf.sprockets.google.Places.Field.TYPES;
+import static net.sf.sprockets.google.Places.Field.URL;
+import static net.sf.sprockets.google.Places.Field.UTC_OFFSET;
+import static net.sf.sprockets.google.Places.Field.VICINITY;
+import static net.sf.sprockets.google.Places.Field.WEBSITE;
 import static net.sf.sprockets.google.Places.Response.Key.UNKNOWN;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
+import net.sf.sprockets.google.PlaceCodec.Input;
+import net.sf.sprockets.google.PlaceCodec.Output;
+import net.sf.sprockets.google.Places.Field;
 import net.sf.sprockets.google.Places.Params;
 import net.sf.sprockets.google.Places.Response.Key;
 import net.sf.sprockets.lang.Substring;
@@ -64,7 +88,7 @@ public class Place {
 	String mIntlPhone;
 	String mFmtPhone;
 	String mWebsite;
-	List<String> mTypes;
+	PlaceTypes mTypes;
 	int mPrice = -1;
 	float mRating = -1.0f;
 	List<Review> mReviews;
@@ -73,6 +97,11 @@ public class Place {
 	List<Event> mEvents;
 	int mUtcOffset = Integer.MIN_VALUE;
 	List<Photo> mPhotos;
+	/** UTF-8 JSON arrays that are read when they are first requested, then set to null. */
+	volatile byte[] mRawReviews;
+	volatile byte[] mRawHours;
+	volatile byte[] mRawEvents;
+	volatile byte[] mRawPhotos;
 	private int mHash;
 
 	/**
@@ -88,11 +117,16 @@ public class Place {
 	 *            to read or 0 if all fields should be read
 	 * @param maxResults
 	 *            maximum number of reviews, events, and photos to return
+	 * @param lazy
+	 *            true if reviews, opening hours, events, and photos should be skipped without
+	 *            decoding them and only read when they are first requested. Only a
+	 *            {@link ByteJsonReader} can skip them, other readers read them now.
 	 */
-	Place(JsonReader in, int fields, int maxResults) throws IOException {
+	Place(JsonReader in, int fields, int maxResults, boolean lazy) throws IOException {
+		ByteJsonReader bytes = lazy && in instanceof ByteJsonReader ? (ByteJsonReader) in : null;
 		in.beginObject();
 		while (in.hasNext()) {
-			Key key = Key.get(in.nextName());
+			Key key = Key.next(in);
 			if (key == UNKNOWN || fields != 0 && key.mField != null && !key.mField.in(fields)) {
 				/* unknown field or caller doesn't want it */
 				in.skipValue();
@@ -107,7 +141,7 @@ public class Place {
 				mReference = in.nextString();
 				break;
 			case icon:
-				mIcon = in.nextString();
+				mIcon = StringPool.intern(in.nextString());
 				break;
 			case url:
 				mUrl = in.nextString();
@@ -118,7 +152,7 @@ public class Place {
 					if (in.nextName().equals("location")) {
 						in.beginObject();
 						while (in.hasNext()) {
-							switch (Key.get(in.nextName())) {
+							switch (Key.next(in)) {
 							case lat:
 								mLat = in.nextDouble();
 								break;
@@ -167,36 +201,25 @@ public class Place {
 				mRating = (float) in.nextDouble();
 				break;
 			case reviews:
-				in.beginArray();
-				while (in.hasNext()) {
-					if (mReviews == null) {
-						int cap = Math.min(Math.max(0, maxResults), MAX_REVIEWS);
-						mReviews = new ArrayList<Review>(cap > 0 ? cap : MAX_REVIEWS);
-					}
-					if (maxResults <= 0 || mReviews.size() < maxResults) {
-						mReviews.add(new Review(in));
-					} else {
-						in.skipValue();
-					}
+				if (bytes != null) {
+					mRawReviews = bytes.nextRawArray(maxResults);
+				} else {
+					mReviews = reviews(in, maxResults);
 				}
-				in.endArray();
 				break;
 			case opening_hours:
 				in.beginObject();
 				while (in.hasNext()) {
-					switch (Key.get(in.nextName())) {
+					switch (Key.next(in)) {
 					case open_now:
 						mOpen = in.nextBoolean();
 						break;
 					case periods:
-						in.beginArray();
-						while (in.hasNext()) {
-							if (mOpenHours == null) {
-								mOpenHours = new ArrayList<OpeningHours>();
-							}
-							mOpenHours.add(new OpeningHours(in));
+						if (bytes != null) {
+							mRawHours = bytes.nextRawArray(0);
+						} else {
+							mOpenHours = hours(in);
 						}
-						in.endArray();
 						break;
 					default:
 						in.skipValue();
@@ -205,37 +228,21 @@ public class Place {
 				in.endObject();
 				break;
 			case events:
-				in.beginArray();
-				while (in.hasNext()) {
-					if (mEvents == null) {
-						int cap = Math.min(Math.max(0, maxResults), MAX_EVENTS);
-						mEvents = new ArrayList<Event>(cap > 0 ? cap : MAX_EVENTS);
-					}
-					if (maxResults <= 0 || mEvents.size() < maxResults) {
-						mEvents.add(new Event(in));
-					} else {
-						in.skipValue();
-					}
+				if (bytes != null) {
+					mRawEvents = bytes.nextRawArray(maxResults);
+				} else {
+					mEvents = events(in, maxResults);
 				}
-				in.endArray();
 				break;
 			case utc_offset:
 				mUtcOffset = in.nextInt();
 				break;
 			case photos:
-				in.beginArray();
-				while (in.hasNext()) {
-					if (mPhotos == null) {
-						int cap = Math.min(Math.max(0, maxResults), MAX_PHOTOS);
-						mPhotos = new ArrayList<Photo>(cap > 0 ? cap : MAX_PHOTOS);
-					}
-					if (maxResults <= 0 || mPhotos.size() < maxResults) {
-						mPhotos.add(new Photo(in));
-					} else {
-						in.skipValue();
-					}
+				if (bytes != null) {
+					mRawPhotos = bytes.nextRawArray(maxResults);
+				} else {
+					mPhotos = photos(in, maxResults);
 				}
-				in.endArray();
 				break;
 			default:
 				in.skipValue();
@@ -251,13 +258,375 @@ public class Place {
 		in.beginArray();
 		while (in.hasNext()) {
 			if (mTypes == null) {
-				mTypes = new ArrayList<String>();
+				mTypes = new PlaceTypes();
 			}
-			mTypes.add(in.nextString());
+			mTypes.put(in.nextString());
 		}
 		in.endArray();
 	}
 
+	/**
+	 * Read a reviews array.
+	 * 
+	 * @return null if the array is empty
+	 */
+	private static List<Review> reviews(JsonReader in, int maxResults) throws IOException {
+		List<Review> reviews = null;
+		in.beginArray();
+		while (in.hasNext()) {
+			if (reviews == null) {
+				int cap = Math.min(Math.max(0, maxResults), MAX_REVIEWS);
+				reviews = new ArrayList<Review>(cap > 0 ? cap : MAX_REVIEWS);
+			}
+			if (maxResults <= 0 || reviews.size() < maxResults) {
+				reviews.add(new Review(in));
+			} else {
+				in.skipValue();
+			}
+		}
+		in.endArray();
+		return reviews;
+	}
+
+	/**
+	 * Read an opening hours periods array.
+	 * 
+	 * @return null if the array is empty
+	 */
+	private static List<OpeningHours> hours(JsonReader in) throws IOException {
+		List<OpeningHours> hours = null;
+		in.beginArray();
+		while (in.hasNext()) {
+			if (hours == null) {
+				hours = new ArrayList<OpeningHours>();
+			}
+			hours.add(new OpeningHours(in));
+		}
+		in.endArray();
+		return hours;
+	}
+
+	/**
+	 * Read an events array.
+	 * 
+	 * @return null if the array is empty
+	 */
+	private static List<Event> events(JsonReader in, int maxResults) throws IOException {
+		List<Event> events = null;
+		in.beginArray();
+		while (in.hasNext()) {
+			if (events == null) {
+				int cap = Math.min(Math.max(0, maxResults), MAX_EVENTS);
+				events = new ArrayList<Event>(cap > 0 ? cap : MAX_EVENTS);
+			}
+			if (maxResults <= 0 || events.size() < maxResults) {
+				events.add(new Event(in));
+			} else {
+				in.skipValue();
+			}
+		}
+		in.endArray();
+		return events;
+	}
+
+	/**
+	 * Read a photos array.
+	 * 
+	 * @return null if the array is empty
+	 */
+	private static List<Photo> photos(JsonReader in, int maxResults) throws IOException {
+		List<Photo> photos = null;
+		in.beginArray();
+		while (in.hasNext()) {
+			if (photos == null) {
+				int cap = Math.min(Math.max(0, maxResults), MAX_PHOTOS);
+				photos = new ArrayList<Photo>(cap > 0 ? cap : MAX_PHOTOS);
+			}
+			if (maxResults <= 0 || photos.size() < maxResults) {
+				photos.add(new Photo(in));
+			} else {
+				in.skipValue();
+			}
+		}
+		in.endArray();
+		return photos;
+	}
+
+	/**
+	 * Read the section that was kept as JSON, if it hasn't been read yet.
+	 */
+	private synchronized void read(Key section) {
+		byte[] raw;
+		switch (section) {
+		case reviews:
+			raw = mRawReviews;
+			break;
+		case periods:
+			raw = mRawHours;
+			break;
+		case events:
+			raw = mRawEvents;
+			break;
+		case photos:
+			raw = mRawPhotos;
+			break;
+		default:
+			throw new IllegalArgumentException(section.name());
+		}
+		if (raw == null) { // another thread read it
+			return;
+		}
+		try {
+			JsonReader in = new ByteJsonReader(raw);
+			switch (section) {
+			case reviews:
+				mReviews = reviews(in, 0);
+				mRawReviews = null;
+				break;
+			case periods:
+				mOpenHours = hours(in);
+				mRawHours = null;
+				break;
+			case events:
+				mEvents = events(in, 0);
+				mRawEvents = null;
+				break;
+			default:
+				mPhotos = photos(in, 0);
+				mRawPhotos = null;
+			}
+			in.close();
+		} catch (IOException e) {
+			throw new AssertionError(e); // JSON was kept by ByteJsonReader.nextRawArray
+		}
+		freeze();
+	}
+
+	/**
+	 * Replace the lists that have been read with immutable copies, so that the place isn't changed
+	 * after it is shared between requests. Sections that are read later are also copied.
+	 */
+	synchronized void freeze() {
+		if (mReviews != null) {
+			for (Review review : mReviews) {
+				review.getAspects();
+			}
+			mReviews = ImmutableList.copyOf(mReviews);
+		}
+		if (mOpenHours != null) {
+			mOpenHours = ImmutableList.copyOf(mOpenHours);
+		}
+		if (mEvents != null) {
+			mEvents = ImmutableList.copyOf(mEvents);
+		}
+		if (mPhotos != null) {
+			for (Photo photo : mPhotos) {
+				photo.getHtmlAttributions();
+			}
+			mPhotos = ImmutableList.copyOf(mPhotos);
+		}
+	}
+
+	/**
+	 * Read fields that were written by {@link #write(Output)}.
+	 *
+	 * @param fields
+	 *            populated properties
+	 */
+	Place(Input in, int fields) throws IOException {
+		mId = in.readString();
+		mReference = in.readString();
+		if (ICON.in(fields)) {
+			mIcon = in.readWord();
+		}
+		if (URL.in(fields)) {
+			mUrl = in.readString();
+		}
+		if (GEOMETRY.in(fields)) {
+			mLat = in.readDouble();
+			mLong = in.readDouble();
+		}
+		if (NAME.in(fields)) {
+			mName = in.readString();
+		}
+		if (ADDRESS.in(fields)) {
+			mAddress = new Address(in);
+		}
+		if (FORMATTED_ADDRESS.in(fields)) {
+			mFmtAddress = in.readString();
+		}
+		if (VICINITY.in(fields)) {
+			mVicinity = in.readString();
+		}
+		if (INTL_PHONE_NUMBER.in(fields)) {
+			mIntlPhone = in.readString();
+		}
+		if (FORMATTED_PHONE_NUMBER.in(fields)) {
+			mFmtPhone = in.readString();
+		}
+		if (WEBSITE.in(fields)) {
+			mWebsite = in.readString();
+		}
+		if (TYPES.in(fields)) {
+			int size = in.readCount();
+			mTypes = new PlaceTypes();
+			for (int i = 0; i < size; i++) {
+				String type = in.readWord();
+				if (type == null) {
+					throw new IOException("malformed type");
+				}
+				mTypes.put(type);
+			}
+		}
+		if (PRICE_LEVEL.in(fields)) {
+			mPrice = in.readVarInt();
+		}
+		if (RATING.in(fields)) {
+			mRating = in.readFloat();
+		}
+		if (REVIEWS.in(fields)) {
+			int size = in.readCount();
+			mReviews = new ArrayList<Review>(Input.capacity(size));
+			for (int i = 0; i < size; i++) {
+				mReviews.add(new Review(in));
+			}
+		}
+		if (OPEN_NOW.in(fields)) {
+			mOpen = in.readBoolean();
+		}
+		if (OPENING_HOURS.in(fields)) {
+			int size = in.readCount();
+			mOpenHours = new ArrayList<OpeningHours>(Input.capacity(size));
+			for (int i = 0; i < size; i++) {
+				mOpenHours.add(new OpeningHours(in));
+			}
+		}
+		if (EVENTS.in(fields)) {
+			int size = in.readCount();
+			mEvents = new ArrayList<Event>(Input.capacity(size));
+			for (int i = 0; i < size; i++) {
+				mEvents.add(new Event(in));
+			}
+		}
+		if (UTC_OFFSET.in(fields)) {
+			mUtcOffset = in.readSignedVarInt();
+		}
+		if (PHOTOS.in(fields)) {
+			int size = in.readCount();
+			mPhotos = new ArrayList<Photo>(Input.capacity(size));
+			for (int i = 0; i < size; i++) {
+				mPhotos.add(new Photo(in));
+			}
+		}
+	}
+
+	/**
+	 * Get the populated properties as a bit field of {@link Field}s.
+	 */
+	int fields() {
+		return bit(ICON, mIcon != null) | bit(URL, mUrl != null)
+				| bit(GEOMETRY, mLat != Double.NEGATIVE_INFINITY) | bit(NAME, mName != null)
+				| bit(ADDRESS, mAddress != null) | bit(FORMATTED_ADDRESS, mFmtAddress != null)
+				| bit(VICINITY, mVicinity != null) | bit(INTL_PHONE_NUMBER, mIntlPhone != null)
+				| bit(FORMATTED_PHONE_NUMBER, mFmtPhone != null) | bit(WEBSITE, mWebsite != null)
+				| bit(TYPES, mTypes != null) | bit(PRICE_LEVEL, mPrice != -1)
+				| bit(RATING, mRating != -1.0f) | bit(REVIEWS, mReviews != null)
+				| bit(OPEN_NOW, mOpen != null) | bit(OPENING_HOURS, mOpenHours != null)
+				| bit(EVENTS, mEvents != null) | bit(UTC_OFFSET, mUtcOffset != Integer.MIN_VALUE)
+				| bit(PHOTOS, mPhotos != null);
+	}
+
+	static int bit(Field field, boolean populated) {
+		return populated ? field.mMask : 0;
+	}
+
+	/**
+	 * Write the populated properties, starting with their {@link #fields() bit field}.
+	 */
+	void write(Output out) throws IOException {
+		getReviews(); // read any sections that were kept as JSON
+		getOpeningHours();
+		getEvents();
+		getPhotos();
+		int fields = fields();
+		out.writeVarInt(fields);
+		out.writeString(mId);
+		out.writeString(mReference);
+		if (ICON.in(fields)) {
+			out.writeWord(mIcon);
+		}
+		if (URL.in(fields)) {
+			out.writeString(mUrl);
+		}
+		if (GEOMETRY.in(fields)) {
+			out.writeDouble(mLat);
+			out.writeDouble(mLong);
+		}
+		if (NAME.in(fields)) {
+			out.writeString(mName);
+		}
+		if (ADDRESS.in(fields)) {
+			mAddress.write(out);
+		}
+		if (FORMATTED_ADDRESS.in(fields)) {
+			out.writeString(mFmtAddress);
+		}
+		if (VICINITY.in(fields)) {
+			out.writeString(mVicinity);
+		}
+		if (INTL_PHONE_NUMBER.in(fields)) {
+			out.writeString(mIntlPhone);
+		}
+		if (FORMATTED_PHONE_NUMBER.in(fields)) {
+			out.writeString(mFmtPhone);
+		}
+		if (WEBSITE.in(fields)) {
+			out.writeString(mWebsite);
+		}
+		if (TYPES.in(fields)) {
+			out.writeVarInt(mTypes.size());
+			for (String type : mTypes) {
+				out.writeWord(type);
+			}
+		}
+		if (PRICE_LEVEL.in(fields)) {
+			out.writeVarInt(mPrice);
+		}
+		if (RATING.in(fields)) {
+			out.writeFloat(mRating);
+		}
+		if (REVIEWS.in(fields)) {
+			out.writeVarInt(mReviews.size());
+			for (Review review : mReviews) {
+				review.write(out);
+			}
+		}
+		if (OPEN_NOW.in(fields)) {
+			out.writeBoolean(mOpen);
+		}
+		if (OPENING_HOURS.in(fields)) {
+			out.writeVarInt(mOpenHours.size());
+			for (OpeningHours hours : mOpenHours) {
+				hours.write(out);
+			}
+		}
+		if (EVENTS.in(fields)) {
+			out.writeVarInt(mEvents.size());
+			for (Event event : mEvents) {
+				event.write(out);
+			}
+		}
+		if (UTC_OFFSET.in(fields)) {
+			out.writeSignedVarInt(mUtcOffset);
+		}
+		if (PHOTOS.in(fields)) {
+			out.writeVarInt(mPhotos.size());
+			for (Photo photo : mPhotos) {
+				photo.write(out);
+			}
+		}
+	}
+
 	/**
 	 * Unique identifier that can be used to consolidate information about this place.
 	 */
@@ -357,9 +726,6 @@ public class Place {
 	 *      target="_blank">Supported Place Types</a>
 	 */
 	public List<String> getTypes() {
-		if (mTypes != null && !(mTypes instanceof ImmutableList)) {
-			mTypes = ImmutableList.copyOf(mTypes);
-		}
 		return mTypes;
 	}
 
@@ -382,6 +748,9 @@ public class Place {
 	 * Comments and ratings from Google users.
 	 */
 	public List<Review> getReviews() {
+		if (mRawReviews != null) {
+			read(Key.reviews);
+		}
 		if (mReviews != null && !(mReviews instanceof ImmutableList)) {
 			mReviews = ImmutableList.copyOf(mReviews);
 		}
@@ -399,6 +768,9 @@ public class Place {
 	 * Opening and closing times for each day that this place is open.
 	 */
 	public List<OpeningHours> getOpeningHours() {
+		if (mRawHours != null) {
+			read(Key.periods);
+		}
 		if (mOpenHours != null && !(mOpenHours instanceof ImmutableList)) {
 			mOpenHours = ImmutableList.copyOf(mOpenHours);
 		}
@@ -409,6 +781,9 @@ public class Place {
 	 * Current events happening at this place.
 	 */
 	public List<Event> getEvents() {
+		if (mRawEvents != null) {
+			read(Key.events);
+		}
 		if (mEvents != null && !(mEvents instanceof ImmutableList)) {
 			mEvents = ImmutableList.copyOf(mEvents);
 		}
@@ -428,6 +803,9 @@ public class Place {
 	 * reference} to {@link Places#photo(Params)}.
 	 */
 	public List<Photo> getPhotos() {
+		if (mRawPhotos != null) {
+			read(Key.photos);
+		}
 		if (mPhotos != null && !(mPhotos instanceof ImmutableList)) {
 			mPhotos = ImmutableList.copyOf(mPhotos);
 		}
@@ -476,11 +854,22 @@ public class Place {
 				.add("website", mWebsite).add("types", mTypes)
 				.add("priceLevel", mPrice != -1 ? mPrice : null)
 				.add("rating", mRating != -1.0f ? mRating : null)
-				.add("reviews", mReviews != null ? mReviews.size() : null).add("openNow", mOpen)
-				.add("openingHours", mOpenHours != null ? mOpenHours.size() : null)
-				.add("events", mEvents != null ? mEvents.size() : null)
+				.add("reviews", size(mRawReviews, mReviews)).add("openNow", mOpen)
+				.add("openingHours", size(mRawHours, mOpenHours))
+				.add("events", size(mRawEvents, mEvents))
 				.add("utcOffset", mUtcOffset != Integer.MIN_VALUE ? mUtcOffset : null)
-				.add("photos", mPhotos != null ? mPhotos.size() : null).omitNullValues();
+				.add("photos", size(mRawPhotos, mPhotos)).omitNullValues();
+	}
+
+	/**
+	 * Get the size of the section without reading it.
+	 *
+	 * @param raw
+	 *            must be passed first, the list is set before it's cleared
+	 * @return "unread" if the section is still JSON or null if it's not available
+	 */
+	private static Object size(byte[] raw, List<?> list) {
+		return raw != null ? "unread" : list != null ? list.size() : null;
 	}
 
 	/**
@@ -523,12 +912,12 @@ public class Place {
 
 				in.beginObject();
 				while (in.hasNext()) {
-					switch (Key.get(in.nextName())) {
+					switch (Key.next(in)) {
 					case long_name:
-						longName = in.nextString();
+						longName = StringPool.intern(in.nextString());
 						break;
 					case short_name:
-						shortName = in.nextString();
+						shortName = StringPool.intern(in.nextString());
 						break;
 					case types:
 						in.beginArray();
@@ -591,6 +980,48 @@ public class Place {
 			in.endArray();
 		}
 
+		private Address(Input in) throws IOException {
+			mCountry = in.readWord();
+			mCountryAbbr = in.readWord();
+			mAdminL1 = in.readWord();
+			mAdminL1Abbr = in.readWord();
+			mAdminL2 = in.readWord();
+			mAdminL2Abbr = in.readWord();
+			mLocality = in.readWord();
+			mLocalityAbbr = in.readWord();
+			mSublocality = in.readWord();
+			mSublocalityAbbr = in.readWord();
+			mPostalCode = in.readWord();
+			mPostalCodeAbbr = in.readWord();
+			mPostalTown = in.readWord();
+			mPostalTownAbbr = in.readWord();
+			mRoute = in.readWord();
+			mRouteAbbr = in.readWord();
+			mStreetNum = in.readString();
+			mStreetNumAbbr = in.readString();
+		}
+
+		private void write(Output out) throws IOException {
+			out.writeWord(mCountry);
+			out.writeWord(mCountryAbbr);
+			out.writeWord(mAdminL1);
+			out.writeWord(mAdminL1Abbr);
+			out.writeWord(mAdminL2);
+			out.writeWord(mAdminL2Abbr);
+			out.writeWord(mLocality);
+			out.writeWord(mLocalityAbbr);
+			out.writeWord(mSublocality);
+			out.writeWord(mSublocalityAbbr);
+			out.writeWord(mPostalCode);
+			out.writeWord(mPostalCodeAbbr);
+			out.writeWord(mPostalTown);
+			out.writeWord(mPostalTownAbbr);
+			out.writeWord(mRoute);
+			out.writeWord(mRouteAbbr);
+			out.writeString(mStreetNum);
+			out.writeString(mStreetNumAbbr);
+		}
+
 		/**
 		 * Types of address components that are currently supported.
 		 */
@@ -598,15 +1029,14 @@ public class Place {
 			country, administrative_area_level_1, administrative_area_level_2, locality,
 			sublocality, postal_code, postal_town, route, street_number;
 
+			private static final EnumLookup<Type> sLookup = new EnumLookup<Type>(Type.class,
+					null, null, null);
+
 			/**
 			 * Get the matching Type or null if one can't be found.
 			 */
 			private static Type get(String type) {
-				try {
-					return Type.valueOf(type);
-				} catch (IllegalArgumentException e) {
-					return null;
-				}
+				return sLookup.get(type);
 			}
 		}
 
@@ -773,7 +1203,7 @@ public class Place {
 		private Review(JsonReader in) throws IOException {
 			in.beginObject();
 			while (in.hasNext()) {
-				switch (Key.get(in.nextName())) {
+				switch (Key.next(in)) {
 				case author_name:
 					mAuthorName = in.nextString();
 					break;
@@ -803,6 +1233,33 @@ public class Place {
 			in.endObject();
 		}
 
+		private Review(Input in) throws IOException {
+			mAuthorName = in.readString();
+			mAuthorUrl = in.readString();
+			mTime = in.readVarLong();
+			int size = in.readSize();
+			if (size >= 0) {
+				mAspects = new ArrayList<Aspect>(Input.capacity(size));
+				for (int i = 0; i < size; i++) {
+					mAspects.add(new Aspect(in));
+				}
+			}
+			mText = in.readString();
+		}
+
+		private void write(Output out) throws IOException {
+			out.writeString(mAuthorName);
+			out.writeString(mAuthorUrl);
+			out.writeVarLong(mTime);
+			out.writeSize(mAspects);
+			if (mAspects != null) {
+				for (Aspect aspect : mAspects) {
+					aspect.write(out);
+				}
+			}
+			out.writeString(mText);
+		}
+
 		public String getAuthorName() {
 			return mAuthorName;
 		}
@@ -883,9 +1340,9 @@ public class Place {
 			private Aspect(JsonReader in) throws IOException {
 				in.beginObject();
 				while (in.hasNext()) {
-					switch (Key.get(in.nextName())) {
+					switch (Key.next(in)) {
 					case type:
-						mType = in.nextString();
+						mType = StringPool.intern(in.nextString());
 						break;
 					case rating:
 						mRating = in.nextInt();
@@ -897,6 +1354,16 @@ public class Place {
 				in.endObject();
 			}
 
+			private Aspect(Input in) throws IOException {
+				mType = in.readWord();
+				mRating = in.readSignedVarInt();
+			}
+
+			private void write(Output out) throws IOException {
+				out.writeWord(mType);
+				out.writeSignedVarInt(mRating);
+			}
+
 			/**
 			 * The aspect that was rated, e.g. atmosphere, service, food, overall, etc.
 			 */
@@ -958,11 +1425,11 @@ public class Place {
 		private OpeningHours(JsonReader in) throws IOException {
 			in.beginObject();
 			while (in.hasNext()) {
-				switch (Key.get(in.nextName())) {
+				switch (Key.next(in)) {
 				case open:
 					in.beginObject();
 					while (in.hasNext()) {
-						switch (Key.get(in.nextName())) {
+						switch (Key.next(in)) {
 						case day:
 							mOpenDay = day(in.nextInt());
 							break;
@@ -980,7 +1447,7 @@ public class Place {
 				case close:
 					in.beginObject();
 					while (in.hasNext()) {
-						switch (Key.get(in.nextName())) {
+						switch (Key.next(in)) {
 						case day:
 							mCloseDay = day(in.nextInt());
 							break;
@@ -1002,6 +1469,38 @@ public class Place {
 			in.endObject();
 		}
 
+		/**
+		 * Read fields that were written by {@link #write(Output)}.
+		 */
+		private OpeningHours(Input in) throws IOException {
+			mOpenDay = day(in);
+			mOpenHour = in.readVarInt();
+			mOpenMinute = in.readVarInt();
+			mCloseDay = day(in);
+			mCloseHour = in.readVarInt();
+			mCloseMinute = in.readVarInt();
+		}
+
+		private void write(Output out) throws IOException {
+			out.writeVarInt(mOpenDay != null ? mOpenDay.ordinal() + 1 : 0);
+			out.writeVarInt(mOpenHour);
+			out.writeVarInt(mOpenMinute);
+			out.writeVarInt(mCloseDay != null ? mCloseDay.ordinal() + 1 : 0);
+			out.writeVarInt(mCloseHour);
+			out.writeVarInt(mCloseMinute);
+		}
+
+		/**
+		 * Read a day that was written as its ordinal + 1, or 0 for null.
+		 */
+		private DayOfWeek day(Input in) throws IOException {
+			int day = in.readVarInt();
+			if (day > DayOfWeek.values().length) {
+				throw new IOException("unknown day: " + day);
+			}
+			return day > 0 ? DayOfWeek.values()[day - 1] : null;
+		}
+
 		/**
 		 * Get the DayOfWeek for the day number, where 0 == Sunday.
 		 */
@@ -1095,7 +1594,7 @@ public class Place {
 		private Event(JsonReader in) throws IOException {
 			in.beginObject();
 			while (in.hasNext()) {
-				switch (Key.get(in.nextName())) {
+				switch (Key.next(in)) {
 				case event_id:
 					mId = in.nextString();
 					break;
@@ -1115,6 +1614,20 @@ public class Place {
 			in.endObject();
 		}
 
+		private Event(Input in) throws IOException {
+			mId = in.readString();
+			mTime = in.readVarLong();
+			mSummary = in.readString();
+			mUrl = in.readString();
+		}
+
+		private void write(Output out) throws IOException {
+			out.writeString(mId);
+			out.writeVarLong(mTime);
+			out.writeString(mSummary);
+			out.writeString(mUrl);
+		}
+
 		/**
 		 * Unique identifier for this event.
 		 */
@@ -1192,7 +1705,7 @@ public class Place {
 		private Photo(JsonReader in) throws IOException {
 			in.beginObject();
 			while (in.hasNext()) {
-				switch (Key.get(in.nextName())) {
+				switch (Key.next(in)) {
 				case photo_reference:
 					mReference = in.nextString();
 					break;
@@ -1208,7 +1721,7 @@ public class Place {
 						if (mAttribs == null) {
 							mAttribs = new ArrayList<String>(MAX_ATTRIBS);
 						}
-						mAttribs.add(in.nextString());
+						mAttribs.add(StringPool.intern(in.nextString()));
 					}
 					in.endArray();
 					break;
@@ -1219,6 +1732,31 @@ public class Place {
 			in.endObject();
 		}
 
+		private Photo(Input in) throws IOException {
+			mReference = in.readString();
+			mWidth = in.readVarInt();
+			mHeight = in.readVarInt();
+			int size = in.readSize();
+			if (size >= 0) {
+				mAttribs = new ArrayList<String>(Input.capacity(size));
+				for (int i = 0; i < size; i++) {
+					mAttribs.add(in.readWord());
+				}
+			}
+		}
+
+		private void write(Output out) throws IOException {
+			out.writeString(mReference);
+			out.writeVarInt(mWidth);
+			out.writeVarInt(mHeight);
+			out.writeSize(mAttribs);
+			if (mAttribs != null) {
+				for (String attrib : mAttribs) {
+					out.writeWord(attrib);
+				}
+			}
+		}
+
 		/**
 		 * Token that can be used to download the photo by supplying it to
 		 * {@link Places#photo(Params)}.
@@ -1304,7 +1842,7 @@ public class Place {
 		Prediction(JsonReader in, int fields) throws IOException {
 			in.beginObject();
 			while (in.hasNext()) {
-				Key key = Key.get(in.nextName());
+				Key key = Key.next(in);
 				if (key == UNKNOWN || fields != 0 && key.mField != null && !key.mField.in(fields)) {
 					/* unknown field or caller doesn't want it */
 					in.skipValue();
@@ -1331,7 +1869,7 @@ public class Place {
 						String value = null;
 						in.beginObject();
 						while (in.hasNext()) {
-							switch (Key.get(in.nextName())) {
+							switch (Key.next(in)) {
 							case offset:
 								offset = in.nextInt();
 								break;
@@ -1360,7 +1898,7 @@ public class Place {
 						int length = 0;
 						in.beginObject();
 						while (in.hasNext()) {
-							switch (Key.get(in.nextName())) {
+							switch (Key.next(in)) {
 							case offset:
 								offset = in.nextInt();
 								break;
@@ -1392,6 +1930,83 @@ public class Place {
 			in.endObject();
 		}
 
+		/**
+		 * Read fields that were written by {@link #write(Output)}.
+		 *
+		 * @param fields
+		 *            populated properties
+		 */
+		Prediction(Input in, int fields) throws IOException {
+			super(in, fields);
+			if (TERMS.in(fields)) {
+				int size = in.readCount();
+				mTerms = new ArrayList<Substring>(Input.capacity(size));
+				for (int i = 0; i < size; i++) {
+					int offset = in.readVarInt();
+					String value = in.readString();
+					if (offset < 0 || value == null || value.isEmpty()) {
+						throw new IOException("malformed term");
+					}
+					mTerms.add(new Substring(offset, value.length(), value, mName));
+				}
+			}
+			if (MATCHED_SUBSTRINGS.in(fields)) {
+				int size = in.readCount();
+				mMatches = new ArrayList<Substring>(Input.capacity(size));
+				for (int i = 0; i < size; i++) {
+					int offset = in.readVarInt();
+					int length = in.readVarInt();
+					if (offset < 0 || length <= 0 || offset > Integer.MAX_VALUE - length) {
+						throw new IOException("malformed matched substring");
+					}
+					int end = offset + length;
+					String value = mName != null && mName.length() >= end ? mName.substring(
+							offset, end) : null;
+					mMatches.add(new Substring(offset, length, value, mName));
+				}
+			}
+		}
+
+		/**
+		 * Copy of the prediction with different matched substrings.
+		 *
+		 * @param matches
+		 *            may be null
+		 */
+		Prediction(Prediction prediction, List<Substring> matches) {
+			mId = prediction.mId;
+			mReference = prediction.mReference;
+			mName = prediction.mName;
+			mTypes = prediction.mTypes;
+			mTerms = prediction.mTerms;
+			mMatches = matches;
+		}
+
+		@Override
+		int fields() {
+			return super.fields() | bit(TERMS, mTerms != null)
+					| bit(MATCHED_SUBSTRINGS, mMatches != null);
+		}
+
+		@Override
+		void write(Output out) throws IOException {
+			super.write(out);
+			if (mTerms != null) {
+				out.writeVarInt(mTerms.size());
+				for (Substring term : mTerms) {
+					out.writeVarInt(term.getOffset());
+					out.writeString(term.getValue());
+				}
+			}
+			if (mMatches != null) {
+				out.writeVarInt(mMatches.size());
+				for (Substring match : mMatches) {
+					out.writeVarInt(match.getOffset());
+					out.writeVarInt(match.getLength());
+				}
+			}
+		}
+
 		/**
 		 * Sections in the {@link Place#getName() name}.
 		 */
@@ -0,0 +1,377 @@
+/*
+ * Copyright 2013 pushbit <pushbit@gmail.com>
+ *
+ * This file is part of Sprockets.
+ *
+ * Sprockets is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Sprockets is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Sprockets.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.sf.sprockets.google;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sf.sprockets.google.Place.Prediction;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Writes {@link Place}s in a compact binary format and reads them back, so that they can be
+ * stored or sent elsewhere without requesting them again. All of the populated properties are
+ * kept, including the address, reviews, opening hours, events, photos, and {@link Prediction}
+ * terms and matched substrings.
+ * <p>
+ * The format starts with a version number and each place starts with a bit field of its
+ * populated properties, using the same bits as {@link Places.Field}. Numbers are written as
+ * variable length integers and types, address components, and other values that are repeated
+ * between places are only written the first time that they appear in a stream.
+ * </p>
+ *
+ * @since 2.0.0
+ */
+public class PlaceCodec {
+	/** Current version of the format, which is written at the start of each stream. */
+	public static final int VERSION = 1;
+	private static final byte[] MAGIC = { 'S', 'P' };
+	/** Marks the end of the places. */
+	private static final int END = 0;
+	private static final int PLACE = 1;
+	private static final int PREDICTION = 2;
+
+	private PlaceCodec() {
+	}
+
+	/**
+	 * Get the places in binary format.
+	 */
+	public static byte[] encode(Iterable<? extends Place> places) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+		try {
+			write(places, out);
+		} catch (IOException e) {
+			throw new AssertionError(e); // not thrown by ByteArrayOutputStream
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Get the places from data that was returned by {@link #encode(Iterable)}.
+	 *
+	 * @throws IOException
+	 *             if the data is not in a supported format
+	 */
+	public static List<Place> decode(byte[] data) throws IOException {
+		return read(new ByteArrayInputStream(data));
+	}
+
+	/**
+	 * Write the places to the stream in binary format. The stream is not flushed or closed.
+	 */
+	public static void write(Iterable<? extends Place> places, OutputStream out)
+			throws IOException {
+		Output output = new Output(out);
+		out.write(MAGIC);
+		output.writeVarInt(VERSION);
+		for (Place place : places) {
+			output.writeVarInt(place instanceof Prediction ? PREDICTION : PLACE);
+			place.write(output);
+		}
+		output.writeVarInt(END);
+	}
+
+	/**
+	 * Read places from the stream that were written by {@link #write(Iterable, OutputStream)}. The
+	 * stream is read up to the end of the places and is not closed. Reading is faster from a
+	 * buffered stream.
+	 *
+	 * @throws IOException
+	 *             if the data is not in a supported format
+	 */
+	public static List<Place> read(InputStream in) throws IOException {
+		Input input = new Input(in);
+		byte[] magic = { input.readByte(), input.readByte() };
+		if (!Arrays.equals(magic, MAGIC)) {
+			throw new IOException("not place data");
+		}
+		int version = input.readVarInt();
+		if (version != VERSION) {
+			throw new IOException("unsupported place data version: " + version);
+		}
+		List<Place> places = new ArrayList<Place>();
+		for (int kind = input.readVarInt(); kind != END; kind = input.readVarInt()) {
+			switch (kind) {
+			case PLACE:
+				places.add(new Place(input, input.readVarInt()));
+				break;
+			case PREDICTION:
+				places.add(new Prediction(input, input.readVarInt()));
+				break;
+			default:
+				throw new IOException("unknown place kind: " + kind);
+			}
+		}
+		return places;
+	}
+
+	/**
+	 * Writes values in the binary format. Words are written the first time that they appear and
+	 * then referred to by their index.
+	 */
+	static class Output {
+		private final OutputStream mOut;
+		private final Map<String, Integer> mWords = new HashMap<String, Integer>();
+
+		private Output(OutputStream out) {
+			mOut = out;
+		}
+
+		void writeBoolean(boolean value) throws IOException {
+			mOut.write(value ? 1 : 0);
+		}
+
+		/**
+		 * Write the value in 1 to 5 bytes, with smaller values using fewer bytes. Negative values
+		 * should be written with {@link #writeSignedVarInt(int)}.
+		 */
+		void writeVarInt(int value) throws IOException {
+			while ((value & ~0x7f) != 0) {
+				mOut.write(value & 0x7f | 0x80);
+				value >>>= 7;
+			}
+			mOut.write(value);
+		}
+
+		/**
+		 * Write the value in 1 to 5 bytes, with values closer to 0 using fewer bytes.
+		 */
+		void writeSignedVarInt(int value) throws IOException {
+			writeVarInt(value << 1 ^ value >> 31);
+		}
+
+		/**
+		 * Write the value in 1 to 10 bytes, with smaller values using fewer bytes.
+		 */
+		void writeVarLong(long value) throws IOException {
+			while ((value & ~0x7fL) != 0) {
+				mOut.write((int) value & 0x7f | 0x80);
+				value >>>= 7;
+			}
+			mOut.write((int) value);
+		}
+
+		void writeFloat(float value) throws IOException {
+			writeFixed(Float.floatToIntBits(value), 4);
+		}
+
+		void writeDouble(double value) throws IOException {
+			writeFixed(Double.doubleToLongBits(value), 8);
+		}
+
+		private void writeFixed(long bits, int bytes) throws IOException {
+			for (int i = 0; i < bytes; i++) {
+				mOut.write((int) bits);
+				bits >>>= 8;
+			}
+		}
+
+		/**
+		 * Write the string, which may be null.
+		 */
+		void writeString(String s) throws IOException {
+			if (s == null) {
+				writeVarInt(0);
+			} else {
+				byte[] bytes = s.getBytes(Charsets.UTF_8);
+				writeVarInt(bytes.length + 1);
+				mOut.write(bytes);
+			}
+		}
+
+		/**
+		 * Write the string, which may be null, or its index if it has already been written.
+		 */
+		void writeWord(String s) throws IOException {
+			if (s == null) {
+				writeVarInt(0);
+			} else {
+				Integer index = mWords.get(s);
+				if (index != null) {
+					writeVarInt(index + 2);
+				} else {
+					mWords.put(s, mWords.size());
+					writeVarInt(1);
+					writeString(s);
+				}
+			}
+		}
+
+		/**
+		 * Write the number of items in the list, which may be null.
+		 */
+		void writeSize(List<?> list) throws IOException {
+			writeVarInt(list != null ? list.size() + 1 : 0);
+		}
+	}
+
+	/**
+	 * Reads values that were written by {@link Output}.
+	 */
+	static class Input {
+		/** Largest initial capacity of a list or string that is read, in items or bytes. */
+		private static final int MAX_CAPACITY = 8192;
+
+		private final InputStream mIn;
+		private final List<String> mWords = new ArrayList<String>();
+
+		private Input(InputStream in) {
+			mIn = in;
+		}
+
+		byte readByte() throws IOException {
+			int b = mIn.read();
+			if (b < 0) {
+				throw new EOFException("place data ended early");
+			}
+			return (byte) b;
+		}
+
+		boolean readBoolean() throws IOException {
+			return readByte() != 0;
+		}
+
+		int readVarInt() throws IOException {
+			int value = 0;
+			for (int shift = 0; shift < 35; shift += 7) {
+				int b = readByte();
+				value |= (b & 0x7f) << shift;
+				if ((b & 0x80) == 0) {
+					return value;
+				}
+			}
+			throw new IOException("malformed varint");
+		}
+
+		int readSignedVarInt() throws IOException {
+			int value = readVarInt();
+			return value >>> 1 ^ -(value & 1);
+		}
+
+		long readVarLong() throws IOException {
+			long value = 0L;
+			for (int shift = 0; shift < 70; shift += 7) {
+				int b = readByte();
+				value |= (long) (b & 0x7f) << shift;
+				if ((b & 0x80) == 0) {
+					return value;
+				}
+			}
+			throw new IOException("malformed varint");
+		}
+
+		float readFloat() throws IOException {
+			return Float.intBitsToFloat((int) readFixed(4));
+		}
+
+		double readDouble() throws IOException {
+			return Double.longBitsToDouble(readFixed(8));
+		}
+
+		private long readFixed(int bytes) throws IOException {
+			long bits = 0L;
+			for (int i = 0; i < bytes; i++) {
+				bits |= (readByte() & 0xffL) << i * 8;
+			}
+			return bits;
+		}
+
+		String readString() throws IOException {
+			int length = readVarInt();
+			if (length == 0) {
+				return null;
+			} else if (length < 0) {
+				throw new IOException("malformed string length");
+			}
+			length--;
+			byte[] bytes = new byte[capacity(length)]; // grows as the data is read
+			for (int off = 0; off < length;) {
+				if (off == bytes.length) {
+					bytes = Arrays.copyOf(bytes, (int) Math.min(2L * off, length));
+				}
+				int n = mIn.read(bytes, off, bytes.length - off);
+				if (n < 0) {
+					throw new EOFException("place data ended early");
+				}
+				off += n;
+			}
+			return new String(bytes, Charsets.UTF_8);
+		}
+
+		String readWord() throws IOException {
+			int index = readVarInt();
+			switch (index) {
+			case 0:
+				return null;
+			case 1:
+				String word = StringPool.intern(readString());
+				mWords.add(word);
+				return word;
+			default:
+				index -= 2;
+				if (index < 0 || index >= mWords.size()) {
+					throw new IOException("unknown word index: " + index);
+				}
+				return mWords.get(index);
+			}
+		}
+
+		/**
+		 * Read the number of items in a list that can't be null.
+		 */
+		int readCount() throws IOException {
+			int count = readVarInt();
+			if (count < 0) {
+				throw new IOException("malformed list size");
+			}
+			return count;
+		}
+
+		/**
+		 * Read the number of items in a list.
+		 *
+		 * @return -1 if the list is null
+		 */
+		int readSize() throws IOException {
+			int size = readVarInt() - 1;
+			if (size < -1) {
+				throw new IOException("malformed list size");
+			}
+			return size;
+		}
+
+		/**
+		 * Get the initial capacity for a list or string of the size that was read. The data may
+		 * be corrupt, so the capacity is limited until the items have actually been read.
+		 */
+		static int capacity(int size) {
+			return Math.min(size, MAX_CAPACITY);
+		}
+	}
+}
@@ -0,0 +1,476 @@
+/*
+ * Copyright 2013 pushbit <pushbit@gmail.com>
+ *
+ * This file is part of Sprockets.
+ *
+ * Sprockets is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Sprockets is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Sprockets.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.sf.sprockets.google;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.google.common.base.Objects;
+
+/**
+ * Keeps places in memory so that they can be found by location without sending another request.
+ * Places can be added directly or an index can be {@link #register() registered} to receive the
+ * places from all {@link Places} search responses. A place with the same ID as one that is already
+ * in the index replaces it, unless the new place doesn't have a name and the old one does (e.g.
+ * {@link Places#radarSearch(Places.Params, Places.Field...) radar search} results). Places without
+ * an ID or location are not indexed.
+ * <p>
+ * Places are grouped by the {@link GeoHash geohash} grid cell that they are in. The cells are about
+ * 1.2 x 0.6 km at the equator and narrower further from it. Queries only look at the places in the
+ * cells that overlap the query area. All methods are thread-safe.
+ * </p>
+ *
+ * @since 2.0.0
+ */
+public class PlaceIndex {
+	/** Indexes that receive search results. */
+	private static final CopyOnWriteArrayList<PlaceIndex> sIndexes =
+			new CopyOnWriteArrayList<PlaceIndex>();
+	/** Number of times that the longitude and latitude ranges are halved for a cell. */
+	private static final int HALVINGS = 15;
+	private static final int CELLS = 1 << HALVINGS;
+	private static final double CELL_LAT = 180.0 / CELLS;
+	private static final double CELL_LNG = 360.0 / CELLS;
+	/** Any query with a larger radius covers the whole Earth. */
+	private static final double MAX_RADIUS = Math.PI * GreatCircle.EARTH_RADIUS;
+
+	private final ReadWriteLock mLock = new ReentrantReadWriteLock();
+	private final Map<String, Place> mPlaces = new HashMap<String, Place>();
+	private final Map<Long, List<Place>> mCells = new HashMap<Long, List<Place>>();
+
+	/**
+	 * Add the places from all search responses to this index.
+	 *
+	 * @return this object for chained calls
+	 */
+	public PlaceIndex register() {
+		sIndexes.addIfAbsent(this);
+		return this;
+	}
+
+	/**
+	 * Stop adding the places from search responses to this index.
+	 *
+	 * @return this object for chained calls
+	 */
+	public PlaceIndex unregister() {
+		sIndexes.remove(this);
+		return this;
+	}
+
+	/**
+	 * Add the places to all registered indexes.
+	 */
+	static void indexAll(List<Place> places) {
+		if (places != null) {
+			for (PlaceIndex index : sIndexes) {
+				index.addAll(places);
+			}
+		}
+	}
+
+	/**
+	 * Add the place to the index.
+	 *
+	 * @return true if the place was added or replaced a place with the same ID
+	 */
+	public boolean add(Place place) {
+		if (place.mId == null || place.mLat == Double.NEGATIVE_INFINITY) {
+			return false;
+		}
+		mLock.writeLock().lock();
+		try {
+			return put(place);
+		} finally {
+			mLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Add the places to the index.
+	 *
+	 * @return number of places that were added or replaced a place with the same ID
+	 */
+	public int addAll(Iterable<Place> places) {
+		int count = 0;
+		mLock.writeLock().lock();
+		try {
+			for (Place place : places) {
+				if (place.mId != null && place.mLat != Double.NEGATIVE_INFINITY && put(place)) {
+					count++;
+				}
+			}
+		} finally {
+			mLock.writeLock().unlock();
+		}
+		return count;
+	}
+
+	/**
+	 * Put the place in the maps. Must hold the write lock.
+	 */
+	private boolean put(Place place) {
+		Place old = mPlaces.get(place.mId);
+		if (old != null) {
+			if (place.mName == null && old.mName != null) {
+				return false;
+			}
+			unlink(old);
+		}
+		mPlaces.put(place.mId, place);
+		Long cell = cell(place.mLat, place.mLong);
+		List<Place> places = mCells.get(cell);
+		if (places == null) {
+			places = new ArrayList<Place>(4);
+			mCells.put(cell, places);
+		}
+		places.add(place);
+		return true;
+	}
+
+	/**
+	 * Remove the place from its cell. Must hold the write lock.
+	 */
+	private void unlink(Place place) {
+		Long cell = cell(place.mLat, place.mLong);
+		List<Place> places = mCells.get(cell);
+		if (places != null) {
+			places.remove(place);
+			if (places.isEmpty()) {
+				mCells.remove(cell);
+			}
+		}
+	}
+
+	/**
+	 * Get the place with the ID.
+	 *
+	 * @return null if the place is not in the index
+	 */
+	public Place get(String id) {
+		mLock.readLock().lock();
+		try {
+			return mPlaces.get(id);
+		} finally {
+			mLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Remove the place with the ID.
+	 *
+	 * @return true if the place was in the index
+	 */
+	public boolean remove(String id) {
+		mLock.writeLock().lock();
+		try {
+			Place place = mPlaces.remove(id);
+			if (place != null) {
+				unlink(place);
+				return true;
+			}
+			return false;
+		} finally {
+			mLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Remove all places from the index.
+	 */
+	public void clear() {
+		mLock.writeLock().lock();
+		try {
+			mPlaces.clear();
+			mCells.clear();
+		} finally {
+			mLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Number of places in the index.
+	 */
+	public int size() {
+		mLock.readLock().lock();
+		try {
+			return mPlaces.size();
+		} finally {
+			mLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Get the places within the radius of the location, from nearest to farthest.
+	 *
+	 * @param radius
+	 *            in metres
+	 * @param filter
+	 *            may be null to get all places
+	 */
+	public List<Place> radius(double latitude, double longitude, int radius, Filter filter) {
+		return toPlaces(within(latitude, longitude, radius, filter), Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Get the places in the bounds. If west is greater than east, the bounds cross the 180th
+	 * meridian.
+	 *
+	 * @param filter
+	 *            may be null to get all places
+	 */
+	public List<Place> bounds(double south, double west, double north, double east,
+			Filter filter) {
+		List<Place> places = new ArrayList<Place>();
+		mLock.readLock().lock();
+		try {
+			for (List<Place> cell : cells(south, west, north, east)) {
+				for (Place place : cell) {
+					if (place.mLat >= south && place.mLat <= north
+							&& (west <= east ? place.mLong >= west && place.mLong <= east
+									: place.mLong >= west || place.mLong <= east)
+							&& (filter == null || filter.matches(place))) {
+						places.add(place);
+					}
+				}
+			}
+		} finally {
+			mLock.readLock().unlock();
+		}
+		return places;
+	}
+
+	/**
+	 * Get the places that are nearest to the location, from nearest to farthest.
+	 *
+	 * @param count
+	 *            maximum number of places to get
+	 * @param filter
+	 *            may be null to get any places
+	 */
+	public List<Place> nearest(double latitude, double longitude, int count, Filter filter) {
+		/* search in larger circles until enough places are found, all closer than any outside */
+		for (double radius = CELL_LAT * 111000.0;; radius *= 4) {
+			List<Hit> hits = within(latitude, longitude, Math.min(radius, MAX_RADIUS), filter);
+			if (hits.size() >= count || radius >= MAX_RADIUS) {
+				return toPlaces(hits, count);
+			}
+		}
+	}
+
+	/**
+	 * Get the places within the radius of the location, sorted by distance.
+	 */
+	private List<Hit> within(double latitude, double longitude, double radius, Filter filter) {
+		double angle = radius / GreatCircle.EARTH_RADIUS;
+		double dLat = Math.toDegrees(angle);
+		double dLng = Math.abs(latitude) + dLat < 90.0 ? Math.toDegrees(Math.asin(Math.sin(angle)
+				/ Math.cos(Math.toRadians(latitude)))) : 180.0;
+		double west = longitude - dLng;
+		double east = longitude + dLng;
+		if (dLng >= 180.0) {
+			west = -180.0;
+			east = 180.0;
+		} else {
+			west = west < -180.0 ? west + 360.0 : west;
+			east = east > 180.0 ? east - 360.0 : east;
+		}
+		List<Hit> hits = new ArrayList<Hit>();
+		mLock.readLock().lock();
+		try {
+			for (List<Place> cell : cells(latitude - dLat, west, latitude + dLat, east)) {
+				for (Place place : cell) {
+					double distance = GreatCircle.distance(latitude, longitude, place.mLat,
+							place.mLong);
+					if (distance <= radius && (filter == null || filter.matches(place))) {
+						hits.add(new Hit(place, distance));
+					}
+				}
+			}
+		} finally {
+			mLock.readLock().unlock();
+		}
+		Collections.sort(hits, Hit.NEAREST_FIRST);
+		return hits;
+	}
+
+	/**
+	 * Get the lists of places in the cells that overlap the bounds. Must hold the read lock.
+	 */
+	private Iterable<List<Place>> cells(double south, double west, double north, double east) {
+		int bottom = row(Math.max(south, -90.0));
+		int top = row(Math.min(north, 90.0));
+		int left = column(west);
+		int right = column(east);
+		if (west > east) { // crosses the 180th meridian
+			right += CELLS;
+		}
+		long count = (long) (top - bottom + 1) * (right - left + 1);
+		if (count >= mCells.size()) { // fewer cells to check by going through all of them
+			return mCells.values();
+		}
+		List<List<Place>> cells = new ArrayList<List<Place>>();
+		for (int row = bottom; row <= top; row++) {
+			double lat = -90.0 + (row + 0.5) * CELL_LAT;
+			for (int col = left; col <= right; col++) {
+				double lng = -180.0 + ((col & CELLS - 1) + 0.5) * CELL_LNG;
+				List<Place> places = mCells.get(GeoHash.bits(lat, lng, HALVINGS * 2));
+				if (places != null) {
+					cells.add(places);
+				}
+			}
+		}
+		return cells;
+	}
+
+	private static Long cell(double latitude, double longitude) {
+		return GeoHash.bits(latitude, longitude, HALVINGS * 2);
+	}
+
+	private static int row(double latitude) {
+		return Math.min((int) ((latitude + 90.0) / CELL_LAT), CELLS - 1);
+	}
+
+	private static int column(double longitude) {
+		return Math.max(0, Math.min((int) ((longitude + 180.0) / CELL_LNG), CELLS - 1));
+	}
+
+	/**
+	 * Get the places of the first hits.
+	 */
+	private static List<Place> toPlaces(List<Hit> hits, int count) {
+		int size = Math.min(hits.size(), count);
+		List<Place> places = new ArrayList<Place>(size);
+		for (int i = 0; i < size; i++) {
+			places.add(hits.get(i).mPlace);
+		}
+		return places;
+	}
+
+	@Override
+	public String toString() {
+		mLock.readLock().lock();
+		try {
+			return Objects.toStringHelper(this).add("places", mPlaces.size())
+					.add("cells", mCells.size()).toString();
+		} finally {
+			mLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Place and its distance from the query location.
+	 */
+	private static class Hit {
+		static final Comparator<Hit> NEAREST_FIRST = new Comparator<Hit>() {
+			@Override
+			public int compare(Hit lhs, Hit rhs) {
+				return Double.compare(lhs.mDistance, rhs.mDistance);
+			}
+		};
+
+		final Place mPlace;
+		final double mDistance;
+
+		Hit(Place place, double distance) {
+			mPlace = place;
+			mDistance = distance;
+		}
+	}
+
+	/**
+	 * Only matches places that meet all of the set conditions.
+	 */
+	public static class Filter {
+		private String[] mTypes;
+		private int mMinPrice = -1;
+		private int mMaxPrice = -1;
+		private float mMinRating = -1.0f;
+
+		/**
+		 * Places must have at least one of these types.
+		 *
+		 * @see <a href="https://developers.google.com/places/documentation/supported_types"
+		 *      target="_blank">Supported Place Types</a>
+		 */
+		public Filter types(String... types) {
+			mTypes = types;
+			return this;
+		}
+
+		/**
+		 * Places must have a price level within this range. Values can be from 0 (least
+		 * expensive) to 4 (most expensive). Places without a price level don't match.
+		 */
+		public Filter price(int min, int max) {
+			mMinPrice = min;
+			mMaxPrice = max;
+			return this;
+		}
+
+		/**
+		 * Places must have at least this rating. Places without a rating don't match.
+		 */
+		public Filter minRating(float rating) {
+			mMinRating = rating;
+			return this;
+		}
+
+		/**
+		 * True if the place meets all of the conditions.
+		 */
+		public boolean matches(Place place) {
+			if (mMinPrice >= 0 && (place.mPrice < mMinPrice || place.mPrice > mMaxPrice)) {
+				return false;
+			}
+			if (mMinRating >= 0.0f && place.mRating < mMinRating) {
+				return false;
+			}
+			if (mTypes != null && mTypes.length > 0) {
+				if (place.mTypes == null) {
+					return false;
+				}
+				for (String type : mTypes) {
+					if (place.mTypes.contains(type)) {
+						return true;
+					}
+				}
+				return false;
+			}
+			return true;
+		}
+
+		@Override
+		public String toString() {
+			return Objects.toStringHelper(this)
+					.add("types", mTypes != null ? Arrays.toString(mTypes) : null)
+					.add("minPrice", mMinPrice != -1 ? mMinPrice : null)
+					.add("maxPrice", mMaxPrice != -1 ? mMaxPrice : null)
+					.add("minRating", mMinRating != -1.0f ? mMinRating : null).omitNullValues()
+					.toString();
+		}
+	}
+}
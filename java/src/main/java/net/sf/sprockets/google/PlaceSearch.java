@@ -0,0 +1,261 @@
+/*
+ * Copyright 2013 pushbit <pushbit@gmail.com>
+ *
+ * This file is part of Sprockets.
+ *
+ * Sprockets is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Sprockets is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Sprockets.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.sf.sprockets.google;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static net.sf.sprockets.google.Places.Response.Status.INVALID_REQUEST;
+import static net.sf.sprockets.google.Places.Response.Status.OK;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import net.sf.sprockets.Settings;
+import net.sf.sprockets.Sprockets;
+import net.sf.sprockets.google.Places.Params;
+import net.sf.sprockets.google.Places.Request;
+import net.sf.sprockets.google.Places.Response;
+import net.sf.sprockets.google.Places.Response.Status;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Throwables;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterators;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * All of the places from a {@link Places#nearbySearchAll(Params, Places.Field...) nearby} or
+ * {@link Places#textSearchAll(Params, Places.Field...) text} search. The first page of results is
+ * requested when the iterator is first used and each following page is requested when the places
+ * in the previous page have been iterated. If {@link Params#prefetch() prefetch} was set, the next
+ * page is requested in the background while the current page is iterated.
+ * <p>
+ * The Places API only activates a next page token a short time after it has been issued. Page
+ * requests wait until {@code google.places.page-token.delay} milliseconds have passed since the
+ * previous page was received and, if the token still isn't valid, try again after the same delay
+ * up to {@code google.places.page-token.retries} times.
+ * </p>
+ * <p>
+ * The iterator can't throw an IOException. If there is a problem communicating with the Google
+ * Places API service, the iteration ends and the exception is available from
+ * {@link #getException()}. Check {@link #getStatus()} after the iteration to see if all pages were
+ * successfully received.
+ * </p>
+ * <p>
+ * Instances can only be iterated once and are not thread-safe.
+ * </p>
+ *
+ * @since 2.0.0
+ */
+public class PlaceSearch implements Iterable<Place> {
+	private final Request mType;
+	private final String mUrl;
+	private final int mFields;
+	private final int mMaxResults;
+	private final boolean mPrefetch;
+	private final long mDelay;
+	private final int mRetries;
+	private boolean mIterated;
+	private Status mStatus;
+	private IOException mException;
+	private final Set<String> mAttribs = new LinkedHashSet<String>();
+
+	PlaceSearch(Request type, Params params, int fields, int maxResults, boolean prefetch) {
+		this(type, params.format(type), fields, maxResults, prefetch);
+	}
+
+	/**
+	 * @param url
+	 *            first page of results
+	 */
+	PlaceSearch(Request type, String url, int fields, int maxResults, boolean prefetch) {
+		mType = type;
+		mUrl = url;
+		mFields = fields;
+		mMaxResults = Math.max(0, maxResults);
+		mPrefetch = prefetch;
+		Settings settings = Sprockets.getSettings();
+		mDelay = MILLISECONDS.toNanos(Math.max(0L, settings.getPageTokenDelay()));
+		mRetries = Math.max(0, settings.getPageTokenRetries());
+	}
+
+	/**
+	 * Iterate over the places, requesting pages as they are needed.
+	 *
+	 * @throws IllegalStateException
+	 *             if an iterator has already been returned
+	 */
+	@Override
+	public Iterator<Place> iterator() {
+		if (mIterated) {
+			throw new IllegalStateException("search can only be iterated once");
+		}
+		mIterated = true;
+		return new Pages();
+	}
+
+	/**
+	 * Indication of the success or failure of the most recent page request. Null if no pages have
+	 * been received.
+	 */
+	public Status getStatus() {
+		return mStatus;
+	}
+
+	/**
+	 * Problem that ended the iteration early or null if there wasn't one.
+	 */
+	public IOException getException() {
+		return mException;
+	}
+
+	/**
+	 * Attributions for the places iterated so far that must be displayed to the user. Empty if
+	 * there aren't any.
+	 */
+	public List<String> getHtmlAttributions() {
+		return ImmutableList.copyOf(mAttribs);
+	}
+
+	/**
+	 * Places from the current page, requesting the next page when the current one has ended.
+	 */
+	private class Pages extends AbstractIterator<Place> {
+		private Iterator<Place> mPage = Iterators.emptyIterator();
+		/** Null if there isn't another page to request. */
+		private String mNextUrl = mUrl;
+		/** {@link System#nanoTime()} when the next page can be requested. */
+		private long mNextTime;
+		/** Non-null if the next page has been requested in the background. */
+		private ListenableFuture<Response<List<Place>>> mNext;
+		/** Number of places received in all pages. */
+		private int mReceived;
+
+		@Override
+		protected Place computeNext() {
+			while (!mPage.hasNext()) {
+				if (mNextUrl == null && mNext == null) {
+					return endOfData();
+				}
+				Response<List<Place>> resp;
+				try {
+					resp = mNext != null ? await(mNext) : page(mNextUrl, mNextTime, mMaxResults
+							- mReceived, mStatus != null);
+				} catch (IOException e) {
+					mException = e;
+					return endOfData();
+				} finally {
+					mNextUrl = null;
+					mNext = null;
+				}
+				mStatus = resp.getStatus();
+				if (mStatus != OK) {
+					return endOfData();
+				}
+				List<String> attribs = resp.getHtmlAttributions();
+				if (attribs != null) {
+					mAttribs.addAll(attribs);
+				}
+				List<Place> places = resp.getResult();
+				if (places != null) { // null when an OK page doesn't have any results
+					mPage = places.iterator();
+					mReceived += places.size();
+				}
+				String token = resp.getNextPageToken();
+				if (token != null && (mMaxResults == 0 || mReceived < mMaxResults)) {
+					mNextUrl = new Params().pageToken(token).format(mType);
+					mNextTime = System.nanoTime() + mDelay;
+					if (mPrefetch) {
+						final String url = mNextUrl;
+						final long time = mNextTime;
+						final int remaining = mMaxResults - mReceived;
+						mNext = Calls.submit(new Callable<Response<List<Place>>>() {
+							@Override
+							public Response<List<Place>> call() throws IOException {
+								return page(url, time, remaining, true);
+							}
+						});
+						mNextUrl = null;
+					}
+				}
+			}
+			return mPage.next();
+		}
+	}
+
+	/**
+	 * Request the page after waiting until the time, trying again if the page token isn't valid
+	 * yet.
+	 *
+	 * @param maxResults
+	 *            less than or equal to 0 for all places in the page
+	 * @param token
+	 *            true if the URL has a page token
+	 */
+	private Response<List<Place>> page(String url, long time, int maxResults, boolean token)
+			throws IOException {
+		for (int attempt = 0;; attempt++) {
+			long wait = time - System.nanoTime();
+			if (wait > 0) {
+				try {
+					NANOSECONDS.sleep(wait);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("interrupted while waiting for page token");
+				}
+			}
+			Response<List<Place>> resp = Places.places(url, mFields, Math.max(0, maxResults));
+			if (!token || resp.getStatus() != INVALID_REQUEST || attempt >= mRetries) {
+				return resp;
+			}
+			time = System.nanoTime() + mDelay;
+		}
+	}
+
+	/**
+	 * Wait for the page that was requested in the background.
+	 */
+	private static Response<List<Place>> await(ListenableFuture<Response<List<Place>>> page)
+			throws IOException {
+		try {
+			return page.get();
+		} catch (InterruptedException e) {
+			page.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while waiting for next page");
+		} catch (ExecutionException e) {
+			Throwables.propagateIfPossible(e.getCause(), IOException.class);
+			throw Throwables.propagate(e.getCause());
+		}
+	}
+
+	@Override
+	public String toString() {
+		return Objects.toStringHelper(this).add("type", mType)
+				.add("maxResults", mMaxResults != 0 ? mMaxResults : null)
+				.add("prefetch", mPrefetch ? mPrefetch : null).add("status", mStatus)
+				.add("exception", mException).omitNullValues().toString();
+	}
+}
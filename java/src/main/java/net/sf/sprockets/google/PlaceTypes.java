@@ -0,0 +1,127 @@
+/*
+ * Copyright 2013 pushbit <pushbit@gmail.com>
+ *
+ * This file is part of Sprockets.
+ *
+ * Sprockets is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Sprockets is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Sprockets.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.sf.sprockets.google;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+
+/**
+ * Unmodifiable list of the types of a {@link Place}, in the order that they were added. Supported
+ * types are stored by their position in {@link Type} and other types are stored by name. The
+ * supported types are also stored as bits so that {@link #contains(Object)} doesn't need to search
+ * the list.
+ */
+final class PlaceTypes extends AbstractList<String> {
+	private static final short[] NO_CODES = new short[0];
+	private static final String[] NO_TYPES = new String[0];
+
+	/** Type ordinal, or the complement of the index in {@link #mOther}, for each type in order. */
+	private short[] mCodes = NO_CODES;
+	/** Bits of the supported types. */
+	private final long[] mBits = new long[(Type.VALUES.length + 63) / 64];
+	private String[] mOther = NO_TYPES;
+
+	/**
+	 * Add the type while the list is being read.
+	 */
+	void put(String type) {
+		Type known = Type.get(type);
+		short code;
+		if (known != null) {
+			int i = known.ordinal();
+			mBits[i >>> 6] |= 1L << i;
+			code = (short) i;
+		} else {
+			mOther = Arrays.copyOf(mOther, mOther.length + 1);
+			mOther[mOther.length - 1] = StringPool.intern(type);
+			code = (short) ~(mOther.length - 1);
+		}
+		mCodes = Arrays.copyOf(mCodes, mCodes.length + 1);
+		mCodes[mCodes.length - 1] = code;
+	}
+
+	@Override
+	public String get(int index) {
+		if (index < 0 || index >= mCodes.length) {
+			throw new IndexOutOfBoundsException("index: " + index);
+		}
+		short code = mCodes[index];
+		return code >= 0 ? Type.VALUES[code].name() : mOther[~code];
+	}
+
+	@Override
+	public int size() {
+		return mCodes.length;
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		if (o instanceof String) {
+			Type known = Type.get((String) o);
+			if (known != null) {
+				int i = known.ordinal();
+				return (mBits[i >>> 6] & 1L << i) != 0;
+			}
+			return Arrays.asList(mOther).contains(o);
+		}
+		return false;
+	}
+
+	/**
+	 * Place types that are stored as bits.
+	 *
+	 * @see <a href="https://developers.google.com/places/documentation/supported_types"
+	 *      target="_blank">Supported Place Types</a>
+	 */
+	enum Type {
+		accounting, airport, amusement_park, aquarium, art_gallery, atm, bakery, bank, bar,
+		beauty_salon, bicycle_store, book_store, bowling_alley, bus_station, cafe, campground,
+		car_dealer, car_rental, car_repair, car_wash, casino, cemetery, church, city_hall,
+		clothing_store, convenience_store, courthouse, dentist, department_store, doctor,
+		electrician, electronics_store, embassy, establishment, finance, fire_station, florist,
+		food, funeral_home, furniture_store, gas_station, general_contractor,
+		grocery_or_supermarket, gym, hair_care, hardware_store, health, hindu_temple,
+		home_goods_store, hospital, insurance_agency, jewelry_store, laundry, lawyer, library,
+		liquor_store, local_government_office, locksmith, lodging, meal_delivery, meal_takeaway,
+		mosque, movie_rental, movie_theater, moving_company, museum, night_club, painter, park,
+		parking, pet_store, pharmacy, physiotherapist, place_of_worship, plumber, police,
+		post_office, real_estate_agency, restaurant, roofing_contractor, rv_park, school,
+		shoe_store, shopping_mall, spa, stadium, storage, store, subway_station, synagogue,
+		taxi_stand, train_station, travel_agency, university, veterinary_care, zoo,
+		administrative_area_level_1, administrative_area_level_2, administrative_area_level_3,
+		colloquial_area, country, floor, geocode, intersection, locality, natural_feature,
+		neighborhood, political, point_of_interest, post_box, postal_code, postal_code_prefix,
+		postal_town, premise, room, route, street_address, street_number, sublocality,
+		sublocality_level_1, sublocality_level_2, sublocality_level_3, sublocality_level_4,
+		sublocality_level_5, subpremise, transit_station;
+
+		private static final Type[] VALUES = values();
+
+		private static final EnumLookup<Type> sLookup = new EnumLookup<Type>(Type.class, null,
+				null, null);
+
+		/**
+		 * Get the type with the name.
+		 *
+		 * @return null if the type isn't supported
+		 */
+		static Type get(String type) {
+			return sLookup.get(type);
+		}
+	}
+}
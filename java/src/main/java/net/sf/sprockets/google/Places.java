@@ -17,6 +17,7 @@
 
 package net.sf.sprockets.google;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
 import static java.net.HttpURLConnection.HTTP_BAD_REQUEST;
 import static java.net.HttpURLConnection.HTTP_FORBIDDEN;
@@ -56,36 +57,34 @@ import static net.sf.sprockets.google.Places.Response.Status.NOT_MODIFIED;
 import static net.sf.sprockets.google.Places.Response.Status.OK;
 import static net.sf.sprockets.google.Places.Response.Status.OVER_QUERY_LIMIT;
 import static net.sf.sprockets.google.Places.Response.Status.UNKNOWN_ERROR;
+import static net.sf.sprockets.google.Throttle.Api.PLACES;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
 import java.net.URL;
-import java.net.URLConnection;
-import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.Callable;
 import java.util.logging.Logger;
 
 import net.sf.sprockets.Sprockets;
 import net.sf.sprockets.google.Place.Photo;
 import net.sf.sprockets.google.Place.Prediction;
 import net.sf.sprockets.google.Places.Params.RankBy;
+import net.sf.sprockets.google.RetryPolicy.Attempts;
 import net.sf.sprockets.net.HttpClient;
 import net.sf.sprockets.util.logging.Loggers;
 
-import org.apache.commons.configuration.Configuration;
-
-import com.google.common.base.Joiner;
 import com.google.common.base.Objects;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ObjectArrays;
 import com.google.common.io.Closeables;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.gson.stream.JsonReader;
 
 /**
@@ -118,6 +117,11 @@ import com.google.gson.stream.JsonReader;
  *     System.out.println("error: " + status);
  * }
  * }</pre>
+ * <p>
+ * Each method also has an {@code Async} version which sends the request in the background and
+ * returns a {@link ListenableFuture} for the response. The Params are read before the method
+ * returns, so the instance can be cleared and re-used immediately.
+ * </p>
  */
 public class Places {
 	private static final Logger sLog = Loggers.get(Places.class);
@@ -135,12 +139,12 @@ public class Places {
 				"radarsearch", false), AUTOCOMPLETE("autocomplete", true), QUERY_AUTOCOMPLETE(
 				"queryautocomplete", true), DETAILS("details", true), PHOTO("photo", false);
 
-		private final String mUrl;
+		/** Appended to the google.base-url setting. */
+		private final String mPath;
 		private final boolean mHasLang;
 
 		Request(String path, boolean hasLanguage) {
-			mUrl = "https://maps.googleapis.com/maps/api/place/" + path
-					+ (!path.equals("photo") ? "/json?" : "?");
+			mPath = "place/" + path + (!path.equals("photo") ? "/json?" : "?");
 			mHasLang = hasLanguage;
 		}
 	}
@@ -190,7 +194,75 @@ public class Places {
 	 */
 	public static Response<List<Place>> nearbySearch(Params params, Field... fields)
 			throws IOException {
-		return places(NEARBY_SEARCH, params, fields);
+		return places(params.format(NEARBY_SEARCH), Field.bits(fields), params.mMaxResults);
+	}
+
+	/**
+	 * Same as {@link #nearbySearch(Params, Field...)}, but runs in the background.
+	 * 
+	 * @since 2.0.0
+	 */
+	public static ListenableFuture<Response<List<Place>>> nearbySearchAsync(Params params,
+			Field... fields) {
+		return placesAsync(params.format(NEARBY_SEARCH), Field.bits(fields), params.mMaxResults);
+	}
+
+	/**
+	 * Same as {@link #nearbySearch(Params, Field...)}, but the next pages of results are requested
+	 * as they are needed while iterating the places. {@link Params#maxResults(int) maxResults}
+	 * limits the number of places in all pages and {@link Params#prefetch() prefetch} requests the
+	 * next page in the background. The Params are read before the method returns.
+	 * 
+	 * @since 2.0.0
+	 */
+	public static PlaceSearch nearbySearchAll(Params params, Field... fields) {
+		return new PlaceSearch(NEARBY_SEARCH, params, Field.bits(fields), params.mMaxResults,
+				params.mPrefetch);
+	}
+
+	/**
+	 * Get all of the places in an area that is too large for one nearby search, such as a city.
+	 * The area is split into tiles that are searched concurrently and tiles with the maximum
+	 * number of results are split again. Places are returned while the tiles are being searched
+	 * and each place is only returned once. See {@link AreaSearch} for details.
+	 * <p>
+	 * Required params, at least one of:
+	 * </p>
+	 * <ul>
+	 * <li>{@link Params#bounds(double, double, double, double) bounds}</li>
+	 * <li>{@link Params#polygon(double...) polygon}</li>
+	 * </ul>
+	 * <p>
+	 * Optional params:
+	 * </p>
+	 * <ul>
+	 * <li>{@link Params#name(String) name}</li>
+	 * <li>{@link Params#keyword(String) keyword}</li>
+	 * <li>{@link Params#types(String...) types}</li>
+	 * <li>{@link Params#minPrice(int) minPrice}</li>
+	 * <li>{@link Params#maxPrice(int) maxPrice}</li>
+	 * <li>{@link Params#openNow() openNow}</li>
+	 * <li>{@link Params#language(String) language}</li>
+	 * <li>{@link Params#maxResults(int) maxResults}</li>
+	 * </ul>
+	 * <p>
+	 * The available fields are the same as {@link #nearbySearch(Params, Field...) nearbySearch}.
+	 * {@link Field#GEOMETRY GEOMETRY} is always populated.
+	 * </p>
+	 * 
+	 * @throws IllegalStateException
+	 *             if the bounds and polygon are not set
+	 * @since 2.0.0
+	 */
+	public static AreaSearch areaSearch(Params params, Field... fields) {
+		checkState(params.mBounds != null || params.mPolygon != null,
+				"bounds or polygon must be set");
+		int bits = Field.bits(fields);
+		if (bits != 0) {
+			bits |= GEOMETRY.mMask; // used to check if the places are in the area
+		}
+		return new AreaSearch(params.format(NEARBY_SEARCH, false), params.mBounds,
+				params.mPolygon, bits, params.mMaxResults);
 	}
 
 	/**
@@ -236,7 +308,28 @@ public class Places {
 	 */
 	public static Response<List<Place>> textSearch(Params params, Field... fields)
 			throws IOException {
-		return places(TEXT_SEARCH, params, fields);
+		return places(params.format(TEXT_SEARCH), Field.bits(fields), params.mMaxResults);
+	}
+
+	/**
+	 * Same as {@link #textSearch(Params, Field...)}, but runs in the background.
+	 * 
+	 * @since 2.0.0
+	 */
+	public static ListenableFuture<Response<List<Place>>> textSearchAsync(Params params,
+			Field... fields) {
+		return placesAsync(params.format(TEXT_SEARCH), Field.bits(fields), params.mMaxResults);
+	}
+
+	/**
+	 * Same as {@link #textSearch(Params, Field...)}, but the next pages of results are requested as
+	 * they are needed while iterating the places. See {@link #nearbySearchAll(Params, Field...)}.
+	 * 
+	 * @since 2.0.0
+	 */
+	public static PlaceSearch textSearchAll(Params params, Field... fields) {
+		return new PlaceSearch(TEXT_SEARCH, params, Field.bits(fields), params.mMaxResults,
+				params.mPrefetch);
 	}
 
 	/**
@@ -276,7 +369,17 @@ public class Places {
 	 */
 	public static Response<List<Place>> radarSearch(Params params, Field... fields)
 			throws IOException {
-		return places(RADAR_SEARCH, params, fields);
+		return places(params.format(RADAR_SEARCH), Field.bits(fields), params.mMaxResults);
+	}
+
+	/**
+	 * Same as {@link #radarSearch(Params, Field...)}, but runs in the background.
+	 * 
+	 * @since 2.0.0
+	 */
+	public static ListenableFuture<Response<List<Place>>> radarSearchAsync(Params params,
+			Field... fields) {
+		return placesAsync(params.format(RADAR_SEARCH), Field.bits(fields), params.mMaxResults);
 	}
 
 	/**
@@ -322,7 +425,17 @@ public class Places {
 	 */
 	public static Response<List<Prediction>> autocomplete(Params params, Field... fields)
 			throws IOException {
-		return predictions(AUTOCOMPLETE, params, fields);
+		return predictions(AUTOCOMPLETE, params, Field.bits(fields));
+	}
+
+	/**
+	 * Same as {@link #autocomplete(Params, Field...)}, but runs in the background.
+	 * 
+	 * @since 2.0.0
+	 */
+	public static ListenableFuture<Response<List<Prediction>>> autocompleteAsync(Params params,
+			Field... fields) {
+		return predictionsAsync(AUTOCOMPLETE, params, Field.bits(fields));
 	}
 
 	/**
@@ -358,7 +471,17 @@ public class Places {
 	 */
 	public static Response<List<Prediction>> queryAutocomplete(Params params, Field... fields)
 			throws IOException {
-		return predictions(QUERY_AUTOCOMPLETE, params, fields);
+		return predictions(QUERY_AUTOCOMPLETE, params, Field.bits(fields));
+	}
+
+	/**
+	 * Same as {@link #queryAutocomplete(Params, Field...)}, but runs in the background.
+	 * 
+	 * @since 2.0.0
+	 */
+	public static ListenableFuture<Response<List<Prediction>>> queryAutocompleteAsync(
+			Params params, Field... fields) {
+		return predictionsAsync(QUERY_AUTOCOMPLETE, params, Field.bits(fields));
 	}
 
 	/**
@@ -396,12 +519,24 @@ public class Places {
 	 *             if there is a problem communicating with the Google Places API service
 	 */
 	public static Response<Place> details(Params params, Field... fields) throws IOException {
-		JsonReader in = reader(params.format(DETAILS));
-		try {
-			return new PlaceResponse(in, Field.bits(fields), params.mMaxResults);
-		} finally {
-			Closeables.close(in, true);
-		}
+		return details(params.format(DETAILS), Field.bits(fields), params.mMaxResults);
+	}
+
+	/**
+	 * Same as {@link #details(Params, Field...)}, but runs in the background.
+	 * 
+	 * @since 2.0.0
+	 */
+	public static ListenableFuture<Response<Place>> detailsAsync(Params params, Field... fields) {
+		final String url = params.format(DETAILS);
+		final int bits = Field.bits(fields);
+		final int maxResults = params.mMaxResults;
+		return Calls.submit(new Callable<Response<Place>>() {
+			@Override
+			public Response<Place> call() throws IOException {
+				return details(url, bits, maxResults);
+			}
+		});
 	}
 
 	/**
@@ -431,36 +566,230 @@ public class Places {
 	 *             if there is a problem communicating with the Google Places API service
 	 */
 	public static Response<InputStream> photo(Params params) throws IOException {
-		HttpURLConnection con = HttpClient.openConnection(new URL(params.format(PHOTO)));
-		if (!Strings.isNullOrEmpty(params.mEtag)) {
-			con.setRequestProperty("If-None-Match", params.mEtag);
-		}
-		return new PhotoResponse(con);
+		return photo(params.format(PHOTO), PhotoCache.key(params), params.mEtag);
+	}
+
+	/**
+	 * Same as {@link #photo(Params)}, but runs in the background. Always
+	 * {@link InputStream#close() close} the stream when finished.
+	 * 
+	 * @since 2.0.0
+	 */
+	public static ListenableFuture<Response<InputStream>> photoAsync(Params params) {
+		final String url = params.format(PHOTO);
+		final String key = PhotoCache.key(params);
+		final String etag = params.mEtag;
+		return Calls.submit(new Callable<Response<InputStream>>() {
+			@Override
+			public Response<InputStream> call() throws IOException {
+				return photo(url, key, etag);
+			}
+		});
 	}
 
 	/**
 	 * Get places for the request.
 	 */
-	private static PlacesResponse places(Request type, Params params, Field[] fields)
+	static PlacesResponse places(final String url, final int fields, final int maxResults)
 			throws IOException {
-		JsonReader in = reader(params.format(type));
-		try {
-			return new PlacesResponse(in, Field.bits(fields), params.mMaxResults);
-		} finally {
-			Closeables.close(in, true);
-		}
+		return SingleFlight.call(key(url, fields, maxResults), new Attempt<PlacesResponse>() {
+			@Override
+			PlacesResponse attempt() throws IOException {
+				JsonReader in = reader(url);
+				try {
+					PlacesResponse resp = places(in, fields, maxResults);
+					PlaceIndex.indexAll(resp.mResult);
+					return resp;
+				} finally {
+					Closeables.close(in, true);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Read places from a search response. Also used to benchmark the parser without a connection.
+	 */
+	static PlacesResponse places(JsonReader in, int fields, int maxResults) throws IOException {
+		return new PlacesResponse(in, fields, maxResults);
+	}
+
+	/**
+	 * Get places for the request in the background.
+	 */
+	private static ListenableFuture<Response<List<Place>>> placesAsync(final String url,
+			final int fields, final int maxResults) {
+		return Calls.submit(new Callable<Response<List<Place>>>() {
+			@Override
+			public Response<List<Place>> call() throws IOException {
+				return places(url, fields, maxResults);
+			}
+		});
+	}
+
+	/**
+	 * Get predictions for the request from the {@link AutocompleteCache} or the service.
+	 */
+	private static Response<List<Prediction>> predictions(Request type, Params params, int fields)
+			throws IOException {
+		String key = AutocompleteCache.key(type, params);
+		Response<List<Prediction>> resp = AutocompleteCache.get(key, fields, params.mMaxResults);
+		return resp != null ? resp
+				: predictions(params.format(type), key, fields, params.mMaxResults);
+	}
+
+	/**
+	 * Get predictions for the request from the service and add them to the
+	 * {@link AutocompleteCache}.
+	 *
+	 * @param key
+	 *            null if the predictions shouldn't be cached
+	 */
+	static Response<List<Prediction>> predictions(String url, String key, int fields,
+			int maxResults) throws IOException {
+		PredictionsResponse resp = predictions(url, fields, maxResults);
+		AutocompleteCache.put(key, fields, maxResults, resp);
+		return resp;
 	}
 
 	/**
 	 * Get predictions for the request.
 	 */
-	private static PredictionsResponse predictions(Request type, Params params, Field[] fields)
+	private static PredictionsResponse predictions(final String url, final int fields,
+			final int maxResults) throws IOException {
+		return SingleFlight.call(key(url, fields, maxResults), new Attempt<PredictionsResponse>() {
+			@Override
+			PredictionsResponse attempt() throws IOException {
+				JsonReader in = reader(url);
+				try {
+					return predictions(in, fields, maxResults);
+				} finally {
+					Closeables.close(in, true);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Read predictions from an autocomplete response. Also used to benchmark the parser without a
+	 * connection.
+	 */
+	static PredictionsResponse predictions(JsonReader in, int fields, int maxResults)
 			throws IOException {
-		JsonReader in = reader(params.format(type));
-		try {
-			return new PredictionsResponse(in, Field.bits(fields), params.mMaxResults);
-		} finally {
-			Closeables.close(in, true);
+		return new PredictionsResponse(in, fields, maxResults);
+	}
+
+	/**
+	 * Get predictions for the request from the {@link AutocompleteCache} or in the background.
+	 */
+	private static ListenableFuture<Response<List<Prediction>>> predictionsAsync(Request type,
+			Params params, final int fields) {
+		final String key = AutocompleteCache.key(type, params);
+		final int maxResults = params.mMaxResults;
+		Response<List<Prediction>> resp = AutocompleteCache.get(key, fields, maxResults);
+		if (resp != null) {
+			return Futures.immediateFuture(resp);
+		}
+		final String url = params.format(type);
+		return Calls.submit(new Callable<Response<List<Prediction>>>() {
+			@Override
+			public Response<List<Prediction>> call() throws IOException {
+				return predictions(url, key, fields, maxResults);
+			}
+		});
+	}
+
+	/**
+	 * Get the place details for the request from the {@link DetailsCache} or the service.
+	 */
+	private static Response<Place> details(final String url, final int fields,
+			final int maxResults) throws IOException {
+		Response<Place> resp = DetailsCache.get(url, fields, maxResults);
+		if (resp == null) {
+			resp = SingleFlight.call(key(url, fields, maxResults), new Attempt<Response<Place>>() {
+				@Override
+				Response<Place> attempt() throws IOException {
+					JsonReader in = reader(url);
+					try {
+						return details(in, fields, maxResults);
+					} finally {
+						Closeables.close(in, true);
+					}
+				}
+			});
+			DetailsCache.put(url, fields, maxResults, resp);
+		}
+		return resp;
+	}
+
+	/**
+	 * Read the place from a details response. Also used to benchmark the parser without a
+	 * connection.
+	 */
+	static PlaceResponse details(JsonReader in, int fields, int maxResults) throws IOException {
+		return new PlaceResponse(in, fields, maxResults);
+	}
+
+	/**
+	 * Download the photo for the request or get it from the {@link PhotoCache}.
+	 * 
+	 * @param key
+	 *            from {@link PhotoCache#key(Params)}
+	 * @param etag
+	 *            may be null
+	 */
+	static Response<InputStream> photo(final String url, final String key, final String etag)
+			throws IOException {
+		return RetryPolicy.getDefault().call(new Attempt<Response<InputStream>>() {
+			@Override
+			Response<InputStream> attempt() throws IOException {
+				if (Strings.isNullOrEmpty(etag) && PhotoCache.isEnabled()) {
+					return PhotoCache.photo(url, key);
+				}
+				return download(url, etag);
+			}
+
+			@Override
+			void discard(Response<InputStream> resp) throws IOException {
+				Closeables.close(resp.mResult, true);
+			}
+		});
+	}
+
+	/**
+	 * Send one request for the photo.
+	 * 
+	 * @param etag
+	 *            may be null
+	 */
+	static PhotoResponse download(String url, String etag) throws IOException {
+		Throttle.get(PLACES).acquire();
+		HttpURLConnection con = HttpClient.openConnection(new URL(url));
+		if (!Strings.isNullOrEmpty(etag)) {
+			con.setRequestProperty("If-None-Match", etag);
+		}
+		return new PhotoResponse(con);
+	}
+
+	/**
+	 * Get the {@link SingleFlight} key for the request.
+	 */
+	private static String key(String url, int fields, int maxResults) {
+		return url + '#' + fields + '#' + maxResults;
+	}
+
+	/**
+	 * Request that is retried according to the default {@link RetryPolicy}.
+	 */
+	private abstract static class Attempt<R extends Response<?>> extends Attempts<R> {
+		@Override
+		Enum<?> status(R resp) {
+			return resp.mStatus;
+		}
+
+		@Override
+		void retries(R resp, int retries) {
+			resp.mRetries = retries;
 		}
 	}
 
@@ -468,8 +797,13 @@ public class Places {
 	 * Get a reader for the URL.
 	 */
 	private static JsonReader reader(String url) throws IOException {
-		URLConnection con = HttpClient.openConnection(new URL(url));
-		return new JsonReader(new InputStreamReader(con.getInputStream(), "UTF-8"));
+		Throttle.get(PLACES).acquire();
+		HttpURLConnection con = HttpClient.openConnection(new URL(url));
+		InputStream in = Metrics.getInputStream(PLACES, con);
+		if (in == null) {
+			throw new IOException("No response body, HTTP " + con.getResponseCode());
+		}
+		return ByteJsonReader.reader(in);
 	}
 
 	/**
@@ -484,25 +818,30 @@ public class Places {
 	 * }</pre>
 	 */
 	public static class Params {
-		private String mReference;
-		private double mLat = Double.NEGATIVE_INFINITY;
-		private double mLong = Double.NEGATIVE_INFINITY;
-		private int mRadius;
+		String mReference;
+		double mLat = Double.NEGATIVE_INFINITY;
+		double mLong = Double.NEGATIVE_INFINITY;
+		int mRadius;
 		private String mName;
 		private String mKeyword;
-		private String mQuery;
-		private int mOffset;
-		private String[] mTypes;
+		String mQuery;
+		int mOffset;
+		String[] mTypes;
 		private int mMinPrice = -1;
 		private int mMaxPrice = -1;
 		private boolean mOpen;
-		private String[] mCountries;
-		private String mLanguage;
+		String[] mCountries;
+		String mLanguage;
 		private RankBy mRankBy;
 		private String mPageToken;
-		private int mMaxResults;
-		private int mMaxWidth;
-		private int mMaxHeight;
+		int mMaxResults;
+		private boolean mPrefetch;
+		/** South, west, north, and east. */
+		private double[] mBounds;
+		/** Latitude and longitude pairs. */
+		private double[] mPolygon;
+		int mMaxWidth;
+		int mMaxHeight;
 		private String mEtag;
 
 		/**
@@ -684,6 +1023,47 @@ public class Places {
 			return this;
 		}
 
+		/**
+		 * Request the next page of results in the background while the current page is iterated.
+		 * Only used by {@link Places#nearbySearchAll(Params, Field...) nearbySearchAll} and
+		 * {@link Places#textSearchAll(Params, Field...) textSearchAll}.
+		 * 
+		 * @since 2.0.0
+		 */
+		public Params prefetch() {
+			mPrefetch = true;
+			return this;
+		}
+
+		/**
+		 * Search for places in this area. Only used by {@link Places#areaSearch(Params, Field...)
+		 * areaSearch}. The west longitude may be greater than the east longitude if the area
+		 * crosses the antimeridian.
+		 * 
+		 * @since 2.0.0
+		 */
+		public Params bounds(double south, double west, double north, double east) {
+			mBounds = new double[] { south, west, north, east };
+			return this;
+		}
+
+		/**
+		 * Search for places in the polygon, which has these latitude and longitude pairs as its
+		 * vertices. Only used by {@link Places#areaSearch(Params, Field...) areaSearch}. If
+		 * {@link #bounds(double, double, double, double) bounds} are also set, only places in both
+		 * areas are returned.
+		 * 
+		 * @throws IllegalArgumentException
+		 *             if there are fewer than 3 vertices or a latitude doesn't have a longitude
+		 * @since 2.0.0
+		 */
+		public Params polygon(double... latLngs) {
+			checkArgument(latLngs.length >= 6 && latLngs.length % 2 == 0,
+					"polygon must have at least 3 latitude and longitude pairs");
+			mPolygon = latLngs.clone();
+			return this;
+		}
+
 		/**
 		 * If necessary, decrease the width of the image to be this many pixels. The original aspect
 		 * ratio of the image will be preserved. The value must be between 1 and 1600.
@@ -710,86 +1090,78 @@ public class Places {
 			return this;
 		}
 
-		/** Append the types param with pipe symbols between the values. */
-		private static Joiner sPipes;
-
 		/**
 		 * Get a URL formatted for the type of request.
 		 * 
 		 * @since 1.0.0
 		 */
 		public String format(Request type) {
+			return format(type, true);
+		}
+
+		/**
+		 * Get a URL formatted for the type of request.
+		 * 
+		 * @param location
+		 *            false to leave out the location and radius
+		 */
+		String format(Request type, boolean location) {
 			/* use alternate param names? */
 			boolean alt = type == AUTOCOMPLETE || type == QUERY_AUTOCOMPLETE || type == PHOTO;
-			StringBuilder s = new StringBuilder(type.mUrl.length() + 256);
-			Configuration config = Sprockets.getConfig();
-			String key = config.getString("google.api-key");
-			checkState(!Strings.isNullOrEmpty(key), "google.api-key not set");
-			boolean sensor = config.getBoolean("hardware.location");
-			s.append(type.mUrl).append("key=").append(key).append("&sensor=").append(sensor);
-
+			UrlBuilder s = UrlBuilder.get(type.mPath).key().sensor();
 			if (!Strings.isNullOrEmpty(mPageToken)) {
-				return s.append("&pagetoken=").append(mPageToken).toString();
+				return s.param("pagetoken").append(mPageToken).toString();
 			}
 			if (!Strings.isNullOrEmpty(mReference)) {
-				s.append(alt ? "&photoreference=" : "&reference=").append(mReference);
+				s.param(alt ? "photoreference" : "reference").append(mReference);
 			}
-			if (mLat > Double.NEGATIVE_INFINITY && mLong > Double.NEGATIVE_INFINITY) {
-				s.append("&location=").append(mLat).append(',').append(mLong);
+			if (location && mLat > Double.NEGATIVE_INFINITY && mLong > Double.NEGATIVE_INFINITY) {
+				s.param("location").latLng(mLat, mLong);
 				if (mRankBy != DISTANCE) {
 					if (mRadius <= 0) {
 						mRadius = 50000;
 					}
-					s.append("&radius=").append(mRadius);
+					s.param("radius").append(mRadius);
 				}
 			}
-			try {
-				if (!Strings.isNullOrEmpty(mName)) {
-					s.append("&name=").append(URLEncoder.encode(mName, "UTF-8"));
-				}
-				if (!Strings.isNullOrEmpty(mKeyword)) {
-					s.append("&keyword=").append(URLEncoder.encode(mKeyword, "UTF-8"));
-				}
-				if (!Strings.isNullOrEmpty(mQuery)) {
-					s.append(alt ? "&input=" : "&query=")
-							.append(URLEncoder.encode(mQuery, "UTF-8"));
-				}
-			} catch (UnsupportedEncodingException e) {
-				throw new RuntimeException("UTF-8 encoding isn't supported?!", e);
+			if (!Strings.isNullOrEmpty(mName)) {
+				s.param("name").encode(mName);
+			}
+			if (!Strings.isNullOrEmpty(mKeyword)) {
+				s.param("keyword").encode(mKeyword);
+			}
+			if (!Strings.isNullOrEmpty(mQuery)) {
+				s.param(alt ? "input" : "query").encode(mQuery);
 			}
 			if (mOffset > 0) {
-				s.append("&offset=").append(mOffset);
+				s.param("offset").append(mOffset);
 			}
 			if (mTypes != null) {
-				if (sPipes == null) {
-					sPipes = Joiner.on("%7C").skipNulls(); // URL encoded
-				}
-				sPipes.appendTo(s.append("&types="), mTypes);
+				s.param("types").join(mTypes, false);
 			}
 			if (mMinPrice >= 0) {
-				s.append("&minprice=").append(mMinPrice);
+				s.param("minprice").append(mMinPrice);
 			}
 			if (mMaxPrice >= 0) {
-				s.append("&maxprice=").append(mMaxPrice);
+				s.param("maxprice").append(mMaxPrice);
 			}
 			if (mOpen) {
 				s.append("&opennow");
 			}
 			if (mCountries != null && mCountries.length > 0) {
-				s.append("&components=country:").append(mCountries[0]);
+				s.param("components").append("country:").append(mCountries[0]);
 			}
 			if (type.mHasLang) {
-				s.append("&language=").append(
-						!Strings.isNullOrEmpty(mLanguage) ? mLanguage : Locale.getDefault());
+				s.param("language").language(mLanguage);
 			}
 			if (mRankBy != null) {
-				s.append("&rankby=").append(mRankBy.name().toLowerCase(Locale.ENGLISH));
+				s.param("rankby").append(mRankBy.name().toLowerCase(Locale.ENGLISH));
 			}
 			if (mMaxWidth > 0) {
-				s.append("&maxwidth=").append(mMaxWidth);
+				s.param("maxwidth").append(mMaxWidth);
 			}
 			if (mMaxHeight > 0) {
-				s.append("&maxheight=").append(mMaxHeight);
+				s.param("maxheight").append(mMaxHeight);
 			}
 			return s.toString();
 		}
@@ -817,6 +1189,9 @@ public class Places {
 			mRankBy = null;
 			mPageToken = null;
 			mMaxResults = 0;
+			mPrefetch = false;
+			mBounds = null;
+			mPolygon = null;
 			mMaxWidth = 0;
 			mMaxHeight = 0;
 			mEtag = null;
@@ -828,7 +1203,8 @@ public class Places {
 			return Objects.hashCode(mReference, mLat, mLong, mRadius, mName, mKeyword, mQuery,
 					mOffset, Arrays.hashCode(mTypes), mMinPrice, mMaxPrice, mOpen,
 					Arrays.hashCode(mCountries), mLanguage, mRankBy, mPageToken, mMaxResults,
-					mMaxWidth, mMaxHeight, mEtag);
+					mPrefetch, Arrays.hashCode(mBounds), Arrays.hashCode(mPolygon), mMaxWidth,
+					mMaxHeight, mEtag);
 		}
 
 		@Override
@@ -847,7 +1223,9 @@ public class Places {
 							&& Objects.equal(mCountries, o.mCountries)
 							&& Objects.equal(mLanguage, o.mLanguage) && mRankBy == o.mRankBy
 							&& Objects.equal(mPageToken, o.mPageToken)
-							&& mMaxResults == o.mMaxResults && mMaxWidth == o.mMaxWidth
+							&& mMaxResults == o.mMaxResults && mPrefetch == o.mPrefetch
+							&& Arrays.equals(mBounds, o.mBounds)
+							&& Arrays.equals(mPolygon, o.mPolygon) && mMaxWidth == o.mMaxWidth
 							&& mMaxHeight == o.mMaxHeight && Objects.equal(mEtag, o.mEtag);
 				}
 			}
@@ -869,6 +1247,9 @@ public class Places {
 					.add("countries", mCountries != null ? Arrays.toString(mCountries) : null)
 					.add("language", mLanguage).add("rankBy", mRankBy).add("pageToken", mPageToken)
 					.add("maxResults", mMaxResults != 0 ? mMaxResults : null)
+					.add("prefetch", mPrefetch ? mPrefetch : null)
+					.add("bounds", mBounds != null ? Arrays.toString(mBounds) : null)
+					.add("polygon", mPolygon != null ? Arrays.toString(mPolygon) : null)
 					.add("maxWidth", mMaxWidth != 0 ? mMaxWidth : null)
 					.add("maxHeight", mMaxHeight != 0 ? mMaxHeight : null).add("etag", mEtag)
 					.omitNullValues().toString();
@@ -931,7 +1312,7 @@ public class Places {
 		MATCHED_SUBSTRINGS;
 
 		/** Unique flag bit to denote this Field. */
-		private final int mMask;
+		final int mMask;
 
 		Field() {
 			mMask = 1 << ordinal();
@@ -940,7 +1321,7 @@ public class Places {
 		/**
 		 * Get a bit field that represents the fields.
 		 */
-		private static int bits(Field[] fields) {
+		static int bits(Field[] fields) {
 			int bits = 0;
 			for (Field field : fields) {
 				bits |= field.mMask;
@@ -975,19 +1356,17 @@ public class Places {
 			/** New status that hasn't been added here yet. */
 			UNKNOWN;
 
+			private static final EnumLookup<Status> sLookup = new EnumLookup<Status>(Status.class,
+					UNKNOWN, sLog, "Unknown status code: {0}.  "
+							+ "If this hasn''t already been reported, please create a new issue at "
+							+ "https://github.com/pushbit/sprockets/issues");
+
 			/**
-			 * Get the matching Status or {@link #UNKNOWN} if one can't be found.
+			 * Get the matching Status or {@link #UNKNOWN} if one can't be found. Unknown values are only
+			 * logged the first time that they are found.
 			 */
 			private static Status get(String status) {
-				try {
-					return Status.valueOf(status);
-				} catch (IllegalArgumentException e) {
-					String msg = "Unknown status code: {0}.  "
-							+ "If this hasn''t already been reported, please create a new issue at "
-							+ "https://github.com/pushbit/sprockets/issues";
-					sLog.log(INFO, msg, status);
-					return UNKNOWN;
-				}
+				return sLookup.get(status);
 			}
 		}
 
@@ -996,9 +1375,10 @@ public class Places {
 		List<String> mAttribs;
 		String mToken;
 		String mEtag;
+		int mRetries;
 		private int mHash;
 
-		private Response() {
+		Response() {
 		}
 
 		/**
@@ -1008,6 +1388,20 @@ public class Places {
 			mStatus = Status.get(status);
 		}
 
+		/**
+		 * Get a response for another request that has the same result and attributions. The
+		 * retries aren't copied.
+		 */
+		Response<T> copy() {
+			Response<T> copy = new Response<T>();
+			copy.mStatus = mStatus;
+			copy.mResult = getResult();
+			copy.mAttribs = getHtmlAttributions();
+			copy.mToken = mToken;
+			copy.mEtag = mEtag;
+			return copy;
+		}
+
 		/**
 		 * Indication of the success or failure of the request.
 		 */
@@ -1071,6 +1465,16 @@ public class Places {
 			return mEtag;
 		}
 
+		/**
+		 * Number of times that the request was sent again, according to the
+		 * {@link RetryPolicy#getDefault() RetryPolicy}, before this response was received.
+		 * 
+		 * @since 2.0.0
+		 */
+		public int getRetries() {
+			return mRetries;
+		}
+
 		@Override
 		public int hashCode() {
 			if (mHash == 0) {
@@ -1098,7 +1502,8 @@ public class Places {
 		public String toString() {
 			return Objects.toStringHelper(this).add("status", mStatus).add("result", mResult)
 					.add("htmlAttributions", mAttribs != null ? mAttribs.size() : null)
-					.add("nextPageToken", mToken).add("etag", mEtag).omitNullValues().toString();
+					.add("nextPageToken", mToken).add("etag", mEtag)
+					.add("retries", mRetries != 0 ? mRetries : null).omitNullValues().toString();
 		}
 
 		/**
@@ -1136,27 +1541,40 @@ public class Places {
 				mField = field;
 			}
 
+			private static final EnumLookup<Key> sLookup = new EnumLookup<Key>(Key.class,
+					UNKNOWN, sLog, "Unknown response key: {0}.  "
+							+ "If this hasn''t already been reported, please create a new issue at "
+							+ "https://github.com/pushbit/sprockets/issues");
+
 			/**
-			 * Get the matching Key or {@link #UNKNOWN} if one can't be found.
+			 * Get the matching Key or {@link #UNKNOWN} if one can't be found. Unknown values are only
+			 * logged the first time that they are found.
 			 */
 			static Key get(String key) {
-				try {
-					return Key.valueOf(key);
-				} catch (IllegalArgumentException e) {
-					String msg = "Unknown response key: {0}.  "
-							+ "If this hasn''t already been reported, please create a new issue at "
-							+ "https://github.com/pushbit/sprockets/issues";
-					sLog.log(INFO, msg, key);
-					return UNKNOWN;
-				}
+				return sLookup.get(key);
+			}
+
+			/**
+			 * Read the next name as a Key or {@link #UNKNOWN} if one can't be found.
+			 */
+			static Key next(JsonReader in) throws IOException {
+				return sLookup.next(in);
 			}
 		}
 	}
 
+	/**
+	 * True if the reviews, opening hours, events, and photos of places should only be read when
+	 * they are first requested.
+	 */
+	private static boolean isLazy() {
+		return Sprockets.getSettings().isLazyParsing();
+	}
+
 	/**
 	 * Place search results.
 	 */
-	private static class PlacesResponse extends Response<List<Place>> {
+	static class PlacesResponse extends Response<List<Place>> {
 		/** Maximum number of establishment results that will be returned. */
 		private static final int MAX_RESULTS = 20;
 		/** Maximum number of reviews, events, and photos that will be returned. */
@@ -1169,9 +1587,10 @@ public class Places {
 		 *            to read or 0 if all fields should be read
 		 */
 		private PlacesResponse(JsonReader in, int fields, int maxResults) throws IOException {
+			boolean lazy = isLazy();
 			in.beginObject();
 			while (in.hasNext()) {
-				switch (Key.get(in.nextName())) {
+				switch (Key.next(in)) {
 				case status:
 					status(in.nextString());
 					break;
@@ -1183,7 +1602,7 @@ public class Places {
 							mResult = new ArrayList<Place>(cap > 0 ? cap : MAX_RESULTS);
 						}
 						if (maxResults <= 0 || mResult.size() < maxResults) {
-							mResult.add(new Place(in, fields, MAX_OBJECTS));
+							mResult.add(new Place(in, fields, MAX_OBJECTS, lazy));
 						} else {
 							in.skipValue();
 						}
@@ -1207,7 +1626,7 @@ public class Places {
 	/**
 	 * Autocomplete search results.
 	 */
-	private static class PredictionsResponse extends Response<List<Prediction>> {
+	static class PredictionsResponse extends Response<List<Prediction>> {
 		/** Maximum number of results that will be returned. */
 		private static final int MAX_RESULTS = 5;
 
@@ -1220,7 +1639,7 @@ public class Places {
 		private PredictionsResponse(JsonReader in, int fields, int maxResults) throws IOException {
 			in.beginObject();
 			while (in.hasNext()) {
-				switch (Key.get(in.nextName())) {
+				switch (Key.next(in)) {
 				case status:
 					status(in.nextString());
 					break;
@@ -1250,7 +1669,7 @@ public class Places {
 	/**
 	 * Place with full details.
 	 */
-	private static class PlaceResponse extends Response<Place> {
+	static class PlaceResponse extends Response<Place> {
 		/**
 		 * Read fields from a details response.
 		 * 
@@ -1260,12 +1679,12 @@ public class Places {
 		private PlaceResponse(JsonReader in, int fields, int maxResults) throws IOException {
 			in.beginObject();
 			while (in.hasNext()) {
-				switch (Key.get(in.nextName())) {
+				switch (Key.next(in)) {
 				case status:
 					status(in.nextString());
 					break;
 				case result:
-					mResult = new Place(in, fields, maxResults);
+					mResult = new Place(in, fields, maxResults, isLazy());
 					break;
 				case html_attributions:
 					attrib(in);
@@ -1282,16 +1701,17 @@ public class Places {
 	 * Photo bitstream for reading. Always {@link InputStream#close() close} the stream when
 	 * finished.
 	 */
-	private static class PhotoResponse extends Response<InputStream> {
+	static class PhotoResponse extends Response<InputStream> {
 		/**
 		 * Get the ETag and InputStream from the connection response.
 		 */
-		private PhotoResponse(HttpURLConnection con) throws IOException {
+		PhotoResponse(HttpURLConnection con) throws IOException {
+			InputStream in = Metrics.getInputStream(PLACES, con);
 			switch (con.getResponseCode()) {
 			case HTTP_OK:
 				mStatus = OK;
 				mEtag = con.getHeaderField("ETag");
-				mResult = con.getInputStream();
+				mResult = in;
 				break;
 			case HTTP_NOT_MODIFIED:
 				mStatus = NOT_MODIFIED;
@@ -1301,12 +1721,15 @@ public class Places {
 				break;
 			case HTTP_FORBIDDEN:
 				mStatus = OVER_QUERY_LIMIT;
-				mResult = con.getInputStream(); // "quota has been exceeded" image
+				mResult = in; // "quota has been exceeded" image
 				break;
 			default:
 				mStatus = UNKNOWN_ERROR;
 				sLog.log(INFO, "Unexpected response code: {0}", con.getResponseCode());
 			}
+			if (mResult == null) {
+				Closeables.close(in, true); // release the connection
+			}
 		}
 	}
 }
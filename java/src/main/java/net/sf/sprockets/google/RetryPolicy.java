@@ -0,0 +1,310 @@
+/*
+ * Copyright 2013 pushbit <pushbit@gmail.com>
+ *
+ * This file is part of Sprockets.
+ *
+ * Sprockets is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Sprockets is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Sprockets.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.sf.sprockets.google;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.logging.Level.FINE;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import net.sf.sprockets.Settings;
+import net.sf.sprockets.Sprockets;
+import net.sf.sprockets.google.Throttle.QuotaExceededException;
+import net.sf.sprockets.util.logging.Loggers;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Sends a request again when it fails with an IOException or a response status that may succeed
+ * later, such as OVER_QUERY_LIMIT. The wait before each retry doubles from the base delay up to
+ * the maximum delay and a random part of it (the jitter) is removed, so that clients which failed
+ * at the same time don't retry at the same time. Retries stop after the maximum number of attempts
+ * or when the next attempt would start after the deadline. Daily quota and interrupted exceptions
+ * are not retried.
+ * <p>
+ * The default policy is used by the {@link Places}, {@link GeoCoding}, {@link DistanceMatrix}, and
+ * {@link StreetView} methods and is read from the {@code google.retry} library settings, again
+ * when they change, unless it is replaced with {@link #setDefault(RetryPolicy)}. The number of
+ * retries for a request is available from its response.
+ * </p>
+ *
+ * @since 2.0.0
+ */
+public class RetryPolicy {
+	private static final Logger sLog = Loggers.get(RetryPolicy.class);
+	private static final Random sRandom = new Random();
+	/** Null if the policy is read from the library settings. */
+	private static volatile RetryPolicy sDefault;
+	/** Null until the policy is first read from the library settings. */
+	private static volatile Configured sConfigured;
+	private static final AtomicLong sRetries = new AtomicLong();
+	private static final AtomicLong sExhausted = new AtomicLong();
+
+	private int mMaxAttempts = 1;
+	private long mBaseDelay = 100L;
+	private long mMaxDelay = 10000L;
+	private double mJitter = 1.0;
+	private Set<String> mStatuses = ImmutableSet.of("OVER_QUERY_LIMIT", "UNKNOWN_ERROR");
+	private long mDeadline;
+
+	/**
+	 * Get the policy that is used by the request methods.
+	 */
+	public static RetryPolicy getDefault() {
+		RetryPolicy policy = sDefault;
+		if (policy != null) {
+			return policy;
+		}
+		Settings settings = Sprockets.getSettings();
+		Configured configured = sConfigured;
+		if (configured == null || configured.mSettings != settings) {
+			policy = new RetryPolicy().maxAttempts(settings.getRetryMaxAttempts())
+					.baseDelay(settings.getRetryBaseDelay(), MILLISECONDS)
+					.maxDelay(settings.getRetryMaxDelay(), MILLISECONDS)
+					.jitter(settings.getRetryJitter())
+					.deadline(settings.getRetryDeadline(), MILLISECONDS);
+			if (!settings.getRetryStatuses().isEmpty()) {
+				policy.statuses(settings.getRetryStatuses().toArray(new String[0]));
+			}
+			configured = new Configured(settings, policy);
+			sConfigured = configured;
+		}
+		return configured.mPolicy;
+	}
+
+	/**
+	 * Use the policy for all requests. It should not be changed after it has been set.
+	 *
+	 * @param policy
+	 *            null to read the policy from the library settings again
+	 */
+	public static void setDefault(RetryPolicy policy) {
+		sDefault = policy;
+	}
+
+	/**
+	 * Total number of retries for all requests.
+	 */
+	public static long getRetryCount() {
+		return sRetries.get();
+	}
+
+	/**
+	 * Number of requests that still failed after they were retried as many times as possible.
+	 */
+	public static long getExhaustedCount() {
+		return sExhausted.get();
+	}
+
+	/**
+	 * Send a request at most this many times, including the first attempt. 1 to never retry.
+	 */
+	public RetryPolicy maxAttempts(int maxAttempts) {
+		mMaxAttempts = Math.max(1, maxAttempts);
+		return this;
+	}
+
+	/**
+	 * Wait this long before the first retry.
+	 */
+	public RetryPolicy baseDelay(long delay, TimeUnit unit) {
+		mBaseDelay = Math.max(0L, unit.toMillis(delay));
+		return this;
+	}
+
+	/**
+	 * Never wait longer than this before a retry.
+	 */
+	public RetryPolicy maxDelay(long delay, TimeUnit unit) {
+		mMaxDelay = Math.max(0L, unit.toMillis(delay));
+		return this;
+	}
+
+	/**
+	 * Fraction (0.0 - 1.0) of each delay that is randomly removed. 0.0 always waits the full delay
+	 * and 1.0 waits between no time and the full delay.
+	 */
+	public RetryPolicy jitter(double jitter) {
+		mJitter = Math.max(0.0, Math.min(1.0, jitter));
+		return this;
+	}
+
+	/**
+	 * Retry responses with these status names. Defaults to OVER_QUERY_LIMIT and UNKNOWN_ERROR.
+	 */
+	public RetryPolicy statuses(String... statuses) {
+		mStatuses = ImmutableSet.copyOf(statuses);
+		return this;
+	}
+
+	/**
+	 * Don't start an attempt after this much time has passed since the first attempt. 0 for no
+	 * deadline.
+	 */
+	public RetryPolicy deadline(long deadline, TimeUnit unit) {
+		mDeadline = Math.max(0L, unit.toMillis(deadline));
+		return this;
+	}
+
+	/**
+	 * Make attempts until one succeeds or no more can be made.
+	 *
+	 * @return the last response
+	 * @throws IOException
+	 *             the last exception if the last attempt failed with one
+	 */
+	<R> R call(Attempts<R> attempts) throws IOException {
+		long start = System.nanoTime();
+		for (int attempt = 1;; attempt++) {
+			R resp = null;
+			IOException ex = null;
+			Metrics.Request request = Metrics.begin(attempt);
+			try {
+				resp = attempts.attempt();
+			} catch (IOException e) {
+				ex = e;
+			} finally {
+				Metrics.end(request, resp != null ? attempts.status(resp) : null, ex);
+			}
+			if (ex != null && !isRetryable(ex)) {
+				throw ex;
+			}
+			if (resp != null) {
+				attempts.retries(resp, attempt - 1);
+				Enum<?> status = attempts.status(resp);
+				if (status == null || !mStatuses.contains(status.name())) {
+					return resp;
+				}
+			}
+			long delay = delay(attempt);
+			if (attempt >= mMaxAttempts || mDeadline > 0
+					&& NANOSECONDS.toMillis(System.nanoTime() - start) + delay >= mDeadline) {
+				if (mMaxAttempts > 1) {
+					sExhausted.incrementAndGet();
+				}
+				if (ex != null) {
+					throw ex;
+				}
+				return resp;
+			}
+			if (sLog.isLoggable(FINE)) {
+				sLog.log(FINE, "Retrying in {0} ms after {1}", new Object[] { delay,
+						ex != null ? ex : attempts.status(resp) });
+			}
+			if (resp != null) {
+				attempts.discard(resp);
+			}
+			sRetries.incrementAndGet();
+			try {
+				MILLISECONDS.sleep(delay);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("interrupted while waiting to retry");
+			}
+		}
+	}
+
+	/**
+	 * True if the exception could be caused by a temporary problem.
+	 */
+	private static boolean isRetryable(IOException e) {
+		return !(e instanceof QuotaExceededException)
+				&& (!(e instanceof InterruptedIOException) || e instanceof SocketTimeoutException);
+	}
+
+	/**
+	 * Get the milliseconds to wait after the attempt.
+	 */
+	private long delay(int attempt) {
+		long delay = mBaseDelay << Math.min(attempt - 1, 30);
+		if (delay > mMaxDelay || delay < 0) {
+			delay = mMaxDelay;
+		}
+		return delay - (long) (delay * mJitter * sRandom.nextDouble());
+	}
+
+	@Override
+	public String toString() {
+		return Objects.toStringHelper(this).add("maxAttempts", mMaxAttempts)
+				.add("baseDelay", mBaseDelay).add("maxDelay", mMaxDelay).add("jitter", mJitter)
+				.add("statuses", Arrays.toString(mStatuses.toArray()))
+				.add("deadline", mDeadline != 0 ? mDeadline : null).omitNullValues().toString();
+	}
+
+	/**
+	 * A request that can be attempted more than once.
+	 *
+	 * @param <R>
+	 *            type of response
+	 */
+	abstract static class Attempts<R> implements Callable<R> {
+		/**
+		 * Make attempts according to the default policy.
+		 */
+		@Override
+		public R call() throws IOException {
+			return getDefault().call(this);
+		}
+
+		/**
+		 * Send the request and read the response.
+		 */
+		abstract R attempt() throws IOException;
+
+		/**
+		 * Get the status of the response.
+		 */
+		abstract Enum<?> status(R resp);
+
+		/**
+		 * Set the number of times that the request was retried before the response was received.
+		 */
+		abstract void retries(R resp, int retries);
+
+		/**
+		 * Release any resources held by the response, which won't be returned because the request
+		 * will be retried.
+		 */
+		void discard(R resp) throws IOException {
+		}
+	}
+
+	/**
+	 * Policy that was read from the library settings.
+	 */
+	private static class Configured {
+		private final Settings mSettings;
+		private final RetryPolicy mPolicy;
+
+		private Configured(Settings settings, RetryPolicy policy) {
+			mSettings = settings;
+			mPolicy = policy;
+		}
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2013 pushbit <pushbit@gmail.com>
+ *
+ * This file is part of Sprockets.
+ *
+ * Sprockets is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Sprockets is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Sprockets.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.sf.sprockets.google;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.sf.sprockets.Sprockets;
+
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Shares one request between threads that make the same request at the same time. The first
+ * thread sends the request and the others wait for its response (or exception) instead of sending
+ * their own. The response objects are shared between the threads.
+ * Can be disabled with the {@code google.single-flight} library setting.
+ */
+class SingleFlight {
+	private static final ConcurrentMap<String, SettableFuture<Object>> sCalls =
+			new ConcurrentHashMap<String, SettableFuture<Object>>();
+	private static final AtomicLong sShared = new AtomicLong();
+
+	private SingleFlight() {
+	}
+
+	/**
+	 * Make the call or wait for the result of the call with the same key that is already in
+	 * progress.
+	 *
+	 * @param key
+	 *            identifies requests that have the same response, e.g. the URL and any options
+	 *            that affect how the response is read
+	 */
+	@SuppressWarnings("unchecked")
+	static <T> T call(String key, Callable<T> call) throws IOException {
+		if (!Sprockets.getSettings().isSingleFlight()) {
+			return call(call);
+		}
+		SettableFuture<Object> future = SettableFuture.create();
+		SettableFuture<Object> leader = sCalls.putIfAbsent(key, future);
+		if (leader != null) {
+			sShared.incrementAndGet();
+			try {
+				return (T) leader.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("interrupted while waiting for shared request");
+			} catch (ExecutionException e) {
+				Throwables.propagateIfPossible(e.getCause(), IOException.class);
+				throw Throwables.propagate(e.getCause());
+			}
+		}
+		try {
+			T result = call(call);
+			future.set(result);
+			return result;
+		} catch (IOException e) {
+			future.setException(e);
+			throw e;
+		} catch (RuntimeException e) {
+			future.setException(e);
+			throw e;
+		} catch (Error e) {
+			future.setException(e);
+			throw e;
+		} finally {
+			sCalls.remove(key, future);
+		}
+	}
+
+	/**
+	 * Make the call, only allowing IOExceptions to be thrown.
+	 */
+	private static <T> T call(Callable<T> call) throws IOException {
+		try {
+			return call.call();
+		} catch (Exception e) {
+			Throwables.propagateIfPossible(e, IOException.class);
+			throw Throwables.propagate(e);
+		}
+	}
+
+	/**
+	 * Number of calls that waited for the result of another call instead of making their own.
+	 */
+	static long getSharedCount() {
+		return sShared.get();
+	}
+}
@@ -17,7 +17,6 @@
 
 package net.sf.sprockets.google;
 
-import static com.google.common.base.Preconditions.checkState;
 import static java.net.HttpURLConnection.HTTP_BAD_REQUEST;
 import static java.net.HttpURLConnection.HTTP_FORBIDDEN;
 import static java.net.HttpURLConnection.HTTP_OK;
@@ -26,23 +25,23 @@ import static net.sf.sprockets.google.StreetView.Response.Status.INVALID_REQUEST
 import static net.sf.sprockets.google.StreetView.Response.Status.OK;
 import static net.sf.sprockets.google.StreetView.Response.Status.OVER_QUERY_LIMIT;
 import static net.sf.sprockets.google.StreetView.Response.Status.UNKNOWN_ERROR;
+import static net.sf.sprockets.google.Throttle.Api.STREET_VIEW;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
 import java.net.URL;
-import java.net.URLEncoder;
+import java.util.concurrent.Callable;
 import java.util.logging.Logger;
 
-import net.sf.sprockets.Sprockets;
+import net.sf.sprockets.google.RetryPolicy.Attempts;
 import net.sf.sprockets.net.HttpClient;
 import net.sf.sprockets.util.logging.Loggers;
 
-import org.apache.commons.configuration.Configuration;
-
 import com.google.common.base.Objects;
 import com.google.common.base.Strings;
+import com.google.common.io.Closeables;
+import com.google.common.util.concurrent.ListenableFuture;
 
 /**
  * <p>
@@ -72,7 +71,8 @@ import com.google.common.base.Strings;
  */
 public class StreetView {
 	private static final Logger sLog = Loggers.get(StreetView.class);
-	private static final String URL = "https://maps.googleapis.com/maps/api/streetview?";
+	/** Appended to the google.base-url setting. */
+	private static final String PATH = "streetview?";
 
 	private StreetView() {
 	}
@@ -105,7 +105,52 @@ public class StreetView {
 	 *             if there is a problem communicating with the Google Street View Image API service
 	 */
 	public static Response<InputStream> image(Params params) throws IOException {
-		return new ImageResponse(HttpClient.openConnection(new URL(params.format())));
+		return image(params.format());
+	}
+
+	/**
+	 * Same as {@link #image(Params)}, but runs in the background. The params are read before this
+	 * method returns, so the instance can be re-used immediately. Always
+	 * {@link InputStream#close() close} the stream when finished.
+	 * 
+	 * @since 2.0.0
+	 */
+	public static ListenableFuture<Response<InputStream>> imageAsync(Params params) {
+		final String url = params.format();
+		return Calls.submit(new Callable<Response<InputStream>>() {
+			@Override
+			public Response<InputStream> call() throws IOException {
+				return image(url);
+			}
+		});
+	}
+
+	/**
+	 * Download the image for the request.
+	 */
+	private static Response<InputStream> image(final String url) throws IOException {
+		return RetryPolicy.getDefault().call(new Attempts<Response<InputStream>>() {
+			@Override
+			Response<InputStream> attempt() throws IOException {
+				Throttle.get(STREET_VIEW).acquire();
+				return new ImageResponse(HttpClient.openConnection(new URL(url)));
+			}
+
+			@Override
+			Enum<?> status(Response<InputStream> resp) {
+				return resp.mStatus;
+			}
+
+			@Override
+			void retries(Response<InputStream> resp, int retries) {
+				resp.mRetries = retries;
+			}
+
+			@Override
+			void discard(Response<InputStream> resp) throws IOException {
+				Closeables.close(resp.mResult, true);
+			}
+		});
 	}
 
 	/**
@@ -188,34 +233,25 @@ public class StreetView {
 		 * Get a URL for this request.
 		 */
 		public String format() {
-			StringBuilder s = new StringBuilder(URL.length() + 256);
-			Configuration config = Sprockets.getConfig();
-			boolean sensor = config.getBoolean("hardware.location");
-			s.append(URL).append("sensor=").append(sensor);
-			if (config.getBoolean("google.street-view.use-api-key")) {
-				String key = config.getString("google.api-key");
-				checkState(!Strings.isNullOrEmpty(key), "google.api-key not set");
-				s.append("&key=").append(key);
+			UrlBuilder s = UrlBuilder.get(PATH).sensor();
+			if (UrlBuilder.isStreetViewKeyUsed()) {
+				s.key();
 			}
 			if (mLat > Double.NEGATIVE_INFINITY && mLong > Double.NEGATIVE_INFINITY) {
-				s.append("&location=").append(mLat).append(',').append(mLong);
+				s.param("location").latLng(mLat, mLong);
 			} else if (!Strings.isNullOrEmpty(mLocation)) {
-				try {
-					s.append("&location=").append(URLEncoder.encode(mLocation, "UTF-8"));
-				} catch (UnsupportedEncodingException e) {
-					throw new RuntimeException("UTF-8 encoding isn't supported?!", e);
-				}
+				s.param("location").encode(mLocation);
 			}
 			if (mHeading > Integer.MIN_VALUE) {
-				s.append("&heading=").append(mHeading);
+				s.param("heading").append(mHeading);
 			}
 			if (mPitch > Integer.MIN_VALUE) {
-				s.append("&pitch=").append(mPitch);
+				s.param("pitch").append(mPitch);
 			}
 			if (mFov > 0) {
-				s.append("&fov=").append(mFov);
+				s.param("fov").append(mFov);
 			}
-			return s.append("&size=").append(mWidth).append('x').append(mHeight).toString();
+			return s.param("size").append(mWidth).append('x').append(mHeight).toString();
 		}
 
 		/**
@@ -284,6 +320,7 @@ public class StreetView {
 
 		Status mStatus;
 		T mResult;
+		int mRetries;
 		private int mHash;
 
 		private Response() {
@@ -304,6 +341,16 @@ public class StreetView {
 			return mResult;
 		}
 
+		/**
+		 * Number of times that the request was sent again, according to the
+		 * {@link RetryPolicy#getDefault() RetryPolicy}, before this response was received.
+		 * 
+		 * @since 2.0.0
+		 */
+		public int getRetries() {
+			return mRetries;
+		}
+
 		@Override
 		public int hashCode() {
 			if (mHash == 0) {
@@ -341,22 +388,26 @@ public class StreetView {
 		 * Get the InputStream from the connection response.
 		 */
 		private ImageResponse(HttpURLConnection con) throws IOException {
+			InputStream in = Metrics.getInputStream(STREET_VIEW, con);
 			switch (con.getResponseCode()) {
 			case HTTP_OK:
 				mStatus = OK;
-				mResult = con.getInputStream();
+				mResult = in;
 				break;
 			case HTTP_BAD_REQUEST:
 				mStatus = INVALID_REQUEST;
 				break;
 			case HTTP_FORBIDDEN:
 				mStatus = OVER_QUERY_LIMIT;
-				mResult = con.getInputStream(); // "quota has been exceeded" image
+				mResult = in; // "quota has been exceeded" image
 				break;
 			default:
 				mStatus = UNKNOWN_ERROR;
 				sLog.log(INFO, "Unexpected response code: {0}", con.getResponseCode());
 			}
+			if (mResult == null) {
+				Closeables.close(in, true); // release the connection
+			}
 		}
 	}
 }
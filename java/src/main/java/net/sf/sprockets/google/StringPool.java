@@ -0,0 +1,61 @@
+/*
+ * Copyright 2013 pushbit <pushbit@gmail.com>
+ *
+ * This file is part of Sprockets.
+ *
+ * Sprockets is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Sprockets is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Sprockets.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.sf.sprockets.google;
+
+import net.sf.sprockets.Sprockets;
+
+/**
+ * Shares one copy of strings that are repeated in many responses, such as icon URLs, address
+ * components, and distance texts, so that the copies read from each response can be garbage
+ * collected. The pool has a fixed number of slots, set with the {@code google.string-pool.size}
+ * library setting (0 to disable), and a string replaces the string in its slot when they aren't
+ * equal. Threads don't lock the pool, so a thread may not see a string that another thread just
+ * added and keep its own copy, which only costs the memory that the pool would have saved.
+ */
+class StringPool {
+	/** Null if the pool is disabled. */
+	private static final String[] sSlots;
+	static {
+		int size = Sprockets.getConfig().getInt("google.string-pool.size", 4096);
+		sSlots = size > 0 ? new String[Integer.highestOneBit(Math.min(size, 1 << 30) * 2 - 1)]
+				: null;
+	}
+
+	private StringPool() {
+	}
+
+	/**
+	 * Get the pooled copy of the string or add the string to the pool.
+	 *
+	 * @param s
+	 *            may be null
+	 */
+	static String intern(String s) {
+		if (sSlots == null || s == null) {
+			return s;
+		}
+		int hash = s.hashCode();
+		int i = (hash ^ hash >>> 16) & sSlots.length - 1;
+		String pooled = sSlots[i];
+		if (s.equals(pooled)) {
+			return pooled;
+		}
+		sSlots[i] = s;
+		return s;
+	}
+}
@@ -0,0 +1,397 @@
+/*
+ * Copyright 2013 pushbit <pushbit@gmail.com>
+ *
+ * This file is part of Sprockets.
+ *
+ * Sprockets is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Sprockets is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Sprockets.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.sf.sprockets.google;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Calendar;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.sf.sprockets.Settings;
+import net.sf.sprockets.Settings.RateLimit;
+import net.sf.sprockets.Sprockets;
+
+import com.google.common.base.Objects;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Limits the rate of requests that are sent to a Google API so that bursts of requests don't cause
+ * OVER_QUERY_LIMIT responses. All of the request methods wait for a permit from the Throttle of
+ * their {@link Api} before sending the request. Permits are created at a steady rate and up to a
+ * burst size of them can be saved when they aren't used. A daily quota can also be set, which is
+ * reset at midnight Pacific Time, like the Google API quotas.
+ * <p>
+ * The limits are read from these library settings, are updated when the settings are changed, and
+ * can also be changed with {@link #setLimits(double, int, long)}:
+ * </p>
+ * <ul>
+ * <li>{@code google.[api].rate-limit.per-second} - 0 for no limit</li>
+ * <li>{@code google.[api].rate-limit.burst} - defaults to the per-second limit</li>
+ * <li>{@code google.[api].rate-limit.daily-quota} - 0 for no limit</li>
+ * </ul>
+ * <p>
+ * where [api] is places, street-view, geocoding, or distance-matrix. Distance Matrix permits are
+ * elements (origins x destinations) instead of requests. The request methods throw a
+ * {@link QuotaExceededException} when the daily quota has been used.
+ * </p>
+ * <p>
+ * Permits are reserved with atomic updates and no locks, so many threads can share a Throttle.
+ * </p>
+ *
+ * @since 2.0.0
+ */
+public class Throttle {
+	/**
+	 * Google APIs that have a separate Throttle.
+	 */
+	public enum Api {
+		PLACES("places"), STREET_VIEW("street-view"), GEOCODING("geocoding"), DISTANCE_MATRIX(
+				"distance-matrix");
+
+		/** Library setting name. */
+		private final String mName;
+
+		Api(String name) {
+			mName = name;
+		}
+	}
+
+	/** Completes the futures from {@link #acquireAsync(int)}. */
+	private static ScheduledExecutorService sScheduler;
+	/** Quotas are reset at midnight in this time zone. */
+	private static final TimeZone sQuotaZone = TimeZone.getTimeZone("America/Los_Angeles");
+	private static final Map<Api, Throttle> sThrottles = new EnumMap<Api, Throttle>(Api.class);
+	static {
+		Settings settings = Sprockets.getSettings();
+		for (Api api : Api.values()) {
+			sThrottles.put(api, new Throttle(api).setLimits(settings.getRateLimit(api.mName)));
+		}
+		Sprockets.addListener(new Sprockets.Listener() {
+			@Override
+			public void onSettingsChanged(Settings old, Settings settings) {
+				Settings latest = Sprockets.getSettings(); // if changed again meanwhile
+				for (Api api : Api.values()) {
+					if (!settings.getRateLimit(api.mName).equals(old.getRateLimit(api.mName))) {
+						sThrottles.get(api).setLimits(latest.getRateLimit(api.mName));
+					}
+				}
+			}
+		});
+	}
+
+	private final Api mApi;
+	private volatile Limits mLimits;
+	/** {@link System#nanoTime()} when all reserved permits will have been created. */
+	private final AtomicLong mNext = new AtomicLong(System.nanoTime());
+	private final AtomicLong mUsed = new AtomicLong();
+	/** {@link System#currentTimeMillis()} when the daily quota is next reset. */
+	private final AtomicLong mReset = new AtomicLong(nextReset());
+	private final AtomicLong mThrottled = new AtomicLong();
+	private final AtomicLong mWaitNanos = new AtomicLong();
+	private final AtomicLong mRejected = new AtomicLong();
+
+	private Throttle(Api api) {
+		mApi = api;
+	}
+
+	/**
+	 * Get the Throttle for the API.
+	 */
+	public static Throttle get(Api api) {
+		return sThrottles.get(api);
+	}
+
+	/**
+	 * Change the limits of the Throttle.
+	 *
+	 * @param perSecond
+	 *            0 for no limit
+	 * @param burst
+	 *            maximum number of permits that can be saved when they aren't used, 0 for the
+	 *            per-second limit
+	 * @param dailyQuota
+	 *            0 for no limit
+	 */
+	public Throttle setLimits(double perSecond, int burst, long dailyQuota) {
+		mLimits = new Limits(perSecond, burst, dailyQuota);
+		return this;
+	}
+
+	private Throttle setLimits(RateLimit limit) {
+		return setLimits(limit.getPerSecond(), limit.getBurst(), limit.getDailyQuota());
+	}
+
+	/**
+	 * Wait until one permit is available.
+	 *
+	 * @throws QuotaExceededException
+	 *             if the daily quota has been used
+	 * @throws InterruptedIOException
+	 *             if the thread is interrupted while waiting
+	 */
+	public void acquire() throws IOException {
+		acquire(1);
+	}
+
+	/**
+	 * Wait until the permits are available.
+	 *
+	 * @throws QuotaExceededException
+	 *             if the daily quota has been used
+	 * @throws InterruptedIOException
+	 *             if the thread is interrupted while waiting
+	 */
+	public void acquire(int permits) throws IOException {
+		acquire(permits, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Get one permit if it is available now.
+	 *
+	 * @return false if it isn't available or the daily quota has been used
+	 */
+	public boolean tryAcquire() {
+		return tryAcquire(1, 0L, NANOSECONDS);
+	}
+
+	/**
+	 * Get the permits if they become available before the timeout.
+	 *
+	 * @return false if they won't be available in time or the daily quota has been used
+	 */
+	public boolean tryAcquire(int permits, long timeout, TimeUnit unit) {
+		try {
+			acquire(permits, unit.toNanos(timeout));
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Wait until the permits are available, unless it would take longer than the timeout.
+	 *
+	 * @throws IOException
+	 *             if the permits won't be available in time, the daily quota has been used, or
+	 *             the thread is interrupted
+	 */
+	private void acquire(int permits, long timeout) throws IOException {
+		long wait = reserve(permits, timeout);
+		if (wait > 0) {
+			try {
+				NANOSECONDS.sleep(wait);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("interrupted while waiting for " + mApi
+						+ " permit");
+			}
+		}
+	}
+
+	/**
+	 * Get a future that completes when the permits are available, without blocking a thread while
+	 * waiting. The future fails with a {@link QuotaExceededException} if the daily quota has been
+	 * used.
+	 */
+	public ListenableFuture<Void> acquireAsync(int permits) {
+		long wait;
+		try {
+			wait = reserve(permits, Long.MAX_VALUE);
+		} catch (IOException e) {
+			return Futures.immediateFailedFuture(e);
+		}
+		if (wait <= 0) {
+			return Futures.immediateFuture(null);
+		}
+		final SettableFuture<Void> future = SettableFuture.create();
+		scheduler().schedule(new Runnable() {
+			@Override
+			public void run() {
+				future.set(null);
+			}
+		}, wait, NANOSECONDS);
+		return future;
+	}
+
+	/**
+	 * Reserve the permits and get the nanoseconds to wait until they are available.
+	 *
+	 * @throws IOException
+	 *             if the wait would be longer than the timeout or the daily quota has been used
+	 */
+	private long reserve(int permits, long timeout) throws IOException {
+		Limits limits = mLimits;
+		long reset = mReset.get();
+		if (System.currentTimeMillis() >= reset && mReset.compareAndSet(reset, nextReset())) {
+			mUsed.set(0L);
+		}
+		if (mUsed.addAndGet(permits) > limits.mQuota && limits.mQuota > 0) {
+			mUsed.addAndGet(-permits);
+			mRejected.incrementAndGet();
+			throw new QuotaExceededException(mApi + " daily quota of " + limits.mQuota
+					+ " has been used");
+		}
+		if (limits.mInterval == 0L) {
+			return 0L;
+		}
+		while (true) {
+			long now = System.nanoTime();
+			long next = mNext.get();
+			long start = next - now > 0 ? next : now;
+			long reserved = start + permits * limits.mInterval;
+			long wait = reserved - limits.mTolerance - now;
+			if (wait > timeout) {
+				mUsed.addAndGet(-permits);
+				mRejected.incrementAndGet();
+				throw new IOException(mApi + " permit not available within timeout");
+			}
+			if (mNext.compareAndSet(next, reserved)) {
+				if (wait > 0) {
+					mThrottled.incrementAndGet();
+					mWaitNanos.addAndGet(wait);
+				}
+				return wait;
+			}
+		}
+	}
+
+	/**
+	 * Number of permits that could be acquired now without waiting. Negative when requests are
+	 * waiting for permits. {@link Double#POSITIVE_INFINITY} if there isn't a rate limit.
+	 */
+	public double getAvailablePermits() {
+		Limits limits = mLimits;
+		if (limits.mInterval == 0L) {
+			return Double.POSITIVE_INFINITY;
+		}
+		long ahead = Math.max(0L, mNext.get() - System.nanoTime());
+		return (double) (limits.mTolerance - ahead) / limits.mInterval;
+	}
+
+	/**
+	 * Number of permits that have been acquired since the daily quota was last reset.
+	 */
+	public long getDailyUsage() {
+		return mUsed.get();
+	}
+
+	/**
+	 * Number of permits that can still be acquired today. {@link Long#MAX_VALUE} if there isn't a
+	 * daily quota.
+	 */
+	public long getDailyRemaining() {
+		long quota = mLimits.mQuota;
+		return quota > 0 ? Math.max(0L, quota - mUsed.get()) : Long.MAX_VALUE;
+	}
+
+	/**
+	 * Number of acquires that had to wait for their permits.
+	 */
+	public long getThrottledCount() {
+		return mThrottled.get();
+	}
+
+	/**
+	 * Total time that acquires have waited for their permits.
+	 */
+	public long getThrottledTime(TimeUnit unit) {
+		return unit.convert(mWaitNanos.get(), NANOSECONDS);
+	}
+
+	/**
+	 * Number of acquires that failed because of the daily quota or a timeout.
+	 */
+	public long getRejectedCount() {
+		return mRejected.get();
+	}
+
+	/**
+	 * Get the scheduler, creating it if necessary.
+	 */
+	private static synchronized ScheduledExecutorService scheduler() {
+		if (sScheduler == null) {
+			sScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+					.setNameFormat("sprockets-throttle").setDaemon(true).build());
+		}
+		return sScheduler;
+	}
+
+	/**
+	 * Get the time of the next midnight in the quota time zone.
+	 */
+	private static long nextReset() {
+		Calendar cal = Calendar.getInstance(sQuotaZone);
+		cal.set(Calendar.HOUR_OF_DAY, 0);
+		cal.set(Calendar.MINUTE, 0);
+		cal.set(Calendar.SECOND, 0);
+		cal.set(Calendar.MILLISECOND, 0);
+		cal.add(Calendar.DAY_OF_MONTH, 1);
+		return cal.getTimeInMillis();
+	}
+
+	@Override
+	public String toString() {
+		Limits limits = mLimits;
+		return Objects.toStringHelper(this).add("api", mApi)
+				.add("perSecond", limits.mInterval > 0 ? 1.0e9 / limits.mInterval : null)
+				.add("dailyQuota", limits.mQuota > 0 ? limits.mQuota : null)
+				.add("dailyUsage", mUsed.get()).add("throttled", mThrottled.get())
+				.add("rejected", mRejected.get()).omitNullValues().toString();
+	}
+
+	/**
+	 * Rate and quota settings, replaced as a whole when they are changed.
+	 */
+	private static class Limits {
+		/** Nanoseconds between new permits, 0 for no limit. */
+		private final long mInterval;
+		/** Nanoseconds of permits that can be saved. */
+		private final long mTolerance;
+		private final long mQuota;
+
+		private Limits(double perSecond, int burst, long quota) {
+			mInterval = perSecond > 0.0 ? Math.max(1L, (long) (SECONDS.toNanos(1) / perSecond))
+					: 0L;
+			mTolerance = mInterval * (burst > 0 ? burst : Math.max(1L, Math.round(perSecond)));
+			mQuota = Math.max(0L, quota);
+		}
+	}
+
+	/**
+	 * Thrown when a request can't be sent because the daily quota of its API has been used.
+	 */
+	public static class QuotaExceededException extends IOException {
+		private static final long serialVersionUID = 2843097457384536521L;
+
+		QuotaExceededException(String message) {
+			super(message);
+		}
+	}
+}
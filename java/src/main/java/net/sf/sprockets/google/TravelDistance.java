@@ -60,24 +60,24 @@ public class TravelDistance {
 
         in.beginObject();
         while (in.hasNext()) {
-            DistanceMatrix.Response.Key key = DistanceMatrix.Response.Key.get(in.nextName());
+            DistanceMatrix.Response.Key key = DistanceMatrix.Response.Key.next(in);
 
             switch (key) {
                 case UNKNOWN:
                     in.skipValue();
                     break;
                 case status:
-                    mStatus = in.nextString();
+                    mStatus = StringPool.intern(in.nextString());
                     break;
                 case duration:
                     in.beginObject();
                     while (in.hasNext()) {
-                        switch (DistanceMatrix.Response.Key.get(in.nextName())) {
+                        switch (DistanceMatrix.Response.Key.next(in)) {
                             case value:
                                 mDuration = in.nextLong();
                                 break;
                             case text:
-                                mDurationText = in.nextString();
+                                mDurationText = StringPool.intern(in.nextString());
                                 break;
                             default:
                                 in.skipValue();
@@ -89,12 +89,12 @@ public class TravelDistance {
                 case distance:
                     in.beginObject();
                     while (in.hasNext()) {
-                        switch (DistanceMatrix.Response.Key.get(in.nextName())) {
+                        switch (DistanceMatrix.Response.Key.next(in)) {
                             case value:
                                 mDistance = in.nextLong();
                                 break;
                             case text:
-                                mDistanceText = in.nextString();
+                                mDistanceText = StringPool.intern(in.nextString());
                                 break;
                             default:
                                 in.skipValue();
@@ -110,6 +110,20 @@ public class TravelDistance {
     }
 
 
+    /**
+     * Copy the element from the matrix.
+     */
+    TravelDistance(TravelMatrix matrix, int originId, int destinationId) {
+        mStatus = matrix.getStatusName(originId, destinationId);
+        mOriginId = originId;
+        mDestinationId = destinationId;
+        mDuration = matrix.getDuration(originId, destinationId);
+        mDurationText = matrix.getDurationText(originId, destinationId);
+        mDistance = matrix.getDistance(originId, destinationId);
+        mDistanceText = matrix.getDistanceText(originId, destinationId);
+    }
+
+
     /**
      * Indication of the success or failure of the routing
      */
@@ -0,0 +1,315 @@
+package net.sf.sprockets.google;
+
+import com.google.common.base.Objects;
+import com.google.gson.stream.JsonReader;
+import net.sf.sprockets.google.DistanceMatrix.Response.Key;
+import net.sf.sprockets.google.DistanceMatrix.Response.Status;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Travel durations and distances between all origins and destinations, stored in primitive arrays
+ * instead of a {@link TravelDistance} for each pair. Returned from
+ * {@link DistanceMatrix.Response#getMatrix()} and populated directly when
+ * {@link DistanceMatrix.Params#packed() packed} results are requested.
+ * <p>
+ * The text descriptions are kept from the service response, in the requested language and unit
+ * system. Each distinct text is shared through the string pool, so repeated texts such as
+ * "1 min" don't use more memory.
+ * </p>
+ *
+ * @since 2.0.0
+ */
+public class TravelMatrix {
+    private static final Status[] sStatuses = Status.values();
+    /** Status of an element that wasn't included in the response. */
+    private static final byte MISSING = -1;
+
+    private final int mOriginCount;
+    private final int mDestinationCount;
+
+    /**
+     * {@link Status} ordinals in row-major order, or {@link #MISSING}
+     */
+    final byte[] mStatuses;
+
+    /**
+     * statuses in row-major order that aren't a known {@link Status}, null until one is read
+     */
+    private String[] mUnknownStatuses;
+
+    /**
+     * durations in seconds in row-major order
+     */
+    final long[] mDurations;
+
+    /**
+     * distances in meters in row-major order
+     */
+    final long[] mDistances;
+
+    /**
+     * duration texts in row-major order
+     */
+    final String[] mDurationTexts;
+
+    /**
+     * distance texts in row-major order
+     */
+    final String[] mDistanceTexts;
+
+    String[] mOriginAddresses;
+    String[] mDestinationAddresses;
+
+    /**
+     * Matrix where every element is missing until it is read.
+     */
+    TravelMatrix(int originCount, int destinationCount) {
+        mOriginCount = originCount;
+        mDestinationCount = destinationCount;
+        int size = originCount * destinationCount;
+        mStatuses = new byte[size];
+        Arrays.fill(mStatuses, MISSING);
+        mDurations = new long[size];
+        mDistances = new long[size];
+        mDurationTexts = new String[size];
+        mDistanceTexts = new String[size];
+        mOriginAddresses = new String[originCount];
+        mDestinationAddresses = new String[destinationCount];
+    }
+
+    /**
+     * Read a response element into the position.
+     */
+    void read(int origin, int destination, JsonReader in) throws IOException {
+        int i = origin * mDestinationCount + destination;
+        status(i, null);
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (Key.next(in)) {
+                case status:
+                    status(i, in.nextString());
+                    break;
+                case duration:
+                    mDurations[i] = value(in, mDurationTexts, i);
+                    break;
+                case distance:
+                    mDistances[i] = value(in, mDistanceTexts, i);
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+    }
+
+    /**
+     * Read the value of a duration or distance object and put its pooled text in the position.
+     */
+    private static long value(JsonReader in, String[] texts, int i) throws IOException {
+        long value = 0L;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (Key.next(in)) {
+                case value:
+                    value = in.nextLong();
+                    break;
+                case text:
+                    texts[i] = StringPool.intern(in.nextString());
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return value;
+    }
+
+    /**
+     * Copy the distances into this matrix.
+     */
+    void put(List<TravelDistance> distances) {
+        for (TravelDistance distance : distances) {
+            int i = distance.mOriginId * mDestinationCount + distance.mDestinationId;
+            status(i, distance.mStatus);
+            mDurations[i] = distance.mDuration;
+            mDistances[i] = distance.mDistance;
+            mDurationTexts[i] = distance.mDurationText;
+            mDistanceTexts[i] = distance.mDistanceText;
+        }
+    }
+
+    /**
+     * Set the status of the element, keeping the name if it isn't a known {@link Status}.
+     *
+     * @param status
+     *            null if the element doesn't have a status
+     */
+    private void status(int i, String status) {
+        Status known = status != null ? Status.get(status) : Status.UNKNOWN;
+        mStatuses[i] = (byte) known.ordinal();
+        if (known == Status.UNKNOWN && status != null || mUnknownStatuses != null) {
+            if (mUnknownStatuses == null) {
+                mUnknownStatuses = new String[mStatuses.length];
+            }
+            mUnknownStatuses[i] = known == Status.UNKNOWN ? StringPool.intern(status) : null;
+        }
+    }
+
+    /**
+     * Copy the elements of the smaller matrix into this one, starting at the position.
+     */
+    void put(int origin, int destination, TravelMatrix matrix) {
+        for (int o = 0; o < matrix.mOriginCount; o++) {
+            int from = o * matrix.mDestinationCount;
+            int to = (origin + o) * mDestinationCount + destination;
+            System.arraycopy(matrix.mStatuses, from, mStatuses, to, matrix.mDestinationCount);
+            if (matrix.mUnknownStatuses != null) {
+                if (mUnknownStatuses == null) {
+                    mUnknownStatuses = new String[mStatuses.length];
+                }
+                System.arraycopy(matrix.mUnknownStatuses, from, mUnknownStatuses, to,
+                        matrix.mDestinationCount);
+            }
+            System.arraycopy(matrix.mDurations, from, mDurations, to, matrix.mDestinationCount);
+            System.arraycopy(matrix.mDistances, from, mDistances, to, matrix.mDestinationCount);
+            System.arraycopy(matrix.mDurationTexts, from, mDurationTexts, to,
+                    matrix.mDestinationCount);
+            System.arraycopy(matrix.mDistanceTexts, from, mDistanceTexts, to,
+                    matrix.mDestinationCount);
+        }
+    }
+
+    /**
+     * number of origins (rows)
+     */
+    public int getOriginCount() {
+        return mOriginCount;
+    }
+
+    /**
+     * number of destinations (columns)
+     */
+    public int getDestinationCount() {
+        return mDestinationCount;
+    }
+
+    /**
+     * origin address (determined by the DistanceMatrix API)
+     */
+    public String getOriginAddress(int origin) {
+        return mOriginAddresses[origin];
+    }
+
+    /**
+     * destination address (determined by the DistanceMatrix API)
+     */
+    public String getDestinationAddress(int destination) {
+        return mDestinationAddresses[destination];
+    }
+
+    /**
+     * true if the element was included in the response
+     */
+    public boolean isIncluded(int origin, int destination) {
+        return mStatuses[index(origin, destination)] != MISSING;
+    }
+
+    /**
+     * Indication of the success or failure of the routing. {@link Status#UNKNOWN UNKNOWN} if the
+     * status isn't recognised or the element wasn't {@link #isIncluded(int, int) included} in the
+     * response.
+     */
+    public Status getStatus(int origin, int destination) {
+        byte status = mStatuses[index(origin, destination)];
+        return status != MISSING ? sStatuses[status] : Status.UNKNOWN;
+    }
+
+    /**
+     * Get the status as it was in the response.
+     *
+     * @return null if the element doesn't have a status or wasn't included
+     */
+    String getStatusName(int origin, int destination) {
+        int i = index(origin, destination);
+        byte status = mStatuses[i];
+        if (status == MISSING) {
+            return null;
+        } else if (status == Status.UNKNOWN.ordinal()) {
+            return mUnknownStatuses != null ? mUnknownStatuses[i] : null;
+        }
+        return sStatuses[status].name();
+    }
+
+    /**
+     * duration of the journey in seconds
+     */
+    public long getDuration(int origin, int destination) {
+        return mDurations[index(origin, destination)];
+    }
+
+    /**
+     * distance of the journey in meters
+     */
+    public long getDistance(int origin, int destination) {
+        return mDistances[index(origin, destination)];
+    }
+
+    /**
+     * duration of the journey as text string, e.g. "1 hour 5 mins", or null if the element didn't
+     * have one
+     */
+    public String getDurationText(int origin, int destination) {
+        return mDurationTexts[index(origin, destination)];
+    }
+
+    /**
+     * distance of the journey as text string, e.g. "12.3 km", or null if the element didn't have
+     * one
+     */
+    public String getDistanceText(int origin, int destination) {
+        return mDistanceTexts[index(origin, destination)];
+    }
+
+    private int index(int origin, int destination) {
+        if (origin < 0 || origin >= mOriginCount) {
+            throw new IndexOutOfBoundsException("origin: " + origin + ", count: " + mOriginCount);
+        }
+        if (destination < 0 || destination >= mDestinationCount) {
+            throw new IndexOutOfBoundsException("destination: " + destination + ", count: "
+                    + mDestinationCount);
+        }
+        return origin * mDestinationCount + destination;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(mOriginCount, mDestinationCount, Arrays.hashCode(mStatuses),
+                Arrays.hashCode(mDurations), Arrays.hashCode(mDistances));
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj != null) {
+            if (this == obj) {
+                return true;
+            } else if (obj instanceof TravelMatrix) {
+                TravelMatrix o = (TravelMatrix) obj;
+                return mOriginCount == o.mOriginCount && mDestinationCount == o.mDestinationCount
+                        && Arrays.equals(mStatuses, o.mStatuses)
+                        && Arrays.equals(mDurations, o.mDurations)
+                        && Arrays.equals(mDistances, o.mDistances);
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this).add("origins", mOriginCount)
+                .add("destinations", mDestinationCount).toString();
+    }
+
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright 2013 pushbit <pushbit@gmail.com>
+ *
+ * This file is part of Sprockets.
+ *
+ * Sprockets is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Sprockets is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Sprockets.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.sf.sprockets.google;
+
+import java.util.Locale;
+
+import net.sf.sprockets.Sprockets;
+
+import com.google.common.base.Strings;
+
+/**
+ * Builds request URLs in a buffer that is reused by each thread, so that the only allocation is
+ * the final String. Values are percent-encoded and coordinates are written without creating
+ * intermediate Strings. The library settings that every request uses are read from the current
+ * {@link Sprockets#getSettings() snapshot}.
+ * <p>
+ * Start a URL with {@link #get(String)}, add params with {@link #param(String)} and the append
+ * methods, then get the URL with {@link #toString()}, which releases the buffer for the next URL.
+ * </p>
+ */
+final class UrlBuilder {
+	private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+	private static final ThreadLocal<UrlBuilder> sBuilders = new ThreadLocal<UrlBuilder>() {
+		@Override
+		protected UrlBuilder initialValue() {
+			return new UrlBuilder();
+		}
+	};
+
+	private final StringBuilder mUrl = new StringBuilder(512);
+	/**
+	 * True while a URL is being built, in case another one is started on the same thread. Stays
+	 * true if building was abandoned because of an exception.
+	 */
+	private boolean mInUse;
+
+	private UrlBuilder() {
+	}
+
+	/**
+	 * Start a URL for the API path, which ends with '?'.
+	 */
+	static UrlBuilder get(String path) {
+		return from(Sprockets.getSettings().getBaseUrl()).append(path);
+	}
+
+	/**
+	 * Start a URL with one that was built earlier, such as a search without its location.
+	 */
+	static UrlBuilder from(String url) {
+		UrlBuilder builder = sBuilders.get();
+		if (builder.mInUse) {
+			/* either nested or abandoned, a nested builder keeps its own reference */
+			builder = new UrlBuilder();
+			sBuilders.set(builder);
+		}
+		builder.mInUse = true;
+		builder.mUrl.setLength(0);
+		builder.mUrl.append(url);
+		return builder;
+	}
+
+	/**
+	 * Add the API key param.
+	 *
+	 * @throws IllegalStateException
+	 *             if the google.api-key setting is empty
+	 */
+	UrlBuilder key() {
+		String key = Sprockets.getSettings().getApiKey();
+		if (key.isEmpty()) {
+			mInUse = false;
+			throw new IllegalStateException("google.api-key not set");
+		}
+		return param("key").append(key);
+	}
+
+	/**
+	 * Add the sensor param from the hardware.location setting.
+	 */
+	UrlBuilder sensor() {
+		return param("sensor").append(Sprockets.getSettings().hasLocationSensor());
+	}
+
+	/**
+	 * True if Street View requests should include the API key.
+	 */
+	static boolean isStreetViewKeyUsed() {
+		return Sprockets.getSettings().isStreetViewKeyUsed();
+	}
+
+	/**
+	 * Add a param name. Its value should be appended next.
+	 */
+	UrlBuilder param(String name) {
+		char last = mUrl.charAt(mUrl.length() - 1);
+		if (last != '?' && last != '&') {
+			mUrl.append('&');
+		}
+		mUrl.append(name).append('=');
+		return this;
+	}
+
+	/**
+	 * Append the text without encoding it.
+	 */
+	UrlBuilder append(String s) {
+		mUrl.append(s);
+		return this;
+	}
+
+	UrlBuilder append(char c) {
+		mUrl.append(c);
+		return this;
+	}
+
+	UrlBuilder append(boolean b) {
+		mUrl.append(b);
+		return this;
+	}
+
+	UrlBuilder append(int i) {
+		mUrl.append(i);
+		return this;
+	}
+
+	UrlBuilder append(long l) {
+		mUrl.append(l);
+		return this;
+	}
+
+	/**
+	 * Append the language if it isn't empty, otherwise the default locale.
+	 */
+	UrlBuilder language(String language) {
+		mUrl.append(!Strings.isNullOrEmpty(language) ? language : Locale.getDefault());
+		return this;
+	}
+
+	/**
+	 * Append the values with URL encoded pipe symbols between them, skipping null values.
+	 *
+	 * @param encode
+	 *            true if the values should be percent-encoded
+	 */
+	UrlBuilder join(String[] values, boolean encode) {
+		boolean first = true;
+		for (String value : values) {
+			if (value != null) {
+				if (!first) {
+					mUrl.append("%7C");
+				}
+				if (encode) {
+					encode(value);
+				} else {
+					mUrl.append(value);
+				}
+				first = false;
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Append the text encoded in the same way as {@link java.net.URLEncoder URLEncoder} with UTF-8.
+	 */
+	UrlBuilder encode(String s) {
+		for (int i = 0, length = s.length(); i < length; i++) {
+			char c = s.charAt(i);
+			if (c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '.'
+					|| c == '-' || c == '*' || c == '_') {
+				mUrl.append(c);
+			} else if (c == ' ') {
+				mUrl.append('+');
+			} else if (c < 0x80) {
+				hex(c);
+			} else if (c < 0x800) {
+				hex(0xc0 | c >> 6);
+				hex(0x80 | c & 0x3f);
+			} else if (Character.isHighSurrogate(c) && i + 1 < length
+					&& Character.isLowSurrogate(s.charAt(i + 1))) {
+				int cp = Character.toCodePoint(c, s.charAt(++i));
+				hex(0xf0 | cp >> 18);
+				hex(0x80 | cp >> 12 & 0x3f);
+				hex(0x80 | cp >> 6 & 0x3f);
+				hex(0x80 | cp & 0x3f);
+			} else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+				hex('?'); // unpaired surrogate, like URLEncoder
+			} else {
+				hex(0xe0 | c >> 12);
+				hex(0x80 | c >> 6 & 0x3f);
+				hex(0x80 | c & 0x3f);
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Append the byte as a percent-encoded hex pair.
+	 */
+	private void hex(int b) {
+		mUrl.append('%').append(HEX[b >> 4 & 0xf]).append(HEX[b & 0xf]);
+	}
+
+	/**
+	 * Append the latitude and longitude separated by a comma.
+	 */
+	UrlBuilder latLng(double latitude, double longitude) {
+		return coordinate(latitude).append(',').coordinate(longitude);
+	}
+
+	/**
+	 * Append the degrees with up to 6 decimal places (about 10 cm) and without an exponent.
+	 */
+	UrlBuilder coordinate(double degrees) {
+		if (Double.isNaN(degrees) || Double.isInfinite(degrees)) {
+			mUrl.append(degrees);
+			return this;
+		}
+		long micros = Math.round(degrees * 1000000.0);
+		if (micros < 0L) {
+			mUrl.append('-');
+			micros = -micros;
+		}
+		mUrl.append(micros / 1000000L).append('.');
+		long fraction = micros % 1000000L;
+		int digits = 6;
+		while (digits > 1 && fraction % 10L == 0L) {
+			fraction /= 10L;
+			digits--;
+		}
+		for (long place = pow10(digits - 1); place > 1L && fraction < place; place /= 10L) {
+			mUrl.append('0');
+		}
+		mUrl.append(fraction);
+		return this;
+	}
+
+	private static long pow10(int exponent) {
+		long pow = 1L;
+		for (int i = 0; i < exponent; i++) {
+			pow *= 10L;
+		}
+		return pow;
+	}
+
+	/**
+	 * Number of characters in the URL so far.
+	 */
+	int length() {
+		return mUrl.length();
+	}
+
+	/**
+	 * Get the URL and release the buffer so that it can be reused.
+	 */
+	@Override
+	public String toString() {
+		String url = mUrl.toString();
+		mInUse = false;
+		if (mUrl.capacity() > 8192) {
+			mUrl.setLength(512);
+			mUrl.trimToSize(); // don't keep an unusually long URL's buffer
+		}
+		return url;
+	}
+}
@@ -17,46 +17,563 @@
 
 package net.sf.sprockets.net;
 
+import static java.net.HttpURLConnection.HTTP_BAD_REQUEST;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.logging.Level.FINE;
 import static java.util.logging.Level.WARNING;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 
+import net.sf.sprockets.Settings;
 import net.sf.sprockets.Sprockets;
 import net.sf.sprockets.util.logging.Loggers;
 
+import com.google.common.base.Objects;
+import com.google.common.io.Closeables;
+import com.google.common.io.CountingInputStream;
+import com.squareup.okhttp.Address;
+import com.squareup.okhttp.Connection;
+import com.squareup.okhttp.ConnectionPool;
 import com.squareup.okhttp.OkHttpClient;
 
 /**
  * Provides HTTP connections using the client specified in the {@link Sprockets library settings}.
- * 
+ * Connections to the same host are kept alive and re-used according to the {@code network.pool}
+ * settings. Responses read with {@link #getInputStream(HttpURLConnection)} are requested with
+ * gzip or deflate compression, unless disabled with the {@code network.gzip} setting, and
+ * decompressed while they are read. The time taken by each phase of these requests is available
+ * from {@link #getTiming(InputStream)}. When the {@code network} settings are changed, later
+ * connections use the new settings and the pooled connections are closed if the pool settings
+ * changed.
+ *
  * @since 1.1.0
  */
 public class HttpClient {
 	private static final Logger sLog = Loggers.get(HttpClient.class);
-	/** Null if using the standard library client */
-	private static final OkHttpClient sClient;
+	/** Client and settings for new connections. */
+	private static volatile Transport sTransport;
+	/** Limits the number of requests in progress for each host. */
+	private static final ConcurrentMap<String, Semaphore> sHosts =
+			new ConcurrentHashMap<String, Semaphore>();
+	private static final AtomicLong sRequests = new AtomicLong();
+	private static final AtomicLong sWaits = new AtomicLong();
+	private static final AtomicLong sBytesReceived = new AtomicLong();
+	private static final AtomicLong sBytesDecoded = new AtomicLong();
+	private static final AtomicLong sPoolHits = new AtomicLong();
+	private static final AtomicLong sPoolMisses = new AtomicLong();
 	static {
-		String client = Sprockets.getConfig().getString("network.http-client");
-		if ("java.net".equals(client)) {
-			sClient = null;
-		} else {
-			if (!"okhttp".equals(client)) {
-				sLog.log(WARNING, "Unknown http-client: {0}, using default okhttp", client);
+		Sprockets.addListener(new Sprockets.Listener() {
+			@Override
+			public void onSettingsChanged(Settings old, Settings settings) {
+				if (settings.isNetworkChanged(old)) {
+					configure(Sprockets.getSettings()); // latest if changed again meanwhile
+				}
 			}
-			sClient = new OkHttpClient();
-		}
+		});
+		configure(Sprockets.getSettings());
 	}
 
 	private HttpClient() {
 	}
 
+	/**
+	 * Create the client for new connections. The connection pool is replaced only if its settings
+	 * have changed.
+	 */
+	private static synchronized void configure(Settings settings) {
+		Transport old = sTransport;
+		Transport transport = new Transport(settings, old);
+		if (old != null && old.mMaxPerHost != transport.mMaxPerHost) {
+			sHosts.clear(); // requests in progress release their permits to the old semaphores
+		}
+		sTransport = transport;
+		if (old != null && old.mPool != null && old.mPool != transport.mPool) {
+			old.mPool.evictAll();
+		}
+	}
+
 	/**
 	 * Get a connection to the URL.
 	 */
 	public static HttpURLConnection openConnection(URL url) throws IOException {
-		return sClient != null ? sClient.open(url) : (HttpURLConnection) url.openConnection();
+		Transport transport = sTransport;
+		HttpURLConnection con = transport.mClient != null ? transport.mClient.open(url)
+				: (HttpURLConnection) url.openConnection();
+		con.setConnectTimeout(transport.mConnectTimeout);
+		con.setReadTimeout(transport.mReadTimeout);
+		return con;
+	}
+
+	/**
+	 * Send the request and get the response body, which is the error stream if the response code
+	 * is 400 or higher. If the host already has the maximum number of requests in progress, this
+	 * method waits until one of them has finished. Always {@link InputStream#close() close} the
+	 * stream when finished so that the connection can be re-used.
+	 * <p>
+	 * If the request doesn't have an Accept-Encoding header, compression is requested and the
+	 * returned stream is decompressed. The number of bytes received and decoded are added to the
+	 * {@link #getStats() stats} and logged at FINE level when the stream is closed.
+	 * </p>
+	 *
+	 * @return null if the response has no body, e.g. 304 Not Modified
+	 * @throws InterruptedIOException
+	 *             if the thread is interrupted while waiting for another request to finish
+	 * @since 2.0.0
+	 */
+	public static InputStream getInputStream(HttpURLConnection con) throws IOException {
+		Transport transport = sTransport;
+		boolean decode = transport.mGzip && acceptEncoding(con);
+		Semaphore permits = permits(con.getURL(), transport.mMaxPerHost);
+		if (permits != null) {
+			if (!permits.tryAcquire()) {
+				sWaits.incrementAndGet();
+				try {
+					permits.acquire();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("waiting for " + con.getURL().getHost());
+				}
+			}
+		}
+		sRequests.incrementAndGet();
+		InputStream in = null;
+		try {
+			long start = System.nanoTime();
+			con.connect();
+			long connected = System.nanoTime();
+			int code = con.getResponseCode();
+			long firstByte = System.nanoTime();
+			InputStream body = code < HTTP_BAD_REQUEST ? con.getInputStream() : con
+					.getErrorStream();
+			if (body != null) {
+				try {
+					in = new Body(body, decode ? con.getContentEncoding() : null, permits,
+							con.getURL(), connected - start, firstByte - connected);
+				} catch (IOException e) {
+					Closeables.close(body, true);
+					throw e;
+				}
+			}
+		} finally {
+			if (in == null && permits != null) {
+				permits.release();
+			}
+		}
+		return in;
+	}
+
+	/**
+	 * Request a compressed response if the request doesn't already specify an encoding.
+	 *
+	 * @return true if compression was requested
+	 */
+	private static boolean acceptEncoding(HttpURLConnection con) {
+		try {
+			if (con.getRequestProperty("Accept-Encoding") == null) {
+				con.setRequestProperty("Accept-Encoding", "gzip, deflate");
+				return true;
+			}
+		} catch (IllegalStateException e) {
+			// already connected, leave the response as it is
+		}
+		return false;
+	}
+
+	/**
+	 * Get the permits for the URL's host or null if requests aren't limited.
+	 */
+	private static Semaphore permits(URL url, int maxPerHost) {
+		if (maxPerHost <= 0) {
+			return null;
+		}
+		String host = url.getHost();
+		Semaphore permits = sHosts.get(host);
+		if (permits == null) {
+			permits = new Semaphore(maxPerHost, true);
+			Semaphore existing = sHosts.putIfAbsent(host, permits);
+			if (existing != null) {
+				permits = existing;
+			}
+		}
+		return permits;
+	}
+
+	/**
+	 * Get the time taken by each phase of the request and the number of bytes read so far.
+	 *
+	 * @param in
+	 *            stream returned by {@link #getInputStream(HttpURLConnection)}
+	 * @return null if the stream wasn't returned by getInputStream
+	 * @since 2.0.0
+	 */
+	public static Timing getTiming(InputStream in) {
+		return in instanceof Body ? new Timing((Body) in) : null;
+	}
+
+	/**
+	 * Get the current connection and request counts.
+	 *
+	 * @since 2.0.0
+	 */
+	public static Stats getStats() {
+		return new Stats();
+	}
+
+	/**
+	 * Snapshot of connection pool and request counts since the library was loaded.
+	 *
+	 * @since 2.0.0
+	 */
+	public static class Stats {
+		private final long mHits;
+		private final long mMisses;
+		private final int mConnections;
+		private final long mRequests;
+		private final long mWaits;
+		private final long mBytesReceived;
+		private final long mBytesDecoded;
+
+		private Stats() {
+			Pool pool = sTransport.mPool;
+			mHits = sPoolHits.get();
+			mMisses = sPoolMisses.get();
+			mConnections = pool != null ? pool.getConnectionCount() : 0;
+			mRequests = sRequests.get();
+			mWaits = sWaits.get();
+			mBytesReceived = sBytesReceived.get();
+			mBytesDecoded = sBytesDecoded.get();
+		}
+
+		/**
+		 * Number of requests that re-used a pooled connection. Always 0 when using the
+		 * {@code java.net} client, which doesn't expose its connection cache.
+		 */
+		public long getPoolHits() {
+			return mHits;
+		}
+
+		/**
+		 * Number of requests that needed a new connection. Always 0 when using the
+		 * {@code java.net} client, which doesn't expose its connection cache.
+		 */
+		public long getPoolMisses() {
+			return mMisses;
+		}
+
+		/**
+		 * Number of connections currently in the pool.
+		 */
+		public int getPooledConnections() {
+			return mConnections;
+		}
+
+		/**
+		 * Number of requests sent with {@link HttpClient#getInputStream(HttpURLConnection)}.
+		 */
+		public long getRequests() {
+			return mRequests;
+		}
+
+		/**
+		 * Number of requests that had to wait because their host already had the maximum number
+		 * of requests in progress.
+		 */
+		public long getHostWaits() {
+			return mWaits;
+		}
+
+		/**
+		 * Number of response body bytes that were read from the network, before they were
+		 * decompressed. Only includes closed streams.
+		 */
+		public long getBytesReceived() {
+			return mBytesReceived;
+		}
+
+		/**
+		 * Number of response body bytes that were read from the streams, after they were
+		 * decompressed. Only includes closed streams.
+		 */
+		public long getBytesDecoded() {
+			return mBytesDecoded;
+		}
+
+		@Override
+		public String toString() {
+			return Objects.toStringHelper(this).add("poolHits", mHits).add("poolMisses", mMisses)
+					.add("pooledConnections", mConnections).add("requests", mRequests)
+					.add("hostWaits", mWaits).add("bytesReceived", mBytesReceived)
+					.add("bytesDecoded", mBytesDecoded).toString();
+		}
+	}
+
+	/**
+	 * Snapshot of the time taken by each phase of a request, in nanoseconds, and the number of
+	 * bytes read from its response body.
+	 *
+	 * @since 2.0.0
+	 */
+	public static class Timing {
+		private final long mConnect;
+		private final long mFirstByte;
+		private final long mRead;
+		private final long mOpen;
+		private final long mReceived;
+		private final long mDecoded;
+		private final boolean mClosed;
+
+		private Timing(Body body) {
+			mConnect = body.mConnectNanos;
+			mFirstByte = body.mFirstByteNanos;
+			mRead = body.mReadNanos;
+			long closedAt = body.mClosedAt;
+			mClosed = closedAt != 0L;
+			mOpen = (mClosed ? closedAt : System.nanoTime()) - body.mOpenedAt;
+			mReceived = body.mReceived.getCount();
+			mDecoded = body.mDecoded;
+		}
+
+		/**
+		 * Time taken to connect, including looking up the host address and the TLS handshake.
+		 * Close to 0 when a pooled connection is re-used.
+		 */
+		public long getConnectNanos() {
+			return mConnect;
+		}
+
+		/**
+		 * Time from when the connection was made until the response headers were received.
+		 */
+		public long getFirstByteNanos() {
+			return mFirstByte;
+		}
+
+		/**
+		 * Time spent reading the response body from the network and decompressing it.
+		 */
+		public long getReadNanos() {
+			return mRead;
+		}
+
+		/**
+		 * Time from when the response headers were received until the body was closed, or until
+		 * now if it's still open. Includes the {@link #getReadNanos() read time} and the time spent
+		 * processing the body between reads.
+		 */
+		public long getOpenNanos() {
+			return mOpen;
+		}
+
+		/**
+		 * Number of response body bytes that were read from the network, before they were
+		 * decompressed.
+		 */
+		public long getBytesReceived() {
+			return mReceived;
+		}
+
+		/**
+		 * Number of response body bytes that were read from the stream, after they were
+		 * decompressed.
+		 */
+		public long getBytesDecoded() {
+			return mDecoded;
+		}
+
+		/**
+		 * True if the response body has been closed and the values won't change.
+		 */
+		public boolean isClosed() {
+			return mClosed;
+		}
+
+		@Override
+		public String toString() {
+			return Objects.toStringHelper(this).add("connectNanos", mConnect)
+					.add("firstByteNanos", mFirstByte).add("readNanos", mRead)
+					.add("openNanos", mOpen).add("bytesReceived", mReceived)
+					.add("bytesDecoded", mDecoded).add("closed", mClosed).toString();
+		}
+	}
+
+	/**
+	 * Counts the connections that are re-used and those that must be created.
+	 */
+	private static class Pool extends ConnectionPool {
+		private final int mMaxIdle;
+		private final long mKeepAlive;
+
+		private Pool(int maxIdleConnections, long keepAliveDurationMs) {
+			super(maxIdleConnections, keepAliveDurationMs);
+			mMaxIdle = maxIdleConnections;
+			mKeepAlive = keepAliveDurationMs;
+		}
+
+		@Override
+		public synchronized Connection get(Address address) {
+			Connection con = super.get(address);
+			(con != null ? sPoolHits : sPoolMisses).incrementAndGet();
+			return con;
+		}
+	}
+
+	/**
+	 * Client and network settings that are used together for new connections.
+	 */
+	private static class Transport {
+		/** Null if using the standard library client */
+		private final OkHttpClient mClient;
+		/** Null if using the standard library client */
+		private final Pool mPool;
+		private final int mConnectTimeout;
+		private final int mReadTimeout;
+		/** 0 if there is no limit */
+		private final int mMaxPerHost;
+		private final boolean mGzip;
+
+		/**
+		 * @param old
+		 *            its pool is re-used if it has the same settings, may be null
+		 */
+		private Transport(Settings settings, Transport old) {
+			mConnectTimeout = settings.getConnectTimeout();
+			mReadTimeout = settings.getReadTimeout();
+			mMaxPerHost = settings.getMaxRequestsPerHost();
+			mGzip = settings.isGzip();
+			int maxIdle = settings.getMaxIdleConnections();
+			long keepAlive = settings.getKeepAlive();
+			String client = settings.getHttpClient();
+			if ("java.net".equals(client)) {
+				mClient = null;
+				mPool = null;
+				/* the standard library connection cache can only be configured globally */
+				if (System.getProperty("http.maxConnections") == null) {
+					System.setProperty("http.maxConnections", String.valueOf(Math.max(1, maxIdle)));
+				}
+			} else {
+				if (!"okhttp".equals(client)) {
+					sLog.log(WARNING, "Unknown http-client: {0}, using default okhttp", client);
+				}
+				mClient = new OkHttpClient();
+				Pool pool = old != null ? old.mPool : null;
+				mPool = pool != null && pool.mMaxIdle == maxIdle && pool.mKeepAlive == keepAlive
+						? pool : new Pool(maxIdle, keepAlive);
+				mClient.setConnectionPool(mPool);
+				mClient.setConnectTimeout(mConnectTimeout, MILLISECONDS);
+				mClient.setReadTimeout(mReadTimeout, MILLISECONDS);
+			}
+		}
+	}
+
+	/**
+	 * Decompresses the response body and counts its bytes and the time spent reading it. Releases
+	 * its host permit, if it has one, when closed.
+	 */
+	private static class Body extends FilterInputStream {
+		private final CountingInputStream mReceived;
+		private final Semaphore mPermits;
+		private final URL mUrl;
+		private final AtomicBoolean mClosed = new AtomicBoolean();
+		private final long mConnectNanos;
+		private final long mFirstByteNanos;
+		private final long mOpenedAt = System.nanoTime();
+		private long mReadNanos;
+		/** 0 until the stream is closed. */
+		private volatile long mClosedAt;
+		private long mDecoded;
+
+		/**
+		 * @param encoding
+		 *            null if the body shouldn't be decompressed
+		 * @param permits
+		 *            null if requests to the host aren't limited
+		 */
+		private Body(InputStream in, String encoding, Semaphore permits, URL url,
+				long connectNanos, long firstByteNanos) throws IOException {
+			super(null);
+			mReceived = new CountingInputStream(in);
+			if ("gzip".equalsIgnoreCase(encoding)) {
+				this.in = new GZIPInputStream(mReceived);
+			} else if ("deflate".equalsIgnoreCase(encoding)) {
+				this.in = new InflaterInputStream(mReceived);
+			} else {
+				this.in = mReceived;
+			}
+			mPermits = permits;
+			mUrl = url;
+			mConnectNanos = connectNanos;
+			mFirstByteNanos = firstByteNanos;
+		}
+
+		@Override
+		public int read() throws IOException {
+			long start = System.nanoTime();
+			int b = in.read();
+			mReadNanos += System.nanoTime() - start;
+			if (b >= 0) {
+				mDecoded++;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			long start = System.nanoTime();
+			int n = in.read(b, off, len);
+			mReadNanos += System.nanoTime() - start;
+			if (n > 0) {
+				mDecoded += n;
+			}
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long start = System.nanoTime();
+			long skipped = in.skip(n);
+			mReadNanos += System.nanoTime() - start;
+			mDecoded += skipped;
+			return skipped;
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				super.close();
+			} finally {
+				if (mClosed.compareAndSet(false, true)) {
+					mClosedAt = System.nanoTime();
+					if (mPermits != null) {
+						mPermits.release();
+					}
+					long received = mReceived.getCount();
+					sBytesReceived.addAndGet(received);
+					sBytesDecoded.addAndGet(mDecoded);
+					if (sLog.isLoggable(FINE)) {
+						sLog.log(FINE, "{0}{1}: {2} bytes received, {3} bytes decoded",
+								new Object[] { mUrl.getHost(), mUrl.getPath(), received,
+										mDecoded });
+					}
+				}
+			}
+		}
 	}
 }
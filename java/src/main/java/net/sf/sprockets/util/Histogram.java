@@ -0,0 +1,214 @@
+/*
+ * Copyright 2013 pushbit <pushbit@gmail.com>
+ *
+ * This file is part of Sprockets.
+ *
+ * Sprockets is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Sprockets is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Sprockets.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.sf.sprockets.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.google.common.base.Objects;
+
+/**
+ * Counts non-negative values in buckets that grow wider as the values get larger, so that
+ * percentiles can be estimated to within about 3% of the recorded values, from 0 to
+ * Long.MAX_VALUE, in a fixed amount of memory. Values below 64 are counted exactly. Any number of
+ * threads can record values at the same time without locking. Values that are recorded while the
+ * percentiles are being calculated may or may not be included.
+ *
+ * @since 2.0.0
+ */
+public class Histogram {
+	/** Each power of two range is split into 2^SUB_BITS buckets. */
+	private static final int SUB_BITS = 5;
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+
+	private final AtomicLongArray mCounts = new AtomicLongArray(index(Long.MAX_VALUE) + 1);
+	private final AtomicLong mCount = new AtomicLong();
+	private final AtomicLong mSum = new AtomicLong();
+	private final AtomicLong mMin = new AtomicLong(Long.MAX_VALUE);
+	private final AtomicLong mMax = new AtomicLong();
+
+	/**
+	 * Count the value. Negative values are counted as 0.
+	 */
+	public void record(long value) {
+		if (value < 0L) {
+			value = 0L;
+		}
+		mCounts.incrementAndGet(index(value));
+		mCount.incrementAndGet();
+		mSum.addAndGet(value);
+		long min;
+		while (value < (min = mMin.get()) && !mMin.compareAndSet(min, value)) {
+		}
+		long max;
+		while (value > (max = mMax.get()) && !mMax.compareAndSet(max, value)) {
+		}
+	}
+
+	/**
+	 * Get the bucket of the value.
+	 */
+	private static int index(long value) {
+		if (value < SUB_COUNT) {
+			return (int) value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+		return shift * SUB_COUNT + (int) (value >>> shift);
+	}
+
+	/**
+	 * Get the value in the middle of the bucket.
+	 */
+	private static long value(int index) {
+		int shift = index / SUB_COUNT - 1;
+		if (shift <= 0) {
+			return index;
+		}
+		long low = (long) (index - shift * SUB_COUNT) << shift;
+		return low + (1L << shift - 1);
+	}
+
+	/**
+	 * Number of values that have been recorded.
+	 */
+	public long getCount() {
+		return mCount.get();
+	}
+
+	/**
+	 * Smallest value that has been recorded or 0 if none have been recorded.
+	 */
+	public long getMin() {
+		long min = mMin.get();
+		return min != Long.MAX_VALUE ? min : 0L;
+	}
+
+	/**
+	 * Largest value that has been recorded or 0 if none have been recorded.
+	 */
+	public long getMax() {
+		return mMax.get();
+	}
+
+	/**
+	 * Average of the values that have been recorded or 0.0 if none have been recorded.
+	 */
+	public double getMean() {
+		long count = mCount.get();
+		return count > 0 ? (double) mSum.get() / count : 0.0;
+	}
+
+	/**
+	 * Get the value that the percentage of recorded values are less than or equal to.
+	 *
+	 * @param percentile
+	 *            0.0 to 100.0
+	 * @return 0 if no values have been recorded
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long count = mCount.get();
+		if (count == 0) {
+			return 0L;
+		}
+		long target = Math.max(1L, (long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * count));
+		long seen = 0L;
+		for (int i = 0, length = mCounts.length(); i < length; i++) {
+			seen += mCounts.get(i);
+			if (seen >= target) {
+				return Math.max(getMin(), Math.min(value(i), getMax()));
+			}
+		}
+		return getMax();
+	}
+
+	/**
+	 * Get the current count, min, max, mean, and common percentiles.
+	 */
+	public Snapshot getSnapshot() {
+		return new Snapshot(this);
+	}
+
+	@Override
+	public String toString() {
+		return getSnapshot().toString();
+	}
+
+	/**
+	 * Summary of a {@link Histogram} at the time that it was created.
+	 */
+	public static class Snapshot {
+		private final long mCount;
+		private final long mMin;
+		private final long mMax;
+		private final double mMean;
+		private final long mMedian;
+		private final long m90th;
+		private final long m99th;
+		private final long m999th;
+
+		private Snapshot(Histogram histogram) {
+			mCount = histogram.getCount();
+			mMin = histogram.getMin();
+			mMax = histogram.getMax();
+			mMean = histogram.getMean();
+			mMedian = histogram.getValueAtPercentile(50.0);
+			m90th = histogram.getValueAtPercentile(90.0);
+			m99th = histogram.getValueAtPercentile(99.0);
+			m999th = histogram.getValueAtPercentile(99.9);
+		}
+
+		public long getCount() {
+			return mCount;
+		}
+
+		public long getMin() {
+			return mMin;
+		}
+
+		public long getMax() {
+			return mMax;
+		}
+
+		public double getMean() {
+			return mMean;
+		}
+
+		public long getMedian() {
+			return mMedian;
+		}
+
+		public long get90thPercentile() {
+			return m90th;
+		}
+
+		public long get99thPercentile() {
+			return m99th;
+		}
+
+		public long get999thPercentile() {
+			return m999th;
+		}
+
+		@Override
+		public String toString() {
+			return Objects.toStringHelper(this).add("count", mCount).add("min", mMin)
+					.add("median", mMedian).add("90th", m90th).add("99th", m99th)
+					.add("99.9th", m999th).add("max", mMax).add("mean", mMean).toString();
+		}
+	}
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2013 pushbit <pushbit@gmail.com>
+ *
+ * This file is part of Sprockets.
+ *
+ * Sprockets is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Sprockets is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Sprockets.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.sf.sprockets.google;
+
+import static net.sf.sprockets.google.Places.Response.Status.OK;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.IOException;
+import java.util.List;
+
+import net.sf.sprockets.Sprockets;
+import net.sf.sprockets.google.FakeServer.Endpoint;
+import net.sf.sprockets.google.Place.Prediction;
+import net.sf.sprockets.google.Places.Field;
+import net.sf.sprockets.google.Places.Params;
+import net.sf.sprockets.google.Places.Response;
+import net.sf.sprockets.lang.Substring;
+import net.sf.sprockets.test.FakeServerTest;
+
+import org.apache.commons.configuration.Configuration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Sends {@link Places#autocomplete(Params, Places.Field...) Places.autocomplete} requests through
+ * the {@link AutocompleteCache}.
+ */
+public class AutocompleteCacheTest extends FakeServerTest {
+	private static final String PREFIX = "google.places.autocomplete-cache.";
+	/** Three predictions, so that longer inputs can be found from them. */
+	private static final String PIZ = "{\"predictions\":[" + prediction("Pizza Hut, Main Street")
+			+ ',' + prediction("Pizzeria Uno, Chicago") + ',' + prediction("Joe's Pizza, Broadway")
+			+ "],\"status\":\"OK\"}";
+	private int mEntries;
+	private long mTtl;
+
+	private static String prediction(String description) {
+		return "{\"description\":\"" + description + "\",\"reference\":\"" + description.hashCode()
+				+ "\",\"matched_substrings\":[{\"length\":3,\"offset\":0}]}";
+	}
+
+	@Before
+	public void enableCache() {
+		Configuration config = Sprockets.getConfig();
+		mEntries = config.getInt(PREFIX + "max-entries");
+		mTtl = config.getLong(PREFIX + "ttl");
+		config.setProperty(PREFIX + "ttl", 0);
+		config.setProperty(PREFIX + "max-entries", 10);
+	}
+
+	@After
+	public void disableCache() {
+		sServer.response(Endpoint.AUTOCOMPLETE, null, null);
+		Configuration config = Sprockets.getConfig();
+		config.setProperty(PREFIX + "max-entries", mEntries);
+		config.setProperty(PREFIX + "ttl", mTtl);
+		config.setProperty(PREFIX + "prefix-filter", true);
+	}
+
+	@Test
+	public void testExact() throws IOException {
+		long requests = sServer.getRequestCount(Endpoint.AUTOCOMPLETE);
+		Response<List<Prediction>> resp = Places.autocomplete(new Params().query("Pizza"));
+		Response<List<Prediction>> cached = Places.autocomplete(new Params().query("  pizza "));
+		assertEquals(requests + 1, sServer.getRequestCount(Endpoint.AUTOCOMPLETE));
+		assertEquals(resp.getResult(), cached.getResult());
+		assertEquals(3, Places.autocomplete(new Params().query("PIZZA").maxResults(3))
+				.getResult().size());
+		assertEquals(requests + 1, sServer.getRequestCount(Endpoint.AUTOCOMPLETE));
+		Places.autocomplete(new Params().query("pizza").language("de"));
+		assertEquals(requests + 2, sServer.getRequestCount(Endpoint.AUTOCOMPLETE));
+	}
+
+	@Test
+	public void testPrefix() throws IOException {
+		sServer.response(Endpoint.AUTOCOMPLETE, PIZ);
+		long requests = sServer.getRequestCount(Endpoint.AUTOCOMPLETE);
+		long prefixHits = AutocompleteCache.getPrefixHits();
+		assertEquals(3, Places.autocomplete(new Params().query("piz")).getResult().size());
+		Response<List<Prediction>> resp = Places.autocomplete(new Params().query("Pizza M"));
+		assertEquals(requests + 1, sServer.getRequestCount(Endpoint.AUTOCOMPLETE));
+		assertEquals(prefixHits + 1, AutocompleteCache.getPrefixHits());
+		assertEquals(OK, resp.getStatus());
+		assertEquals(1, resp.getResult().size());
+		Prediction prediction = resp.getResult().get(0);
+		assertEquals("Pizza Hut, Main Street", prediction.getName());
+		List<Substring> matches = prediction.getMatchedSubstrings();
+		assertEquals(2, matches.size());
+		assertEquals(0, matches.get(0).getOffset());
+		assertEquals(5, matches.get(0).getLength());
+		assertEquals(11, matches.get(1).getOffset());
+		assertEquals(1, matches.get(1).getLength());
+
+		/* words must start a word in the description */
+		assertEquals(3, Places.autocomplete(new Params().query("pizz")).getResult().size());
+		assertEquals(1, Places.autocomplete(new Params().query("pizze")).getResult().size());
+		assertEquals(Places.Response.Status.ZERO_RESULTS, Places.autocomplete(
+				new Params().query("pizza ut")).getStatus());
+		assertEquals(requests + 1, sServer.getRequestCount(Endpoint.AUTOCOMPLETE));
+
+		Sprockets.getConfig().setProperty(PREFIX + "prefix-filter", false);
+		Places.autocomplete(new Params().query("piz"));
+		Places.autocomplete(new Params().query("pizza m"));
+		assertEquals(requests + 3, sServer.getRequestCount(Endpoint.AUTOCOMPLETE));
+	}
+
+	@Test
+	public void testPrefixFields() throws IOException {
+		sServer.response(Endpoint.AUTOCOMPLETE, PIZ);
+		long requests = sServer.getRequestCount(Endpoint.AUTOCOMPLETE);
+		Places.autocomplete(new Params().query("piz"), Field.NAME);
+		Places.autocomplete(new Params().query("pizza"), Field.NAME); // has the fields
+		assertEquals(requests + 1, sServer.getRequestCount(Endpoint.AUTOCOMPLETE));
+		Response<List<Prediction>> resp = Places.autocomplete(new Params().query("pizzer"));
+		assertEquals(requests + 2, sServer.getRequestCount(Endpoint.AUTOCOMPLETE)); // all fields
+		assertNotNull(resp.getResult().get(0).getMatchedSubstrings());
+	}
+
+	@Test
+	public void testIncomplete() throws IOException {
+		long requests = sServer.getRequestCount(Endpoint.AUTOCOMPLETE);
+		Places.autocomplete(new Params().query("bur")); // the fake server returns 5 predictions
+		Places.autocomplete(new Params().query("burger"));
+		assertEquals(requests + 2, sServer.getRequestCount(Endpoint.AUTOCOMPLETE));
+	}
+
+	@Test
+	public void testTtl() throws IOException, InterruptedException {
+		Sprockets.getConfig().setProperty(PREFIX + "ttl", 1);
+		sServer.response(Endpoint.AUTOCOMPLETE, PIZ);
+		long requests = sServer.getRequestCount(Endpoint.AUTOCOMPLETE);
+		Places.autocomplete(new Params().query("piz"));
+		Places.autocomplete(new Params().query("piz"));
+		assertEquals(requests + 1, sServer.getRequestCount(Endpoint.AUTOCOMPLETE));
+		Thread.sleep(1100L);
+		Places.autocomplete(new Params().query("pizza")); // expired prefix isn't used
+		Places.autocomplete(new Params().query("piz"));
+		assertEquals(requests + 3, sServer.getRequestCount(Endpoint.AUTOCOMPLETE));
+	}
+
+	@Test
+	public void testNodes() throws IOException {
+		Sprockets.getConfig().setProperty(PREFIX + "max-entries", 1);
+		assertEquals(0, AutocompleteCache.getNodeCount());
+		Places.autocomplete(new Params().query("abc"));
+		int nodes = AutocompleteCache.getNodeCount();
+		Places.autocomplete(new Params().query("xyz")); // evicts abc
+		assertEquals(1, AutocompleteCache.size());
+		assertEquals(nodes, AutocompleteCache.getNodeCount());
+		AutocompleteCache.clear();
+		assertEquals(0, AutocompleteCache.getNodeCount());
+	}
+}
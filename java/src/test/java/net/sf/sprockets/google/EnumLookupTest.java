@@ -0,0 +1,114 @@
+/*
+ * Copyright 2013 pushbit <pushbit@gmail.com>
+ *
+ * This file is part of Sprockets.
+ *
+ * Sprockets is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Sprockets is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Sprockets.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.sf.sprockets.google;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Gets enum constants from {@link EnumLookup}s.
+ */
+public class EnumLookupTest {
+	private enum Color {
+		RED, GREEN, BLUE, UNKNOWN
+	}
+
+	/** "Aa" and "BB" have the same hash code, so they always collide in a table. */
+	private enum Colliding {
+		Aa, BB
+	}
+
+	@Test
+	public void testGet() {
+		EnumLookup<Color> lookup = new EnumLookup<Color>(Color.class, Color.UNKNOWN, null, null);
+		for (Color color : Color.values()) {
+			assertEquals(color, lookup.get(color.name()));
+			assertEquals(color, get(lookup, color.name()));
+		}
+		assertEquals(Color.UNKNOWN, lookup.get("PURPLE"));
+		assertEquals(Color.UNKNOWN, lookup.get((String) null));
+		assertEquals(Color.UNKNOWN, get(lookup, "PURPLE"));
+		assertEquals(Color.UNKNOWN, get(lookup, "R\u00C9D")); // not ASCII
+		assertEquals(Color.UNKNOWN, get(lookup, "RE"));
+	}
+
+	@Test
+	public void testCollisions() {
+		EnumLookup<Colliding> lookup = new EnumLookup<Colliding>(Colliding.class, null, null, null);
+		assertEquals(Colliding.Aa, lookup.get("Aa"));
+		assertEquals(Colliding.BB, lookup.get("BB"));
+		assertEquals(Colliding.BB, get(lookup, "BB"));
+		assertNull(lookup.get("CC"));
+		assertNull(get(lookup, "Ab"));
+	}
+
+	@Test
+	public void testLogging() {
+		Logger log = Logger.getAnonymousLogger();
+		log.setUseParentHandlers(false);
+		final List<Object> names = new ArrayList<Object>();
+		log.addHandler(new Handler() {
+			@Override
+			public void publish(LogRecord record) {
+				names.add(record.getParameters()[0]);
+			}
+
+			@Override
+			public void flush() {
+			}
+
+			@Override
+			public void close() {
+			}
+		});
+		EnumLookup<Color> lookup = new EnumLookup<Color>(Color.class, Color.UNKNOWN, log,
+				"Unknown color: {0}");
+		for (int i = 0; i < 3; i++) {
+			lookup.get("PURPLE");
+			get(lookup, "PURPLE");
+			get(lookup, "ORANGE");
+			get(lookup, "RED");
+		}
+		assertEquals(2, names.size());
+		assertEquals("PURPLE", names.get(0));
+		assertEquals("ORANGE", names.get(1));
+
+		for (int i = 0; i < 1000; i++) {
+			get(lookup, "COLOR" + i);
+		}
+		assertEquals(256, names.size()); // limited
+	}
+
+	/**
+	 * Get the constant with the name from its bytes in the middle of an array.
+	 */
+	private static <E extends Enum<E>> E get(EnumLookup<E> lookup, String name) {
+		byte[] bytes = ("\"" + name + "\"").getBytes(Charsets.UTF_8);
+		return lookup.get(bytes, 1, bytes.length - 2);
+	}
+}
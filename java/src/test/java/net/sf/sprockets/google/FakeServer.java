@@ -0,0 +1,924 @@
+/*
+ * Copyright 2013 pushbit <pushbit@gmail.com>
+ *
+ * This file is part of Sprockets.
+ *
+ * Sprockets is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Sprockets is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Sprockets.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.sf.sprockets.google;
+
+import static java.net.HttpURLConnection.HTTP_FORBIDDEN;
+import static java.net.HttpURLConnection.HTTP_INTERNAL_ERROR;
+import static java.net.HttpURLConnection.HTTP_NOT_FOUND;
+import static java.net.HttpURLConnection.HTTP_NOT_MODIFIED;
+import static java.net.HttpURLConnection.HTTP_OK;
+import static java.net.HttpURLConnection.HTTP_UNAVAILABLE;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.zip.GZIPOutputStream;
+
+import net.sf.sprockets.Sprockets;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Objects;
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.stream.JsonWriter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Stand-in for the Google API services that runs in the same process, for testing without a
+ * network connection and without using any API quota. Each {@link Endpoint} returns a synthetic
+ * response that is derived from the request params, or a recorded response that you provide. The
+ * server can also be slowed down, made to fail, and limited in the number of requests that it
+ * accepts per second.
+ * <p>
+ * Point the library at the server by changing the {@code google.base-url} setting, which
+ * {@link #install()} does for you. For example:
+ * </p>
+ *
+ * <pre>{@code
+ * FakeServer server = new FakeServer().latency(20, 80, MILLISECONDS).overQueryLimitRate(0.05)
+ *         .start().install();
+ * ...
+ * server.stop();
+ * }</pre>
+ * <p>
+ * The server is part of the test sources and isn't included in the library jar.
+ * </p>
+ */
+public class FakeServer {
+	/**
+	 * Google API services that the server can stand in for.
+	 */
+	public enum Endpoint {
+		NEARBY_SEARCH("place/nearbysearch/json"), TEXT_SEARCH("place/textsearch/json"), RADAR_SEARCH(
+				"place/radarsearch/json"), DETAILS("place/details/json"), AUTOCOMPLETE(
+				"place/autocomplete/json"), QUERY_AUTOCOMPLETE("place/queryautocomplete/json"), PHOTO(
+				"place/photo"), GEOCODE("geocode/json"), DISTANCE_MATRIX("distancematrix/json"), STREET_VIEW(
+				"streetview");
+
+		/** After the base path. */
+		private final String mPath;
+
+		Endpoint(String path) {
+			mPath = path;
+		}
+
+		/**
+		 * True if the endpoint returns an image instead of JSON.
+		 */
+		private boolean isImage() {
+			return this == PHOTO || this == STREET_VIEW;
+		}
+
+		/**
+		 * Get the endpoint with the path or null if there isn't one.
+		 */
+		private static Endpoint get(String path) {
+			for (Endpoint endpoint : values()) {
+				if (endpoint.mPath.equals(path)) {
+					return endpoint;
+				}
+			}
+			return null;
+		}
+	}
+
+	/** Path that the endpoint paths are appended to. */
+	private static final String BASE_PATH = "/maps/api/";
+	/** Number of places in a synthetic search response page. */
+	private static final int PAGE_SIZE = 20;
+	/** Number of pages in a synthetic search response. */
+	private static final int PAGES = 3;
+
+	private final int mPort;
+	private HttpServer mServer;
+	private ExecutorService mExecutor;
+	private final Random mRandom = new Random();
+	private volatile long mMinLatency;
+	private volatile long mMaxLatency;
+	private volatile double mOverQueryLimitRate;
+	private volatile double mServerErrorRate;
+	private volatile int mMaxPerSecond;
+	private volatile long mTokenDelay;
+	private volatile double mGrid;
+	private long mSecond;
+	private int mSecondRequests;
+	private final Map<Endpoint, Recorded> mRecorded = new EnumMap<Endpoint, Recorded>(
+			Endpoint.class);
+	private final AtomicLongArray mRequests = new AtomicLongArray(Endpoint.values().length);
+
+	/**
+	 * Server that will listen on any free port.
+	 */
+	public FakeServer() {
+		this(0);
+	}
+
+	/**
+	 * Server that will listen on the port.
+	 */
+	public FakeServer(int port) {
+		mPort = port;
+	}
+
+	/**
+	 * Wait between the minimum and maximum time before responding to each request.
+	 */
+	public FakeServer latency(long min, long max, TimeUnit unit) {
+		mMinLatency = unit.toMillis(min);
+		mMaxLatency = Math.max(mMinLatency, unit.toMillis(max));
+		return this;
+	}
+
+	/**
+	 * Respond to this fraction (0.0 - 1.0) of requests with the OVER_QUERY_LIMIT status, or HTTP 403
+	 * for images.
+	 */
+	public FakeServer overQueryLimitRate(double rate) {
+		mOverQueryLimitRate = rate;
+		return this;
+	}
+
+	/**
+	 * Respond to this fraction (0.0 - 1.0) of requests with HTTP 500 or 503.
+	 */
+	public FakeServer serverErrorRate(double rate) {
+		mServerErrorRate = rate;
+		return this;
+	}
+
+	/**
+	 * Respond to requests after the first max in each second with the OVER_QUERY_LIMIT status, or
+	 * HTTP 403 for images. 0 for no limit.
+	 */
+	public FakeServer maxRequestsPerSecond(int max) {
+		mMaxPerSecond = max;
+		return this;
+	}
+
+	/**
+	 * Respond with the INVALID_REQUEST status when a next page token is used before this much time
+	 * has passed since it was issued, like the Places API does.
+	 */
+	public FakeServer pageTokenDelay(long delay, TimeUnit unit) {
+		mTokenDelay = unit.toMillis(delay);
+		return this;
+	}
+
+	/**
+	 * Return nearby search results from a fixed grid of places, with this many degrees between
+	 * them, instead of the same places around every location. Only the places within the radius of
+	 * the location are returned, nearest first, up to the 60 place limit of the Places API. 0 to
+	 * return the usual places.
+	 */
+	public FakeServer placeGrid(double spacing) {
+		mGrid = Math.max(0.0, spacing);
+		return this;
+	}
+
+	/**
+	 * Always return the recorded JSON from the endpoint instead of a synthetic response.
+	 */
+	public FakeServer response(Endpoint endpoint, String json) {
+		return response(endpoint, json.getBytes(Charsets.UTF_8), "application/json; charset=UTF-8");
+	}
+
+	/**
+	 * Always return the recorded body from the endpoint instead of a synthetic response.
+	 *
+	 * @param body
+	 *            null to return synthetic responses again
+	 */
+	public FakeServer response(Endpoint endpoint, byte[] body, String contentType) {
+		synchronized (mRecorded) {
+			if (body != null) {
+				mRecorded.put(endpoint, new Recorded(body, contentType));
+			} else {
+				mRecorded.remove(endpoint);
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Start listening for requests.
+	 *
+	 * @throws IOException
+	 *             if the port is not available
+	 */
+	public synchronized FakeServer start() throws IOException {
+		if (mServer == null) {
+			mServer = HttpServer.create(new InetSocketAddress("localhost", mPort), 0);
+			mServer.createContext(BASE_PATH, new Handler());
+			mExecutor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+					.setNameFormat("fake-server-%d").setDaemon(true).build());
+			mServer.setExecutor(mExecutor);
+			mServer.start();
+		}
+		return this;
+	}
+
+	/**
+	 * Stop listening for requests.
+	 */
+	public synchronized void stop() {
+		if (mServer != null) {
+			mServer.stop(0);
+			mExecutor.shutdownNow();
+			mServer = null;
+			mExecutor = null;
+		}
+	}
+
+	/**
+	 * Get the value for the {@code google.base-url} setting that sends requests to this server.
+	 *
+	 * @throws IllegalStateException
+	 *             if the server hasn't been started
+	 */
+	public synchronized String getBaseUrl() {
+		if (mServer == null) {
+			throw new IllegalStateException("server not started");
+		}
+		return "http://localhost:" + mServer.getAddress().getPort() + BASE_PATH;
+	}
+
+	/**
+	 * Change the {@code google.base-url} setting so that all requests are sent to this server.
+	 *
+	 * @throws IllegalStateException
+	 *             if the server hasn't been started
+	 */
+	public FakeServer install() {
+		Sprockets.getConfig().setProperty("google.base-url", getBaseUrl());
+		return this;
+	}
+
+	/**
+	 * Number of requests received by the endpoint.
+	 */
+	public long getRequestCount(Endpoint endpoint) {
+		return mRequests.get(endpoint.ordinal());
+	}
+
+	/**
+	 * Number of requests received by all endpoints.
+	 */
+	public long getRequestCount() {
+		long count = 0L;
+		for (int i = 0; i < mRequests.length(); i++) {
+			count += mRequests.get(i);
+		}
+		return count;
+	}
+
+	/**
+	 * True if the request is over the per-second limit.
+	 */
+	private synchronized boolean isOverLimit() {
+		if (mMaxPerSecond <= 0) {
+			return false;
+		}
+		long second = System.currentTimeMillis() / 1000;
+		if (second != mSecond) {
+			mSecond = second;
+			mSecondRequests = 0;
+		}
+		return ++mSecondRequests > mMaxPerSecond;
+	}
+
+	/**
+	 * True if a random request should be affected by the rate.
+	 */
+	private boolean chance(double rate) {
+		return rate > 0.0 && mRandom.nextDouble() < rate;
+	}
+
+	@Override
+	public String toString() {
+		return Objects.toStringHelper(this).add("port", mPort)
+				.add("latency", mMaxLatency > 0 ? mMinLatency + "-" + mMaxLatency + "ms" : null)
+				.add("overQueryLimitRate", mOverQueryLimitRate > 0 ? mOverQueryLimitRate : null)
+				.add("serverErrorRate", mServerErrorRate > 0 ? mServerErrorRate : null)
+				.add("maxRequestsPerSecond", mMaxPerSecond > 0 ? mMaxPerSecond : null)
+				.add("placeGrid", mGrid > 0.0 ? mGrid : null)
+				.add("requests", getRequestCount()).omitNullValues().toString();
+	}
+
+	/**
+	 * Recorded response body.
+	 */
+	private static class Recorded {
+		private final byte[] mBody;
+		private final String mType;
+
+		private Recorded(byte[] body, String type) {
+			mBody = body;
+			mType = type;
+		}
+	}
+
+	/**
+	 * Sends responses for all endpoints.
+	 */
+	private class Handler implements HttpHandler {
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			try {
+				Endpoint endpoint = Endpoint.get(exchange.getRequestURI().getPath()
+						.substring(BASE_PATH.length()));
+				if (endpoint == null) {
+					send(exchange, HTTP_NOT_FOUND, "text/plain", bytes("Not Found"));
+					return;
+				}
+				mRequests.incrementAndGet(endpoint.ordinal());
+				long latency = mMinLatency;
+				if (mMaxLatency > mMinLatency) {
+					latency += (long) (mRandom.nextDouble() * (mMaxLatency - mMinLatency));
+				}
+				if (latency > 0) {
+					MILLISECONDS.sleep(latency);
+				}
+				if (chance(mServerErrorRate)) {
+					send(exchange, mRandom.nextBoolean() ? HTTP_INTERNAL_ERROR : HTTP_UNAVAILABLE,
+							"text/plain", bytes("Server Error"));
+				} else if (isOverLimit() || chance(mOverQueryLimitRate)) {
+					if (endpoint.isImage()) {
+						send(exchange, HTTP_FORBIDDEN, "text/plain", bytes("Quota exceeded"));
+					} else {
+						sendJson(exchange, status("OVER_QUERY_LIMIT"));
+					}
+				} else {
+					respond(exchange, endpoint, params(exchange.getRequestURI().getRawQuery()));
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				exchange.close();
+			}
+		}
+
+		/**
+		 * Send the recorded or synthetic response for the endpoint.
+		 */
+		private void respond(HttpExchange exchange, Endpoint endpoint, Map<String, String> params)
+				throws IOException {
+			Recorded recorded;
+			synchronized (mRecorded) {
+				recorded = mRecorded.get(endpoint);
+			}
+			if (recorded != null) {
+				send(exchange, HTTP_OK, recorded.mType, recorded.mBody);
+				return;
+			}
+			switch (endpoint) {
+			case NEARBY_SEARCH:
+				double grid = mGrid;
+				sendJson(exchange, grid > 0.0 ? grid(params, grid, mTokenDelay)
+						: search(params, false, mTokenDelay));
+				break;
+			case TEXT_SEARCH:
+				sendJson(exchange, search(params, false, mTokenDelay));
+				break;
+			case RADAR_SEARCH:
+				sendJson(exchange, search(params, true, 0L));
+				break;
+			case DETAILS:
+				sendJson(exchange, details(params));
+				break;
+			case AUTOCOMPLETE:
+			case QUERY_AUTOCOMPLETE:
+				sendJson(exchange, predictions(params));
+				break;
+			case GEOCODE:
+				sendJson(exchange, geocode(params));
+				break;
+			case DISTANCE_MATRIX:
+				sendJson(exchange, distances(params));
+				break;
+			case PHOTO:
+			case STREET_VIEW:
+				image(exchange, params);
+				break;
+			}
+		}
+
+		/**
+		 * Send a synthetic image that has an ETag.
+		 */
+		private void image(HttpExchange exchange, Map<String, String> params) throws IOException {
+			String id = params.toString();
+			String etag = '"' + Integer.toHexString(id.hashCode()) + '"';
+			exchange.getResponseHeaders().set("ETag", etag);
+			if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+				exchange.sendResponseHeaders(HTTP_NOT_MODIFIED, -1);
+				return;
+			}
+			byte[] image = new byte[2048];
+			new Random(id.hashCode()).nextBytes(image);
+			image[0] = (byte) 0xFF; // JPEG start of image
+			image[1] = (byte) 0xD8;
+			send(exchange, HTTP_OK, "image/jpeg", image);
+		}
+
+		/**
+		 * Send the JSON, compressed if the client accepts gzip.
+		 */
+		private void sendJson(HttpExchange exchange, byte[] json) throws IOException {
+			String accept = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+			if (accept != null && accept.contains("gzip")) {
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream(json.length / 4);
+				GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+				gzip.write(json);
+				gzip.close();
+				exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+				json = bytes.toByteArray();
+			}
+			send(exchange, HTTP_OK, "application/json; charset=UTF-8", json);
+		}
+
+		private void send(HttpExchange exchange, int code, String type, byte[] body)
+				throws IOException {
+			exchange.getResponseHeaders().set("Content-Type", type);
+			exchange.sendResponseHeaders(code, body.length);
+			OutputStream out = exchange.getResponseBody();
+			out.write(body);
+			out.close();
+		}
+	}
+
+	/**
+	 * Get the decoded query params.
+	 */
+	private static Map<String, String> params(String query) {
+		Map<String, String> params = new HashMap<String, String>();
+		if (query != null) {
+			try {
+				for (String param : Splitter.on('&').omitEmptyStrings().split(query)) {
+					int i = param.indexOf('=');
+					if (i > 0) {
+						params.put(param.substring(0, i),
+								URLDecoder.decode(param.substring(i + 1), "UTF-8"));
+					}
+				}
+			} catch (UnsupportedEncodingException e) {
+				throw new RuntimeException("UTF-8 encoding isn't supported?!", e);
+			}
+		}
+		return params;
+	}
+
+	private static byte[] bytes(String s) {
+		return s.getBytes(Charsets.UTF_8);
+	}
+
+	/**
+	 * Writes JSON to a byte array.
+	 */
+	private static class Json extends JsonWriter {
+		private final ByteArrayOutputStream mOut;
+
+		private Json() {
+			this(new ByteArrayOutputStream(4096));
+		}
+
+		private Json(ByteArrayOutputStream out) {
+			super(new OutputStreamWriter(out, Charsets.UTF_8));
+			mOut = out;
+		}
+
+		private byte[] bytes() throws IOException {
+			close();
+			return mOut.toByteArray();
+		}
+	}
+
+	/**
+	 * Write a {"lat": lat, "lng": lng} object.
+	 */
+	private static void latLng(Json out, String name, double lat, double lng) throws IOException {
+		out.name(name).beginObject().name("lat").value(lat).name("lng").value(lng).endObject();
+	}
+
+	/**
+	 * JSON response with only a status.
+	 */
+	private static byte[] status(String status) throws IOException {
+		Json out = new Json();
+		out.beginObject().name("status").value(status).endObject();
+		return out.bytes();
+	}
+
+	/**
+	 * Get the latitude and longitude of the location param. Names are given a made up location
+	 * that is always the same for the name.
+	 *
+	 * @return 0,0 if the location is null
+	 */
+	private static double[] location(String location) {
+		double[] latLng = new double[2];
+		if (location != null) {
+			int i = location.indexOf(',');
+			try {
+				if (i < 0) {
+					throw new NumberFormatException(location);
+				}
+				latLng[0] = Double.parseDouble(location.substring(0, i).trim());
+				latLng[1] = Double.parseDouble(location.substring(i + 1).trim());
+			} catch (NumberFormatException e) {
+				latLng[0] = (location.hashCode() % 9000) / 100.0;
+				latLng[1] = (location.hashCode() / 9000 % 18000) / 100.0;
+			}
+		}
+		return latLng;
+	}
+
+	/**
+	 * Pages of places around the location. Radar searches return all places with fewer fields.
+	 *
+	 * @param tokenDelay
+	 *            milliseconds before a next page token can be used
+	 */
+	private static byte[] search(Map<String, String> params, boolean radar, long tokenDelay)
+			throws IOException {
+		String token = params.get("pagetoken");
+		int page = 0;
+		if (token != null && token.startsWith("page")) {
+			int i = token.indexOf('-');
+			if (System.currentTimeMillis() - Long.parseLong(token.substring(i + 1)) < tokenDelay) {
+				return status("INVALID_REQUEST");
+			}
+			page = Integer.parseInt(token.substring(4, i));
+		}
+		double[] center = location(params.get("location"));
+		int count = radar ? PAGE_SIZE * 10 : PAGE_SIZE;
+		Json out = new Json();
+		out.beginObject().name("html_attributions").beginArray().endArray();
+		if (!radar && page + 1 < PAGES) {
+			out.name("next_page_token").value(
+					"page" + (page + 1) + '-' + System.currentTimeMillis());
+		}
+		out.name("results").beginArray();
+		for (int i = 0; i < count; i++) {
+			int n = page * count + i;
+			String id = Integer.toHexString(n + 0x10000);
+			out.beginObject().name("geometry").beginObject();
+			latLng(out, "location", center[0] + (n % 10) * 0.001, center[1] + (n / 10) * 0.001);
+			out.endObject().name("id").value(id).name("reference").value("ref" + id);
+			if (!radar) {
+				out.name("icon").value("http://maps.gstatic.com/mapfiles/place_api/icons/generic.png");
+				out.name("name").value("Place " + n).name("vicinity").value(n + " Main Street");
+				out.name("rating").value(1.0 + n % 40 / 10.0).name("price_level").value(n % 5);
+				out.name("opening_hours").beginObject().name("open_now").value(n % 3 != 0)
+						.endObject();
+				out.name("types").beginArray().value("food").value("establishment").endArray();
+				out.name("photos").beginArray().beginObject().name("photo_reference")
+						.value("photo" + id).name("width").value(1600).name("height").value(1200)
+						.name("html_attributions").beginArray().endArray().endObject().endArray();
+			}
+			out.endObject();
+		}
+		out.endArray().name("status").value("OK").endObject();
+		return out.bytes();
+	}
+
+	/**
+	 * Pages of the grid places that are within the radius of the location. The location and radius
+	 * are carried in the next page tokens.
+	 *
+	 * @param spacing
+	 *            degrees between the places
+	 * @param tokenDelay
+	 *            milliseconds before a next page token can be used
+	 */
+	private static byte[] grid(Map<String, String> params, double spacing, long tokenDelay)
+			throws IOException {
+		String token = params.get("pagetoken");
+		String location = params.get("location");
+		String radius = params.get("radius");
+		if (location != null && !location.matches("-?\\d+(\\.\\d+)?,-?\\d+(\\.\\d+)?")) {
+			return status("INVALID_REQUEST"); // not decimal degrees, e.g. an exponent
+		}
+		int page = 0;
+		if (token != null && token.startsWith("page")) {
+			int i = token.indexOf('-');
+			int j = token.indexOf('~');
+			if (j < 0) {
+				return status("INVALID_REQUEST");
+			}
+			long issued = Long.parseLong(token.substring(i + 1, j));
+			if (System.currentTimeMillis() - issued < tokenDelay) {
+				return status("INVALID_REQUEST");
+			}
+			page = Integer.parseInt(token.substring(4, i));
+			int k = token.lastIndexOf(',');
+			location = token.substring(j + 1, k);
+			radius = token.substring(k + 1);
+		}
+		final double[] center = location(location);
+		double meters = radius != null ? Double.parseDouble(radius) : 0.0;
+		double dLat = meters / 111195.0;
+		double dLng = dLat / Math.max(0.01, Math.cos(Math.toRadians(center[0])));
+		List<double[]> places = new ArrayList<double[]>();
+		long minLat = (long) Math.ceil((center[0] - dLat) / spacing);
+		long maxLat = (long) Math.floor((center[0] + dLat) / spacing);
+		long minLng = (long) Math.ceil((center[1] - dLng) / spacing);
+		long maxLng = (long) Math.floor((center[1] + dLng) / spacing);
+		long columns = Math.round(360.0 / spacing); // around the world
+		for (long lat = minLat; lat <= maxLat; lat++) {
+			for (long lng = minLng; lng <= maxLng; lng++) {
+				/* columns past the antimeridian are the ones on the other side */
+				long column = (lng + columns / 2) % columns;
+				if (column < 0) {
+					column += columns;
+				}
+				column -= columns / 2;
+				double[] place = { lat * spacing, lng * spacing, lat, column };
+				if (meters(center, place) <= meters) {
+					places.add(place);
+				}
+			}
+		}
+		Collections.sort(places, new Comparator<double[]>() {
+			@Override
+			public int compare(double[] lhs, double[] rhs) {
+				return Double.compare(meters(center, lhs), meters(center, rhs));
+			}
+		});
+		int end = Math.min(Math.min(places.size(), PAGE_SIZE * PAGES), (page + 1) * PAGE_SIZE);
+		Json out = new Json();
+		out.beginObject().name("html_attributions").beginArray().endArray();
+		if (end < Math.min(places.size(), PAGE_SIZE * PAGES)) {
+			out.name("next_page_token").value("page" + (page + 1) + '-' + System.currentTimeMillis()
+					+ '~' + center[0] + ',' + center[1] + ',' + meters);
+		}
+		out.name("results").beginArray();
+		for (int i = page * PAGE_SIZE; i < end; i++) {
+			double[] place = places.get(i);
+			String id = "grid" + (long) place[2] + '_' + (long) place[3];
+			out.beginObject().name("geometry").beginObject();
+			latLng(out, "location", place[0], place[3] * spacing);
+			out.endObject().name("id").value(id).name("reference").value("ref" + id);
+			out.name("name").value("Place " + id).name("vicinity").value(id + " Grid Street");
+			out.name("types").beginArray().value("establishment").endArray();
+			out.endObject();
+		}
+		out.endArray().name("status").value(end > 0 ? "OK" : "ZERO_RESULTS").endObject();
+		return out.bytes();
+	}
+
+	/**
+	 * Full details for the referenced place.
+	 */
+	private static byte[] details(Map<String, String> params) throws IOException {
+		String ref = params.get("reference");
+		if (Strings.isNullOrEmpty(ref)) {
+			return status("INVALID_REQUEST");
+		}
+		Json out = new Json();
+		out.beginObject().name("html_attributions").beginArray().endArray();
+		out.name("result").beginObject();
+		out.name("address_components").beginArray();
+		component(out, "1", "street_number");
+		component(out, "Main Street", "route");
+		component(out, "Springfield", "locality");
+		component(out, "United States", "country");
+		out.endArray();
+		out.name("formatted_address").value("1 Main Street, Springfield, United States");
+		out.name("formatted_phone_number").value("(555) 555-0100");
+		out.name("international_phone_number").value("+1 555-555-0100");
+		out.name("geometry").beginObject();
+		latLng(out, "location", 0.0, 0.0);
+		out.endObject();
+		out.name("id").value(Integer.toHexString(ref.hashCode())).name("reference").value(ref);
+		out.name("name").value("Place " + ref).name("rating").value(4.2);
+		out.name("types").beginArray().value("food").value("establishment").endArray();
+		out.name("url").value("https://plus.google.com/" + Math.abs(ref.hashCode()));
+		out.name("utc_offset").value(-300).name("vicinity").value("1 Main Street, Springfield");
+		out.name("website").value("http://www.example.com/");
+		out.name("opening_hours").beginObject().name("open_now").value(true).name("periods")
+				.beginArray();
+		for (int day = 0; day < 7; day++) {
+			out.beginObject().name("open").beginObject().name("day").value(day).name("time")
+					.value("0900").endObject().name("close").beginObject().name("day").value(day)
+					.name("time").value("1700").endObject().endObject();
+		}
+		out.endArray().endObject();
+		out.name("reviews").beginArray();
+		for (int i = 0; i < 3; i++) {
+			out.beginObject().name("aspects").beginArray().beginObject().name("rating").value(i)
+					.name("type").value("overall").endObject().endArray();
+			out.name("author_name").value("Reviewer " + i).name("text").value("Review " + i);
+			out.name("time").value(1380000000L + i * 86400).endObject();
+		}
+		out.endArray().name("photos").beginArray();
+		for (int i = 0; i < 3; i++) {
+			out.beginObject().name("photo_reference").value("photo" + ref + i).name("width")
+					.value(1600).name("height").value(1200).name("html_attributions")
+					.beginArray().endArray().endObject();
+		}
+		out.endArray().endObject().name("status").value("OK").endObject();
+		return out.bytes();
+	}
+
+	private static void component(Json out, String name, String type) throws IOException {
+		out.beginObject().name("long_name").value(name).name("short_name").value(name)
+				.name("types").beginArray().value(type).endArray().endObject();
+	}
+
+	/**
+	 * Predictions that start with the input.
+	 */
+	private static byte[] predictions(Map<String, String> params) throws IOException {
+		String input = Strings.nullToEmpty(params.get("input"));
+		Json out = new Json();
+		out.beginObject().name("predictions").beginArray();
+		for (int i = 0; i < 5; i++) {
+			String name = input + " Place " + i;
+			String desc = name + ", Springfield";
+			out.beginObject().name("description").value(desc);
+			out.name("id").value(Integer.toHexString(desc.hashCode()));
+			out.name("matched_substrings").beginArray().beginObject().name("length")
+					.value(input.length()).name("offset").value(0).endObject().endArray();
+			out.name("reference").value("ref" + Integer.toHexString(desc.hashCode()));
+			out.name("terms").beginArray().beginObject().name("offset").value(0).name("value")
+					.value(name).endObject().beginObject().name("offset")
+					.value(name.length() + 2).name("value").value("Springfield").endObject()
+					.endArray();
+			out.name("types").beginArray().value("establishment").endArray().endObject();
+		}
+		out.endArray().name("status").value("OK").endObject();
+		return out.bytes();
+	}
+
+	/**
+	 * One location for the address or coordinates.
+	 */
+	private static byte[] geocode(Map<String, String> params) throws IOException {
+		String address = params.get("address");
+		String latLng = params.get("latlng");
+		if (address == null && latLng == null) {
+			return status("INVALID_REQUEST");
+		}
+		double[] location = location(latLng != null ? latLng : address);
+		Json out = new Json();
+		out.beginObject().name("results").beginArray().beginObject();
+		out.name("address_components").beginArray();
+		component(out, "1", "street_number");
+		component(out, "Main Street", "route");
+		component(out, "Springfield", "locality");
+		component(out, "United States", "country");
+		out.endArray();
+		out.name("formatted_address").value(
+				address != null ? address : "1 Main Street, Springfield, United States");
+		out.name("geometry").beginObject();
+		latLng(out, "location", location[0], location[1]);
+		out.name("location_type").value("ROOFTOP").name("viewport").beginObject();
+		latLng(out, "northeast", location[0] + 0.001, location[1] + 0.001);
+		latLng(out, "southwest", location[0] - 0.001, location[1] - 0.001);
+		out.endObject().endObject();
+		out.name("types").beginArray().value("street_address").endArray();
+		out.endObject().endArray().name("status").value("OK").endObject();
+		return out.bytes();
+	}
+
+	/**
+	 * Straight line distances between the origins and destinations, travelled at 50 km/h.
+	 */
+	private static byte[] distances(Map<String, String> params) throws IOException {
+		String origins = params.get("origins");
+		String destinations = params.get("destinations");
+		if (Strings.isNullOrEmpty(origins) || Strings.isNullOrEmpty(destinations)) {
+			return status("INVALID_REQUEST");
+		}
+		boolean imperial = "imperial".equals(params.get("units"));
+		Splitter pipes = Splitter.on('|');
+		Json out = new Json();
+		out.beginObject().name("destination_addresses").beginArray();
+		for (String dest : pipes.split(destinations)) {
+			out.value("Near " + dest);
+		}
+		out.endArray().name("origin_addresses").beginArray();
+		for (String origin : pipes.split(origins)) {
+			out.value("Near " + origin);
+		}
+		out.endArray().name("rows").beginArray();
+		for (String origin : pipes.split(origins)) {
+			double[] from = location(origin);
+			out.beginObject().name("elements").beginArray();
+			for (String dest : pipes.split(destinations)) {
+				double[] to = location(dest);
+				long meters = Math.round(meters(from, to));
+				long seconds = Math.round(meters / 13.89);
+				out.beginObject();
+				out.name("distance").beginObject().name("text")
+						.value(distanceText(meters, imperial)).name("value").value(meters)
+						.endObject();
+				out.name("duration").beginObject().name("text").value(durationText(seconds))
+						.name("value").value(seconds).endObject();
+				out.name("status").value("OK").endObject();
+			}
+			out.endArray().endObject();
+		}
+		out.endArray().name("status").value("OK").endObject();
+		return out.bytes();
+	}
+
+	/**
+	 * Format the seconds like the DistanceMatrix API, rounded to minutes.
+	 */
+	private static String durationText(long seconds) {
+		long mins = (seconds + 30) / 60;
+		long days = mins / 1440;
+		long hours = mins % 1440 / 60;
+		mins %= 60;
+		StringBuilder s = new StringBuilder(16);
+		if (days > 0) {
+			unit(s, days, "day");
+			if (hours > 0) {
+				unit(s.append(' '), hours, "hour");
+			}
+		} else if (hours > 0) {
+			unit(s, hours, "hour");
+			if (mins > 0) {
+				unit(s.append(' '), mins, "min");
+			}
+		} else {
+			unit(s, Math.max(1, mins), "min");
+		}
+		return s.toString();
+	}
+
+	private static void unit(StringBuilder s, long value, String unit) {
+		s.append(value).append(' ').append(unit);
+		if (value != 1) {
+			s.append('s');
+		}
+	}
+
+	/**
+	 * Format the meters like the DistanceMatrix API.
+	 */
+	private static String distanceText(long meters, boolean imperial) {
+		if (imperial) {
+			double miles = meters / 1609.344;
+			return miles < 0.1 ? Math.round(meters * 3.28084) + " ft" : decimal(miles) + " mi";
+		}
+		return meters < 1000 ? meters + " m" : decimal(meters / 1000.0) + " km";
+	}
+
+	/**
+	 * One decimal place for values under 100, otherwise none.
+	 */
+	private static String decimal(double value) {
+		return value < 100 ? String.valueOf(Math.round(value * 10) / 10.0)
+				: String.valueOf(Math.round(value));
+	}
+
+	/**
+	 * Great-circle distance between the points.
+	 */
+	private static double meters(double[] from, double[] to) {
+		double lat1 = Math.toRadians(from[0]);
+		double lat2 = Math.toRadians(to[0]);
+		double dLat = lat2 - lat1;
+		double dLng = Math.toRadians(to[1] - from[1]);
+		double a = Math.sin(dLat / 2) * Math.sin(dLat / 2) + Math.cos(lat1) * Math.cos(lat2)
+				* Math.sin(dLng / 2) * Math.sin(dLng / 2);
+		return 6371000 * 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+	}
+}
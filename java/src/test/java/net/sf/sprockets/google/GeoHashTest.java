@@ -0,0 +1,53 @@
+/*
+ * Copyright 2013 pushbit <pushbit@gmail.com>
+ *
+ * This file is part of Sprockets.
+ *
+ * Sprockets is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Sprockets is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Sprockets.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.sf.sprockets.google;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Compares {@link GeoHash} with known geohashes.
+ */
+public class GeoHashTest {
+	@Test
+	public void testEncode() {
+		assertEquals("ezs42", GeoHash.encode(42.6, -5.6, 5));
+		assertEquals("u4pruydqqvj", GeoHash.encode(57.64911, 10.40744, 11));
+		assertEquals("s0000", GeoHash.encode(0.0, 0.0, 5));
+		assertEquals("00000", GeoHash.encode(-90.0, -180.0, 5));
+		assertEquals("zzz", GeoHash.encode(90.0, 180.0, 3));
+	}
+
+	@Test
+	public void testPrecision() {
+		assertEquals("e", GeoHash.encode(42.6, -5.6, 0));
+		assertEquals(GeoHash.MAX_PRECISION, GeoHash.encode(42.6, -5.6, 20).length());
+		assertEquals(GeoHash.encode(57.64911, 10.40744, 11), GeoHash.encode(57.64911, 10.40744,
+				GeoHash.MAX_PRECISION).substring(0, 11));
+	}
+
+	@Test
+	public void testGrid() {
+		/* neighbours in the same cell share a geohash, across a cell edge they don't */
+		assertEquals(GeoHash.encode(42.60001, -5.60001, 8), GeoHash.encode(42.60002, -5.60002, 8));
+		assertEquals("s", GeoHash.encode(0.0, 0.0, 1));
+		assertEquals("7", GeoHash.encode(-0.000001, -0.000001, 1));
+		assertEquals(0x0dL, GeoHash.bits(42.6, -5.6, 5)); // 'e'
+	}
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2013 pushbit <pushbit@gmail.com>
+ *
+ * This file is part of Sprockets.
+ *
+ * Sprockets is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Sprockets is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Sprockets.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.sf.sprockets.google;
+
+import static net.sf.sprockets.google.GreatCircle.EARTH_RADIUS;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Measures {@link GreatCircle} distances that can be calculated by hand.
+ */
+public class GreatCircleTest {
+	private static final double DEGREE = Math.PI * EARTH_RADIUS / 180.0;
+
+	@Test
+	public void testDistance() {
+		assertEquals(0.0, GreatCircle.distance(48.2, 16.37, 48.2, 16.37), 0.0);
+		assertEquals(DEGREE, GreatCircle.distance(10.0, 20.0, 11.0, 20.0), 0.001);
+		assertEquals(DEGREE, GreatCircle.distance(0.0, 0.0, 0.0, -1.0), 0.001);
+		assertEquals(DEGREE, GreatCircle.distance(0.0, 179.5, 0.0, -179.5), 0.001); // antimeridian
+		assertEquals(90.0 * DEGREE, GreatCircle.distance(0.0, 0.0, 90.0, 123.0), 0.001);
+		assertEquals(180.0 * DEGREE, GreatCircle.distance(0.0, 0.0, 0.0, 180.0), 0.001);
+		assertEquals(180.0 * DEGREE, GreatCircle.distance(45.0, 10.0, -45.0, -170.0), 0.001);
+	}
+}
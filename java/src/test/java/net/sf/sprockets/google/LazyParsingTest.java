@@ -0,0 +1,155 @@
+/*
+ * Copyright 2013 pushbit <pushbit@gmail.com>
+ *
+ * This file is part of Sprockets.
+ *
+ * Sprockets is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Sprockets is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Sprockets.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.sf.sprockets.google;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import net.sf.sprockets.Sprockets;
+import net.sf.sprockets.google.Places.Params;
+import net.sf.sprockets.test.FakeServerTest;
+
+import org.apache.commons.configuration.Configuration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * Reads places with the {@code google.places.lazy-parsing} library setting.
+ */
+public class LazyParsingTest extends FakeServerTest {
+	@Before
+	public void enableLazyParsing() {
+		Configuration config = Sprockets.getConfig();
+		config.setProperty("google.places.lazy-parsing", true);
+		config.setProperty("google.byte-parser", true);
+	}
+
+	@After
+	public void disableLazyParsing() {
+		Configuration config = Sprockets.getConfig();
+		config.setProperty("google.places.lazy-parsing", false);
+		config.setProperty("google.byte-parser", false);
+	}
+
+	@Test
+	public void testLazyParsing() throws IOException {
+		Params params = new Params().reference("lazy");
+		Place lazy = Places.details(params).getResult();
+		assertNotNull(lazy.mRawReviews); // not decoded yet
+		assertNull(lazy.mReviews);
+		assertNotNull(lazy.mRawHours);
+		assertNull(lazy.mOpenHours);
+		assertNotNull(lazy.mRawPhotos);
+		assertNull(lazy.mPhotos);
+		assertEquals(Boolean.TRUE, lazy.getOpenNow());
+		assertTrue(lazy.toString().contains("reviews=unread"));
+		assertNotNull(lazy.mRawReviews); // not decoded by toString
+		assertNotNull(lazy.mRawPhotos);
+
+		Sprockets.getConfig().setProperty("google.places.lazy-parsing", false);
+		Place eager = Places.details(params).getResult();
+		assertNull(eager.mRawReviews);
+		assertEquals(3, lazy.getReviews().size());
+		assertNull(lazy.mRawReviews); // decoded when requested
+		assertEquals(eager.getReviews(), lazy.getReviews());
+		assertEquals(eager.getOpeningHours(), lazy.getOpeningHours());
+		assertNull(lazy.mRawHours);
+		assertEquals(eager.getEvents(), lazy.getEvents());
+		assertEquals(eager.getPhotos(), lazy.getPhotos());
+		assertNull(lazy.mRawPhotos);
+		assertEquals(eager.toString(), lazy.toString());
+	}
+
+	@Test
+	public void testMaxResults() throws IOException {
+		Place place = Places.details(new Params().reference("max").maxResults(2)).getResult();
+		assertEquals(2, place.getReviews().size());
+		assertEquals("Reviewer 1", place.getReviews().get(1).getAuthorName());
+		assertEquals(2, place.getPhotos().size());
+		assertEquals(7, place.getOpeningHours().size()); // not limited
+	}
+
+	@Test
+	public void testCharParser() throws IOException {
+		Sprockets.getConfig().setProperty("google.byte-parser", false);
+		Place place = Places.details(new Params().reference("chars")).getResult();
+		assertNull(place.mRawReviews); // only skipped by the byte parser
+		assertEquals(3, place.mReviews.size());
+	}
+
+	@Test
+	public void testRawArray() throws IOException {
+		String longString = Strings.repeat("long \\\"string\\\" ", 1000); // larger than buffer
+		String a = "[ {\"s\":\"x\\\"]y\", \"n\":[1.5e3,-2]} ,true, null,\"" + longString + "\"]";
+		String json = "{\"a\":" + a + ",\"b\":" + a + ",\"c\":[],\"d\":7}";
+		ByteJsonReader in = new ByteJsonReader(new OneByteStream(json));
+		in.beginObject();
+		assertEquals("a", in.nextName());
+		assertEquals(a, string(in.nextRawArray(0)));
+		assertEquals("b", in.nextName());
+		byte[] b = in.nextRawArray(2);
+		assertEquals("[ {\"s\":\"x\\\"]y\", \"n\":[1.5e3,-2]} ,true]", string(b));
+		assertEquals("c", in.nextName());
+		assertEquals("[]", string(in.nextRawArray(0)));
+		assertEquals("d", in.nextName());
+		assertEquals(7, in.nextInt());
+		in.endObject();
+		in.close();
+
+		in = new ByteJsonReader(b); // raw array can be read by a new reader
+		in.beginArray();
+		in.beginObject();
+		assertEquals("s", in.nextName());
+		assertEquals("x\"]y", in.nextString());
+		assertEquals("n", in.nextName());
+		in.skipValue();
+		in.endObject();
+		assertTrue(in.nextBoolean());
+		in.endArray();
+		assertEquals(JsonToken.END_DOCUMENT, in.peek());
+		in.close();
+	}
+
+	private static String string(byte[] json) {
+		return new String(json, Charsets.UTF_8);
+	}
+
+	/**
+	 * Returns one byte for each read, so that the reader has to fill its buffer for every byte.
+	 */
+	private static class OneByteStream extends ByteArrayInputStream {
+		OneByteStream(String s) {
+			super(s.getBytes(Charsets.UTF_8));
+		}
+
+		@Override
+		public synchronized int read(byte[] b, int off, int len) {
+			return super.read(b, off, Math.min(len, 1));
+		}
+	}
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2013 pushbit <pushbit@gmail.com>
+ *
+ * This file is part of Sprockets.
+ *
+ * Sprockets is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Sprockets is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Sprockets.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.sf.sprockets.google;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Reads types into {@link PlaceTypes} lists.
+ */
+public class PlaceTypesTest {
+	@Test
+	public void testOrder() {
+		List<String> types = Arrays.asList("restaurant", "bakery", "custom", "food",
+				"point_of_interest", "restaurant", "establishment", "custom");
+		PlaceTypes list = types(types);
+		assertEquals(types, list); // primary type first and duplicates kept
+		assertEquals("restaurant", list.get(0));
+		assertEquals(types.size(), list.size());
+		assertEquals(types, Arrays.asList(list.toArray()));
+	}
+
+	@Test
+	public void testContains() {
+		PlaceTypes list = types(Arrays.asList("accounting", "transit_station", "custom"));
+		assertTrue(list.contains("accounting")); // first bit
+		assertTrue(list.contains("transit_station")); // last bit
+		assertTrue(list.contains("custom"));
+		assertTrue(list.contains(new String("custom")));
+		assertFalse(list.contains("airport"));
+		assertFalse(list.contains("other"));
+		assertFalse(list.contains(null));
+		assertFalse(list.contains(1));
+	}
+
+	@Test
+	public void testAllTypes() {
+		PlaceTypes list = new PlaceTypes();
+		PlaceTypes.Type[] values = PlaceTypes.Type.values();
+		for (int i = values.length - 1; i >= 0; i--) {
+			list.put(values[i].name());
+		}
+		assertEquals(values.length, list.size());
+		for (int i = 0; i < values.length; i++) {
+			assertEquals(values[values.length - 1 - i].name(), list.get(i));
+			assertTrue(list.contains(values[i].name()));
+		}
+	}
+
+	@Test
+	public void testEmpty() {
+		PlaceTypes list = new PlaceTypes();
+		assertEquals(0, list.size());
+		assertFalse(list.contains("food"));
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testIndex() {
+		types(Arrays.asList("food", "custom")).get(2);
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testUnmodifiable() {
+		types(Arrays.asList("food")).add("bar");
+	}
+
+	private static PlaceTypes types(List<String> types) {
+		PlaceTypes list = new PlaceTypes();
+		for (String type : types) {
+			list.put(type);
+		}
+		return list;
+	}
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2013 pushbit <pushbit@gmail.com>
+ *
+ * This file is part of Sprockets.
+ *
+ * Sprockets is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Sprockets is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Sprockets.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.sf.sprockets.google;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+/**
+ * Interns strings in the {@link StringPool}.
+ */
+public class StringPoolTest {
+	@Test
+	public void testIntern() {
+		String s = new String("pooled");
+		assertSame(s, StringPool.intern(s));
+		assertSame(s, StringPool.intern(new String("pooled")));
+		assertNull(StringPool.intern(null));
+	}
+
+	@Test
+	public void testReplace() {
+		/* "Aa" and "BB" have the same hash code, so they share a slot */
+		String aa = new String("Aa");
+		String bb = new String("BB");
+		assertSame(aa, StringPool.intern(aa));
+		assertSame(bb, StringPool.intern(bb));
+		String aa2 = new String("Aa");
+		assertSame(aa2, StringPool.intern(aa2)); // "BB" replaced the first "Aa"
+		assertNotSame(aa, aa2);
+		assertEquals(aa, StringPool.intern(new String("Aa")));
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2013 pushbit <pushbit@gmail.com>
+ *
+ * This file is part of Sprockets.
+ *
+ * Sprockets is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Sprockets is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Sprockets.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.sf.sprockets.google;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Compares {@link UrlBuilder} output to the JDK's encoding and formatting.
+ */
+public class UrlBuilderTest {
+	@Test
+	public void testEncode() throws UnsupportedEncodingException {
+		String[] strings = { "", "fish & chips", "a+b=c?d/e%f", ".-*_~!'()", "caf\u00e9",
+				"\u20ac5", "\u65e5\u672c", "\ud83c\udf55 pizza", "\ud83c", "a\udf55b",
+				"\ud83c\ud83c\udf55", "\u007f\u0080\u07ff\u0800\uffff" };
+		for (String s : strings) {
+			assertEquals(s, URLEncoder.encode(s, "UTF-8"), encode(s));
+		}
+	}
+
+	@Test
+	public void testCoordinate() {
+		double[] degrees = { 0.0, 1.0, -1.0, 48.2, -122.419416, 0.000001, -0.000001, 0.05,
+				-0.0102, 179.9999996, -179.9999996, 10.0000004, 0.1234565, 0.0000004 };
+		for (double d : degrees) {
+			assertEquals(format(d), UrlBuilder.from("").coordinate(d).toString());
+		}
+		Random random = new Random(42L);
+		for (int i = 0; i < 10000; i++) {
+			double d = (random.nextDouble() - 0.5) * 360.0;
+			assertEquals(format(d), UrlBuilder.from("").coordinate(d).toString());
+		}
+	}
+
+	@Test
+	public void testAbandoned() {
+		UrlBuilder.from("abandoned").append('?'); // no toString, as if an exception was thrown
+		UrlBuilder builder = UrlBuilder.from("a");
+		assertEquals("a", builder.toString());
+		assertSame(builder, UrlBuilder.from("b")); // reused after replacing the abandoned one
+		UrlBuilder nested = UrlBuilder.from("c");
+		assertNotSame(builder, nested);
+		assertEquals("c", nested.toString());
+		assertEquals("bd", builder.append('d').toString());
+	}
+
+	private static String encode(String s) {
+		return UrlBuilder.from("").encode(s).toString();
+	}
+
+	/**
+	 * Format the degrees with 6 decimal places, without trailing zeros or a negative zero.
+	 */
+	private static String format(double degrees) {
+		String s = String.format(Locale.US, "%.6f", degrees).replaceAll("0+$", "");
+		if (s.endsWith(".")) {
+			s += '0';
+		}
+		return s.equals("-0.0") ? "0.0" : s;
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2013 pushbit <pushbit@gmail.com>
+ *
+ * This file is part of Sprockets.
+ *
+ * Sprockets is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Sprockets is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Sprockets.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.sf.sprockets.test;
+
+import static net.sf.sprockets.google.Places.Response.Status.OK;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import net.sf.sprockets.google.AreaSearch;
+import net.sf.sprockets.google.FakeServer;
+import net.sf.sprockets.google.Place;
+import net.sf.sprockets.google.Places;
+import net.sf.sprockets.google.Places.Params;
+
+import org.junit.Test;
+
+import com.google.common.collect.Iterables;
+
+/**
+ * Searches a {@link FakeServer} grid of places with {@link AreaSearch}.
+ */
+public class AreaSearchTest extends FakeServerTest {
+	@Test
+	public void testAreaSearch() {
+		sServer.placeGrid(0.01);
+		try {
+			AreaSearch search = Places.areaSearch(new Params().bounds(10.005, 20.005, 10.105,
+					20.105));
+			Set<String> ids = new HashSet<String>();
+			for (Place place : search) {
+				assertTrue(ids.add(place.getId()));
+			}
+			assertEquals(100, ids.size());
+			assertTrue(search.getSearchCount() > 1);
+			assertEquals(OK, search.getStatus());
+			assertNull(search.getException());
+
+			search = Places.areaSearch(new Params().polygon(10.005, 20.005, 10.105, 20.005,
+					10.005, 20.105).maxResults(30));
+			assertEquals(30, Iterables.size(search));
+		} finally {
+			sServer.placeGrid(0.0);
+		}
+	}
+
+	@Test
+	public void testSmallCoordinates() {
+		sServer.placeGrid(0.0002);
+		try { // centre is 1.0E-4 when formatted by Double.toString
+			AreaSearch search = Places.areaSearch(new Params().bounds(-0.00035, -0.00035,
+					0.00055, 0.00055));
+			assertEquals(16, Iterables.size(search));
+			assertEquals(OK, search.getStatus());
+		} finally {
+			sServer.placeGrid(0.0);
+		}
+	}
+
+	@Test
+	public void testAntimeridian() {
+		sServer.placeGrid(0.01);
+		try {
+			assertAntimeridian(Places.areaSearch(new Params().bounds(10.005, 179.955, 10.105,
+					-179.945)));
+			assertAntimeridian(Places.areaSearch(new Params().polygon(10.005, 179.955, 10.105,
+					179.955, 10.105, -179.945, 10.005, -179.945)));
+			assertAntimeridian(Places.areaSearch(new Params().polygon(10.005, 179.955, 10.105,
+					179.955, 10.105, -179.945, 10.005, -179.945).bounds(0.0, 170.0, 20.0,
+					-170.0)));
+		} finally {
+			sServer.placeGrid(0.0);
+		}
+	}
+
+	/**
+	 * Check that the search found the 10 x 10 places on both sides of the antimeridian.
+	 */
+	private static void assertAntimeridian(AreaSearch search) {
+		Set<String> ids = new HashSet<String>();
+		int east = 0;
+		for (Place place : search) {
+			assertTrue(ids.add(place.getId()));
+			if (place.getLongitude() < 0.0) {
+				east++;
+			}
+		}
+		assertEquals(100, ids.size());
+		assertEquals(60, east); // -180.00 to -179.95
+		assertEquals(OK, search.getStatus());
+	}
+}
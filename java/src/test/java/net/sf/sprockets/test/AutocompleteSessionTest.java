@@ -0,0 +1,58 @@
+/*
+ * Copyright 2013 pushbit <pushbit@gmail.com>
+ *
+ * This file is part of Sprockets.
+ *
+ * Sprockets is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Sprockets is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Sprockets.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.sf.sprockets.test;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static net.sf.sprockets.google.Places.Response.Status.OK;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.Future;
+
+import net.sf.sprockets.google.AutocompleteSession;
+import net.sf.sprockets.google.FakeServer;
+import net.sf.sprockets.google.FakeServer.Endpoint;
+import net.sf.sprockets.google.Place.Prediction;
+import net.sf.sprockets.google.Places.Params;
+import net.sf.sprockets.google.Places.Response;
+
+import org.junit.Test;
+
+/**
+ * Sends autocomplete requests to a {@link FakeServer} with an {@link AutocompleteSession}.
+ */
+public class AutocompleteSessionTest extends FakeServerTest {
+	@Test
+	public void testAutocompleteSession() throws Exception {
+		AutocompleteSession session = new AutocompleteSession(100L, MILLISECONDS);
+		long requests = sServer.getRequestCount(Endpoint.AUTOCOMPLETE);
+		Params params = new Params();
+		Future<Response<List<Prediction>>> p = session.autocomplete(params.query("p"));
+		Future<Response<List<Prediction>>> pi = session.autocomplete(params.query("pi"));
+		Future<Response<List<Prediction>>> piz = session.autocomplete(params.query("piz"));
+		assertTrue(p.isCancelled());
+		assertTrue(pi.isCancelled());
+		Response<List<Prediction>> resp = piz.get();
+		assertEquals(OK, resp.getStatus());
+		assertTrue(resp.getResult().get(0).getName().startsWith("piz"));
+		assertEquals(3, session.getRequestCount());
+		assertEquals(1, session.getSentCount());
+		assertEquals(requests + 1, sServer.getRequestCount(Endpoint.AUTOCOMPLETE));
+	}
+}
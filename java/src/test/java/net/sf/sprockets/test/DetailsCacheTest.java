@@ -0,0 +1,140 @@
+/*
+ * Copyright 2013 pushbit <pushbit@gmail.com>
+ *
+ * This file is part of Sprockets.
+ *
+ * Sprockets is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Sprockets is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Sprockets.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.sf.sprockets.test;
+
+import static net.sf.sprockets.google.Places.Field.NAME;
+import static net.sf.sprockets.google.Places.Field.RATING;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+
+import net.sf.sprockets.Sprockets;
+import net.sf.sprockets.google.DetailsCache;
+import net.sf.sprockets.google.FakeServer.Endpoint;
+import net.sf.sprockets.google.Place;
+import net.sf.sprockets.google.Places;
+import net.sf.sprockets.google.Places.Field;
+import net.sf.sprockets.google.Places.Params;
+import net.sf.sprockets.google.Places.Response;
+
+import org.apache.commons.configuration.Configuration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Sends {@link Places#details(Params, Field...) Places.details} requests through the
+ * {@link DetailsCache}.
+ */
+public class DetailsCacheTest extends FakeServerTest {
+	private static final String PREFIX = "google.places.details-cache.";
+	private int mEntries;
+	private long mTtl;
+
+	@Before
+	public void enableCache() {
+		Configuration config = Sprockets.getConfig();
+		mEntries = config.getInt(PREFIX + "max-entries");
+		mTtl = config.getLong(PREFIX + "ttl");
+		config.setProperty(PREFIX + "ttl", 0);
+		config.setProperty(PREFIX + "max-entries", 2);
+	}
+
+	@After
+	public void disableCache() {
+		Configuration config = Sprockets.getConfig();
+		config.setProperty(PREFIX + "max-entries", mEntries);
+		config.setProperty(PREFIX + "ttl", mTtl);
+	}
+
+	@Test
+	public void testFields() throws IOException {
+		Params params = new Params().reference("fields");
+		long requests = sServer.getRequestCount(Endpoint.DETAILS);
+		Response<Place> resp = Places.details(params, NAME, RATING);
+		assertEquals(requests + 1, sServer.getRequestCount(Endpoint.DETAILS));
+		Response<Place> cached = Places.details(params, NAME);
+		assertEquals(requests + 1, sServer.getRequestCount(Endpoint.DETAILS));
+		assertNotSame(resp, cached);
+		assertSame(resp.getResult(), cached.getResult());
+		assertEquals(0, cached.getRetries());
+
+		Places.details(params); // all fields is not a subset of NAME and RATING
+		assertEquals(requests + 2, sServer.getRequestCount(Endpoint.DETAILS));
+		Places.details(params, NAME, RATING, Field.URL); // all fields are a superset of anything
+		assertEquals(requests + 2, sServer.getRequestCount(Endpoint.DETAILS));
+	}
+
+	@Test
+	public void testMaxResults() throws IOException {
+		Params params = new Params().reference("max");
+		long requests = sServer.getRequestCount(Endpoint.DETAILS);
+		Places.details(params.maxResults(2));
+		Places.details(params.maxResults(2));
+		assertEquals(requests + 1, sServer.getRequestCount(Endpoint.DETAILS));
+		Places.details(params.maxResults(0)); // different number of reviews and photos
+		assertEquals(requests + 2, sServer.getRequestCount(Endpoint.DETAILS));
+		Places.details(params.maxResults(1));
+		assertEquals(requests + 3, sServer.getRequestCount(Endpoint.DETAILS));
+	}
+
+	@Test
+	public void testTtl() throws IOException, InterruptedException {
+		Sprockets.getConfig().setProperty(PREFIX + "ttl", 1);
+		Params params = new Params().reference("ttl");
+		long requests = sServer.getRequestCount(Endpoint.DETAILS);
+		Places.details(params);
+		Places.details(params);
+		assertEquals(requests + 1, sServer.getRequestCount(Endpoint.DETAILS));
+		Thread.sleep(1100L);
+		Places.details(params);
+		assertEquals(requests + 2, sServer.getRequestCount(Endpoint.DETAILS));
+	}
+
+	@Test
+	public void testEvictions() throws IOException {
+		long hits = DetailsCache.getStats().hitCount();
+		long evictions = DetailsCache.getStats().evictionCount();
+		for (String ref : new String[] { "a", "b", "c", "a" }) {
+			Places.details(new Params().reference(ref));
+		}
+		assertEquals(2, DetailsCache.size());
+		assertEquals(hits, DetailsCache.getStats().hitCount()); // "a" was evicted by "c"
+		assertEquals(evictions + 2, DetailsCache.getStats().evictionCount());
+
+		Sprockets.getConfig().setProperty(PREFIX + "max-entries", 3); // new cache keeps stats
+		assertEquals(0, DetailsCache.size());
+		assertEquals(evictions + 2, DetailsCache.getStats().evictionCount());
+	}
+
+	@Test
+	public void testKeyChange() throws IOException {
+		Places.details(new Params().reference("key"));
+		assertEquals(1, DetailsCache.size());
+		Configuration config = Sprockets.getConfig();
+		String key = config.getString("google.api-key");
+		config.setProperty("google.api-key", key + "2");
+		try {
+			assertEquals(0, DetailsCache.size());
+		} finally {
+			config.setProperty("google.api-key", key);
+		}
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2013 pushbit <pushbit@gmail.com>
+ *
+ * This file is part of Sprockets.
+ *
+ * Sprockets is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Sprockets is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Sprockets.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.sf.sprockets.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+
+import net.sf.sprockets.google.DistanceMatrix;
+import net.sf.sprockets.google.FakeServer;
+import net.sf.sprockets.google.FakeServer.Endpoint;
+import net.sf.sprockets.google.TravelDistance;
+import net.sf.sprockets.google.TravelMatrix;
+
+import org.junit.Test;
+
+/**
+ * Runs the {@link DistanceMatrix} methods against a {@link FakeServer}.
+ */
+public class DistanceMatrixOfflineTest extends FakeServerTest {
+	@Test
+	public void testBatchDistances() throws IOException {
+		DistanceMatrix.Params params = new DistanceMatrix.Params();
+		for (int i = 0; i < 30; i++) {
+			params.origin(48.2 + i * 0.001, 16.36);
+		}
+		for (int i = 0; i < 7; i++) {
+			params.destination(48.21, 16.37 + i * 0.001);
+		}
+		List<TravelDistance> single = DistanceMatrix.distances(params).getResult();
+		long requests = sServer.getRequestCount(Endpoint.DISTANCE_MATRIX);
+		DistanceMatrix.Response batch = DistanceMatrix.batchDistances(params);
+		assertEquals(DistanceMatrix.Response.Status.OK, batch.getStatus());
+		assertEquals(single, batch.getResult());
+		/* 14 origins x 7 destinations fit in the default 100 elements */
+		assertEquals(requests + 3, sServer.getRequestCount(Endpoint.DISTANCE_MATRIX));
+		TravelMatrix packed = DistanceMatrix.batchDistances(params.packed()).getMatrix();
+		assertEquals(batch.getMatrix(), packed);
+		assertEquals(single.get(45).getDistance(), packed.getDistance(6, 3));
+		assertEquals(single.get(45).getDistanceText(), packed.getDistanceText(6, 3));
+		assertEquals(single.get(45).getDurationText(), packed.getDurationText(6, 3));
+	}
+
+	@Test
+	public void testPackedText() throws IOException {
+		sServer.response(Endpoint.DISTANCE_MATRIX, "{\"destination_addresses\":[\"Wien\"],"
+				+ "\"origin_addresses\":[\"A\",\"B\",\"C\"],\"rows\":["
+				+ element("5 Min.", 300, "1,2 km", 1234)
+				+ ',' + element("5 Min.", 290, "1,3 km", 1321)
+				+ ",{\"elements\":[{\"status\":\"NOT_FOUND\"}]}],\"status\":\"OK\"}");
+		try {
+			DistanceMatrix.Params params = new DistanceMatrix.Params().origin(48.1, 16.3)
+					.origin(48.2, 16.3).origin(48.3, 16.3).destination(48.2, 16.37).language("de");
+			for (TravelMatrix matrix : new TravelMatrix[] {
+					DistanceMatrix.distances(params).getMatrix(),
+					DistanceMatrix.distances(params.packed()).getMatrix() }) {
+				assertEquals("5 Min.", matrix.getDurationText(0, 0)); // in the requested language
+				assertEquals("1,2 km", matrix.getDistanceText(0, 0));
+				assertEquals("1,3 km", matrix.getDistanceText(1, 0));
+				assertSame(matrix.getDurationText(0, 0), matrix.getDurationText(1, 0)); // pooled
+				assertNull(matrix.getDurationText(2, 0));
+				assertNull(matrix.getDistanceText(2, 0));
+			}
+		} finally {
+			sServer.response(Endpoint.DISTANCE_MATRIX, null, null);
+		}
+	}
+
+	@Test
+	public void testUnknownStatus() throws IOException {
+		sServer.response(Endpoint.DISTANCE_MATRIX, "{\"destination_addresses\":[\"Wien\"],"
+				+ "\"origin_addresses\":[\"A\",\"B\"],\"rows\":["
+				+ element("5 Min.", 300, "1,2 km", 1234)
+				+ ",{\"elements\":[{\"status\":\"NEW_STATUS\"}]}],\"status\":\"OK\"}");
+		try {
+			DistanceMatrix.Params params = new DistanceMatrix.Params().origin(48.1, 16.3)
+					.origin(48.2, 16.3).destination(48.2, 16.37);
+			List<TravelDistance> single = DistanceMatrix.distances(params).getResult();
+			DistanceMatrix.Response packed = DistanceMatrix.distances(params.packed());
+			assertEquals(single, packed.getResult());
+			assertEquals(2, packed.getResult().size());
+			assertEquals("NEW_STATUS", packed.getResult().get(1).getStatus());
+			TravelMatrix matrix = packed.getMatrix();
+			assertTrue(matrix.isIncluded(1, 0));
+			assertEquals(DistanceMatrix.Response.Status.UNKNOWN, matrix.getStatus(1, 0));
+		} finally {
+			sServer.response(Endpoint.DISTANCE_MATRIX, null, null);
+		}
+	}
+
+	/**
+	 * Get a row with one OK element.
+	 */
+	private static String element(String duration, long seconds, String distance, long meters) {
+		return "{\"elements\":[{\"status\":\"OK\",\"duration\":{\"text\":\"" + duration
+				+ "\",\"value\":" + seconds + "},\"distance\":{\"text\":\"" + distance
+				+ "\",\"value\":" + meters + "}}]}";
+	}
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2013 pushbit <pushbit@gmail.com>
+ *
+ * This file is part of Sprockets.
+ *
+ * Sprockets is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Sprockets is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Sprockets.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.sf.sprockets.test;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.io.IOException;
+
+import net.sf.sprockets.Sprockets;
+import net.sf.sprockets.google.FakeServer;
+
+import org.apache.commons.configuration.Configuration;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+
+import com.google.common.base.Strings;
+
+/**
+ * Starts a {@link FakeServer} before the tests of a subclass so that the API methods can be tested
+ * without a network connection. The server's failure and delay settings are reset after each
+ * test.
+ */
+public abstract class FakeServerTest {
+	protected static FakeServer sServer;
+	private static String sBaseUrl;
+	private static String sKey;
+	private static String sTokenDelay;
+
+	@BeforeClass
+	public static void setUpClass() throws IOException {
+		Configuration config = Sprockets.getConfig();
+		sBaseUrl = config.getString("google.base-url");
+		sKey = config.getString("google.api-key");
+		sTokenDelay = config.getString("google.places.page-token.delay");
+		config.setProperty("google.places.page-token.delay", 0);
+		if (Strings.isNullOrEmpty(sKey)) {
+			config.setProperty("google.api-key", "fake");
+		}
+		sServer = new FakeServer().start().install();
+	}
+
+	@AfterClass
+	public static void tearDownClass() {
+		sServer.stop();
+		Configuration config = Sprockets.getConfig();
+		config.setProperty("google.base-url", sBaseUrl);
+		config.setProperty("google.api-key", sKey);
+		config.setProperty("google.places.page-token.delay", sTokenDelay);
+	}
+
+	@After
+	public void tearDown() {
+		sServer.overQueryLimitRate(0.0).serverErrorRate(0.0).pageTokenDelay(0L, MILLISECONDS);
+	}
+}
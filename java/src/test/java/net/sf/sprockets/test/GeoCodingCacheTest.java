@@ -0,0 +1,130 @@
+/*
+ * Copyright 2013 pushbit <pushbit@gmail.com>
+ *
+ * This file is part of Sprockets.
+ *
+ * Sprockets is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Sprockets is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Sprockets.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.sf.sprockets.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+
+import net.sf.sprockets.Sprockets;
+import net.sf.sprockets.google.FakeServer.Endpoint;
+import net.sf.sprockets.google.GeoCoding;
+import net.sf.sprockets.google.GeoCoding.Params;
+import net.sf.sprockets.google.GeoCodingCache;
+
+import org.apache.commons.configuration.Configuration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.cache.CacheStats;
+
+/**
+ * Sends {@link GeoCoding#geocoding(Params) GeoCoding.geocoding} requests through the
+ * {@link GeoCodingCache}.
+ */
+public class GeoCodingCacheTest extends FakeServerTest {
+	private static final String PREFIX = "google.geocoding.cache.";
+	private int mEntries;
+	private long mTtl;
+	private int mPrecision;
+
+	@Before
+	public void enableCache() {
+		Configuration config = Sprockets.getConfig();
+		mEntries = config.getInt(PREFIX + "max-entries");
+		mTtl = config.getLong(PREFIX + "ttl");
+		mPrecision = config.getInt(PREFIX + "reverse-precision");
+		config.setProperty(PREFIX + "ttl", 0);
+		config.setProperty(PREFIX + "max-entries", 10);
+	}
+
+	@After
+	public void disableCache() {
+		Configuration config = Sprockets.getConfig();
+		config.setProperty(PREFIX + "max-entries", mEntries);
+		config.setProperty(PREFIX + "ttl", mTtl);
+		config.setProperty(PREFIX + "reverse-precision", mPrecision);
+	}
+
+	@Test
+	public void testAddress() throws IOException {
+		long requests = sServer.getRequestCount(Endpoint.GEOCODE);
+		GeoCoding.geocoding(new Params().address("Albertina, Vienna"));
+		GeoCoding.geocoding(new Params().address("  albertina,\tVIENNA "));
+		assertEquals(requests + 1, sServer.getRequestCount(Endpoint.GEOCODE));
+		GeoCoding.geocoding(new Params().address("Albertina, Vienna").language("de"));
+		GeoCoding.geocoding(new Params().address("Albertina, Vienna").region("AT"));
+		GeoCoding.geocoding(new Params().address("Albertina, Vienna").region("at"));
+		assertEquals(requests + 3, sServer.getRequestCount(Endpoint.GEOCODE));
+		GeoCoding.geocoding(new Params().address("Albertina").components("country:AT",
+				"locality:Vienna"));
+		GeoCoding.geocoding(new Params().address("Albertina").components("locality:Vienna",
+				"country:AT"));
+		assertEquals(requests + 4, sServer.getRequestCount(Endpoint.GEOCODE));
+	}
+
+	@Test
+	public void testReverse() throws IOException {
+		Sprockets.getConfig().setProperty(PREFIX + "reverse-precision", 8);
+		long requests = sServer.getRequestCount(Endpoint.GEOCODE);
+		GeoCoding.geocoding(new Params().latlng(42.60001, -5.60001));
+		GeoCoding.geocoding(new Params().latlng(42.60002, -5.60002)); // same geohash cell
+		assertEquals(requests + 1, sServer.getRequestCount(Endpoint.GEOCODE));
+		GeoCoding.geocoding(new Params().latlng(42.6101, -5.6101));
+		assertEquals(requests + 2, sServer.getRequestCount(Endpoint.GEOCODE));
+
+		Sprockets.getConfig().setProperty(PREFIX + "reverse-precision", 3); // replaces the cache
+		GeoCoding.geocoding(new Params().latlng(42.60001, -5.60001));
+		GeoCoding.geocoding(new Params().latlng(42.6101, -5.6101));
+		assertEquals(requests + 3, sServer.getRequestCount(Endpoint.GEOCODE));
+	}
+
+	@Test
+	public void testTtl() throws IOException, InterruptedException {
+		Sprockets.getConfig().setProperty(PREFIX + "ttl", 1);
+		Params params = new Params().address("ttl");
+		long requests = sServer.getRequestCount(Endpoint.GEOCODE);
+		GeoCoding.geocoding(params);
+		GeoCoding.geocoding(params);
+		assertEquals(requests + 1, sServer.getRequestCount(Endpoint.GEOCODE));
+		Thread.sleep(1100L);
+		GeoCoding.geocoding(params);
+		assertEquals(requests + 2, sServer.getRequestCount(Endpoint.GEOCODE));
+	}
+
+	@Test
+	public void testStats() throws IOException {
+		CacheStats stats = GeoCodingCache.getStats();
+		GeoCoding.geocoding(new Params().address("stats"));
+		GeoCoding.geocoding(new Params().address("stats"));
+		CacheStats diff = GeoCodingCache.getStats().minus(stats);
+		assertEquals(1, diff.hitCount());
+		assertEquals(1, diff.missCount());
+		assertEquals(1, GeoCodingCache.size());
+
+		Sprockets.getConfig().setProperty(PREFIX + "max-entries", 1); // new cache keeps stats
+		assertEquals(0, GeoCodingCache.size());
+		GeoCoding.geocoding(new Params().address("a"));
+		GeoCoding.geocoding(new Params().address("b"));
+		diff = GeoCodingCache.getStats().minus(stats);
+		assertEquals(1, diff.hitCount());
+		assertEquals(3, diff.missCount());
+		assertEquals(1, diff.evictionCount());
+	}
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2013 pushbit <pushbit@gmail.com>
+ *
+ * This file is part of Sprockets.
+ *
+ * Sprockets is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Sprockets is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Sprockets.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.sf.sprockets.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+
+import net.sf.sprockets.google.FakeServer;
+import net.sf.sprockets.google.GeoCoding;
+
+import org.junit.Test;
+
+/**
+ * Runs the {@link GeoCoding} methods against a {@link FakeServer}.
+ */
+public class GeoCodingOfflineTest extends FakeServerTest {
+	@Test
+	public void testGeoCoding() throws IOException {
+		GeoCoding.Response resp = GeoCoding.geocoding(new GeoCoding.Params()
+				.address("Albertina, Vienna"));
+		assertEquals(GeoCoding.Response.Status.OK, resp.getStatus());
+		assertEquals(1, resp.getResult().size());
+	}
+}
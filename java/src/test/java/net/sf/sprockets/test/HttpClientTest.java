@@ -0,0 +1,52 @@
+/*
+ * Copyright 2013 pushbit <pushbit@gmail.com>
+ *
+ * This file is part of Sprockets.
+ *
+ * Sprockets is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Sprockets is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Sprockets.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.sf.sprockets.test;
+
+import static net.sf.sprockets.google.Places.Response.Status.OK;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+
+import net.sf.sprockets.google.FakeServer;
+import net.sf.sprockets.google.Place;
+import net.sf.sprockets.google.Places;
+import net.sf.sprockets.google.Places.Params;
+import net.sf.sprockets.google.Places.Response;
+import net.sf.sprockets.net.HttpClient;
+import net.sf.sprockets.net.HttpClient.Stats;
+
+import org.junit.Test;
+
+/**
+ * Checks the {@link HttpClient} transport with requests to a {@link FakeServer}.
+ */
+public class HttpClientTest extends FakeServerTest {
+	@Test
+	public void testGzip() throws IOException {
+		Stats before = HttpClient.getStats();
+		Response<List<Place>> resp = Places.textSearch(new Params().query("pizza"));
+		assertEquals(OK, resp.getStatus());
+		Stats after = HttpClient.getStats();
+		long received = after.getBytesReceived() - before.getBytesReceived();
+		long decoded = after.getBytesDecoded() - before.getBytesDecoded();
+		assertTrue(received > 0);
+		assertTrue(decoded > received * 2);
+	}
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2013 pushbit <pushbit@gmail.com>
+ *
+ * This file is part of Sprockets.
+ *
+ * Sprockets is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Sprockets is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Sprockets.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.sf.sprockets.test;
+
+import static net.sf.sprockets.google.Places.Response.Status.OK;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import net.sf.sprockets.google.FakeServer;
+import net.sf.sprockets.google.Metrics;
+import net.sf.sprockets.google.Metrics.Listener;
+import net.sf.sprockets.google.Metrics.StatsMXBean;
+import net.sf.sprockets.google.Places;
+import net.sf.sprockets.google.Places.Params;
+import net.sf.sprockets.google.Throttle.Api;
+
+import org.junit.Test;
+
+/**
+ * Checks the {@link Metrics} that are recorded for requests to a {@link FakeServer}.
+ */
+public class MetricsTest extends FakeServerTest {
+	@Test
+	public void testMetrics() throws Exception {
+		final List<Metrics.Request> requests = new ArrayList<Metrics.Request>();
+		Listener listener = new Listener() {
+			@Override
+			public void onRequest(Metrics.Request request) {
+				requests.add(request);
+			}
+		};
+		Metrics.registerMBeans();
+		Metrics.addListener(listener);
+		try {
+			StatsMXBean stats = Metrics.getStats(Api.PLACES);
+			long before = stats.getRequests();
+			Places.textSearch(new Params().query("metrics"));
+			assertEquals(1, requests.size());
+			Metrics.Request request = requests.get(0);
+			assertEquals(Api.PLACES, request.getApi());
+			assertEquals(1, request.getAttempt());
+			assertEquals(200, request.getHttpStatus());
+			assertEquals("OK", request.getStatus());
+			assertTrue(request.getBytesDecoded() > 0);
+			assertTrue(request.getTotalNanos() >= request.getConnectNanos()
+					+ request.getFirstByteNanos() + request.getDownloadNanos()
+					+ request.getParseNanos());
+			assertEquals(before + 1, stats.getRequests());
+			ObjectName name = new ObjectName("net.sf.sprockets:type=Metrics,api=PLACES");
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			assertEquals(stats.getRequests(), server.getAttribute(name, "Requests"));
+			CompositeData total = (CompositeData) server.getAttribute(name, "TotalMicros");
+			assertEquals(stats.getRequests(), total.get("count"));
+		} finally {
+			Metrics.removeListener(listener);
+		}
+	}
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2013 pushbit <pushbit@gmail.com>
+ *
+ * This file is part of Sprockets.
+ *
+ * Sprockets is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Sprockets is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Sprockets.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.sf.sprockets.test;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static net.sf.sprockets.google.Places.Response.Status.OK;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import net.sf.sprockets.Sprockets;
+import net.sf.sprockets.google.FakeServer.Endpoint;
+import net.sf.sprockets.google.PhotoCache;
+import net.sf.sprockets.google.Places;
+import net.sf.sprockets.google.Places.Params;
+import net.sf.sprockets.google.Places.Response;
+
+import org.apache.commons.configuration.Configuration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.cache.CacheStats;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Closeables;
+import com.google.common.io.Files;
+
+/**
+ * Sends {@link Places#photo(Params) Places.photo} requests through the {@link PhotoCache}.
+ */
+public class PhotoCacheTest extends FakeServerTest {
+	private static final String PREFIX = "google.places.photo-cache.";
+	private File mDir;
+	private long mMaxBytes;
+	private long mMaxAge;
+
+	@Before
+	public void enableCache() {
+		mDir = Files.createTempDir();
+		Configuration config = Sprockets.getConfig();
+		mMaxBytes = config.getLong(PREFIX + "max-bytes");
+		mMaxAge = config.getLong(PREFIX + "max-age");
+		config.setProperty(PREFIX + "dir", mDir.getPath());
+	}
+
+	@After
+	public void disableCache() {
+		Configuration config = Sprockets.getConfig();
+		config.setProperty(PREFIX + "dir", "");
+		config.setProperty(PREFIX + "max-bytes", mMaxBytes);
+		config.setProperty(PREFIX + "max-age", mMaxAge);
+		for (File file : mDir.listFiles()) {
+			file.delete();
+		}
+		mDir.delete();
+	}
+
+	@Test
+	public void testHit() throws IOException {
+		Params params = new Params().reference("hit").maxWidth(400);
+		long requests = sServer.getRequestCount(Endpoint.PHOTO);
+		CacheStats stats = PhotoCache.getStats();
+		byte[] photo = read(Places.photo(params));
+		assertEquals(2048, photo.length);
+		assertEquals(1, photos());
+		assertEquals(photo.length, read(Places.photo(params)).length);
+		assertEquals(requests + 1, sServer.getRequestCount(Endpoint.PHOTO));
+		CacheStats diff = PhotoCache.getStats().minus(stats);
+		assertEquals(1, diff.hitCount());
+		assertEquals(1, diff.missCount());
+	}
+
+	@Test
+	public void testKeyChange() throws IOException {
+		Params params = new Params().reference("key").maxWidth(400);
+		read(Places.photo(params));
+		long requests = sServer.getRequestCount(Endpoint.PHOTO);
+		Configuration config = Sprockets.getConfig();
+		String key = config.getString("google.api-key");
+		config.setProperty("google.api-key", key + "2");
+		try {
+			read(Places.photo(params)); // same photo
+		} finally {
+			config.setProperty("google.api-key", key);
+		}
+		assertEquals(requests, sServer.getRequestCount(Endpoint.PHOTO));
+		assertEquals(1, photos());
+		read(Places.photo(params.maxHeight(300)));
+		assertEquals(2, photos());
+	}
+
+	@Test
+	public void testRevalidation() throws IOException {
+		Sprockets.getConfig().setProperty(PREFIX + "max-age", 0);
+		Params params = new Params().reference("revalidate").maxWidth(400);
+		long requests = sServer.getRequestCount(Endpoint.PHOTO);
+		long revalidations = PhotoCache.getRevalidations();
+		byte[] photo = read(Places.photo(params));
+		byte[] cached = read(Places.photo(params));
+		assertEquals(requests + 2, sServer.getRequestCount(Endpoint.PHOTO));
+		assertEquals(revalidations + 1, PhotoCache.getRevalidations());
+		assertEquals(photo.length, cached.length);
+	}
+
+	@Test
+	public void testEvictedWhileRevalidating() throws Exception {
+		Sprockets.getConfig().setProperty(PREFIX + "max-age", 0);
+		Params params = new Params().reference("evicted").maxWidth(400);
+		read(Places.photo(params));
+		sServer.latency(300L, 300L, MILLISECONDS);
+		Thread evict = new Thread() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(100L);
+				} catch (InterruptedException e) {
+					return;
+				}
+				PhotoCache.clear();
+			}
+		};
+		long revalidations = PhotoCache.getRevalidations();
+		evict.start();
+		try {
+			assertEquals(2048, read(Places.photo(params)).length); // still open
+		} finally {
+			sServer.latency(0L, 0L, MILLISECONDS);
+			evict.join();
+		}
+		assertEquals(revalidations + 1, PhotoCache.getRevalidations());
+		assertEquals(0, photos()); // not created again
+		assertEquals(2048, read(Places.photo(params)).length); // downloaded again
+		assertEquals(1, photos());
+	}
+
+	@Test
+	public void testEvictions() throws IOException {
+		Sprockets.getConfig().setProperty(PREFIX + "max-bytes", 5000); // two photos
+		long evictions = PhotoCache.getStats().evictionCount();
+		for (String ref : new String[] { "a", "b", "c" }) {
+			assertEquals(2048, read(Places.photo(new Params().reference(ref).maxWidth(400)))
+					.length);
+		}
+		assertEquals(evictions + 1, PhotoCache.getStats().evictionCount());
+		assertEquals(2, photos());
+		assertTrue(PhotoCache.size() <= 5000);
+
+		Sprockets.getConfig().setProperty(PREFIX + "max-bytes", 1000); // larger than the limit
+		assertEquals(0, photos());
+		assertEquals(2048, read(Places.photo(new Params().reference("d").maxWidth(400)))
+				.length); // read after it was evicted
+		assertEquals(0, photos());
+	}
+
+	/**
+	 * Read and close the photo.
+	 */
+	private static byte[] read(Response<InputStream> resp) throws IOException {
+		assertEquals(OK, resp.getStatus());
+		InputStream in = resp.getResult();
+		try {
+			return ByteStreams.toByteArray(in);
+		} finally {
+			Closeables.close(in, true);
+		}
+	}
+
+	/**
+	 * Number of photos in the cache directory.
+	 */
+	private int photos() {
+		int photos = 0;
+		for (File file : mDir.listFiles()) {
+			if (file.getName().endsWith(".photo")) {
+				photos++;
+			}
+		}
+		return photos;
+	}
+}
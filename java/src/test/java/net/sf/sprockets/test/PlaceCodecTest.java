@@ -0,0 +1,105 @@
+/*
+ * Copyright 2013 pushbit <pushbit@gmail.com>
+ *
+ * This file is part of Sprockets.
+ *
+ * Sprockets is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Sprockets is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Sprockets.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.sf.sprockets.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import net.sf.sprockets.google.FakeServer;
+import net.sf.sprockets.google.Place;
+import net.sf.sprockets.google.Place.Prediction;
+import net.sf.sprockets.google.PlaceCodec;
+import net.sf.sprockets.google.Places;
+import net.sf.sprockets.google.Places.Params;
+
+import org.junit.Test;
+
+/**
+ * Encodes and decodes the places returned by a {@link FakeServer} with {@link PlaceCodec}.
+ */
+public class PlaceCodecTest extends FakeServerTest {
+	@Test
+	public void testPlaceCodec() throws IOException {
+		List<Place> places = places();
+		List<Place> decoded = PlaceCodec.decode(PlaceCodec.encode(places));
+		assertEquals(places.size(), decoded.size());
+		for (int i = 0; i < places.size(); i++) {
+			Place place = places.get(i);
+			Place copy = decoded.get(i);
+			assertEquals(place.getClass(), copy.getClass());
+			assertEquals(place.toString(), copy.toString());
+			assertEquals(place.getAddress(), copy.getAddress());
+			assertEquals(place.getTypes(), copy.getTypes());
+			assertEquals(place.getReviews(), copy.getReviews());
+			assertEquals(place.getOpeningHours(), copy.getOpeningHours());
+			assertEquals(place.getEvents(), copy.getEvents());
+			assertEquals(place.getPhotos(), copy.getPhotos());
+			if (place instanceof Prediction) {
+				assertEquals(((Prediction) place).getTerms(), ((Prediction) copy).getTerms());
+				assertEquals(((Prediction) place).getMatchedSubstrings(),
+						((Prediction) copy).getMatchedSubstrings());
+			}
+		}
+	}
+
+	@Test
+	public void testCorruptData() throws IOException {
+		byte[] data = PlaceCodec.encode(places());
+		for (int length = 0; length < data.length; length++) {
+			try {
+				PlaceCodec.decode(Arrays.copyOf(data, length));
+				fail("truncated data was decoded");
+			} catch (IOException e) {
+				// expected
+			}
+		}
+		Random random = new Random(data.length);
+		byte[] maxInt = { (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x07 };
+		for (int i = 0; i < 5000; i++) {
+			byte[] corrupt = data.clone();
+			int pos = 3 + random.nextInt(corrupt.length - 3 - maxInt.length);
+			if (random.nextBoolean()) {
+				System.arraycopy(maxInt, 0, corrupt, pos, maxInt.length); // huge size or index
+			} else {
+				corrupt[pos] = (byte) random.nextInt();
+			}
+			try {
+				PlaceCodec.decode(corrupt); // only IOException is allowed
+			} catch (IOException e) {
+				// expected
+			}
+		}
+	}
+
+	/**
+	 * Get places, with all of their properties, and predictions.
+	 */
+	private static List<Place> places() throws IOException {
+		List<Place> places = new ArrayList<Place>();
+		places.add(Places.details(new Params().reference("codec")).getResult());
+		places.addAll(Places.nearbySearch(new Params().location(30.0, 40.0)).getResult());
+		places.addAll(Places.autocomplete(new Params().query("pizza")).getResult());
+		return places;
+	}
+}
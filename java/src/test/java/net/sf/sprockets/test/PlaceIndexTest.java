@@ -0,0 +1,60 @@
+/*
+ * Copyright 2013 pushbit <pushbit@gmail.com>
+ *
+ * This file is part of Sprockets.
+ *
+ * Sprockets is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Sprockets is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Sprockets.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.sf.sprockets.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.List;
+
+import net.sf.sprockets.google.FakeServer;
+import net.sf.sprockets.google.Place;
+import net.sf.sprockets.google.PlaceIndex;
+import net.sf.sprockets.google.PlaceIndex.Filter;
+import net.sf.sprockets.google.Places;
+import net.sf.sprockets.google.Places.Params;
+
+import org.junit.Test;
+
+/**
+ * Indexes the places returned by a {@link FakeServer} with a {@link PlaceIndex}.
+ */
+public class PlaceIndexTest extends FakeServerTest {
+	@Test
+	public void testPlaceIndex() throws IOException {
+		PlaceIndex index = new PlaceIndex().register();
+		try {
+			Places.nearbySearch(new Params().location(10.0, 20.0).keyword("pizza"));
+			assertEquals(20, index.size());
+			List<Place> places = index.radius(10.0, 20.0, 150, null);
+			assertEquals(3, places.size());
+			assertEquals("Place 0", places.get(0).getName());
+			assertEquals(5, index.nearest(10.0, 20.0, 5, null).size());
+			assertEquals(5, index.bounds(9.9995, 19.9995, 10.0045, 20.0005, null).size());
+			assertEquals(4, index.radius(10.0, 20.0, 10000, new Filter().price(0, 0)).size());
+			assertEquals(5, index.nearest(10.0, 20.0, 10, new Filter().minRating(2.5f)).size());
+			assertEquals(0, index.radius(10.0, 20.0, 10000, new Filter().types("bar")).size());
+
+			Places.radarSearch(new Params().location(10.0, 20.0).keyword("pizza"));
+			assertEquals(200, index.size());
+			assertEquals("Place 0", index.get(places.get(0).getId()).getName());
+		} finally {
+			index.unregister();
+		}
+	}
+}
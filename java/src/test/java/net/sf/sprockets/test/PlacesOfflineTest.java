@@ -0,0 +1,213 @@
+/*
+ * Copyright 2013 pushbit <pushbit@gmail.com>
+ *
+ * This file is part of Sprockets.
+ *
+ * Sprockets is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Sprockets is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Sprockets.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.sf.sprockets.test;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static net.sf.sprockets.google.Places.Response.Status.NOT_MODIFIED;
+import static net.sf.sprockets.google.Places.Response.Status.OK;
+import static net.sf.sprockets.google.Places.Response.Status.OVER_QUERY_LIMIT;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import net.sf.sprockets.Sprockets;
+import net.sf.sprockets.google.DistanceMatrix;
+import net.sf.sprockets.google.FakeServer;
+import net.sf.sprockets.google.FakeServer.Endpoint;
+import net.sf.sprockets.google.GeoCoding;
+import net.sf.sprockets.google.Place;
+import net.sf.sprockets.google.Place.Prediction;
+import net.sf.sprockets.google.PlaceSearch;
+import net.sf.sprockets.google.Places;
+import net.sf.sprockets.google.Places.Params;
+import net.sf.sprockets.google.Places.Response;
+import net.sf.sprockets.google.TravelDistance;
+
+import org.apache.commons.configuration.Configuration;
+import org.junit.Test;
+
+import com.google.common.collect.Iterables;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Closeables;
+
+/**
+ * Runs the {@link Places} methods against a {@link FakeServer}.
+ */
+public class PlacesOfflineTest extends FakeServerTest {
+	@Test
+	public void testNearbySearch() throws IOException {
+		Response<List<Place>> resp = Places.nearbySearch(new Params().location(40.758897,
+				-73.985126).keyword("pizza"));
+		assertEquals(OK, resp.getStatus());
+		assertEquals(20, resp.getResult().size());
+		assertTrue(resp.getResult().get(0).getName().length() > 0);
+		assertNotNull(resp.getNextPageToken());
+		resp = Places.nearbySearch(new Params().pageToken(resp.getNextPageToken()));
+		assertEquals(OK, resp.getStatus());
+		assertEquals(20, resp.getResult().size());
+	}
+
+	@Test
+	public void testNearbySearchAll() {
+		Params params = new Params().location(40.758897, -73.985126).keyword("pizza");
+		long requests = sServer.getRequestCount(Endpoint.NEARBY_SEARCH);
+		PlaceSearch search = Places.nearbySearchAll(params);
+		assertEquals(requests, sServer.getRequestCount(Endpoint.NEARBY_SEARCH));
+		assertEquals(60, Iterables.size(search));
+		assertEquals(OK, search.getStatus());
+		assertNull(search.getException());
+		assertEquals(requests + 3, sServer.getRequestCount(Endpoint.NEARBY_SEARCH));
+
+		requests += 3;
+		search = Places.nearbySearchAll(params.maxResults(25).prefetch());
+		assertEquals(25, Iterables.size(search));
+		assertEquals(requests + 2, sServer.getRequestCount(Endpoint.NEARBY_SEARCH));
+	}
+
+	@Test
+	public void testEmptyPage() {
+		sServer.response(Endpoint.TEXT_SEARCH, "{\"html_attributions\":[],\"status\":\"OK\"}");
+		try {
+			PlaceSearch search = Places.textSearchAll(new Params().query("pizza"));
+			assertEquals(0, Iterables.size(search));
+			assertEquals(OK, search.getStatus());
+			assertNull(search.getException());
+		} finally {
+			sServer.response(Endpoint.TEXT_SEARCH, null, null);
+		}
+	}
+
+	@Test
+	public void testPageTokenDelay() {
+		sServer.pageTokenDelay(150L, MILLISECONDS);
+		Configuration config = Sprockets.getConfig();
+		config.setProperty("google.places.page-token.delay", 50);
+		try {
+			PlaceSearch search = Places.textSearchAll(new Params().query("pizza"));
+			assertEquals(60, Iterables.size(search));
+			assertEquals(OK, search.getStatus());
+		} finally {
+			config.setProperty("google.places.page-token.delay", 0);
+		}
+	}
+
+	@Test
+	public void testDetails() throws IOException {
+		Response<Place> resp = Places.details(new Params().reference("abc"));
+		assertEquals(OK, resp.getStatus());
+		Place place = resp.getResult();
+		assertEquals("abc", place.getReference());
+		assertEquals(3, place.getReviews().size());
+		assertEquals(3, place.getPhotos().size());
+	}
+
+	@Test
+	public void testPhoto() throws IOException {
+		Params params = new Params().reference("photo1").maxWidth(400);
+		Response<InputStream> resp = Places.photo(params);
+		assertEquals(OK, resp.getStatus());
+		InputStream in = resp.getResult();
+		try {
+			assertEquals(2048, ByteStreams.toByteArray(in).length);
+		} finally {
+			Closeables.close(in, true);
+		}
+		assertNotNull(resp.getEtag());
+		resp = Places.photo(params.etag(resp.getEtag()));
+		assertEquals(NOT_MODIFIED, resp.getStatus());
+		assertNull(resp.getResult());
+	}
+
+	@Test
+	public void testByteParser() throws IOException {
+		Params details = new Params().reference("bytes");
+		Params search = new Params().location(50.0, 60.0).keyword("pizza");
+		Params autocomplete = new Params().query("pizza");
+		DistanceMatrix.Params distances = new DistanceMatrix.Params().origin(48.2, 16.36)
+				.destination(48.21, 16.37).destination(48.22, 16.38);
+		Place place = Places.details(details).getResult();
+		List<Place> places = Places.nearbySearch(search).getResult();
+		List<Prediction> predictions = Places.autocomplete(autocomplete).getResult();
+		List<TravelDistance> travel = DistanceMatrix.distances(distances).getResult();
+		Configuration config = Sprockets.getConfig();
+		config.setProperty("google.byte-parser", true);
+		try {
+			Place bytePlace = Places.details(details).getResult();
+			assertEquals(place.toString(), bytePlace.toString());
+			assertEquals(place.getReviews(), bytePlace.getReviews());
+			assertEquals(place.getOpeningHours(), bytePlace.getOpeningHours());
+			assertEquals(place.getPhotos(), bytePlace.getPhotos());
+			assertEquals(places.toString(), Places.nearbySearch(search).getResult().toString());
+			assertEquals(predictions.toString(), Places.autocomplete(autocomplete).getResult()
+					.toString());
+			assertEquals(travel, DistanceMatrix.distances(distances).getResult());
+			GeoCoding.Response resp = GeoCoding.geocoding(new GeoCoding.Params()
+					.address("Stephansdom, Vienna"));
+			assertEquals(GeoCoding.Response.Status.OK, resp.getStatus());
+			assertEquals(1, resp.getResult().size());
+		} finally {
+			config.setProperty("google.byte-parser", false);
+		}
+	}
+
+	@Test
+	public void testSingleFlight() throws Exception {
+		sServer.latency(200L, 200L, MILLISECONDS);
+		try {
+			final Params params = new Params().reference("trending");
+			long requests = sServer.getRequestCount(Endpoint.DETAILS);
+			List<Future<Response<Place>>> futures = new ArrayList<Future<Response<Place>>>();
+			for (int i = 0; i < 8; i++) {
+				futures.add(Places.detailsAsync(params));
+			}
+			Response<Place> first = futures.get(0).get();
+			for (Future<Response<Place>> future : futures) {
+				assertEquals(first, future.get());
+			}
+			assertEquals(requests + 1, sServer.getRequestCount(Endpoint.DETAILS));
+		} finally {
+			sServer.latency(0L, 0L, MILLISECONDS);
+		}
+	}
+
+	@Test
+	public void testOverQueryLimit() throws IOException {
+		sServer.overQueryLimitRate(1.0);
+		assertEquals(OVER_QUERY_LIMIT, Places.textSearch(new Params().query("pizza"))
+				.getStatus());
+	}
+
+	@Test
+	public void testServerError() {
+		sServer.serverErrorRate(1.0);
+		try {
+			Places.textSearch(new Params().query("pizza"));
+			fail("server error response was parsed");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+}
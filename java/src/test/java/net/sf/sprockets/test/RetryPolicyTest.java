@@ -0,0 +1,70 @@
+/*
+ * Copyright 2013 pushbit <pushbit@gmail.com>
+ *
+ * This file is part of Sprockets.
+ *
+ * Sprockets is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Sprockets is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Sprockets.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.sf.sprockets.test;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static net.sf.sprockets.google.Places.Response.Status.OVER_QUERY_LIMIT;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.List;
+
+import net.sf.sprockets.google.FakeServer;
+import net.sf.sprockets.google.FakeServer.Endpoint;
+import net.sf.sprockets.google.GeoCoding;
+import net.sf.sprockets.google.Place;
+import net.sf.sprockets.google.Places;
+import net.sf.sprockets.google.Places.Params;
+import net.sf.sprockets.google.Places.Response;
+import net.sf.sprockets.google.RetryPolicy;
+
+import org.junit.Test;
+
+/**
+ * Retries failed requests to a {@link FakeServer} with a {@link RetryPolicy}.
+ */
+public class RetryPolicyTest extends FakeServerTest {
+	@Test
+	public void testRetry() throws IOException {
+		RetryPolicy.setDefault(new RetryPolicy().maxAttempts(3).baseDelay(1L, MILLISECONDS));
+		try {
+			sServer.overQueryLimitRate(1.0);
+			long requests = sServer.getRequestCount(Endpoint.TEXT_SEARCH);
+			long retries = RetryPolicy.getRetryCount();
+			Response<List<Place>> resp = Places.textSearch(new Params().query("pizza"));
+			assertEquals(OVER_QUERY_LIMIT, resp.getStatus());
+			assertEquals(2, resp.getRetries());
+			assertEquals(requests + 3, sServer.getRequestCount(Endpoint.TEXT_SEARCH));
+			assertEquals(retries + 2, RetryPolicy.getRetryCount());
+
+			sServer.overQueryLimitRate(0.0).serverErrorRate(1.0);
+			try {
+				GeoCoding.geocoding(new GeoCoding.Params().address("Albertina, Vienna"));
+				fail("server error response was parsed");
+			} catch (IOException e) {
+				assertEquals(retries + 4, RetryPolicy.getRetryCount());
+			}
+
+			sServer.serverErrorRate(0.0);
+			assertEquals(0, Places.textSearch(new Params().query("pizza")).getRetries());
+		} finally {
+			RetryPolicy.setDefault(null);
+		}
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2013 pushbit <pushbit@gmail.com>
+ *
+ * This file is part of Sprockets.
+ *
+ * Sprockets is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Sprockets is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Sprockets.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.sf.sprockets.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.sf.sprockets.Settings;
+import net.sf.sprockets.Sprockets;
+import net.sf.sprockets.google.GeoCoding;
+import net.sf.sprockets.google.Places;
+import net.sf.sprockets.google.Places.Params;
+import net.sf.sprockets.google.Throttle;
+import net.sf.sprockets.google.Throttle.Api;
+import net.sf.sprockets.net.HttpClient;
+
+import org.apache.commons.configuration.Configuration;
+import org.junit.Test;
+
+/**
+ * Checks that changes to the library {@link Settings} reach the request methods.
+ */
+public class SettingsTest extends FakeServerTest {
+	@Test
+	public void testSettings() throws IOException {
+		final List<Settings> changes = new ArrayList<Settings>();
+		Sprockets.Listener listener = new Sprockets.Listener() {
+			@Override
+			public void onSettingsChanged(Settings old, Settings settings) {
+				changes.add(settings);
+			}
+		};
+		Sprockets.addListener(listener);
+		Configuration config = Sprockets.getConfig();
+		Settings before = Sprockets.getSettings();
+		Throttle throttle = Throttle.get(Api.GEOCODING);
+		long quota = throttle.getDailyUsage() + 5;
+		try {
+			config.setProperty("google.geocoding.rate-limit.daily-quota", quota);
+			config.setProperty("network.pool.max-idle-connections", 2);
+			Settings after = Sprockets.getSettings();
+			assertEquals(2, changes.size());
+			assertEquals(after, changes.get(1));
+			assertEquals(quota, after.getRateLimit("geocoding").getDailyQuota());
+			assertEquals(2, after.getMaxIdleConnections());
+			assertTrue(after.isNetworkChanged(before));
+			assertEquals(before.getBaseUrl(), after.getBaseUrl());
+			assertEquals(5L, throttle.getDailyRemaining());
+			/* new connection pool */
+			assertEquals(0, HttpClient.getStats().getPooledConnections());
+			GeoCoding.geocoding(new GeoCoding.Params().address("Albertina, Vienna"));
+			assertEquals(4L, throttle.getDailyRemaining());
+
+			config.setProperty("network.pool.max-idle-connections", 2);
+			assertEquals(2, changes.size()); // not changed
+			assertTrue(after == Sprockets.getSettings());
+		} finally {
+			config.setProperty("google.geocoding.rate-limit.daily-quota", 0L);
+			config.setProperty("network.pool.max-idle-connections",
+					before.getMaxIdleConnections());
+			Sprockets.removeListener(listener);
+		}
+		assertEquals(before, Sprockets.getSettings());
+	}
+
+	@Test
+	public void testListenerFailure() {
+		final List<Settings> changes = new ArrayList<Settings>();
+		Sprockets.Listener failing = new Sprockets.Listener() {
+			@Override
+			public void onSettingsChanged(Settings old, Settings settings) {
+				throw new IllegalStateException("listener failure");
+			}
+		};
+		Sprockets.Listener listener = new Sprockets.Listener() {
+			@Override
+			public void onSettingsChanged(Settings old, Settings settings) {
+				changes.add(settings);
+			}
+		};
+		Sprockets.addListener(failing);
+		Sprockets.addListener(listener);
+		Configuration config = Sprockets.getConfig();
+		try {
+			config.setProperty("google.places.page-token.retries", 7);
+			assertEquals(1, changes.size());
+			assertEquals(7, Sprockets.getSettings().getPageTokenRetries());
+		} finally {
+			Sprockets.removeListener(failing);
+			Sprockets.removeListener(listener);
+			config.setProperty("google.places.page-token.retries", 3);
+		}
+	}
+
+	@Test
+	public void testRetrySettings() throws IOException {
+		Configuration config = Sprockets.getConfig();
+		sServer.overQueryLimitRate(1.0);
+		Params params = new Params().query("pizza");
+		assertEquals(0, Places.textSearch(params).getRetries());
+		config.setProperty("google.retry.base-delay", 1);
+		config.setProperty("google.retry.max-attempts", 3);
+		try {
+			assertEquals(2, Places.textSearch(params).getRetries());
+		} finally {
+			config.setProperty("google.retry.max-attempts", 1);
+			config.setProperty("google.retry.base-delay", 100);
+		}
+		assertEquals(0, Places.textSearch(params).getRetries());
+	}
+}
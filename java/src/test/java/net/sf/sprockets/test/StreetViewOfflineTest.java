@@ -0,0 +1,43 @@
+/*
+ * Copyright 2013 pushbit <pushbit@gmail.com>
+ *
+ * This file is part of Sprockets.
+ *
+ * Sprockets is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Sprockets is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Sprockets.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.sf.sprockets.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import net.sf.sprockets.google.FakeServer;
+import net.sf.sprockets.google.StreetView;
+
+import org.junit.Test;
+
+import com.google.common.io.Closeables;
+
+/**
+ * Runs the {@link StreetView} methods against a {@link FakeServer}.
+ */
+public class StreetViewOfflineTest extends FakeServerTest {
+	@Test
+	public void testStreetView() throws IOException {
+		StreetView.Response<InputStream> resp = StreetView.image(new StreetView.Params().location(
+				48.2, 16.37));
+		assertEquals(StreetView.Response.Status.OK, resp.getStatus());
+		Closeables.close(resp.getResult(), true);
+	}
+}
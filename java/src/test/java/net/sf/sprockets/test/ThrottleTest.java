@@ -0,0 +1,67 @@
+/*
+ * Copyright 2013 pushbit <pushbit@gmail.com>
+ *
+ * This file is part of Sprockets.
+ *
+ * Sprockets is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Sprockets is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Sprockets.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.sf.sprockets.test;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+
+import net.sf.sprockets.google.FakeServer;
+import net.sf.sprockets.google.GeoCoding;
+import net.sf.sprockets.google.Throttle;
+import net.sf.sprockets.google.Throttle.Api;
+import net.sf.sprockets.google.Throttle.QuotaExceededException;
+
+import org.junit.Test;
+
+/**
+ * Limits the rate of requests to a {@link FakeServer} with a {@link Throttle}.
+ */
+public class ThrottleTest extends FakeServerTest {
+	@Test
+	public void testThrottle() throws IOException {
+		Throttle throttle = Throttle.get(Api.GEOCODING).setLimits(20.0, 1, 0L);
+		try {
+			GeoCoding.Params params = new GeoCoding.Params().address("Albertina, Vienna");
+			long throttled = throttle.getThrottledCount();
+			long start = System.nanoTime();
+			for (int i = 0; i < 6; i++) {
+				GeoCoding.geocoding(params);
+			}
+			assertTrue(System.nanoTime() - start >= MILLISECONDS.toNanos(240));
+			assertTrue(throttle.getThrottledCount() > throttled);
+			assertFalse(throttle.tryAcquire() && throttle.tryAcquire());
+
+			throttle.setLimits(0.0, 0, throttle.getDailyUsage() + 1);
+			GeoCoding.geocoding(params);
+			assertEquals(0L, throttle.getDailyRemaining());
+			try {
+				GeoCoding.geocoding(params);
+				fail("request sent after daily quota was used");
+			} catch (QuotaExceededException e) {
+				// expected
+			}
+		} finally {
+			throttle.setLimits(0.0, 0, 0L);
+		}
+	}
+}